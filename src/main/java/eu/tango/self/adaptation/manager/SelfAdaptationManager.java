@@ -23,10 +23,12 @@ import eu.tango.energymodeller.datasourceclient.WattsUpMeterDataSourceAdaptor;
 import eu.tango.self.adaptation.manager.actuators.ActuatorInvoker;
 import eu.tango.self.adaptation.manager.actuators.AldeAndSlurmActuator;
 import eu.tango.self.adaptation.manager.actuators.ProgrammingModelRuntimeActuator;
+import eu.tango.self.adaptation.manager.listeners.BinaryEventMonitor;
 import eu.tango.self.adaptation.manager.listeners.ClockMonitor;
 import eu.tango.self.adaptation.manager.listeners.CompssJobMonitor;
 import eu.tango.self.adaptation.manager.listeners.EnvironmentMonitor;
 import eu.tango.self.adaptation.manager.listeners.EventListener;
+import eu.tango.self.adaptation.manager.listeners.MappedEventMonitor;
 import eu.tango.self.adaptation.manager.listeners.RestEventMonitor;
 import eu.tango.self.adaptation.manager.listeners.SlurmJobMonitor;
 import eu.tango.self.adaptation.manager.qos.SlaRulesLoader;
@@ -118,6 +120,14 @@ public class SelfAdaptationManager {
         listener = RestEventMonitor.getInstance();
         listener.setEventAssessor(eventAssessor);
         listeners.add(listener);
+        //Add the binary event monitor, it only listens if enabled
+        listener = new BinaryEventMonitor();
+        listener.setEventAssessor(eventAssessor);
+        listeners.add(listener);
+        //Add the memory mapped event queue monitor, it only listens if enabled
+        listener = new MappedEventMonitor();
+        listener.setEventAssessor(eventAssessor);
+        listeners.add(listener);
         return listeners;
     }
     
@@ -144,6 +154,14 @@ public class SelfAdaptationManager {
         listener = RestEventMonitor.getInstance();
         listener.setEventAssessor(eventAssessor);
         listeners.add(listener);  
+        //Add the binary event monitor, it only listens if enabled
+        listener = new BinaryEventMonitor();
+        listener.setEventAssessor(eventAssessor);
+        listeners.add(listener);
+        //Add the memory mapped event queue monitor, it only listens if enabled
+        listener = new MappedEventMonitor();
+        listener.setEventAssessor(eventAssessor);
+        listeners.add(listener);
         return listeners;
     }    
     
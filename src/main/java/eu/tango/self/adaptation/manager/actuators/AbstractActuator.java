@@ -20,6 +20,9 @@ package eu.tango.self.adaptation.manager.actuators;
 
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.self.adaptation.manager.listeners.ClockMonitor;
+import eu.tango.self.adaptation.manager.listeners.ClusterStateVersion;
+import eu.tango.self.adaptation.manager.listeners.ResponseStream;
+import eu.tango.self.adaptation.manager.qos.PowerBudgetLedger;
 import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.Response;
 import java.util.ArrayList;
@@ -58,18 +61,7 @@ public abstract class AbstractActuator implements ActuatorInvoker, Runnable {
                     int draincount = queue.drainTo(actions);
                     Logger.getLogger(AbstractActuator.class.getName()).log(Level.FINEST, "The actuator just processed {0} actions.", draincount);
                     for (Response action : actions) {
-                        try {
-                            launchAction(action);
-                        } catch (Exception ex) {
-                            /**
-                             * This prevents exceptions when messaging the
-                             * server from propagating and stopping the thread
-                             * from running.
-                             */
-                            Logger.getLogger(AbstractActuator.class.getName()).log(Level.SEVERE, null, ex);
-                            action.setPerformed(true);
-                            action.setPossibleToAdapt(false);
-                        }
+                        perform(action);
                     }
                 }
             } catch (InterruptedException ex) {
@@ -78,6 +70,67 @@ public abstract class AbstractActuator implements ActuatorInvoker, Runnable {
         }
     }
 
+    /**
+     * This launches the action for a response and then records that it has
+     * been performed.
+     *
+     * @param action The response to perform the action for
+     */
+    protected void perform(Response action) {
+        try {
+            if (action.hasAdaptationDetail(Response.ADAPTATION_DETAIL_IDLE_ONLY) && !retainIdleHosts(action)) {
+                action.setPerformed(true);
+                action.setPossibleToAdapt(false);
+            } else {
+                launchAction(action);
+            }
+        } catch (Exception ex) {
+            /**
+             * This prevents exceptions when messaging the server from
+             * propagating and stopping the thread from running.
+             */
+            Logger.getLogger(AbstractActuator.class.getName()).log(Level.SEVERE, null, ex);
+            action.setPerformed(true);
+            action.setPossibleToAdapt(false);
+        }
+        PowerBudgetLedger.getInstance().actionPerformed(action);
+        if (action.isPossibleToAdapt()) {
+            ClusterStateVersion.getInstance().changed("adaptation " + action.getActionType());
+        }
+        ResponseStream.getInstance().publish(action);
+    }
+
+    /**
+     * This restricts the hosts a response acts upon to those that have no
+     * tasks running on them, at the time the action is performed. This is
+     * used where earlier actions are expected to have emptied the hosts, but
+     * the scheduler rather than the self-adaptation manager chooses which
+     * hosts the tasks are removed from.
+     *
+     * @param action The response to restrict the hosts of
+     * @return If any of the hosts were idle
+     */
+    private boolean retainIdleHosts(Response action) {
+        String hosts = getHostname(action);
+        if (hosts == null || !(action.getCause() instanceof HostEventData)) {
+            return false;
+        }
+        StringBuilder idle = new StringBuilder();
+        for (String host : hosts.split(",")) {
+            if (getTasksOnHost(host.trim()).isEmpty()) {
+                if (idle.length() > 0) {
+                    idle.append(",");
+                }
+                idle.append(host.trim());
+            } else {
+                Logger.getLogger(AbstractActuator.class.getName()).log(Level.INFO,
+                        "The host {0} is still running tasks so is not acted upon", host.trim());
+            }
+        }
+        ((HostEventData) action.getCause()).setHost(idle.toString());
+        return idle.length() > 0;
+    }
+
     @Override
     public void actuate(Response response) {
         queue.add(response);
@@ -312,12 +312,27 @@ public class SlurmActuator extends AbstractActuator {
         execCmd("scontrol update JobId=" + deploymentId + "OverSubscribe=yes");
     }
 
+    /**
+     * This adds a node to a job. If the task parameters name a host, i.e.
+     * host=node1, the job is asked to run upon that host as well as the
+     * hosts it already has, otherwise SLURM chooses the host to add.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The deployment ID
+     * @param taskType additional task parameters such as task type
+     */
     @Override
     public void addResource(String applicationName, String deploymentId, String taskType) {
         Logger.getLogger(SlurmActuator.class.getName()).log(Level.INFO, "Executing a SLURM add resource action");  
         int oldCount = getNodeCount(deploymentId);
         if (oldCount > 0) { //checks to make sure the count of nodes was detected correctly
-            execCmd("scontrol update JobId=" + deploymentId + "NumNodes=" + (oldCount + 1));
+            String command = "scontrol update JobId=" + deploymentId + " NumNodes=" + (oldCount + 1);
+            String host = (taskType == null ? null : Response.getAdaptationDetail(taskType, Response.ADAPTATION_DETAIL_HOST));
+            if (host != null && !host.isEmpty()) {
+                String nodes = getNodeList(deploymentId);
+                command = command + " ReqNodeList=" + (nodes.isEmpty() ? host : nodes + "," + host);
+            }
+            execCmd(command);
         }
     }
 
@@ -345,6 +360,21 @@ public class SlurmActuator extends AbstractActuator {
         return answer;
     }
 
+    /**
+     * Returns the list of nodes allocated to a given deployment
+     *
+     * @param deploymentId the id of the job to get the node list for
+     * @return the node list for a given deployment, in SLURM's compressed
+     * form i.e. node[1-3], empty in the event of error
+     */
+    private String getNodeList(String deploymentId) {
+        ArrayList<String> nodeList = execCmd("squeue -j " + deploymentId + " -h --format=\"%N\"");
+        if (!nodeList.isEmpty()) {
+            return nodeList.get(0).trim();
+        }
+        return "";
+    }
+
     /**
      * Returns the minimum cpu count for a given deployment
      *
@@ -20,11 +20,14 @@ package eu.tango.self.adaptation.manager.io;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * This class contains generic utility functions for executing applications
+ * This class contains generic utility functions for executing applications.
+ * Commands are run by the process execution service, so each has a timeout
+ * after which it is destroyed.
  * @author Richard Kavanagh
  */
 public abstract class ExecuteUtils {
@@ -56,22 +59,24 @@ public abstract class ExecuteUtils {
 
     /**
      * This executes a command and returns the output as a line of strings.
+     * The calling thread waits for the command to finish, or to time out.
      *
      * @param cmd The command to execute
      * @return A list of output broken down by line
      * @throws java.io.IOException
      */
     public static ArrayList<String> execCmd(String[] cmd) throws java.io.IOException {
-        ArrayList<String> output = new ArrayList<>();
-        Process proc = Runtime.getRuntime().exec(cmd);
-        java.io.InputStream is = proc.getInputStream();
-        java.util.Scanner s = new java.util.Scanner(is);
-        String outputLine;
-        while (s.hasNextLine()) {
-            outputLine = s.nextLine();
-            output.add(outputLine);
+        try {
+            return new ArrayList<>(ProcessExecutionService.getInstance().submit(cmd).get().getOutput());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the command to finish", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
         }
-        return output;
-    }    
+    }
     
 }
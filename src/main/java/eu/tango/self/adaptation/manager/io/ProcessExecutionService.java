@@ -0,0 +1,516 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This runs external commands, such as those of the SLURM scheduler, on a
+ * bounded pool of threads. Each command has a timeout, after which the process
+ * is destroyed, so that a hung command can't block the thread that asked for
+ * it indefinitely. The standard output and standard error of each process are
+ * both drained, so that a process can't stall by filling its error stream.
+ * The latency of starting processes, the time they take to run and the counts
+ * of commands that failed or timed out are recorded.
+ *
+ * @author Richard Kavanagh
+ */
+public class ProcessExecutionService {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    //The time to wait for the output of a finished process, in case a child process holds it open
+    private static final int STREAM_TIMEOUT = 5; //seconds
+    private int poolSize = 4;
+    private int queueSize = 100;
+    private int timeout = 30; //seconds
+    private int slowThreshold = 1000; //milliseconds
+    private final ThreadPoolExecutor pool;
+    //Reads the output streams of the running processes, two per process, so twice the pool size
+    private final ThreadPoolExecutor streamReaders;
+    private final AtomicLong executed = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong timedOut = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong nonZeroExit = new AtomicLong(0);
+    private final AtomicLong totalForkLatency = new AtomicLong(0);
+    private final AtomicLong maxForkLatency = new AtomicLong(0);
+    private final AtomicLong totalQueueWait = new AtomicLong(0);
+    private final AtomicLong totalDuration = new AtomicLong(0);
+
+    /**
+     * SingletonHolder is loaded on the first execution of
+     * Singleton.getInstance() or the first access to SingletonHolder.INSTANCE,
+     * not before.
+     */
+    private static class SingletonHolder {
+
+        private static final ProcessExecutionService INSTANCE = new ProcessExecutionService();
+    }
+
+    /**
+     * This gets the process execution service.
+     *
+     * @return A singleton instance of the process execution service.
+     */
+    public static ProcessExecutionService getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    private ProcessExecutionService() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            poolSize = config.getInt("self.adaptation.manager.exec.pool.size", poolSize);
+            config.setProperty("self.adaptation.manager.exec.pool.size", poolSize);
+            queueSize = config.getInt("self.adaptation.manager.exec.queue.size", queueSize);
+            config.setProperty("self.adaptation.manager.exec.queue.size", queueSize);
+            timeout = config.getInt("self.adaptation.manager.exec.timeout", timeout);
+            config.setProperty("self.adaptation.manager.exec.timeout", timeout);
+            slowThreshold = config.getInt("self.adaptation.manager.exec.slow.threshold", slowThreshold);
+            config.setProperty("self.adaptation.manager.exec.slow.threshold", slowThreshold);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        poolSize = Math.max(1, poolSize);
+        pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new DaemonThreadFactory("Process-Execution"));
+        streamReaders = new ThreadPoolExecutor(poolSize * 2, poolSize * 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Process-Output-Reader"));
+        streamReaders.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return The default timeout for a command, in seconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * This runs a command asynchronously, with the default timeout.
+     *
+     * @param cmd The command to execute
+     * @return The result of the command, once it has finished
+     */
+    public CompletableFuture<ProcessResult> submit(String[] cmd) {
+        return submit(cmd, timeout);
+    }
+
+    /**
+     * This runs a command asynchronously. The future completes exceptionally
+     * with an IOException if the process could not be started, or with a
+     * RejectedExecutionException if too many commands are waiting to run.
+     *
+     * @param cmd The command to execute
+     * @param timeoutSeconds The time the command is allowed to run for before
+     * its process is destroyed, 0 or less means no timeout
+     * @return The result of the command, once it has finished
+     */
+    public CompletableFuture<ProcessResult> submit(final String[] cmd, final int timeoutSeconds) {
+        final CompletableFuture<ProcessResult> answer = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        answer.complete(execute(cmd, timeoutSeconds, submitted));
+                    } catch (IOException | RuntimeException ex) {
+                        failed.incrementAndGet();
+                        Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.SEVERE,
+                                "The command " + Arrays.toString(cmd) + " could not be run", ex);
+                        answer.completeExceptionally(ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.WARNING,
+                    "Too many commands are waiting to run, the command {0} was rejected", Arrays.toString(cmd));
+            answer.completeExceptionally(ex);
+        }
+        return answer;
+    }
+
+    /**
+     * This runs a command, on the calling thread.
+     *
+     * @param cmd The command to execute
+     * @param timeoutSeconds The time the command is allowed to run for before
+     * its process is destroyed, 0 or less means no timeout
+     * @param submitted The time the command was submitted, from
+     * System.nanoTime()
+     * @return The result of the command
+     * @throws IOException Thrown if the process could not be started
+     */
+    private ProcessResult execute(String[] cmd, int timeoutSeconds, long submitted) throws IOException {
+        long queueWait = System.nanoTime() - submitted;
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(cmd).start();
+        long forkLatency = System.nanoTime() - start;
+        process.getOutputStream().close();
+        Future<List<String>> output = streamReaders.submit(new StreamReader(process.getInputStream()));
+        Future<List<String>> error = streamReaders.submit(new StreamReader(process.getErrorStream()));
+        boolean hasTimedOut = false;
+        try {
+            if (timeoutSeconds > 0) {
+                hasTimedOut = !process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            } else {
+                process.waitFor();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            hasTimedOut = true;
+        }
+        if (hasTimedOut) {
+            process.destroyForcibly();
+            //Unblocks the readers, in case a child of the process holds its output open
+            closeStreams(process);
+        }
+        ProcessResult answer;
+        try {
+            answer = new ProcessResult(cmd, hasTimedOut ? null : process.exitValue(),
+                    getLines(output), getLines(error), hasTimedOut, forkLatency, System.nanoTime() - start);
+        } finally {
+            closeStreams(process);
+        }
+        record(answer, queueWait);
+        return answer;
+    }
+
+    /**
+     * This closes a process's output streams. A reader that is still blocked
+     * on a stream, such as when a child process that outlived its parent
+     * holds it open, then ends rather than holding its thread.
+     *
+     * @param process The process to close the streams of
+     */
+    private static void closeStreams(Process process) {
+        try {
+            process.getInputStream().close();
+        } catch (IOException ex) {
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.FINE, "The output of a process could not be closed", ex);
+        }
+        try {
+            process.getErrorStream().close();
+        } catch (IOException ex) {
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.FINE, "The error output of a process could not be closed", ex);
+        }
+    }
+
+    /**
+     * This gets the lines read from one of a process's output streams, once
+     * the process has finished.
+     *
+     * @param lines The lines being read
+     * @return The lines read, or an empty list if they could not be read
+     */
+    private static List<String> getLines(Future<List<String>> lines) {
+        try {
+            //The stream ends once the process has finished or been destroyed
+            return lines.get(STREAM_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            lines.cancel(true);
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.FINE, "The output of a process could not be read", ex);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * This records the metrics for a command that has run.
+     *
+     * @param result The result of the command
+     * @param queueWait The time the command waited for a thread, in
+     * nanoseconds
+     */
+    private void record(ProcessResult result, long queueWait) {
+        executed.incrementAndGet();
+        totalQueueWait.addAndGet(queueWait);
+        totalForkLatency.addAndGet(result.getForkLatency());
+        totalDuration.addAndGet(result.getDuration());
+        long max = maxForkLatency.get();
+        while (result.getForkLatency() > max && !maxForkLatency.compareAndSet(max, result.getForkLatency())) {
+            max = maxForkLatency.get();
+        }
+        if (result.isTimedOut()) {
+            timedOut.incrementAndGet();
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.WARNING,
+                    "The command {0} timed out and was destroyed", Arrays.toString(result.getCommand()));
+        } else if (result.getExitCode() != 0) {
+            nonZeroExit.incrementAndGet();
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.WARNING,
+                    "The command {0} exited with code {1}: {2}",
+                    new Object[]{Arrays.toString(result.getCommand()), result.getExitCode(), result.getError()});
+        }
+        long slow = TimeUnit.MILLISECONDS.toNanos(slowThreshold);
+        if (slowThreshold > 0 && (result.getForkLatency() > slow || queueWait > slow)) {
+            Logger.getLogger(ProcessExecutionService.class.getName()).log(Level.WARNING,
+                    "The command {0} was slow to start, waiting {1} ms for a thread and {2} ms to fork",
+                    new Object[]{Arrays.toString(result.getCommand()),
+                        TimeUnit.NANOSECONDS.toMillis(queueWait), TimeUnit.NANOSECONDS.toMillis(result.getForkLatency())});
+        }
+    }
+
+    /**
+     * @return The count of commands that have run
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return The count of commands whose process could not be started
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return The count of commands destroyed for running past their timeout
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return The count of commands rejected due to too many waiting to run
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The count of commands that exited with a non-zero exit code
+     */
+    public long getNonZeroExitCount() {
+        return nonZeroExit.get();
+    }
+
+    /**
+     * @return The count of commands waiting for a thread to run on
+     */
+    public int getQueueLength() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * @return The mean time taken to start a process, in milliseconds
+     */
+    public double getMeanForkLatency() {
+        return getMean(totalForkLatency.get());
+    }
+
+    /**
+     * @return The longest time taken to start a process, in milliseconds
+     */
+    public double getMaxForkLatency() {
+        return maxForkLatency.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return The mean time a command waited for a thread to run on, in
+     * milliseconds
+     */
+    public double getMeanQueueWait() {
+        return getMean(totalQueueWait.get());
+    }
+
+    /**
+     * @return The mean time a command took to run, in milliseconds
+     */
+    public double getMeanDuration() {
+        return getMean(totalDuration.get());
+    }
+
+    /**
+     * @param total A total time in nanoseconds, over all commands that have
+     * run
+     * @return The mean time per command in milliseconds
+     */
+    private double getMean(long total) {
+        long count = executed.get();
+        if (count == 0) {
+            return 0;
+        }
+        return total / (double) count / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * This reads all the lines from one of a process's output streams.
+     */
+    private static class StreamReader implements Callable<List<String>> {
+
+        private final InputStream stream;
+
+        public StreamReader(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public List<String> call() throws IOException {
+            ArrayList<String> answer = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    answer.add(line);
+                }
+            }
+            return answer;
+        }
+
+    }
+
+    /**
+     * This creates the named daemon threads used by the service.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread answer = new Thread(runnable, name + "-" + count.incrementAndGet());
+            answer.setDaemon(true);
+            return answer;
+        }
+
+    }
+
+    /**
+     * The result of running a command.
+     */
+    public static class ProcessResult {
+
+        private final String[] command;
+        private final Integer exitCode;
+        private final List<String> output;
+        private final List<String> error;
+        private final boolean timedOut;
+        private final long forkLatency;
+        private final long duration;
+
+        public ProcessResult(String[] command, Integer exitCode, List<String> output, List<String> error,
+                boolean timedOut, long forkLatency, long duration) {
+            this.command = command;
+            this.exitCode = exitCode;
+            this.output = output;
+            this.error = error;
+            this.timedOut = timedOut;
+            this.forkLatency = forkLatency;
+            this.duration = duration;
+        }
+
+        /**
+         * @return The command that was run
+         */
+        public String[] getCommand() {
+            return command;
+        }
+
+        /**
+         * @return The exit code of the process, null if it timed out
+         */
+        public Integer getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return The lines written to standard output
+         */
+        public List<String> getOutput() {
+            return output;
+        }
+
+        /**
+         * @return The lines written to standard error
+         */
+        public List<String> getError() {
+            return error;
+        }
+
+        /**
+         * @return If the process was destroyed for running past its timeout
+         */
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return If the process finished with an exit code of zero
+         */
+        public boolean isSuccessful() {
+            return !timedOut && exitCode != null && exitCode == 0;
+        }
+
+        /**
+         * @return The time taken to start the process, in nanoseconds
+         */
+        public long getForkLatency() {
+            return forkLatency;
+        }
+
+        /**
+         * @return The time from starting the process to it finishing, in
+         * nanoseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+    }
+
+}
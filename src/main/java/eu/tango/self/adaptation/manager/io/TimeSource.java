@@ -0,0 +1,77 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.io;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This provides the current time to the self-adaptation manager. By default
+ * this is the system clock, but another clock may be set in its place, such as
+ * when a simulation wishes to run the adaptation loop faster than real time.
+ * Times used to judge the age of events and adaptations, rule firing windows
+ * and timed events are all obtained from here.
+ *
+ * @author Richard Kavanagh
+ */
+public class TimeSource {
+
+    private static volatile Clock clock = Clock.systemDefaultZone();
+
+    private TimeSource() {
+    }
+
+    /**
+     * @return The clock that is used to give the current time
+     */
+    public static Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * This sets the clock that is used to give the current time.
+     *
+     * @param clock The clock to use, null restores the system clock
+     */
+    public static void setClock(Clock clock) {
+        TimeSource.clock = (clock == null ? Clock.systemDefaultZone() : clock);
+    }
+
+    /**
+     * @return If the current time is given by the system clock
+     */
+    public static boolean isSystemClock() {
+        return clock.equals(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @return The current time, in milliseconds since the epoch
+     */
+    public static long currentTimeMillis() {
+        return clock.millis();
+    }
+
+    /**
+     * @return The current time, in seconds since the epoch
+     */
+    public static long currentTimeSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(clock.millis());
+    }
+
+}
@@ -24,6 +24,7 @@ import eu.tango.self.adaptation.manager.qos.SlaRulesLoader;
 import eu.tango.self.adaptation.manager.rules.EventAssessor;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -123,15 +124,28 @@ public abstract class AbstractJobMonitor implements EventListener, Runnable {
      */
     protected abstract ArrayList<EventData> detectEvent(SLALimits limits);    
 
+    /**
+     * This performs a single round of event detection, passing each event
+     * found to the event assessor. It allows the job monitor to be driven
+     * without its own thread, such as by a simulation of the environment.
+     *
+     * @return The events that were detected
+     */
+    public List<EventData> detectAndAssessEvents() {
+        ArrayList<EventData> answer = detectEvent(limits.getLimits());
+        for (EventData event : answer) {
+            eventAssessor.assessEvent(event);
+        }
+        return answer;
+    }
+
     @Override
     public void run() {
         running = true;
         try {
             // Wait for a message
             while (running) {
-                for (EventData event : detectEvent(limits.getLimits())) {
-                    eventAssessor.assessEvent(event);
-                }
+                detectAndAssessEvents();
                 try {
                     Thread.sleep(1000);
                 } catch (InterruptedException ex) {
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This decodes events sent to the SAM in its compact binary encoding. Each
+ * sender has its own decoder, as strings such as agreement terms and host
+ * names are sent once as a dictionary entry and are then referred to by
+ * number.
+ *
+ * All values are big endian. Each frame starts with its length in bytes, as
+ * an unsigned 16 bit number that excludes the length itself, followed by the
+ * frame kind as a single byte. The frame kinds are:
+ *
+ * DEFINE (1): id (u16), string length (u16), UTF-8 string
+ *
+ * HOST_EVENT (2): type (u8), operator (u8), flags (u8), time in seconds
+ * (i64, 0 for now), guarantee id (u16), agreement term (u16), host (u16),
+ * raw value (f64), guaranteed value (f64)
+ *
+ * APPLICATION_EVENT (3): type (u8), operator (u8), flags (u8), time in
+ * seconds (i64, 0 for now), guarantee id (u16), agreement term (u16),
+ * application (u16), deployment id (u16), raw value (f64), guaranteed value
+ * (f64)
+ *
+ * The type and operator are the ordinals of EventData.Type and
+ * EventData.Operator. Bit 0 of the flags marks the event as significant on
+ * its own. A string id of 65535 indicates no value.
+ *
+ * @author Richard Kavanagh
+ */
+public class BinaryEventDecoder {
+
+    /**
+     * The frame kind that defines a dictionary entry.
+     */
+    public static final byte DEFINE = 1;
+    /**
+     * The frame kind for a host event.
+     */
+    public static final byte HOST_EVENT = 2;
+    /**
+     * The frame kind for an application event.
+     */
+    public static final byte APPLICATION_EVENT = 3;
+    /**
+     * The dictionary id that represents no value.
+     */
+    public static final int NO_VALUE = 0xFFFF;
+    private static final int LENGTH_SIZE = 2;
+    private static final int HOST_EVENT_SIZE = 34;
+    private static final int APPLICATION_EVENT_SIZE = 36;
+    private static final int FLAG_SIGNIFICANT_ON_OWN = 1;
+    private static final EventData.Type[] TYPES = EventData.Type.values();
+    private static final EventData.Operator[] OPERATORS = EventData.Operator.values();
+
+    private String[] dictionary = new String[64];
+    private byte[] scratch = new byte[256];
+    private long unknownStrings = 0;
+
+    /**
+     * This decodes all the complete frames held in a buffer. The buffer's
+     * position is left at the start of the first incomplete frame, so that
+     * the rest of the frame may be appended to it.
+     *
+     * @param buffer The buffer to read, ready for reading
+     * @param events The list to add the decoded events to
+     * @return false if a malformed frame was found, in which case the rest of
+     * the buffer can not be trusted.
+     */
+    public boolean decode(ByteBuffer buffer, List<EventData> events) {
+        while (buffer.remaining() >= LENGTH_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getShort(start) & 0xFFFF;
+            if (length == 0) {
+                return false;
+            }
+            if (buffer.remaining() < LENGTH_SIZE + length) {
+                return true; //Incomplete frame, wait for the rest of it
+            }
+            int end = start + LENGTH_SIZE + length;
+            buffer.position(start + LENGTH_SIZE);
+            byte kind = buffer.get();
+            boolean valid;
+            switch (kind) {
+                case DEFINE:
+                    valid = readDefinition(buffer, end);
+                    break;
+                case HOST_EVENT:
+                    valid = length == HOST_EVENT_SIZE && readEvent(buffer, false, events);
+                    break;
+                case APPLICATION_EVENT:
+                    valid = length == APPLICATION_EVENT_SIZE && readEvent(buffer, true, events);
+                    break;
+                default:
+                    valid = false;
+            }
+            if (!valid) {
+                return false;
+            }
+            buffer.position(end);
+        }
+        return true;
+    }
+
+    /**
+     * This reads a dictionary entry.
+     *
+     * @param buffer The buffer positioned after the frame kind
+     * @param end The end of the frame
+     * @return If the entry was correctly formed
+     */
+    private boolean readDefinition(ByteBuffer buffer, int end) {
+        if (end - buffer.position() < 4) {
+            return false;
+        }
+        int id = buffer.getShort() & 0xFFFF;
+        int length = buffer.getShort() & 0xFFFF;
+        if (id == NO_VALUE || end - buffer.position() != length) {
+            return false;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        buffer.get(scratch, 0, length);
+        if (id >= dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, Math.min(NO_VALUE, Math.max(id + 1, dictionary.length * 2)));
+        }
+        dictionary[id] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    /**
+     * This reads an event. Events that refer to strings that have not been
+     * defined are skipped, but do not make the frame malformed.
+     *
+     * @param buffer The buffer positioned after the frame kind
+     * @param application If the event is an application event or a host event
+     * @param events The list to add the event to
+     * @return If the event was correctly formed
+     */
+    private boolean readEvent(ByteBuffer buffer, boolean application, List<EventData> events) {
+        int type = buffer.get() & 0xFF;
+        int operator = buffer.get() & 0xFF;
+        int flags = buffer.get() & 0xFF;
+        long time = buffer.getLong();
+        int guaranteeId = buffer.getShort() & 0xFFFF;
+        int agreementTerm = buffer.getShort() & 0xFFFF;
+        int subject = buffer.getShort() & 0xFFFF;
+        int deploymentId = application ? buffer.getShort() & 0xFFFF : NO_VALUE;
+        double rawValue = buffer.getDouble();
+        double guaranteedValue = buffer.getDouble();
+        if (type >= TYPES.length || operator >= OPERATORS.length) {
+            return false;
+        }
+        if (!isDefined(guaranteeId) || !isDefined(agreementTerm) || !isDefined(subject)
+                || (deploymentId != NO_VALUE && !isDefined(deploymentId))) {
+            unknownStrings++;
+            return true;
+        }
+        if (time == 0) {
+            time = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        }
+        EventData event;
+        if (application) {
+            event = new ApplicationEventData(time, rawValue, guaranteedValue,
+                    TYPES[type], OPERATORS[operator],
+                    dictionary[subject],
+                    deploymentId == NO_VALUE ? null : dictionary[deploymentId],
+                    dictionary[guaranteeId],
+                    dictionary[agreementTerm]);
+        } else {
+            event = new HostEventData(time, dictionary[subject], rawValue, guaranteedValue,
+                    TYPES[type], OPERATORS[operator],
+                    dictionary[guaranteeId],
+                    dictionary[agreementTerm]);
+        }
+        event.setSignificantOnOwn((flags & FLAG_SIGNIFICANT_ON_OWN) != 0);
+        events.add(event);
+        return true;
+    }
+
+    /**
+     * @param id The dictionary id
+     * @return If a string has been defined for the id
+     */
+    private boolean isDefined(int id) {
+        return id < dictionary.length && dictionary[id] != null;
+    }
+
+    /**
+     * @return The count of events skipped due to referring to strings that
+     * have not been defined
+     */
+    public long getUnknownStrings() {
+        return unknownStrings;
+    }
+
+}
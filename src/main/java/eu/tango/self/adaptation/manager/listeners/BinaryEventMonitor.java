@@ -0,0 +1,466 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.self.adaptation.manager.rules.EventAssessor;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This listens for events sent in the SAM's compact binary encoding, over UDP
+ * and over TCP. It is intended for detectors that report frequently from many
+ * nodes, for which the REST interface is too heavy. The encoding is described
+ * in the BinaryEventDecoder.
+ *
+ * @author Richard Kavanagh
+ * @see BinaryEventDecoder
+ */
+public class BinaryEventMonitor implements EventListener, Runnable {
+
+    private EventAssessor eventAssessor;
+    private volatile boolean running = false;
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private boolean enabled = false;
+    private String udpAddress = "0.0.0.0";
+    private int udpPort = 9090;
+    private String tcpAddress = "127.0.0.1";
+    private int tcpPort = 9091;
+    private int queueSize = 65536;
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final int MAX_BATCH = 500;
+    private static final int MAX_UDP_SENDERS = 65536;
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+    private Selector selector;
+    private DatagramChannel udpChannel;
+    private ServerSocketChannel tcpChannel;
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final HashMap<SocketAddress, BinaryEventDecoder> udpDecoders = new HashMap<>();
+    /**
+     * Decoded events are handed from the network thread to the assessing
+     * thread via this queue. The network thread is the only producer, as
+     * both the UDP and TCP channels are read by the one selector thread.
+     */
+    private final SpscQueue<EventData> events;
+    private final AtomicLong bytesReceived = new AtomicLong(0);
+    private final AtomicLong eventsReceived = new AtomicLong(0);
+    private final AtomicLong eventsDropped = new AtomicLong(0);
+    private final AtomicLong eventsAssessed = new AtomicLong(0);
+    private final AtomicLong malformedFrames = new AtomicLong(0);
+    private final SlidingWindowRate eventRate = new SlidingWindowRate(60, TimeUnit.SECONDS.toMillis(10), 0.3);
+
+    /**
+     * This creates a new binary event monitor.
+     */
+    public BinaryEventMonitor() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            enabled = config.getBoolean("self.adaptation.manager.binary.enabled", enabled);
+            config.setProperty("self.adaptation.manager.binary.enabled", enabled);
+            udpAddress = config.getString("self.adaptation.manager.binary.udp.address", udpAddress);
+            config.setProperty("self.adaptation.manager.binary.udp.address", udpAddress);
+            udpPort = config.getInt("self.adaptation.manager.binary.udp.port", udpPort);
+            config.setProperty("self.adaptation.manager.binary.udp.port", udpPort);
+            tcpAddress = config.getString("self.adaptation.manager.binary.tcp.address", tcpAddress);
+            config.setProperty("self.adaptation.manager.binary.tcp.address", tcpAddress);
+            tcpPort = config.getInt("self.adaptation.manager.binary.tcp.port", tcpPort);
+            config.setProperty("self.adaptation.manager.binary.tcp.port", tcpPort);
+            queueSize = config.getInt("self.adaptation.manager.binary.queue.size", queueSize);
+            config.setProperty("self.adaptation.manager.binary.queue.size", queueSize);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        events = new SpscQueue<>(queueSize);
+    }
+
+    @Override
+    public void setEventAssessor(EventAssessor assessor) {
+        eventAssessor = assessor;
+    }
+
+    @Override
+    public EventAssessor getEventAssessor() {
+        return eventAssessor;
+    }
+
+    /**
+     * This starts the binary event monitor going, in a daemon thread.
+     */
+    @Override
+    public void startListening() {
+        Thread monitorThread = new Thread(this);
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+    }
+
+    @Override
+    public void stopListening() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public boolean isListening() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        if (!enabled || running) {
+            return;
+        }
+        try {
+            open();
+        } catch (IOException ex) {
+            Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.SEVERE, "The binary event monitor could not be started", ex);
+            close();
+            return;
+        }
+        running = true;
+        Thread assessorThread = new Thread(new EventProcessor());
+        assessorThread.setDaemon(true);
+        assessorThread.start();
+        ByteBuffer datagram = bufferPool.acquire();
+        ArrayList<EventData> decoded = new ArrayList<>();
+        while (running) {
+            try {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udpChannel) {
+                        readDatagrams(datagram, decoded);
+                    } else if (key.isReadable()) {
+                        readConnection(key, decoded);
+                    }
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.WARNING, "Error receiving binary events", ex);
+            }
+        }
+        bufferPool.release(datagram);
+        close();
+    }
+
+    /**
+     * This opens the UDP and TCP channels that events are received upon. A
+     * port of zero or less disables the given channel.
+     *
+     * @throws IOException Thrown if either channel can't be opened
+     */
+    private void open() throws IOException {
+        selector = Selector.open();
+        if (udpPort > 0) {
+            udpChannel = DatagramChannel.open();
+            udpChannel.socket().setReceiveBufferSize(4 * BUFFER_SIZE);
+            udpChannel.socket().bind(new InetSocketAddress(udpAddress, udpPort));
+            udpChannel.configureBlocking(false);
+            udpChannel.register(selector, SelectionKey.OP_READ);
+        }
+        if (tcpPort > 0) {
+            tcpChannel = ServerSocketChannel.open();
+            tcpChannel.socket().bind(new InetSocketAddress(tcpAddress, tcpPort));
+            tcpChannel.configureBlocking(false);
+            tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.INFO,
+                "Binary event monitor listening on UDP port {0} and TCP port {1}",
+                new Object[]{udpPort, tcpPort});
+    }
+
+    /**
+     * This closes all channels, including connections from detectors.
+     */
+    private void close() {
+        if (selector != null) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    closeConnection(key);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ex) {
+                Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.FINE, null, ex);
+            }
+        }
+        try {
+            if (udpChannel != null) {
+                udpChannel.close();
+            }
+            if (tcpChannel != null) {
+                tcpChannel.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.FINE, null, ex);
+        }
+        udpDecoders.clear();
+        selector = null;
+        udpChannel = null;
+        tcpChannel = null;
+    }
+
+    /**
+     * This accepts a new connection from a detector.
+     *
+     * @throws IOException Thrown if the connection can't be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = tcpChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(bufferPool.acquire()));
+    }
+
+    /**
+     * This reads all datagrams currently waiting. Each datagram holds one or
+     * more complete frames.
+     *
+     * @param buffer The buffer to read datagrams into
+     * @param decoded A list to hold decoded events temporarily
+     * @throws IOException Thrown if the channel can't be read
+     */
+    private void readDatagrams(ByteBuffer buffer, ArrayList<EventData> decoded) throws IOException {
+        SocketAddress sender;
+        buffer.clear();
+        while ((sender = udpChannel.receive(buffer)) != null) {
+            buffer.flip();
+            bytesReceived.addAndGet(buffer.remaining());
+            BinaryEventDecoder decoder = udpDecoders.get(sender);
+            if (decoder == null) {
+                if (udpDecoders.size() >= MAX_UDP_SENDERS) {
+                    //Senders re-send their dictionary entries periodically
+                    udpDecoders.clear();
+                }
+                decoder = new BinaryEventDecoder();
+                udpDecoders.put(sender, decoder);
+            }
+            if (!decoder.decode(buffer, decoded) || buffer.hasRemaining()) {
+                malformedFrames.incrementAndGet();
+            }
+            queueEvents(decoded);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * This reads the data waiting on a connection from a detector. Frames may
+     * be split across reads, so any incomplete frame is kept in the
+     * connection's buffer.
+     *
+     * @param key The key of the connection
+     * @param decoded A list to hold decoded events temporarily
+     */
+    private void readConnection(SelectionKey key, ArrayList<EventData> decoded) {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            int read = channel.read(connection.buffer);
+            if (read < 0) {
+                closeConnection(key);
+                return;
+            }
+            bytesReceived.addAndGet(read);
+            connection.buffer.flip();
+            boolean valid = connection.decoder.decode(connection.buffer, decoded);
+            queueEvents(decoded);
+            connection.buffer.compact();
+            if (!valid || !connection.buffer.hasRemaining()) {
+                //The stream can't be resynchronised once a frame is malformed or too large
+                malformedFrames.incrementAndGet();
+                closeConnection(key);
+            }
+        } catch (IOException ex) {
+            closeConnection(key);
+        }
+    }
+
+    /**
+     * This closes a connection from a detector, returning its buffer to the
+     * pool.
+     *
+     * @param key The key of the connection
+     */
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.FINE, null, ex);
+        }
+        Connection connection = (Connection) key.attachment();
+        key.attach(null);
+        if (connection != null) {
+            bufferPool.release(connection.buffer);
+        }
+    }
+
+    /**
+     * This places decoded events in the queue to be assessed.
+     *
+     * @param decoded The decoded events, this list is cleared afterwards
+     */
+    private void queueEvents(ArrayList<EventData> decoded) {
+        for (EventData event : decoded) {
+            eventsReceived.incrementAndGet();
+            if (!events.offer(event)) {
+                eventsDropped.incrementAndGet();
+            }
+        }
+        decoded.clear();
+    }
+
+    /**
+     * @return The count of bytes received from detectors
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return The count of events received from detectors
+     */
+    public long getEventsReceived() {
+        return eventsReceived.get();
+    }
+
+    /**
+     * @return The count of events dropped, due to the queue being full
+     */
+    public long getEventsDropped() {
+        return eventsDropped.get();
+    }
+
+    /**
+     * @return The count of events passed on to the event assessor
+     */
+    public long getEventsAssessed() {
+        return eventsAssessed.get();
+    }
+
+    /**
+     * @return The count of datagrams or connections that contained a malformed
+     * frame
+     */
+    public long getMalformedFrames() {
+        return malformedFrames.get();
+    }
+
+    /**
+     * @return The count of events waiting to be assessed
+     */
+    public int getQueueLength() {
+        return events.size();
+    }
+
+    /**
+     * @return The rate at which events are being received, per second. NaN if
+     * not yet known.
+     */
+    public double getEventRate() {
+        return eventRate.getEwmaRate();
+    }
+
+    /**
+     * A connection from a detector, along with its read buffer and string
+     * dictionary.
+     */
+    private static class Connection {
+
+        private final ByteBuffer buffer;
+        private final BinaryEventDecoder decoder = new BinaryEventDecoder();
+
+        public Connection(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+    }
+
+    /**
+     * This takes decoded events from the queue and passes them on to the
+     * event assessor, in batches. It also records the rate at which events
+     * arrive.
+     */
+    private class EventProcessor implements Runnable {
+
+        @Override
+        public void run() {
+            ArrayList<EventData> batch = new ArrayList<>();
+            long lastSample = 0;
+            while (running) {
+                long now = System.currentTimeMillis();
+                if (now - lastSample >= 1000) {
+                    eventRate.addSample(now, eventsReceived.get());
+                    lastSample = now;
+                }
+                if (events.drainTo(batch, MAX_BATCH) == 0) {
+                    LockSupport.parkNanos(IDLE_WAIT);
+                    continue;
+                }
+                try {
+                    if (eventAssessor != null) {
+                        eventAssessor.assessEvents(batch);
+                        eventsAssessed.addAndGet(batch.size());
+                    }
+                } catch (Exception ex) {
+                    Logger.getLogger(BinaryEventMonitor.class.getName()).log(Level.SEVERE, "Error assessing binary events", ex);
+                }
+                batch.clear();
+            }
+        }
+
+    }
+
+}
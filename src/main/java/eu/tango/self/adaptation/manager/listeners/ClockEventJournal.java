@@ -0,0 +1,295 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This keeps a journal on disk of the one off clock events that are waiting
+ * to occur, such as the unpausing of a job or the restarting of a host. This
+ * allows these events to be re-armed if the SAM is restarted. The journal is
+ * appended to as events are added, cancelled and occur and is compacted when
+ * it is loaded, or once it holds mostly finished events.
+ *
+ * @author Richard Kavanagh
+ */
+public class ClockEventJournal {
+
+    private static final byte ADD = 1;
+    private static final byte CANCEL = 2;
+    private static final byte FIRED = 3;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1000;
+    private final File file;
+    private final LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+    private DataOutputStream out = null;
+    private long nextId = 1;
+    private int records = 0;
+
+    /**
+     * This opens the journal, reading the events that are still waiting to
+     * occur.
+     *
+     * @param file The file that holds the journal
+     */
+    public ClockEventJournal(File file) {
+        this.file = file;
+        load();
+        compact();
+    }
+
+    /**
+     * This reads the journal from disk. A record that is only partly written,
+     * such as due to the SAM stopping during a write, ends the journal.
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                nextId = Math.max(nextId, id + 1);
+                switch (type) {
+                    case ADD:
+                        long dueTime = in.readLong();
+                        String eventName = in.readUTF();
+                        String description = in.readBoolean() ? in.readUTF() : null;
+                        pending.put(id, new Entry(id, dueTime, eventName, description));
+                        break;
+                    case CANCEL:
+                    case FIRED:
+                        pending.remove(id);
+                        break;
+                    default:
+                        Logger.getLogger(ClockEventJournal.class.getName()).log(Level.WARNING, "The clock event journal is corrupt, reading has stopped at record {0}", id);
+                        return;
+                }
+            }
+        } catch (EOFException ex) {
+            //The end of the journal has been reached
+        } catch (IOException ex) {
+            Logger.getLogger(ClockEventJournal.class.getName()).log(Level.SEVERE, "The clock event journal could not be read", ex);
+        }
+    }
+
+    /**
+     * This rewrites the journal so that it only holds the events that are
+     * still waiting to occur.
+     */
+    private void compact() {
+        close();
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Entry entry : pending.values()) {
+                writeAdd(compacted, entry);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ClockEventJournal.class.getName()).log(Level.SEVERE, "The clock event journal could not be compacted", ex);
+            return;
+        }
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            Logger.getLogger(ClockEventJournal.class.getName()).log(Level.SEVERE, "The clock event journal could not be replaced");
+            return;
+        }
+        records = pending.size();
+    }
+
+    /**
+     * This gets the output stream used to append to the journal, opening it
+     * if needed.
+     *
+     * @return The output stream of the journal
+     * @throws IOException Thrown if the journal can't be opened
+     */
+    private DataOutputStream getOutput() throws IOException {
+        if (out == null) {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+        return out;
+    }
+
+    /**
+     * This writes a record of an event being added.
+     *
+     * @param output The stream to write to
+     * @param entry The event that was added
+     * @throws IOException Thrown if the record can't be written
+     */
+    private static void writeAdd(DataOutputStream output, Entry entry) throws IOException {
+        output.writeByte(ADD);
+        output.writeLong(entry.getId());
+        output.writeLong(entry.getDueTime());
+        output.writeUTF(entry.getEventName());
+        output.writeBoolean(entry.getDescription() != null);
+        if (entry.getDescription() != null) {
+            output.writeUTF(entry.getDescription());
+        }
+    }
+
+    /**
+     * This records a new event in the journal.
+     *
+     * @param eventName The event/metric name to trigger the event
+     * @param description The events description
+     * @param dueTime The time the event is due, in milliseconds since the
+     * epoch
+     * @return The journal's entry for the event
+     */
+    public synchronized Entry add(String eventName, String description, long dueTime) {
+        Entry answer = new Entry(nextId, dueTime, eventName, description);
+        nextId++;
+        pending.put(answer.getId(), answer);
+        try {
+            writeAdd(getOutput(), answer);
+            out.flush();
+            records++;
+        } catch (IOException ex) {
+            Logger.getLogger(ClockEventJournal.class.getName()).log(Level.SEVERE, "The clock event could not be written to the journal", ex);
+        }
+        return answer;
+    }
+
+    /**
+     * This records that an event has been cancelled.
+     *
+     * @param entry The event that was cancelled
+     */
+    public synchronized void cancelled(Entry entry) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        entries.add(entry);
+        finished(CANCEL, entries);
+    }
+
+    /**
+     * This records that a batch of events has occurred.
+     *
+     * @param entries The events that have occurred
+     */
+    public synchronized void fired(List<Entry> entries) {
+        finished(FIRED, entries);
+    }
+
+    /**
+     * This records that events will no longer occur, compacting the journal
+     * if it mostly holds finished events.
+     *
+     * @param type The type of record, either CANCEL or FIRED
+     * @param entries The events that will no longer occur
+     */
+    private void finished(byte type, List<Entry> entries) {
+        try {
+            DataOutputStream output = getOutput();
+            for (Entry entry : entries) {
+                pending.remove(entry.getId());
+                output.writeByte(type);
+                output.writeLong(entry.getId());
+                records++;
+            }
+            output.flush();
+        } catch (IOException ex) {
+            Logger.getLogger(ClockEventJournal.class.getName()).log(Level.SEVERE, "The clock event could not be written to the journal", ex);
+        }
+        if (records > MIN_RECORDS_BEFORE_COMPACTION && records > 2 * pending.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * @return The events that are still waiting to occur
+     */
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * This closes the journal's file, it is reopened if written to again.
+     */
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ex) {
+                Logger.getLogger(ClockEventJournal.class.getName()).log(Level.WARNING, null, ex);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * This is an event recorded in the journal.
+     */
+    public static class Entry {
+
+        private final long id;
+        private final long dueTime;
+        private final String eventName;
+        private final String description;
+
+        public Entry(long id, long dueTime, String eventName, String description) {
+            this.id = id;
+            this.dueTime = dueTime;
+            this.eventName = eventName;
+            this.description = description;
+        }
+
+        /**
+         * @return The id of the event in the journal
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return The time the event is due, in milliseconds since the epoch
+         */
+        public long getDueTime() {
+            return dueTime;
+        }
+
+        /**
+         * @return The event/metric name to trigger the event
+         */
+        public String getEventName() {
+            return eventName;
+        }
+
+        /**
+         * @return The events description
+         */
+        public String getDescription() {
+            return description;
+        }
+
+    }
+
+}
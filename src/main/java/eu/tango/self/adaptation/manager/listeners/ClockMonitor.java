@@ -19,20 +19,25 @@
 package eu.tango.self.adaptation.manager.listeners;
 
 import eu.ascetic.ioutils.io.ResultsStore;
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.rules.EventAssessor;
+import eu.tango.self.adaptation.manager.rules.datatypes.ClockEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import java.io.File;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.quartz.CronExpression;
 import org.quartz.CronScheduleBuilder;
-import org.quartz.DateBuilder;
 import org.quartz.JobBuilder;
 import org.quartz.JobDetail;
 import org.quartz.JobKey;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
-import org.quartz.SimpleScheduleBuilder;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
@@ -40,7 +45,15 @@ import org.quartz.impl.StdSchedulerFactory;
 import org.quartz.impl.matchers.GroupMatcher;
 
 /**
- * This class produces events based upon the system clock
+ * This class produces events based upon the system clock. Cron based rules
+ * are run by the Quartz scheduler, while one off events that occur a set time
+ * from now, such as the reversal of an adaptation, are held in a timing wheel.
+ *
+ * If a clock other than the system clock has been set in the time source before
+ * the clock monitor is first used, then the clock monitor runs in simulated
+ * time. Cron based rules and one off events then only occur when advanceTime
+ * is called, rather than in a thread of their own, and the one off events are
+ * kept in a separate journal that is discarded when the clock monitor starts.
  *
  * @author Richard Kavanagh
  */
@@ -54,10 +67,53 @@ public class ClockMonitor implements EventListener, Runnable {
     private Scheduler scheduler;
     private static final String CONFIG_FILE = "CronEvents.csv";
     private static final String CRON_EVENT_NAME = "Clock-Monitor-Event";
+    private static final long TICK_DURATION = 100; //milliseconds
+    private static final int WHEEL_SIZE = 512;
+    private static final String JOURNAL_FILE = "PendingClockEvents.journal";
+    private static final String SIMULATED_JOURNAL_FILE = "SimulatedClockEvents.journal";
+    private final boolean simulated = !TimeSource.isSystemClock();
+    private final ClockEventJournal journal = openJournal();
+    //The cron based rules, when the clock monitor runs in simulated time
+    private final ArrayList<SimulatedTrigger> simulatedTriggers = new ArrayList<>();
+    private volatile TimingWheel<ClockEventJournal.Entry> timedEvents = createTimingWheel();
+    //The events from the journal that are yet to be re-armed
+    private List<ClockEventJournal.Entry> toRecover = journal.getPending();
 
     private ClockMonitor() {
     }
 
+    /**
+     * This opens the journal of one off events. In simulated time events left
+     * by an earlier simulation are discarded.
+     *
+     * @return The journal of one off events
+     */
+    private ClockEventJournal openJournal() {
+        if (!simulated) {
+            return new ClockEventJournal(new File(JOURNAL_FILE));
+        }
+        File file = new File(SIMULATED_JOURNAL_FILE);
+        if (file.exists() && !file.delete()) {
+            Logger.getLogger(ClockMonitor.class.getName()).log(Level.WARNING, "The previous simulated clock event journal could not be removed");
+        }
+        return new ClockEventJournal(file);
+    }
+
+    /**
+     * This creates the timing wheel that holds one off events until they
+     * occur.
+     *
+     * @return The timing wheel for one off events
+     */
+    private TimingWheel<ClockEventJournal.Entry> createTimingWheel() {
+        return new TimingWheel<>(TICK_DURATION, WHEEL_SIZE, new TimingWheel.ExpiryHandler<ClockEventJournal.Entry>() {
+            @Override
+            public void expired(List<ClockEventJournal.Entry> items) {
+                assessTimedEvents(items);
+            }
+        }, (simulated ? TimeSource.getClock() : null));
+    }
+
     /**
      * SingletonHolder is loaded on the first execution of
      * Singleton.getInstance() or the first access to SingletonHolder.INSTANCE,
@@ -107,6 +163,12 @@ public class ClockMonitor implements EventListener, Runnable {
 
     @Override
     public final void stopListening() {
+        timedEvents.stop();
+        timedEvents = createTimingWheel();
+        synchronized (this) {
+            //The journal still holds the events, so they are re-armed when restarted
+            toRecover = journal.getPending();
+        }
         if (scheduler != null) {
             try {
                 scheduler.clear();
@@ -131,6 +193,7 @@ public class ClockMonitor implements EventListener, Runnable {
             scheduler = StdSchedulerFactory.getDefaultScheduler();
             loadFromDisk(CONFIG_FILE);
             scheduler.start();
+            recoverTimedEvents();
         } catch (SchedulerException ex) {
             Logger.getLogger(ClockMonitor.class.getName()).log(Level.SEVERE, null, ex);
             stopListening();
@@ -178,6 +241,61 @@ public class ClockMonitor implements EventListener, Runnable {
         eventAssessor.assessEvent(event);
     }
 
+    /**
+     * This re-arms the one off events held in the journal, which were waiting
+     * to occur when the SAM last stopped. Events that became due while the SAM
+     * was stopped are assessed straight away, as a single batch.
+     */
+    private synchronized void recoverTimedEvents() {
+        long now = TimeSource.currentTimeMillis();
+        ArrayList<ClockEventJournal.Entry> overdue = new ArrayList<>();
+        int rearmed = 0;
+        for (ClockEventJournal.Entry entry : toRecover) {
+            if (entry.getDueTime() <= now) {
+                overdue.add(entry);
+            } else {
+                timedEvents.add(entry, entry.getDueTime() - now, TimeUnit.MILLISECONDS);
+                rearmed++;
+            }
+        }
+        toRecover = new ArrayList<>();
+        Logger.getLogger(ClockMonitor.class.getName()).log(Level.INFO, "Recovered timed events: {0} re-armed and {1} overdue", new Object[]{rearmed, overdue.size()});
+        if (!overdue.isEmpty()) {
+            assessTimedEvents(overdue);
+        }
+    }
+
+    /**
+     * This passes one off events that have become due on to the event
+     * assessor, as a single batch.
+     *
+     * @param entries The events that have become due
+     */
+    private void assessTimedEvents(List<ClockEventJournal.Entry> entries) {
+        long now = TimeSource.currentTimeSeconds();
+        ArrayList<EventData> batch = new ArrayList<>();
+        for (ClockEventJournal.Entry entry : entries) {
+            ClockEventData event = new ClockEventData(now,
+                    0.0,
+                    0.0,
+                    EventData.Type.WARNING,
+                    EventData.Operator.EQ,
+                    "CLOCK_TRIGGER",
+                    entry.getEventName());
+            if (entry.getDescription() != null) {
+                event.setSettings(entry.getDescription());
+            }
+            Logger.getLogger(ClockMonitor.class.getName()).log(Level.INFO, "Clock Based Event Detected: {0}", event.getAgreementTerm());
+            batch.add(event);
+        }
+        if (eventAssessor == null) {
+            Logger.getLogger(ClockMonitor.class.getName()).log(Level.SEVERE, "No Event Assessor was set, the timed events will be ignored.");
+            return;
+        }
+        journal.fired(entries);
+        eventAssessor.assessEvents(batch);
+    }
+
     /**
      * This loads a set of cron conditions in from disk.
      *
@@ -203,7 +321,9 @@ public class ClockMonitor implements EventListener, Runnable {
              */
             Logger.getLogger(ClockMonitor.class.getName()).log(Level.INFO, "Pausing the clock monitor due to no cron rules.", cronFile.size() - 1);
             try {
-                scheduler.pauseAll();
+                if (scheduler != null) {
+                    scheduler.pauseAll();
+                }
             } catch (SchedulerException ex) {
                 Logger.getLogger(ClockMonitor.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -225,6 +345,10 @@ public class ClockMonitor implements EventListener, Runnable {
      * @param cronSchedule The cron schedule, such as: "0/5 * * * * ?".
      */
     public void addEvent(String eventName, String cronSchedule) {
+        if (simulated) {
+            addSimulatedEvent(eventName, cronSchedule);
+            return;
+        }
         JobDetail job;
         boolean newJob;
         try {
@@ -270,56 +394,107 @@ public class ClockMonitor implements EventListener, Runnable {
     }
 
     /**
-     * This adds a simple event that runs X seconds from now
+     * This adds a cron based rule, when the clock monitor runs in simulated
+     * time.
      *
      * @param eventName The event/metric name to trigger the event
-     * @param description The events description
-     * @param secondsFromNow The time in seconds from now before it triggers.
+     * @param cronSchedule The cron schedule, such as: "0/5 * * * * ?".
      */
-    public void addEvent(String eventName, String description, int secondsFromNow) {
-        JobDetail job;
-        boolean newJob;
+    private synchronized void addSimulatedEvent(String eventName, String cronSchedule) {
         try {
-            if (scheduler.isInStandbyMode()) {
-                scheduler.resumeAll();
+            CronExpression expression = new CronExpression(cronSchedule);
+            Date nextFireTime = expression.getNextValidTimeAfter(new Date(TimeSource.currentTimeMillis()));
+            if (nextFireTime != null) {
+                simulatedTriggers.add(new SimulatedTrigger(eventName, expression, nextFireTime));
             }
-            job = scheduler.getJobDetail(JobKey.jobKey(CRON_EVENT_NAME));
-            if (job != null) {
-                newJob = false;
-            } else {
-                job = JobBuilder.newJob(ClockEventJob.class)
-                        .withIdentity(CRON_EVENT_NAME)
-                        .build();
-                newJob = true;
-            }
-            //Multiple triggers can be with the same name
-            Trigger trigger;
-            String triggerName = eventName;
-            int loopCount = 0;
-            do {
-                if (loopCount > 0) {
-                    triggerName = "index="+ loopCount + ":" + eventName;
+        } catch (ParseException ex) {
+            Logger.getLogger(ClockMonitor.class.getName()).log(Level.SEVERE, "The cron statement " + cronSchedule + " could not be parsed", ex);
+        }
+    }
+
+    /**
+     * This brings the clock monitor up to the current time, when it runs in
+     * simulated time. The one off events and cron based rules that have become
+     * due since it was last advanced are assessed, by the calling thread. A
+     * cron based rule that has become due several times is only assessed once,
+     * in the same way a misfired rule would be by the Quartz scheduler.
+     */
+    public void advanceTime() {
+        if (!simulated) {
+            return;
+        }
+        timedEvents.advance();
+        ArrayList<EventData> due = new ArrayList<>();
+        synchronized (this) {
+            Date now = new Date(TimeSource.currentTimeMillis());
+            for (SimulatedTrigger trigger : simulatedTriggers) {
+                if (trigger.nextFireTime != null && !trigger.nextFireTime.after(now)) {
+                    due.add(new ClockEventData(TimeUnit.MILLISECONDS.toSeconds(trigger.nextFireTime.getTime()),
+                            0.0,
+                            0.0,
+                            EventData.Type.WARNING,
+                            EventData.Operator.EQ,
+                            "CLOCK_TRIGGER",
+                            trigger.name));
+                    trigger.nextFireTime = trigger.expression.getNextValidTimeAfter(now);
                 }
-                trigger = TriggerBuilder.newTrigger()
-                    .withIdentity(triggerName, CRON_EVENT_NAME)
-                    .withDescription(description)
-                    .withSchedule(SimpleScheduleBuilder.simpleSchedule().withMisfireHandlingInstructionFireNow())
-                    .startAt(DateBuilder.futureDate(secondsFromNow, DateBuilder.IntervalUnit.SECOND)).forJob(job) // use DateBuilder to create a date in the future
-                    .build();
-                loopCount = loopCount + 1;
-            } while (scheduler.checkExists(trigger.getKey()));
-            //Schedule the job, the clock monitor will then wait for a response.
-            Date nextEvent;
-            if (newJob) {
-                nextEvent = scheduler.scheduleJob(job, trigger);
-            } else {
-                nextEvent = scheduler.scheduleJob(trigger);
             }
-            Date now = new Date();
-            Logger.getLogger(ClockMonitor.class.getName()).log(Level.INFO, "{3} : Added Timed Event: {0} : {1} seconds from now at {2}", new Object[]{eventName, secondsFromNow, nextEvent, now});
-        } catch (SchedulerException ex) {
-            Logger.getLogger(ClockMonitor.class.getName()).log(Level.SEVERE, null, ex);
         }
+        for (EventData event : due) {
+            Logger.getLogger(ClockMonitor.class.getName()).log(Level.FINE, "Clock Based Event Detected: {0}", event.getAgreementTerm());
+            assessEvent(event);
+        }
+    }
+
+    /**
+     * @return If the clock monitor runs in simulated time
+     */
+    public boolean isSimulated() {
+        return simulated;
+    }
+
+    /**
+     * This adds a simple event that runs X seconds from now
+     *
+     * @param eventName The event/metric name to trigger the event
+     * @param description The events description
+     * @param secondsFromNow The time in seconds from now before it triggers.
+     * @return The handle for the event, which may be passed to cancelEvent
+     */
+    public TimingWheel.Timeout<ClockEventJournal.Entry> addEvent(String eventName, String description, int secondsFromNow) {
+        ClockEventJournal.Entry entry = journal.add(eventName, description,
+                TimeSource.currentTimeMillis() + TimeUnit.SECONDS.toMillis(secondsFromNow));
+        TimingWheel.Timeout<ClockEventJournal.Entry> answer;
+        try {
+            answer = timedEvents.add(entry, secondsFromNow, TimeUnit.SECONDS);
+        } catch (IllegalStateException ex) {
+            //The clock monitor was stopped while adding, so uses the replacement wheel
+            answer = timedEvents.add(entry, secondsFromNow, TimeUnit.SECONDS);
+        }
+        Logger.getLogger(ClockMonitor.class.getName()).log(Level.INFO, "{2} : Added Timed Event: {0} : {1} seconds from now", new Object[]{eventName, secondsFromNow, new Date(TimeSource.currentTimeMillis())});
+        return answer;
+    }
+
+    /**
+     * This cancels a one off event, so that it does not occur.
+     *
+     * @param event The handle of the event, as given when it was added
+     * @return true if the event was cancelled, false if it had already
+     * occurred or been cancelled.
+     */
+    public boolean cancelEvent(TimingWheel.Timeout<ClockEventJournal.Entry> event) {
+        if (event.cancel()) {
+            journal.cancelled(event.getItem());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The count of one off events waiting to occur
+     */
+    public int getTimedEventCount() {
+        return timedEvents.getPendingCount();
     }
 
     /**
@@ -356,4 +531,21 @@ public class ClockMonitor implements EventListener, Runnable {
         }
     }
 
+    /**
+     * A cron based rule, when the clock monitor runs in simulated time.
+     */
+    private static class SimulatedTrigger {
+
+        private final String name;
+        private final CronExpression expression;
+        private Date nextFireTime;
+
+        public SimulatedTrigger(String name, CronExpression expression, Date nextFireTime) {
+            this.name = name;
+            this.expression = expression;
+            this.nextFireTime = nextFireTime;
+        }
+
+    }
+
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This holds a version number for the state of the cluster, which goes up
+ * each time a job starts or finishes, a host changes state or an adaptation
+ * is carried out. Anything worked out from the state of the cluster can be
+ * tagged with the version it was worked out from, and is known to still be
+ * current for as long as the version stays the same.
+ *
+ * @author Richard Kavanagh
+ */
+public class ClusterStateVersion {
+
+    private final AtomicLong version = new AtomicLong(0);
+
+    /**
+     * SingletonHolder is loaded on the first execution of
+     * Singleton.getInstance() or the first access to SingletonHolder.INSTANCE,
+     * not before.
+     */
+    private static class SingletonHolder {
+
+        private static final ClusterStateVersion INSTANCE = new ClusterStateVersion();
+    }
+
+    /**
+     * This gets the singleton instance of the cluster state version.
+     *
+     * @return A singleton instance of the cluster state version.
+     */
+    public static ClusterStateVersion getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Private constructor for the cluster state version, this class should be
+     * accessed via getInstance.
+     */
+    private ClusterStateVersion() {
+    }
+
+    /**
+     * @return The current version of the state of the cluster
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * This records that the state of the cluster has changed.
+     *
+     * @param reason The reason for the change, for logging purposes
+     * @return The new version of the state of the cluster
+     */
+    public long changed(String reason) {
+        long answer = version.incrementAndGet();
+        Logger.getLogger(ClusterStateVersion.class.getName()).log(Level.FINEST,
+                "The cluster state is now version {0}, due to: {1}", new Object[]{answer, reason});
+        return answer;
+    }
+
+}
@@ -22,17 +22,22 @@ import eu.tango.energymodeller.datasourceclient.CompssDatasourceAdaptor;
 import eu.tango.energymodeller.datasourceclient.compsstype.CompssImplementation;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.model.SLALimits;
 import eu.tango.self.adaptation.manager.model.SLATerm;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 
 /**
  * The aim of this class is to integrate with the programming model runtime so
@@ -52,15 +57,35 @@ public class CompssJobMonitor extends AbstractJobMonitor {
     private HashSet<Host> idleHosts = new HashSet<>();
     private HashSet<Host> failingHosts = new HashSet<>();
     private HashSet<ApplicationOnHost> runningJobs = null;
+    private CompssMonitoringSnapshot snapshot = null;
     /**
-     * The next two hashmaps are used to find the average jobs completed, over
-     * a short window. The Compss calculation works for all of time as it is 
+     * This is used to find the rate at which tasks are completed, over a short
+     * window. The Compss calculation works for all of time as it is
      * un-windowed.
      */
-    HashMap<String, CompssImplementation> previous = new HashMap<>();
-    HashMap<String, Long> previousTime = new HashMap<>();    
+    private final HashMap<String, SlidingWindowRate> completionRates = new HashMap<>();
+    private CompssMonitoringSnapshot lastSampled = null;
+    private int rateWindowLength = 30; //seconds
+    private double rateSmoothing = 0.3;
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
 
-    public CompssJobMonitor() { 
+    public CompssJobMonitor() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            rateWindowLength = config.getInt("self.adaptation.manager.compss.rate.window", rateWindowLength);
+            config.setProperty("self.adaptation.manager.compss.rate.window", rateWindowLength);
+            rateSmoothing = config.getDouble("self.adaptation.manager.compss.rate.smoothing", rateSmoothing);
+            config.setProperty("self.adaptation.manager.compss.rate.smoothing", rateSmoothing);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(CompssJobMonitor.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
     }
     
     /**
@@ -69,8 +94,8 @@ public class CompssJobMonitor extends AbstractJobMonitor {
      * @return The age in seconds of the monitoring file
      */
     private long getMonitoringFileAge() {
-        long monitoringFileDate = datasource.getMonitoringFileLastModifiedDate();
-        long currentDate = new GregorianCalendar().getTimeInMillis();
+        long monitoringFileDate = snapshot.getLastModified();
+        long currentDate = TimeSource.currentTimeMillis();
         return TimeUnit.MILLISECONDS.toSeconds(currentDate - monitoringFileDate);
     }
     
@@ -85,13 +110,15 @@ public class CompssJobMonitor extends AbstractJobMonitor {
     protected ArrayList<EventData> detectEvent(SLALimits limits) {
         ArrayList<EventData> answer = new ArrayList<>();
         ArrayList<SLATerm> criteria = limits.getQosCriteria();
-        List<CompssImplementation> jobs = datasource.getCompssImplementation();
-        if (datasource.getRunningTaskCount() == 0 || getMonitoringFileAge() > 15) {
+        //The monitoring file is only re-read if it has changed since the last cycle
+        snapshot = CompssMonitoringSnapshot.getSnapshot(datasource, snapshot);
+        if (snapshot.getRunningTaskCount() == 0 || getMonitoringFileAge() > 15) {
             //No applications are running so there can't be any application based events
             return answer;
         }
+        updateCompletionRates(snapshot);
         for (SLATerm term : criteria) {
-            answer.addAll(detectEvent(term, jobs));   
+            answer.addAll(detectEvent(term, snapshot));
         }
         if (containsTerm(limits, IDLE_HOST)) {
             answer.addAll(detectRecentIdleHost());
@@ -119,7 +146,7 @@ public class CompssJobMonitor extends AbstractJobMonitor {
             for (Host idleHost : recentIdle) {
                 //return the list of recently idle hosts.
                 EventData event;
-                event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), idleHost.getHostName(),
+                event = new HostEventData(TimeSource.currentTimeSeconds(), idleHost.getHostName(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -149,7 +176,7 @@ public class CompssJobMonitor extends AbstractJobMonitor {
             for (Host failedHost : recentFailed) {
                 //return the list of recently failing hosts.
                 EventData event;
-                event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), failedHost.getHostName(),
+                event = new HostEventData(TimeSource.currentTimeSeconds(), failedHost.getHostName(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -171,7 +198,7 @@ public class CompssJobMonitor extends AbstractJobMonitor {
      */
     private HashSet<Host> getIdleHosts() {
         HashSet<Host> answer = new HashSet<>();
-        List<Host> hosts = datasource.getHostList();
+        List<Host> hosts = snapshot.getHosts();
         for (Host item : hosts) {
             if (item.getState().trim().equalsIgnoreCase("IDLE")) {
                 answer.add(item);
@@ -187,7 +214,7 @@ public class CompssJobMonitor extends AbstractJobMonitor {
      */
     private HashSet<Host> getHostInState(String state) {
         HashSet<Host> answer = new HashSet<>();
-        List<Host> hosts = datasource.getHostList();
+        List<Host> hosts = snapshot.getHosts();
         for (Host host : hosts) {
             if (host.getState().equals(state)) {
                 answer.add(host);
@@ -199,16 +226,19 @@ public class CompssJobMonitor extends AbstractJobMonitor {
     /**
      * This detects changes in processing rates to generate events, such as framerate
      * @param term The term to compare
+     * @param snapshot The current snapshot of the COMPSs monitoring file
      * @return The list of events within the system, such as framerate drops
      */
-    private ArrayList<EventData> detectEvent(SLATerm term, List<CompssImplementation> jobs) {
+    private ArrayList<EventData> detectEvent(SLATerm term, CompssMonitoringSnapshot snapshot) {
         ArrayList<EventData> answer = new ArrayList<>();
         EventData event;
         double currentValue;       
-        for (CompssImplementation job : jobs) {
+        for (CompssImplementation job : snapshot.getImplementations()) {
             switch (term.getAgreementTerm()) {
                 case FRAME_RATE:
-                case TASK_COMPLETION_RATE:
+                case TASK_COMPLETION_RATE: //Smoothed rate of task completion
+                    currentValue = getCompletionRate(job).getEwmaRate();
+                break;
                 case "MeanExecutionTime":                    
                     currentValue = job.getAverageTime();                    
                 break;
@@ -222,24 +252,27 @@ public class CompssJobMonitor extends AbstractJobMonitor {
                     currentValue = job.getExecutionCount();                      
                 break;
                 case "ActionCount":
-                    currentValue = datasource.getHostApplicationList().size();
+                    currentValue = snapshot.getHostApplications().size();
                 break;
-                case "RollingAverage": //Job's completion rate since last record
-                    long time = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
-                    currentValue = getSpotRunningTime(job, time);
+                case "RollingAverage": //Job's completion rate over the window
+                    currentValue = getCompletionRate(job).getRate();
                 break;
                 default: //Unrecognised term, so continue
                     continue;
-            }           
+            }
+            if (Double.isNaN(currentValue)) {
+                //Not enough samples have been seen to report a rate
+                continue;
+            }
             if (term.isBreached(currentValue)) {
                 event = new ApplicationEventData(
-                    TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                    TimeSource.currentTimeSeconds(),
                     currentValue, //measured value
                     term.getGuaranteedValue(), //guaranteed value 
                     term.getSeverity(), //breach type
                     term.getGuaranteeOperator(), //operator
-                    datasource.getCurrentMonitoringJobId().replaceAll("[_0-9]", ""), //application name
-                    datasource.getCurrentMonitoringJobId().replaceAll("[^0-9]", ""), //application id
+                    snapshot.getApplicationName(), //application name
+                    snapshot.getApplicationId(), //application id
                     term.getAgreementTerm(), // guaranteed id
                     term.getAgreementTerm() //agreement term
                     /**
@@ -256,26 +289,42 @@ public class CompssJobMonitor extends AbstractJobMonitor {
     }
     
     /**
-     * This gets the spot average runtime of an application - compss reports the
-     * average runtime for all time. This method instead generates the average since 
-     * the last record was seen, thus uses a short window length, to aid responsiveness.
-     * @param item The current compss implementation record undergoing writing to disk
-     * @param time The current time, in milliseconds
-     * @return The rate at which jobs have been processed
+     * This records the execution count of each implementation, so that the
+     * rate at which tasks are completed can be found. Samples are only taken
+     * when the monitoring file changes and are timestamped with the time the
+     * file was written.
+     *
+     * @param snapshot The current snapshot of the COMPSs monitoring file
      */
-    private double getSpotRunningTime(CompssImplementation item, long time) {
-        double answer = 0;
-        long currentTime = time / 1000;       
-        Long lastTimeValue = previousTime.get(item.getName());
-        CompssImplementation previousItem = previous.get(item.getName());
-        if (lastTimeValue != null && previousItem != null) {
-            int changeInExecutionCount = item.getExecutionCount() - previousItem.getExecutionCount();
-            long changeInTime = currentTime - lastTimeValue;
-            answer = ((double) changeInExecutionCount) / changeInTime;
+    private void updateCompletionRates(CompssMonitoringSnapshot snapshot) {
+        if (snapshot == lastSampled) {
+            return;
+        }
+        if (lastSampled != null && !lastSampled.getApplicationId().equals(snapshot.getApplicationId())) {
+            //A different application is being monitored, so discard the old rates
+            completionRates.clear();
+        }
+        for (CompssImplementation job : snapshot.getImplementations()) {
+            getCompletionRate(job).addSample(snapshot.getLastModified(), job.getExecutionCount());
+        }
+        lastSampled = snapshot;
+    }
+
+    /**
+     * This gets the rate estimator for a given compss implementation. COMPSs
+     * reports the average runtime for all time, the estimator instead gives the
+     * rate at which tasks complete, over a short window to aid responsiveness.
+     *
+     * @param item The compss implementation to get the rate estimator for
+     * @return The rate estimator for the task completion rate
+     */
+    private SlidingWindowRate getCompletionRate(CompssImplementation item) {
+        SlidingWindowRate answer = completionRates.get(item.getName());
+        if (answer == null) {
+            answer = new SlidingWindowRate(Math.max(16, rateWindowLength * 2),
+                    TimeUnit.SECONDS.toMillis(rateWindowLength), rateSmoothing);
+            completionRates.put(item.getName(), answer);
         }
-        //make a record of the previous item seen
-        previousTime.put(item.getName(), currentTime);
-        previous.put(item.getName(), item);
         return answer;
     }
     
@@ -291,11 +340,11 @@ public class CompssJobMonitor extends AbstractJobMonitor {
              * This checks the startup case, where detection doesn't want to act
              * just because the SAM started.
              */
-            runningJobs = new HashSet<>(datasource.getHostApplicationList(ApplicationOnHost.JOB_STATUS.RUNNING));
+            runningJobs = new HashSet<>(snapshot.getRunningApplications());
             return eventsList;
         }
         //The job status, prevents jobs that have just started and not been allocated creating a starting event 
-        List<ApplicationOnHost> currentRoundAppList = datasource.getHostApplicationList(ApplicationOnHost.JOB_STATUS.RUNNING);
+        List<ApplicationOnHost> currentRoundAppList = snapshot.getRunningApplications();
         HashSet<ApplicationOnHost> firstRound = new HashSet<>(runningJobs);
         HashSet<ApplicationOnHost> secondRound = new HashSet<>(currentRoundAppList);
         HashSet<ApplicationOnHost> recentStarted = new HashSet<>(secondRound);
@@ -305,10 +354,13 @@ public class CompssJobMonitor extends AbstractJobMonitor {
         //Ensure the sets are disjoint, this helps protect against any errors
         recentFinished.removeAll(recentStarted);
         recentStarted.removeAll(recentFinished);
+        if (!recentStarted.isEmpty() || !recentFinished.isEmpty()) {
+            ClusterStateVersion.getInstance().changed("jobs started or finished");
+        }
         if (finishedJobs) {
             for (ApplicationOnHost finished : recentFinished) {
                 //return the recently finished applications.
-                EventData event = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                EventData event = new ApplicationEventData(TimeSource.currentTimeSeconds(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -324,7 +376,7 @@ public class CompssJobMonitor extends AbstractJobMonitor {
         if (startedJobs) {
             for (ApplicationOnHost started : recentStarted) {
                 //return the recently finished applications.
-                EventData event = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                EventData event = new ApplicationEventData(TimeSource.currentTimeSeconds(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
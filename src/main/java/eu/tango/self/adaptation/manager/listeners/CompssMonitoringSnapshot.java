@@ -0,0 +1,155 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.energymodeller.datasourceclient.CompssDatasourceAdaptor;
+import eu.tango.energymodeller.datasourceclient.compsstype.CompssImplementation;
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is an immutable snapshot of the information held within the COMPSs
+ * monitoring file. Each call to the COMPSs data source re-reads the monitoring
+ * file, thus the snapshot is read once per change of the file and then shared
+ * by all the tests made during a monitoring cycle.
+ *
+ * @author Richard Kavanagh
+ */
+public final class CompssMonitoringSnapshot {
+
+    private final long lastModified;
+    private final List<CompssImplementation> implementations;
+    private final int runningTaskCount;
+    private final List<ApplicationOnHost> hostApplications;
+    private final List<ApplicationOnHost> runningApplications;
+    private final List<Host> hosts;
+    private final String applicationName;
+    private final String applicationId;
+
+    /**
+     * This creates a new snapshot of the COMPSs monitoring file.
+     *
+     * @param datasource The data source to read the monitoring file from
+     * @param lastModified The last modified date of the monitoring file, that
+     * this snapshot represents
+     */
+    private CompssMonitoringSnapshot(CompssDatasourceAdaptor datasource, long lastModified) {
+        this.lastModified = lastModified;
+        implementations = unmodifiable(datasource.getCompssImplementation());
+        runningTaskCount = datasource.getRunningTaskCount();
+        hostApplications = unmodifiable(datasource.getHostApplicationList());
+        runningApplications = unmodifiable(datasource.getHostApplicationList(ApplicationOnHost.JOB_STATUS.RUNNING));
+        hosts = unmodifiable(datasource.getHostList());
+        String jobId = datasource.getCurrentMonitoringJobId();
+        applicationName = (jobId == null ? "" : jobId.replaceAll("[_0-9]", ""));
+        applicationId = (jobId == null ? "" : jobId.replaceAll("[^0-9]", ""));
+    }
+
+    /**
+     * This gets a snapshot of the COMPSs monitoring file, the file is only
+     * re-read if it has changed since the previous snapshot was taken.
+     *
+     * @param datasource The data source to read the monitoring file from
+     * @param previous The previous snapshot, this may be null.
+     * @return The snapshot of the current monitoring file.
+     */
+    public static CompssMonitoringSnapshot getSnapshot(CompssDatasourceAdaptor datasource, CompssMonitoringSnapshot previous) {
+        long lastModified = datasource.getMonitoringFileLastModifiedDate();
+        if (previous != null && previous.getLastModified() == lastModified) {
+            return previous;
+        }
+        return new CompssMonitoringSnapshot(datasource, lastModified);
+    }
+
+    /**
+     * This makes an unmodifiable copy of a list
+     *
+     * @param <T> The type of the list
+     * @param list The list to copy, if null an empty list is returned.
+     * @return The unmodifiable copy of the list.
+     */
+    private static <T> List<T> unmodifiable(List<T> list) {
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+
+    /**
+     * @return The last modified date of the monitoring file that the snapshot
+     * represents, in milliseconds.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return The list of COMPSs implementations, with their execution
+     * statistics.
+     */
+    public List<CompssImplementation> getImplementations() {
+        return implementations;
+    }
+
+    /**
+     * @return The count of tasks that are currently running
+     */
+    public int getRunningTaskCount() {
+        return runningTaskCount;
+    }
+
+    /**
+     * @return The list of tasks (actions) that are placed upon the hosts
+     */
+    public List<ApplicationOnHost> getHostApplications() {
+        return hostApplications;
+    }
+
+    /**
+     * @return The list of tasks that are currently running
+     */
+    public List<ApplicationOnHost> getRunningApplications() {
+        return runningApplications;
+    }
+
+    /**
+     * @return The list of hosts known to the COMPSs runtime
+     */
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * @return The name of the application that is currently being monitored
+     */
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    /**
+     * @return The id of the application that is currently being monitored
+     */
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+}
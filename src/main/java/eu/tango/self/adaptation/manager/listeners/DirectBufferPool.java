@@ -0,0 +1,96 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is a pool of direct byte buffers, all of the same size. Direct buffers
+ * are expensive to allocate and are only released by the garbage collector,
+ * so they are reused rather than being created for each connection.
+ *
+ * @author Richard Kavanagh
+ */
+public class DirectBufferPool {
+
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger(0);
+    private final int bufferSize;
+    private final int maxPooled;
+
+    /**
+     * This creates a new pool of direct byte buffers.
+     *
+     * @param bufferSize The size of each buffer in bytes
+     * @param maxPooled The maximum amount of unused buffers to keep
+     */
+    public DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * This takes a buffer from the pool, creating a new one if the pool is
+     * empty.
+     *
+     * @return A cleared direct byte buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer answer = buffers.poll();
+        if (answer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        answer.clear();
+        return answer;
+    }
+
+    /**
+     * This returns a buffer to the pool, so that it may be reused.
+     *
+     * @param buffer The buffer to return, it must not be used afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    /**
+     * @return The size of the buffers in this pool
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return The amount of unused buffers currently held by the pool
+     */
+    public int getPooledCount() {
+        return pooled.get();
+    }
+
+}
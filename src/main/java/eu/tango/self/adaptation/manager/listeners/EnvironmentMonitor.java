@@ -30,15 +30,21 @@ import eu.tango.self.adaptation.manager.model.SLALimits;
 import eu.tango.self.adaptation.manager.model.SLATerm;
 import eu.tango.self.adaptation.manager.qos.SlaRulesLoader;
 import eu.tango.self.adaptation.manager.rules.EventAssessor;
+import eu.tango.self.adaptation.manager.rules.MeasurementObserver;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.jcollectd.agent.api.Notification;
 import org.jcollectd.agent.api.Notification.Severity;
 
@@ -52,9 +58,32 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
 
     private EventAssessor eventAssessor;
     private final HostDataSource datasource;
-    private boolean running = false;
+    private volatile boolean running = false;
     private final SlaRulesLoader limits = SlaRulesLoader.getInstance();
     HashSet<String> termsFromOtherMonitors = new HashSet<>();
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    /**
+     * Notifications are handed from the collectd receiver thread to the
+     * notification processor via this queue, so that the receiver never waits
+     * upon the assessment of events.
+     */
+    private SpscQueue<Notification> notifications;
+    //Serialises the collectd receiver threads, so the queue has a single producer
+    private final Object notificationProducerLock = new Object();
+    private int notificationQueueSize = 4096;
+    private static final int MAX_NOTIFICATION_BATCH = 500;
+    private static final long NOTIFICATION_IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final String CURRENT_VALUE_MARKER = "currently ";
+    private static final String BOUND_MARKER = " of ";
+    private static final String UPPER_BOUND_MARKER = " and ";
+    private static final String EXCLUSION_REGION_MARKER = "within the";
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private final AtomicLong notificationsReceived = new AtomicLong(0);
+    private final AtomicLong notificationsQueued = new AtomicLong(0);
+    private final AtomicLong notificationsDropped = new AtomicLong(0);
+    private final AtomicLong notificationsParsed = new AtomicLong(0);
 
     /**
      * Instantiates the Environment monitor with the default CollectD data
@@ -81,6 +110,21 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
      * infrastructure.
      */
     private void initialise() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            notificationQueueSize = config.getInt("self.adaptation.manager.environment.notification.queue.size", notificationQueueSize);
+            config.setProperty("self.adaptation.manager.environment.notification.queue.size", notificationQueueSize);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(EnvironmentMonitor.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        notifications = new SpscQueue<>(notificationQueueSize);
         if (datasource instanceof CollectdDataSourceAdaptor) {
             ((CollectdDataSourceAdaptor) datasource).setNotificationHandler(this);
         }
@@ -89,7 +133,8 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
         termsFromOtherMonitors.add("IDLE_HOST");
         termsFromOtherMonitors.add("CLOSE_TO_DEADLINE");
         termsFromOtherMonitors.add("HOST_DRAIN");
-        termsFromOtherMonitors.add("HOST_FAILURE");        
+        termsFromOtherMonitors.add("HOST_FAILURE");
+        termsFromOtherMonitors.add("HOST_QUEUE");
     }
 
     @Override
@@ -133,12 +178,13 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
     public void run() {
         try {
             running = true;
+            Thread notificationThread = new Thread(new NotificationProcessor());
+            notificationThread.setDaemon(true);
+            notificationThread.start();
             printRecognisedTerms();//This provides guidance on how to create detection rules.
             // Wait for a message
             while (running) {
-                for (EventData event : detectEvent(limits.getLimits())) {
-                    eventAssessor.assessEvent(event);
-                }
+                detectAndAssessEvents();
                 try {
                     Thread.sleep(1000);
                 } catch (InterruptedException ex) {
@@ -150,6 +196,22 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
         }
     }
 
+    /**
+     * This performs a single round of event detection, passing each event
+     * found to the event assessor. It allows the environment monitor to be
+     * driven without its own thread, such as by a simulation of the
+     * environment.
+     *
+     * @return The events that were detected
+     */
+    public List<EventData> detectAndAssessEvents() {
+        ArrayList<EventData> answer = detectEvent(limits.getLimits());
+        for (EventData event : answer) {
+            eventAssessor.assessEvent(event);
+        }
+        return answer;
+    }
+
     /**
      * This takes a list of measurements and determines if an SLA breach has
      * occurred by comparing them to the QoS limits.
@@ -242,17 +304,35 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
         for (HostMeasurement hostmeasurement : hostmeasurements) {
             power = power + hostmeasurement.getPower(true);
         }
-        if (!hostmeasurements.isEmpty() && term.isBreached(power)) {
-            return new HostEventData(hostmeasurements.get(0).getClock(), "HOST:ALL:power",
+        if (hostmeasurements.isEmpty()) {
+            return null;
+        }
+        HostEventData event = new HostEventData(hostmeasurements.get(0).getClock(), "HOST:ALL:power",
             power, term.getGuaranteedValue(),
                     term.getSeverity(),
                     term.getGuaranteeOperator(),
                     term.getGuaranteeid(),
                     term.getAgreementTerm());
+        observeMeasurement(term, event);
+        if (term.isBreached(power)) {
+            return event;
         }
         return null;
     }
 
+    /**
+     * This passes a measurement of a term to the event assessor, if it
+     * observes every measurement rather than only breaches.
+     *
+     * @param term The term that was measured
+     * @param measurement The measurement, in the form of a breach event
+     */
+    private void observeMeasurement(SLATerm term, EventData measurement) {
+        if (eventAssessor instanceof MeasurementObserver) {
+            ((MeasurementObserver) eventAssessor).observeMeasurement(term, measurement);
+        }
+    }
+
     /**
      * Detects any QoS term breaches
      *
@@ -414,13 +494,15 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
             return null;
         }
         double currentValue = measurement.getMetric(agreementTerm).getValue();
-        if (term.isBreached(currentValue)) {
-            return new HostEventData(measurement.getClock(), measurement.getHost().getHostName(),
+        HostEventData event = new HostEventData(measurement.getClock(), measurement.getHost().getHostName(),
                     currentValue, term.getGuaranteedValue(),
                     term.getSeverity(),
                     term.getGuaranteeOperator(),
                     term.getGuaranteeid(),
                     term.getAgreementTerm());
+        observeMeasurement(term, event);
+        if (term.isBreached(currentValue)) {
+            return event;
         }
         return null;
     }
@@ -546,21 +628,35 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
          * 0.000000 and 12000.000000.
          */
         String data = notification.getData();
-        String toParse = data.split(":")[1];
+        if (data == null) {
+            event.setGuaranteeOperator(EventData.Operator.LT);
+            return event;
+        }
         /**
-         * ToParse in the example case is:
+         * The relevant part of the data in the example case is:
          *
-         * Data source "value" is currently nan. That is within the failure
-         * region of 0.000000 and 12000.000000.
+         * currently nan. That is within the failure region of 0.000000 and
+         * 12000.000000.
          */
-        try (Scanner scanner = new Scanner(toParse).useDelimiter("[^\\d]+")) {
-            //Indicates if the region is giving a bounds where the value cannot go or not.
-            boolean reversed = data.contains("within the failure region");
-            double current = scanner.nextDouble();
+        int start = data.indexOf(CURRENT_VALUE_MARKER);
+        if (start >= 0) {
+            start = start + CURRENT_VALUE_MARKER.length();
+            int end = getNumberEnd(data, start);
+            double current = parseNumber(data, start, end);
             event.setRawValue(current); //Sets the measured current value
-            double firstBound = scanner.nextDouble();
-            if (scanner.hasNextInt()) { //A second number means an upper bound.
-                double upperbound = scanner.nextDouble();
+            //Indicates if the region is giving a bounds where the value cannot go or not.
+            boolean reversed = data.indexOf(EXCLUSION_REGION_MARKER, end) >= 0;
+            start = data.indexOf(BOUND_MARKER, end);
+            if (start < 0) {
+                event.setGuaranteeOperator(EventData.Operator.LT);
+                return event;
+            }
+            start = start + BOUND_MARKER.length();
+            end = getNumberEnd(data, start);
+            double firstBound = parseNumber(data, start, end);
+            if (data.startsWith(UPPER_BOUND_MARKER, end)) { //A second number means an upper bound.
+                start = end + UPPER_BOUND_MARKER.length();
+                double upperbound = parseNumber(data, start, getNumberEnd(data, start));
                 if (reversed) { //case where an exclusion zone is given
                     //TODO something clever by considering distance from boundary conditions
                     event.setGuaranteeOperator(EventData.Operator.GT); //GT Lower bound but also LT upper bound
@@ -610,10 +706,174 @@ public class EnvironmentMonitor implements EventListener, Runnable, CollectDNoti
         return event;
     }
 
+    /**
+     * This finds the end of a number written by collectd in a notification.
+     * The number ends at the next space, or the full stop that ends the
+     * sentence.
+     *
+     * @param data The notification's data
+     * @param start The start of the number
+     * @return The index immediately after the last character of the number
+     */
+    private static int getNumberEnd(String data, int start) {
+        int end = start;
+        while (end < data.length() && !Character.isWhitespace(data.charAt(end))) {
+            end++;
+        }
+        if (end > start && data.charAt(end - 1) == '.') {
+            end--; //Excludes the full stop at the end of a sentence
+        }
+        return end;
+    }
+
+    /**
+     * This parses a number written by collectd in a notification, without
+     * creating any intermediate strings in the common case of a plain decimal
+     * such as 0.500090.
+     *
+     * @param data The notification's data
+     * @param start The start of the number
+     * @param end The index immediately after the last character of the number
+     * @return The value of the number, NaN if it can't be read.
+     */
+    private static double parseNumber(String data, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (data.charAt(pos) == '-' || data.charAt(pos) == '+')) {
+            negative = data.charAt(pos) == '-';
+            pos++;
+        }
+        if (end - pos == 3 && data.regionMatches(true, pos, "nan", 0, 3)) {
+            return Double.NaN;
+        }
+        if (end - pos >= 3 && data.regionMatches(true, pos, "inf", 0, 3)) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; pos < end; pos++) {
+            char character = data.charAt(pos);
+            if (character >= '0' && character <= '9') {
+                mantissa = mantissa * 10 + (character - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (character == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (pos < end || digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+            //Exponents, very long numbers and anything unexpected
+            try {
+                return Double.parseDouble(data.substring(start, end));
+            } catch (NumberFormatException ex) {
+                return Double.NaN;
+            }
+        }
+        /**
+         * With 15 or fewer digits both the mantissa and the power of ten are
+         * exact, so the division gives the same answer as parseDouble.
+         */
+        double answer = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -answer : answer;
+    }
+
+    /**
+     * This is called by the collectd receiver, it therefore only queues the
+     * notification, which is then converted and assessed by the environment
+     * monitor's notification processing thread. Notifications may arrive on
+     * more than one thread, so adding to the single producer queue is done
+     * while holding its producer lock.
+     *
+     * @param ntfctn The incoming notification
+     */
     @Override
     public void dispatch(Notification ntfctn) {
-        EventData data = convertEventData(ntfctn);
-        eventAssessor.assessEvent(data);
+        notificationsReceived.incrementAndGet();
+        boolean queued;
+        synchronized (notificationProducerLock) {
+            queued = notifications.offer(ntfctn);
+        }
+        if (queued) {
+            notificationsQueued.incrementAndGet();
+        } else {
+            notificationsDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return The count of notifications received from collectd
+     */
+    public long getNotificationsReceived() {
+        return notificationsReceived.get();
+    }
+
+    /**
+     * @return The count of notifications queued for assessment
+     */
+    public long getNotificationsQueued() {
+        return notificationsQueued.get();
+    }
+
+    /**
+     * @return The count of notifications dropped, due to the queue being full
+     */
+    public long getNotificationsDropped() {
+        return notificationsDropped.get();
+    }
+
+    /**
+     * @return The count of notifications converted into events
+     */
+    public long getNotificationsParsed() {
+        return notificationsParsed.get();
+    }
+
+    /**
+     * @return The count of notifications currently waiting to be assessed
+     */
+    public int getNotificationQueueLength() {
+        return notifications.size();
+    }
+
+    /**
+     * This converts queued notifications into events and assesses them, in
+     * batches.
+     */
+    private class NotificationProcessor implements Runnable {
+
+        @Override
+        public void run() {
+            ArrayList<Notification> batch = new ArrayList<>();
+            ArrayList<EventData> events = new ArrayList<>();
+            while (running) {
+                if (notifications.drainTo(batch, MAX_NOTIFICATION_BATCH) == 0) {
+                    LockSupport.parkNanos(NOTIFICATION_IDLE_WAIT);
+                    continue;
+                }
+                for (Notification notification : batch) {
+                    try {
+                        events.add(convertEventData(notification));
+                        notificationsParsed.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger(EnvironmentMonitor.class.getName()).log(Level.WARNING, "A collectd notification could not be read", ex);
+                    }
+                }
+                batch.clear();
+                try {
+                    if (eventAssessor != null && !events.isEmpty()) {
+                        eventAssessor.assessEvents(events);
+                    }
+                } catch (Exception ex) {
+                    Logger.getLogger(EnvironmentMonitor.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                events.clear();
+            }
+        }
 
     }
 
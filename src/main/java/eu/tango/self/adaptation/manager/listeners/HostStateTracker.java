@@ -0,0 +1,251 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This keeps track of the state of each physical host between monitoring
+ * cycles. It records the time each host entered its current state, thus
+ * allowing the duration a host has been idle to be determined, as well as the
+ * amount of pending jobs that are queued for each host. Pending jobs that have
+ * not yet been given a host, which is usual for SLURM, are only counted in the
+ * queue of the cluster as a whole.
+ *
+ * @author Richard Kavanagh
+ */
+public class HostStateTracker {
+
+    //The name given to the cluster as a whole, as used for cluster wide events
+    public static final String CLUSTER = "*";
+    private final HashMap<String, HostState> hostStates = new HashMap<>();
+    //Holds the count of all pending jobs, whether or not they have a host
+    private final HostState cluster = new HostState(CLUSTER, "", 0);
+
+    /**
+     * This updates the tracked state of each host, given the current snapshot
+     * of the hosts and the jobs pending upon them.
+     *
+     * @param hosts The list of hosts as currently reported by the data source
+     * @param pendingJobs The list of jobs currently in the pending state
+     * @param time The time of the snapshot in seconds
+     */
+    public void update(List<Host> hosts, List<ApplicationOnHost> pendingJobs, long time) {
+        HashSet<String> seen = new HashSet<>();
+        boolean changed = false;
+        for (Host host : hosts) {
+            String hostname = host.getHostName();
+            String state = (host.getState() == null ? "" : host.getState().trim().toUpperCase());
+            seen.add(hostname);
+            HostState current = hostStates.get(hostname);
+            if (current == null) {
+                /**
+                 * On first sight of a host there is no way of knowing how long
+                 * it has been in its current state, so it starts from now.
+                 */
+                current = new HostState(hostname, state, time);
+                hostStates.put(hostname, current);
+                changed = true;
+            } else if (!current.state.equals(state)) {
+                current.changeState(state, time);
+                changed = true;
+            }
+            current.accelerated = host.hasAccelerator();
+            current.queueLength = 0;
+        }
+        //Remove hosts that are no longer reported by the data source
+        for (Iterator<String> it = hostStates.keySet().iterator(); it.hasNext();) {
+            if (!seen.contains(it.next())) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            ClusterStateVersion.getInstance().changed("host state change");
+        }
+        cluster.queueLength = 0;
+        if (pendingJobs == null) {
+            return;
+        }
+        cluster.queueLength = pendingJobs.size();
+        for (ApplicationOnHost job : pendingJobs) {
+            //Jobs yet to be scheduled have no host, so only count towards the cluster
+            if (job.getAllocatedTo() == null || job.getAllocatedTo().getHostName() == null) {
+                continue;
+            }
+            HostState state = hostStates.get(job.getAllocatedTo().getHostName());
+            if (state != null) {
+                state.queueLength = state.queueLength + 1;
+            }
+        }
+    }
+
+    /**
+     * This gets the tracked state of a named host.
+     *
+     * @param hostname The name of the host
+     * @return The hosts tracked state, or null if the host is not known.
+     */
+    public HostState getHostState(String hostname) {
+        return hostStates.get(hostname);
+    }
+
+    /**
+     * This gets the state of the cluster as a whole, whose queue length is
+     * the count of all pending jobs, including those not yet given a host.
+     *
+     * @return The state of the cluster
+     */
+    public HostState getClusterState() {
+        return cluster;
+    }
+
+    /**
+     * This lists the tracked state of all known hosts.
+     *
+     * @return The collection of all host states
+     */
+    public Collection<HostState> getHostStates() {
+        return Collections.unmodifiableCollection(hostStates.values());
+    }
+
+    /**
+     * This represents the state of a single host, including how long it has
+     * been in that state and its queue length.
+     */
+    public static class HostState {
+
+        private final String hostname;
+        private String state;
+        private long enteredState;
+        private int queueLength = 0;
+        private boolean accelerated = false;
+        /**
+         * The events that have already been reported, for the host's current
+         * state. This ensures duration based events only fire once per state.
+         */
+        private final HashSet<String> reportedEvents = new HashSet<>();
+
+        private HostState(String hostname, String state, long time) {
+            this.hostname = hostname;
+            this.state = state;
+            this.enteredState = time;
+        }
+
+        /**
+         * This moves the host into a new state.
+         *
+         * @param state The new state of the host
+         * @param time The time the host entered the new state, in seconds
+         */
+        private void changeState(String state, long time) {
+            this.state = state;
+            this.enteredState = time;
+            reportedEvents.clear();
+        }
+
+        /**
+         * @return The name of the host
+         */
+        public String getHostname() {
+            return hostname;
+        }
+
+        /**
+         * @return The current state of the host, in upper case i.e. IDLE
+         */
+        public String getState() {
+            return state;
+        }
+
+        /**
+         * @return If the host is currently idle or not
+         */
+        public boolean isIdle() {
+            return state.equals("IDLE");
+        }
+
+        /**
+         * @return If the host has an accelerator or not
+         */
+        public boolean hasAccelerator() {
+            return accelerated;
+        }
+
+        /**
+         * @return The time the host entered its current state in seconds
+         */
+        public long getEnteredState() {
+            return enteredState;
+        }
+
+        /**
+         * This gets how long the host has been in its current state.
+         *
+         * @param now The current time in seconds
+         * @return The duration in seconds the host has been in its current
+         * state
+         */
+        public long getTimeInState(long now) {
+            return Math.max(0, now - enteredState);
+        }
+
+        /**
+         * @return The count of pending jobs that are queued for this host
+         */
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        /**
+         * This indicates if an event has already been reported for this host
+         * while in its current state.
+         *
+         * @param event The name of the event
+         * @return If the event has already been reported or not
+         */
+        public boolean isReported(String event) {
+            return reportedEvents.contains(event);
+        }
+
+        /**
+         * This records if an event has been reported for this host while in
+         * its current state.
+         *
+         * @param event The name of the event
+         * @param reported If the event should be marked as reported or not
+         */
+        public void setReported(String event, boolean reported) {
+            if (reported) {
+                reportedEvents.add(event);
+            } else {
+                reportedEvents.remove(event);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.self.adaptation.manager.rules.EventAssessor;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This reads events written by other processes on the same host into a
+ * memory mapped event queue file. The position read up to is kept in the
+ * file, so events written while the SAM is not running are assessed once it
+ * starts.
+ *
+ * @author Richard Kavanagh
+ * @see MappedEventQueue
+ */
+public class MappedEventMonitor implements EventListener, Runnable {
+
+    private EventAssessor eventAssessor;
+    private volatile boolean running = false;
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private boolean enabled = false;
+    private String queueFile = "sam-events.queue";
+    private int capacity = 65536;
+    private int pollInterval = 1;
+    private static final int MAX_BATCH = 500;
+    private MappedEventQueue queue;
+    private final AtomicLong eventsRead = new AtomicLong(0);
+    private final AtomicLong eventsLost = new AtomicLong(0);
+
+    /**
+     * This creates a new memory mapped event queue monitor.
+     */
+    public MappedEventMonitor() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            enabled = config.getBoolean("self.adaptation.manager.mapped.queue.enabled", enabled);
+            config.setProperty("self.adaptation.manager.mapped.queue.enabled", enabled);
+            queueFile = config.getString("self.adaptation.manager.mapped.queue.file", queueFile);
+            config.setProperty("self.adaptation.manager.mapped.queue.file", queueFile);
+            capacity = config.getInt("self.adaptation.manager.mapped.queue.capacity", capacity);
+            config.setProperty("self.adaptation.manager.mapped.queue.capacity", capacity);
+            pollInterval = config.getInt("self.adaptation.manager.mapped.queue.poll.interval", pollInterval);
+            config.setProperty("self.adaptation.manager.mapped.queue.poll.interval", pollInterval);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(MappedEventMonitor.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    @Override
+    public void setEventAssessor(EventAssessor assessor) {
+        eventAssessor = assessor;
+    }
+
+    @Override
+    public EventAssessor getEventAssessor() {
+        return eventAssessor;
+    }
+
+    /**
+     * This starts the memory mapped event queue monitor going, in a daemon
+     * thread.
+     */
+    @Override
+    public void startListening() {
+        Thread monitorThread = new Thread(this);
+        monitorThread.setDaemon(true);
+        monitorThread.start();
+    }
+
+    @Override
+    public void stopListening() {
+        running = false;
+    }
+
+    @Override
+    public boolean isListening() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        if (!enabled || running) {
+            return;
+        }
+        try {
+            queue = new MappedEventQueue(new File(queueFile), capacity);
+        } catch (IOException ex) {
+            Logger.getLogger(MappedEventMonitor.class.getName()).log(Level.SEVERE, "The event queue file could not be opened", ex);
+            return;
+        }
+        running = true;
+        Logger.getLogger(MappedEventMonitor.class.getName()).log(Level.INFO,
+                "Reading events from the queue file {0}, starting at event {1}",
+                new Object[]{queueFile, queue.getReadCursor()});
+        long idleWait = TimeUnit.MILLISECONDS.toNanos(Math.max(1, pollInterval));
+        ArrayList<EventData> batch = new ArrayList<>();
+        while (running) {
+            long cursor = readBatch(batch);
+            if (batch.isEmpty()) {
+                if (cursor != queue.getReadCursor()) {
+                    queue.setReadCursor(cursor);
+                }
+                LockSupport.parkNanos(idleWait);
+                continue;
+            }
+            try {
+                if (eventAssessor != null) {
+                    eventAssessor.assessEvents(batch);
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(MappedEventMonitor.class.getName()).log(Level.SEVERE, "Error assessing queued events", ex);
+            }
+            //The cursor is only moved on once the events have been assessed
+            queue.setReadCursor(cursor);
+            batch.clear();
+        }
+        try {
+            queue.close();
+        } catch (IOException ex) {
+            Logger.getLogger(MappedEventMonitor.class.getName()).log(Level.WARNING, null, ex);
+        }
+        queue = null;
+    }
+
+    /**
+     * This reads the next batch of events from the queue.
+     *
+     * @param batch The list to add the events to
+     * @return The sequence number of the next event to read, once the batch
+     * has been assessed
+     */
+    private long readBatch(ArrayList<EventData> batch) {
+        long writeSequence = queue.getWriteSequence();
+        long cursor = queue.getReadCursor();
+        if (cursor > writeSequence) {
+            //The file has been replaced
+            cursor = writeSequence;
+        }
+        if (writeSequence - cursor > queue.getCapacity()) {
+            //The writers have overtaken the reader, so the oldest events are lost
+            long oldest = writeSequence - queue.getCapacity();
+            eventsLost.addAndGet(oldest - cursor);
+            Logger.getLogger(MappedEventMonitor.class.getName()).log(Level.WARNING,
+                    "{0} events were overwritten before they could be read", oldest - cursor);
+            cursor = oldest;
+        }
+        while (cursor < writeSequence && batch.size() < MAX_BATCH) {
+            EventData event = queue.read(cursor);
+            if (event == null) {
+                if (queue.getWriteSequence() - cursor > queue.getCapacity()) {
+                    //Overwritten during the read, it will be skipped on the next pass
+                    break;
+                }
+                //The record is corrupt, so it is skipped
+                eventsLost.incrementAndGet();
+                cursor++;
+                continue;
+            }
+            batch.add(event);
+            eventsRead.incrementAndGet();
+            cursor++;
+        }
+        return cursor;
+    }
+
+    /**
+     * @return The count of events read from the queue file
+     */
+    public long getEventsRead() {
+        return eventsRead.get();
+    }
+
+    /**
+     * @return The count of events overwritten before they could be read
+     */
+    public long getEventsLost() {
+        return eventsLost.get();
+    }
+
+    /**
+     * @return The count of events in the queue file waiting to be read
+     */
+    public long getQueueLength() {
+        MappedEventQueue current = queue;
+        if (current == null) {
+            return 0;
+        }
+        return Math.max(0, current.getWriteSequence() - current.getReadCursor());
+    }
+
+}
@@ -0,0 +1,339 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is a queue of events held in a memory mapped file, which allows
+ * processes on the same host as the SAM to pass events to it without the use
+ * of the network. Events are appended as fixed size records to a ring of
+ * records that follows the file's header. The SAM reads the records in
+ * order and records how far it has read in the header, thus events that
+ * have not been assessed survive the SAM being restarted.
+ *
+ * The layout is big endian. The header is 64 bytes long and holds: magic
+ * number 0x53414D51 (i32), version (i32), capacity in records (i32), record
+ * size (i32), write sequence (i64) and read cursor (i64). Each record is 256
+ * bytes long and holds: commit marker (i64), time in seconds (i64), origin
+ * (u8, 0 host, 1 application), type (u8), operator (u8), flags (u8), 4 bytes
+ * of padding, raw value (f64), guaranteed value (f64) followed by four
+ * strings: guarantee id, agreement term, host or application id and
+ * deployment id. Each string is held in 48 bytes, a length (u8, 255 for no
+ * value) followed by up to 47 bytes of UTF-8.
+ *
+ * A producer appends a record while holding an exclusive lock upon the
+ * header. The record for sequence number n is held in slot n modulo the
+ * capacity. Its commit marker is first set to 0, then the record is written,
+ * then the commit marker is set to n + 1 and finally the write sequence is
+ * set to n + 1. The type and operator are the ordinals of EventData.Type and
+ * EventData.Operator and bit 0 of the flags marks the event as significant
+ * on its own.
+ *
+ * @author Richard Kavanagh
+ */
+public class MappedEventQueue implements Closeable {
+
+    /**
+     * The magic number that identifies an event queue file.
+     */
+    public static final int MAGIC = 0x53414D51;
+    /**
+     * The version of the file layout.
+     */
+    public static final int VERSION = 1;
+    /**
+     * The size of the file's header in bytes.
+     */
+    public static final int HEADER_SIZE = 64;
+    /**
+     * The size of each record in bytes.
+     */
+    public static final int RECORD_SIZE = 256;
+    /**
+     * The maximum length of each string in bytes, once encoded in UTF-8.
+     */
+    public static final int MAX_STRING_LENGTH = 47;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int WRITE_SEQUENCE_OFFSET = 16;
+    private static final int READ_CURSOR_OFFSET = 24;
+    private static final int COMMIT_OFFSET = 0;
+    private static final int TIME_OFFSET = 8;
+    private static final int ORIGIN_OFFSET = 16;
+    private static final int TYPE_OFFSET = 17;
+    private static final int OPERATOR_OFFSET = 18;
+    private static final int FLAGS_OFFSET = 19;
+    private static final int RAW_VALUE_OFFSET = 24;
+    private static final int GUARANTEED_VALUE_OFFSET = 32;
+    private static final int STRINGS_OFFSET = 40;
+    private static final int STRING_FIELD_SIZE = MAX_STRING_LENGTH + 1;
+    private static final int NO_VALUE = 0xFF;
+    private static final byte ORIGIN_HOST = 0;
+    private static final byte ORIGIN_APPLICATION = 1;
+    private static final int FLAG_SIGNIFICANT_ON_OWN = 1;
+    private static final EventData.Type[] TYPES = EventData.Type.values();
+    private static final EventData.Operator[] OPERATORS = EventData.Operator.values();
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final byte[] scratch = new byte[MAX_STRING_LENGTH];
+
+    /**
+     * This opens an event queue file, creating it if it does not exist.
+     *
+     * @param queueFile The file that holds the queue
+     * @param capacity The amount of records the queue holds, this is only
+     * used if the file is created.
+     * @throws IOException Thrown if the file can't be opened or is not an
+     * event queue file
+     */
+    public MappedEventQueue(File queueFile, int capacity) throws IOException {
+        file = new RandomAccessFile(queueFile, "rw");
+        channel = file.getChannel();
+        int queueCapacity = Math.max(1, Math.min(capacity, MAX_CAPACITY));
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() >= HEADER_SIZE) {
+                channel.read(header, 0);
+                if (header.getInt(MAGIC_OFFSET) != MAGIC
+                        || header.getInt(VERSION_OFFSET) != VERSION
+                        || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+                    throw new IOException("The file " + queueFile + " is not an event queue file");
+                }
+                queueCapacity = header.getInt(CAPACITY_OFFSET);
+            } else {
+                file.setLength(HEADER_SIZE + (long) queueCapacity * RECORD_SIZE);
+                header.putInt(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(CAPACITY_OFFSET, queueCapacity);
+                header.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                channel.write(header, 0);
+            }
+        } catch (IOException ex) {
+            lock.release();
+            file.close();
+            throw ex;
+        }
+        lock.release();
+        this.capacity = queueCapacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) queueCapacity * RECORD_SIZE);
+    }
+
+    /**
+     * This appends an event to the queue. If the queue's reader has fallen a
+     * full ring behind, the oldest unread event is overwritten.
+     *
+     * @param event The event to append, either a host or an application event
+     * @throws IOException Thrown if the queue can't be locked
+     */
+    public synchronized void append(EventData event) throws IOException {
+        byte origin;
+        String subject;
+        String deploymentId = null;
+        if (event instanceof HostEventData) {
+            origin = ORIGIN_HOST;
+            subject = ((HostEventData) event).getHost();
+        } else if (event instanceof ApplicationEventData) {
+            origin = ORIGIN_APPLICATION;
+            subject = ((ApplicationEventData) event).getApplicationId();
+            deploymentId = ((ApplicationEventData) event).getDeploymentId();
+        } else {
+            throw new IllegalArgumentException("Only host and application events may be queued");
+        }
+        FileLock lock = channel.lock(0, HEADER_SIZE, false);
+        try {
+            long sequence = buffer.getLong(WRITE_SEQUENCE_OFFSET);
+            int record = getRecordOffset(sequence);
+            buffer.putLong(record + COMMIT_OFFSET, 0);
+            buffer.putLong(record + TIME_OFFSET, event.getTime());
+            buffer.put(record + ORIGIN_OFFSET, origin);
+            buffer.put(record + TYPE_OFFSET, (byte) event.getType().ordinal());
+            buffer.put(record + OPERATOR_OFFSET, (byte) event.getGuaranteeOperator().ordinal());
+            buffer.put(record + FLAGS_OFFSET, (byte) (event.isSignificantOnOwn() ? FLAG_SIGNIFICANT_ON_OWN : 0));
+            buffer.putDouble(record + RAW_VALUE_OFFSET, event.getRawValue());
+            buffer.putDouble(record + GUARANTEED_VALUE_OFFSET, event.getGuaranteedValue());
+            putString(record, 0, event.getGuaranteeid());
+            putString(record, 1, event.getAgreementTerm());
+            putString(record, 2, subject);
+            putString(record, 3, deploymentId);
+            buffer.putLong(record + COMMIT_OFFSET, sequence + 1);
+            buffer.putLong(WRITE_SEQUENCE_OFFSET, sequence + 1);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * This reads the event with the given sequence number.
+     *
+     * @param sequence The sequence number of the event
+     * @return The event, or null if the record has been overwritten or is in
+     * the middle of being written.
+     */
+    public EventData read(long sequence) {
+        int record = getRecordOffset(sequence);
+        if (buffer.getLong(record + COMMIT_OFFSET) != sequence + 1) {
+            return null;
+        }
+        long time = buffer.getLong(record + TIME_OFFSET);
+        byte origin = buffer.get(record + ORIGIN_OFFSET);
+        int type = buffer.get(record + TYPE_OFFSET) & 0xFF;
+        int operator = buffer.get(record + OPERATOR_OFFSET) & 0xFF;
+        int flags = buffer.get(record + FLAGS_OFFSET) & 0xFF;
+        double rawValue = buffer.getDouble(record + RAW_VALUE_OFFSET);
+        double guaranteedValue = buffer.getDouble(record + GUARANTEED_VALUE_OFFSET);
+        String guaranteeId = getString(record, 0);
+        String agreementTerm = getString(record, 1);
+        String subject = getString(record, 2);
+        String deploymentId = getString(record, 3);
+        //The record is only valid if it wasn't overwritten while being read
+        if (buffer.getLong(record + COMMIT_OFFSET) != sequence + 1
+                || type >= TYPES.length || operator >= OPERATORS.length) {
+            return null;
+        }
+        if (time == 0) {
+            time = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        }
+        EventData answer;
+        if (origin == ORIGIN_APPLICATION) {
+            answer = new ApplicationEventData(time, rawValue, guaranteedValue,
+                    TYPES[type], OPERATORS[operator],
+                    subject, deploymentId, guaranteeId, agreementTerm);
+        } else {
+            answer = new HostEventData(time, subject, rawValue, guaranteedValue,
+                    TYPES[type], OPERATORS[operator],
+                    guaranteeId, agreementTerm);
+        }
+        answer.setSignificantOnOwn((flags & FLAG_SIGNIFICANT_ON_OWN) != 0);
+        return answer;
+    }
+
+    /**
+     * This gives the position in the file of the record for a given sequence
+     * number.
+     *
+     * @param sequence The sequence number
+     * @return The offset of the record from the start of the file
+     */
+    private int getRecordOffset(long sequence) {
+        return HEADER_SIZE + (int) (sequence % capacity) * RECORD_SIZE;
+    }
+
+    /**
+     * This writes a string field of a record, truncating it if needed.
+     *
+     * @param record The offset of the record
+     * @param field The index of the string field
+     * @param value The string to write
+     */
+    private void putString(int record, int field, String value) {
+        int offset = record + STRINGS_OFFSET + field * STRING_FIELD_SIZE;
+        if (value == null) {
+            buffer.put(offset, (byte) NO_VALUE);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_LENGTH);
+        //Avoids splitting a multi-byte character
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.put(offset, (byte) length);
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + 1 + i, bytes[i]);
+        }
+    }
+
+    /**
+     * This reads a string field of a record.
+     *
+     * @param record The offset of the record
+     * @param field The index of the string field
+     * @return The string held in the field
+     */
+    private String getString(int record, int field) {
+        int offset = record + STRINGS_OFFSET + field * STRING_FIELD_SIZE;
+        int length = buffer.get(offset) & 0xFF;
+        if (length == NO_VALUE) {
+            return null;
+        }
+        length = Math.min(length, MAX_STRING_LENGTH);
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(offset + 1 + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The sequence number of the next event to be written, i.e. the
+     * count of events ever written to the queue
+     */
+    public long getWriteSequence() {
+        return buffer.getLong(WRITE_SEQUENCE_OFFSET);
+    }
+
+    /**
+     * @return The sequence number of the next event to be read
+     */
+    public long getReadCursor() {
+        return buffer.getLong(READ_CURSOR_OFFSET);
+    }
+
+    /**
+     * This records how far the queue has been read.
+     *
+     * @param sequence The sequence number of the next event to be read
+     */
+    public void setReadCursor(long sequence) {
+        buffer.putLong(READ_CURSOR_OFFSET, sequence);
+    }
+
+    /**
+     * @return The amount of records held by the queue
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+}
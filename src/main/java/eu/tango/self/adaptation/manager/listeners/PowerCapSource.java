@@ -0,0 +1,36 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+/**
+ * This is implemented by data sources that report the power cap of the
+ * cluster themselves, rather than it being obtained from SLURM.
+ *
+ * @author Richard Kavanagh
+ */
+public interface PowerCapSource {
+
+    /**
+     * This gets the power cap currently set for the cluster.
+     *
+     * @return The power cap, NaN if none is set
+     */
+    public double getPowerCap();
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This represents an event that has been accepted by the SAM and is queued
+ * for assessment. It records the response to the event, once it has been
+ * assessed.
+ *
+ * @author Richard Kavanagh
+ */
+public class QueuedEvent {
+
+    private final String eventId;
+    private final EventData event;
+    private volatile Response response = null;
+    private volatile boolean assessed = false;
+    private final List<AssessmentListener> listeners = new ArrayList<>();
+
+    /**
+     * This is told when a queued event has been assessed.
+     */
+    public interface AssessmentListener {
+
+        /**
+         * This is called once the event has been assessed, by the thread that
+         * assessed it.
+         *
+         * @param event The event that has been assessed
+         */
+        public void assessed(QueuedEvent event);
+    }
+
+    /**
+     * This creates a new queued event.
+     *
+     * @param eventId The id given to the event upon its acceptance
+     * @param event The event that is to be assessed
+     */
+    public QueuedEvent(String eventId, EventData event) {
+        this.eventId = eventId;
+        this.event = event;
+    }
+
+    /**
+     * @return The id given to the event upon its acceptance
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * @return The event that is to be assessed
+     */
+    public EventData getEvent() {
+        return event;
+    }
+
+    /**
+     * This gets the response to the event.
+     *
+     * @return The response to the event, null if the event has not yet been
+     * assessed or if no response was required.
+     */
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * @return If the event has been assessed or not
+     */
+    public boolean isAssessed() {
+        return assessed;
+    }
+
+    /**
+     * This records the outcome of assessing the event.
+     *
+     * @param response The response to the event, null if no response was
+     * required.
+     */
+    public void setAssessed(Response response) {
+        ArrayList<AssessmentListener> toNotify;
+        synchronized (this) {
+            this.response = response;
+            assessed = true;
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (AssessmentListener listener : toNotify) {
+            listener.assessed(this);
+        }
+    }
+
+    /**
+     * This adds a listener that is told when the event has been assessed. If
+     * the event has already been assessed the listener is told straight away,
+     * by the calling thread.
+     *
+     * @param listener The listener to add
+     */
+    public void addAssessmentListener(AssessmentListener listener) {
+        synchronized (this) {
+            if (!assessed) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.assessed(this);
+    }
+
+    /**
+     * This removes a listener that is waiting for the event to be assessed.
+     *
+     * @param listener The listener to remove
+     */
+    public synchronized void removeAssessmentListener(AssessmentListener listener) {
+        listeners.remove(listener);
+    }
+
+}
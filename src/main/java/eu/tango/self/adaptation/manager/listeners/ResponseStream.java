@@ -0,0 +1,205 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import com.google.gson.Gson;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+/**
+ * This streams the SAM's responses to clients of the REST interface, both as
+ * they are decided upon and as they are performed. Each client has a bounded
+ * buffer of responses waiting to be sent, clients that fall too far behind
+ * are disconnected so that they can not hold up the adaptation of the
+ * infrastructure.
+ *
+ * @author Richard Kavanagh
+ */
+public class ResponseStream {
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private int bufferSize = 256;
+    private final Gson gson = new Gson();
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+
+    /**
+     * The formats in which responses may be streamed.
+     */
+    public enum Format {
+
+        /**
+         * Newline delimited JSON, one response per line.
+         */
+        NDJSON,
+        /**
+         * Server-sent events, one event per response.
+         */
+        SSE
+    }
+
+    private ResponseStream() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            bufferSize = config.getInt("self.adaptation.manager.rest.stream.buffer", bufferSize);
+            config.setProperty("self.adaptation.manager.rest.stream.buffer", bufferSize);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(ResponseStream.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    /**
+     * SingletonHolder is loaded on the first execution of
+     * Singleton.getInstance() or the first access to SingletonHolder.INSTANCE,
+     * not before.
+     */
+    private static class SingletonHolder {
+
+        private static final ResponseStream INSTANCE = new ResponseStream();
+    }
+
+    /**
+     * This creates a new singleton instance of the response stream.
+     *
+     * @return A singleton instance of a response stream.
+     */
+    public static ResponseStream getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * This adds a new client to the stream of responses.
+     *
+     * @param format The format in which responses should be written
+     * @return The output to which the responses are written
+     */
+    public ChunkedOutput<String> subscribe(Format format) {
+        ChunkedOutput<String> output = new ChunkedOutput<>(String.class);
+        Subscriber subscriber = new Subscriber(output, format);
+        subscribers.add(subscriber);
+        Thread subscriberThread = new Thread(subscriber);
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+        return output;
+    }
+
+    /**
+     * This sends a response to all clients of the stream. This is called both
+     * when the response is decided upon and when it is performed. It never
+     * blocks, clients that have a full buffer are disconnected.
+     *
+     * @param response The response to send
+     */
+    public void publish(Response response) {
+        if (subscribers.isEmpty() || response == null) {
+            return;
+        }
+        String eventId = (response.getCause() == null ? null : response.getCause().getEventId());
+        String json = gson.toJson(RestEventResponse.getRestEventResponse(eventId, response));
+        String ndjson = json + "\n";
+        String sse = "event: response\ndata: " + json + "\n\n";
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(subscriber.format == Format.SSE ? sse : ndjson)) {
+                Logger.getLogger(ResponseStream.class.getName()).log(Level.INFO, "A response stream client was too slow and has been disconnected");
+                subscriber.close();
+            }
+        }
+    }
+
+    /**
+     * @return The count of clients currently connected to the stream
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * This represents a single client of the response stream. It writes the
+     * responses in its buffer to the client in its own thread.
+     */
+    private class Subscriber implements Runnable {
+
+        private final ChunkedOutput<String> output;
+        private final Format format;
+        private final ArrayBlockingQueue<String> buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        private volatile boolean running = true;
+        private volatile Thread thread;
+
+        public Subscriber(ChunkedOutput<String> output, Format format) {
+            this.output = output;
+            this.format = format;
+        }
+
+        /**
+         * This adds a message to the buffer of messages waiting to be sent.
+         *
+         * @param message The message to send
+         * @return If there was space in the buffer for the message or not
+         */
+        public boolean offer(String message) {
+            return running && buffer.offer(message);
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                while (running && !output.isClosed()) {
+                    output.write(buffer.take());
+                }
+            } catch (IOException | InterruptedException ex) {
+                //The client has disconnected or the stream is being closed
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * This disconnects the client from the response stream.
+         */
+        public void close() {
+            running = false;
+            subscribers.remove(this);
+            if (thread != null) {
+                thread.interrupt();
+            }
+            try {
+                output.close();
+            } catch (IOException ex) {
+                Logger.getLogger(ResponseStream.class.getName()).log(Level.FINE, "Error closing a response stream", ex);
+            }
+        }
+
+    }
+
+}
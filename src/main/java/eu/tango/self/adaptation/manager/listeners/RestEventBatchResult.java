@@ -0,0 +1,128 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * This represents the outcome of a batch of events being pushed to the SAM via
+ * the REST interface.
+ *
+ * @author Richard Kavanagh
+ */
+@XmlRootElement
+public class RestEventBatchResult {
+
+    @XmlElement
+    private int received = 0; //the count of events in the batch
+    @XmlElement
+    private int accepted = 0; //the count of events passed on for assessment
+    @XmlElement
+    private int rejected = 0; //the count of events that could not be read or queued
+    @XmlElement
+    private List<String> eventIds = new ArrayList<>(); //the ids of the accepted events
+
+    public RestEventBatchResult() {
+    }
+
+    /**
+     * This records an event in the batch as having been accepted.
+     */
+    public void addAccepted() {
+        received = received + 1;
+        accepted = accepted + 1;
+    }
+
+    /**
+     * This records an event in the batch as having been rejected.
+     */
+    public void addRejected() {
+        received = received + 1;
+        rejected = rejected + 1;
+    }
+
+    /**
+     * This records the id given to an accepted event.
+     *
+     * @param eventId The id of the accepted event
+     */
+    public void addEventId(String eventId) {
+        eventIds.add(eventId);
+    }
+
+    /**
+     * @return the ids of the accepted events, in the order they were submitted
+     */
+    public List<String> getEventIds() {
+        return eventIds;
+    }
+
+    /**
+     * @param eventIds the ids of the accepted events to set
+     */
+    public void setEventIds(List<String> eventIds) {
+        this.eventIds = eventIds;
+    }
+
+    /**
+     * @return the count of events in the batch
+     */
+    public int getReceived() {
+        return received;
+    }
+
+    /**
+     * @param received the count of events in the batch to set
+     */
+    public void setReceived(int received) {
+        this.received = received;
+    }
+
+    /**
+     * @return the count of events passed on for assessment
+     */
+    public int getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @param accepted the count of events passed on for assessment to set
+     */
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
+    }
+
+    /**
+     * @return the count of events that could not be read or queued
+     */
+    public int getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @param rejected the count of events that could not be read or queued to set
+     */
+    public void setRejected(int rejected) {
+        this.rejected = rejected;
+    }
+
+}
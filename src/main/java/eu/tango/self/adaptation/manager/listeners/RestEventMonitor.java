@@ -24,6 +24,14 @@ import eu.tango.self.adaptation.manager.rules.datatypes.Response;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.configuration.ConfigurationException;
@@ -46,6 +54,17 @@ public class RestEventMonitor implements EventListener, Runnable {
     private EventAssessor eventAssessor;
     private HttpServer server;
     private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    /**
+     * Events submitted are queued, so that the caller does not have to wait
+     * for the event to be assessed.
+     */
+    private int queueSize = 1000;
+    private int eventHistorySize = 10000;
+    private ArrayBlockingQueue<QueuedEvent> queue;
+    private final AtomicLong nextEventId = new AtomicLong(0);
+    private Map<String, QueuedEvent> recentEvents;
+    private EventQueueProcessor queueProcessor = null;
+    private Thread queueProcessorThread = null;
     
     private RestEventMonitor() {
         try {
@@ -59,9 +78,22 @@ public class RestEventMonitor implements EventListener, Runnable {
             config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
             baseUri = config.getString("self.adaptation.manager.rest.uri", baseUri);
             config.setProperty("self.adaptation.manager.rest.uri", baseUri);
+            queueSize = config.getInt("self.adaptation.manager.rest.queue.size", queueSize);
+            config.setProperty("self.adaptation.manager.rest.queue.size", queueSize);
+            eventHistorySize = config.getInt("self.adaptation.manager.rest.event.history.size", eventHistorySize);
+            config.setProperty("self.adaptation.manager.rest.event.history.size", eventHistorySize);
         } catch (ConfigurationException ex) {
             Logger.getLogger(RestEventMonitor.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
-        }        
+        }
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        final int historySize = eventHistorySize;
+        //Keeps the most recent events, so their responses can be queried
+        recentEvents = Collections.synchronizedMap(new LinkedHashMap<String, QueuedEvent>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueuedEvent> eldest) {
+                return size() > historySize;
+            }
+        });
     }
 
     /**
@@ -116,6 +148,12 @@ public class RestEventMonitor implements EventListener, Runnable {
 
     @Override
     public void startListening() {
+        if (queueProcessor == null) {
+            queueProcessor = new EventQueueProcessor();
+            queueProcessorThread = new Thread(queueProcessor);
+            queueProcessorThread.setDaemon(true);
+            queueProcessorThread.start();
+        }
         if (server == null) {
             server = startServer();
         }
@@ -130,6 +168,12 @@ public class RestEventMonitor implements EventListener, Runnable {
             server.shutdownNow();
         }
         server = null;
+        if (queueProcessor != null) {
+            queueProcessor.stop();
+            queueProcessorThread.interrupt();
+            queueProcessor = null;
+            queueProcessorThread = null;
+        }
     }
 
     @Override
@@ -149,6 +193,117 @@ public class RestEventMonitor implements EventListener, Runnable {
         return null;
     }
 
+    /**
+     * This passes a batch of events on to this monitor's event assessor for
+     * evaluation.
+     * @param events The events to pass on for processing
+     * @return The response objects for the events that required a response
+     */
+    public List<Response> assessEvents(List<EventData> events) {
+        if (eventAssessor != null && !events.isEmpty()) {
+            return eventAssessor.assessEvents(events);
+        } 
+        return new ArrayList<>();
+    }
+
+    /**
+     * This queues an event, so that it can be passed on to this monitor's
+     * event assessor for evaluation, without waiting for the outcome.
+     *
+     * @param event The event to pass on for processing
+     * @return The record of the queued event, or null if the queue is full.
+     */
+    public QueuedEvent submitEvent(EventData event) {
+        QueuedEvent answer;
+        /*
+         * The id is only consumed once the event has been accepted, so that
+         * events rejected by a full queue do not leave gaps in the ids.
+         */
+        synchronized (nextEventId) {
+            answer = new QueuedEvent(Long.toString(nextEventId.get() + 1), event);
+            event.setEventId(answer.getEventId());
+            if (!queue.offer(answer)) {
+                event.setEventId(null);
+                return null;
+            }
+            nextEventId.incrementAndGet();
+        }
+        recentEvents.put(answer.getEventId(), answer);
+        return answer;
+    }
+
+    /**
+     * This gets a recently submitted event, which allows its response to be
+     * found.
+     *
+     * @param eventId The id given to the event upon its submission
+     * @return The record of the queued event, or null if it is not known.
+     */
+    public QueuedEvent getQueuedEvent(String eventId) {
+        return recentEvents.get(eventId);
+    }
+
+    /**
+     * This takes events from the queue and passes them on to the event
+     * assessor, in batches.
+     */
+    private class EventQueueProcessor implements Runnable {
+
+        private volatile boolean running = true;
+        private static final int MAX_BATCH_SIZE = 500;
+
+        @Override
+        public void run() {
+            ArrayList<QueuedEvent> batch = new ArrayList<>();
+            while (running) {
+                try {
+                    batch.clear();
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    assessBatch(batch);
+                } catch (InterruptedException ex) {
+                    running = false;
+                } catch (Exception ex) {
+                    Logger.getLogger(RestEventMonitor.class.getName()).log(Level.SEVERE, "Error assessing queued events", ex);
+                    for (QueuedEvent queuedEvent : batch) {
+                        if (!queuedEvent.isAssessed()) {
+                            queuedEvent.setAssessed(null);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * This assesses a batch of queued events and records the response to
+         * each of them.
+         *
+         * @param batch The batch of events to assess
+         */
+        private void assessBatch(List<QueuedEvent> batch) {
+            List<EventData> events = new ArrayList<>();
+            for (QueuedEvent queuedEvent : batch) {
+                events.add(queuedEvent.getEvent());
+            }
+            //Responses are matched back to the events that caused them
+            IdentityHashMap<EventData, Response> responses = new IdentityHashMap<>();
+            for (Response response : assessEvents(events)) {
+                responses.put(response.getCause(), response);
+            }
+            for (QueuedEvent queuedEvent : batch) {
+                queuedEvent.setAssessed(responses.get(queuedEvent.getEvent()));
+            }
+        }
+
+        /**
+         * This stops the queue processor.
+         */
+        public void stop() {
+            running = false;
+        }
+
+    }
+
     @Override
     public void run() {
         startListening();
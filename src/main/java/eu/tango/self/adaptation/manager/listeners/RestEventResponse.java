@@ -0,0 +1,305 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * This represents the SAM's response to an event, as reported via the REST
+ * interface.
+ *
+ * @author Richard Kavanagh
+ */
+@XmlRootElement
+public class RestEventResponse {
+
+    /**
+     * The event is waiting to be assessed.
+     */
+    public static final String QUEUED = "QUEUED";
+    /**
+     * The event was assessed and no response was required.
+     */
+    public static final String ASSESSED = "ASSESSED";
+    /**
+     * A response has been decided upon and is waiting to be performed.
+     */
+    public static final String DECIDED = "DECIDED";
+    /**
+     * The response has been performed.
+     */
+    public static final String PERFORMED = "PERFORMED";
+    /**
+     * A response was required but it was not possible to adapt.
+     */
+    public static final String NOT_POSSIBLE = "NOT_POSSIBLE";
+
+    @XmlElement
+    private String eventId;
+    @XmlElement
+    private String status;
+    @XmlElement
+    private long time;
+    @XmlElement
+    private String actionType;
+    @XmlElement
+    private String adaptationDetails;
+    @XmlElement
+    private String agreementTerm;
+    @XmlElement
+    private String applicationId;
+    @XmlElement
+    private String deploymentId;
+    @XmlElement
+    private String hostname;
+    @XmlElement
+    private String taskId;
+    @XmlElement
+    private boolean possibleToAdapt;
+    @XmlElement
+    private boolean performed;
+
+    public RestEventResponse() {
+    }
+
+    /**
+     * This creates the REST representation of a queued event and the
+     * response made to it.
+     *
+     * @param queuedEvent The event that was queued for assessment
+     * @return The REST representation of the event's current state
+     */
+    public static RestEventResponse getRestEventResponse(QueuedEvent queuedEvent) {
+        RestEventResponse answer = getRestEventResponse(queuedEvent.getEventId(), queuedEvent.getResponse());
+        if (!queuedEvent.isAssessed()) {
+            answer.setStatus(QUEUED);
+        }
+        return answer;
+    }
+
+    /**
+     * This creates the REST representation of a response.
+     *
+     * @param eventId The id of the event that caused the response, this may be
+     * null if the event was not submitted via the REST interface.
+     * @param response The response, if null then no response was required.
+     * @return The REST representation of the response
+     */
+    public static RestEventResponse getRestEventResponse(String eventId, Response response) {
+        RestEventResponse answer = new RestEventResponse();
+        answer.setEventId(eventId);
+        if (response == null) {
+            answer.setStatus(ASSESSED);
+            return answer;
+        }
+        if (!response.isPossibleToAdapt()) {
+            answer.setStatus(NOT_POSSIBLE);
+        } else if (response.isPerformed()) {
+            answer.setStatus(PERFORMED);
+        } else {
+            answer.setStatus(DECIDED);
+        }
+        answer.setTime(response.getTime());
+        answer.setActionType(response.getActionType() == null ? null : response.getActionType().toString());
+        answer.setAdaptationDetails(response.getAdaptationDetails());
+        answer.setAgreementTerm(response.getCause().getAgreementTerm());
+        answer.setApplicationId(response.getApplicationId());
+        answer.setDeploymentId(response.getDeploymentId());
+        if (response.getCause() instanceof HostEventData) {
+            answer.setHostname(((HostEventData) response.getCause()).getHost());
+        }
+        answer.setTaskId(response.getTaskId());
+        answer.setPossibleToAdapt(response.isPossibleToAdapt());
+        answer.setPerformed(response.isPerformed());
+        return answer;
+    }
+
+    /**
+     * @return the id of the event that caused the response
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * @param eventId the id of the event that caused the response to set
+     */
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    /**
+     * @return the status of the event, i.e. QUEUED, ASSESSED, DECIDED,
+     * PERFORMED or NOT_POSSIBLE
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @param status the status to set
+     */
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * @return the time of the event that caused the response
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @param time the time to set
+     */
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * @return the type of adaptation
+     */
+    public String getActionType() {
+        return actionType;
+    }
+
+    /**
+     * @param actionType the type of adaptation to set
+     */
+    public void setActionType(String actionType) {
+        this.actionType = actionType;
+    }
+
+    /**
+     * @return the adaptation details
+     */
+    public String getAdaptationDetails() {
+        return adaptationDetails;
+    }
+
+    /**
+     * @param adaptationDetails the adaptation details to set
+     */
+    public void setAdaptationDetails(String adaptationDetails) {
+        this.adaptationDetails = adaptationDetails;
+    }
+
+    /**
+     * @return the agreement term of the event that caused the response
+     */
+    public String getAgreementTerm() {
+        return agreementTerm;
+    }
+
+    /**
+     * @param agreementTerm the agreement term to set
+     */
+    public void setAgreementTerm(String agreementTerm) {
+        this.agreementTerm = agreementTerm;
+    }
+
+    /**
+     * @return the applicationId
+     */
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * @param applicationId the applicationId to set
+     */
+    public void setApplicationId(String applicationId) {
+        this.applicationId = applicationId;
+    }
+
+    /**
+     * @return the deploymentId
+     */
+    public String getDeploymentId() {
+        return deploymentId;
+    }
+
+    /**
+     * @param deploymentId the deploymentId to set
+     */
+    public void setDeploymentId(String deploymentId) {
+        this.deploymentId = deploymentId;
+    }
+
+    /**
+     * @return the hostname
+     */
+    public String getHostname() {
+        return hostname;
+    }
+
+    /**
+     * @param hostname the hostname to set
+     */
+    public void setHostname(String hostname) {
+        this.hostname = hostname;
+    }
+
+    /**
+     * @return the id of the task to be adapted
+     */
+    public String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * @param taskId the id of the task to be adapted to set
+     */
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+
+    /**
+     * @return if it is possible to adapt or not
+     */
+    public boolean isPossibleToAdapt() {
+        return possibleToAdapt;
+    }
+
+    /**
+     * @param possibleToAdapt if it is possible to adapt or not
+     */
+    public void setPossibleToAdapt(boolean possibleToAdapt) {
+        this.possibleToAdapt = possibleToAdapt;
+    }
+
+    /**
+     * @return if the response has been performed or not
+     */
+    public boolean isPerformed() {
+        return performed;
+    }
+
+    /**
+     * @param performed if the response has been performed or not
+     */
+    public void setPerformed(boolean performed) {
+        this.performed = performed;
+    }
+
+}
@@ -18,18 +18,35 @@
  */
 package eu.tango.self.adaptation.manager.listeners;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.glassfish.jersey.server.ChunkedOutput;
 
 /**
  * This provides a REST interface for submitting events to the SAM.
@@ -39,6 +56,23 @@ import javax.ws.rs.core.Response;
 @Path("/event")
 public class RestEventService {
 
+    /**
+     * The media type for newline delimited JSON, i.e. one event per line.
+     */
+    public static final String NDJSON = "application/x-ndjson";
+    /**
+     * The media type for server-sent events.
+     */
+    public static final String SERVER_SENT_EVENTS = "text/event-stream";
+    /**
+     * The HTTP status code indicating the event queue is full.
+     */
+    private static final int TOO_MANY_REQUESTS = 429;
+    /**
+     * The maximum time in seconds a client may wait for an event's response.
+     */
+    private static final int MAX_WAIT = 60;
+
     @GET
     @Path("/test")
     @Produces(MediaType.TEXT_PLAIN)
@@ -67,41 +101,251 @@ public class RestEventService {
          }' 'http://localhost:8080/sam/event/submit'  
         
          */
+        EventData toProcess = toEventData(data, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        if (toProcess == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        QueuedEvent queued = RestEventMonitor.getInstance().submitEvent(toProcess);
+        if (queued == null) {
+            return Response.status(TOO_MANY_REQUESTS).build();
+        }
+        return Response.status(Response.Status.ACCEPTED).entity(RestEventResponse.getRestEventResponse(queued)).build();
+    }
+
+    @GET
+    @Path("/response/{eventId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void getResponse(@PathParam("eventId") String eventId, @DefaultValue("0") @QueryParam("wait") int wait,
+            @Suspended final AsyncResponse asyncResponse) {
+
+        /*
+         The wait parameter is optional and gives the time in seconds to wait
+         for the event to be assessed, before replying. The request is
+         suspended while waiting, so no server thread is held.
+     
+         curl 'http://localhost:8080/sam/event/response/1?wait=10'  
+        
+         */
+        final QueuedEvent queued = RestEventMonitor.getInstance().getQueuedEvent(eventId);
+        if (queued == null) {
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND).build());
+            return;
+        }
+        if (wait <= 0 || queued.isAssessed()) {
+            asyncResponse.resume(Response.ok(RestEventResponse.getRestEventResponse(queued)).build());
+            return;
+        }
+        final QueuedEvent.AssessmentListener listener = new QueuedEvent.AssessmentListener() {
+            @Override
+            public void assessed(QueuedEvent event) {
+                asyncResponse.resume(Response.ok(RestEventResponse.getRestEventResponse(event)).build());
+            }
+        };
+        asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse timedOut) {
+                queued.removeAssessmentListener(listener);
+                timedOut.resume(Response.ok(RestEventResponse.getRestEventResponse(queued)).build());
+            }
+        });
+        asyncResponse.setTimeout(Math.min(wait, MAX_WAIT), TimeUnit.SECONDS);
+        queued.addAssessmentListener(listener);
+    }
+
+    @POST
+    @Path("/submitBatch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response addEvents(List<RestEvent> data) {
+
+        /*
+     
+         curl -H "Content-type: application/json" -d '[{
+         "origin" : "Host",
+         "rawValue" : 0,
+         "guaranteedValue" : 0,
+         "type" : "SLA_BREACH",
+         "guaranteeOperator" : "EQ",
+         "agreementTerm" : "test",
+         "guaranteeid" : "test",
+         "hostname" : "ns51"
+         }, {
+         "origin" : "Host",
+         "rawValue" : 0,
+         "guaranteedValue" : 0,
+         "type" : "SLA_BREACH",
+         "guaranteeOperator" : "EQ",
+         "agreementTerm" : "test",
+         "guaranteeid" : "test",
+         "hostname" : "ns52"
+         }]' 'http://localhost:8080/sam/event/submitBatch'  
+        
+         */
+        RestEventBatchResult result = new RestEventBatchResult();
+        List<EventData> toProcess = new ArrayList<>();
+        if (data != null) {
+            long time = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            for (RestEvent event : data) {
+                addToBatch(toEventData(event, time), toProcess, result);
+            }
+        }
+        return submitBatch(toProcess, result);
+    }
+
+    @POST
+    @Path("/submitBatch")
+    @Consumes(NDJSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response addEvents(InputStream data) {
+
+        /*
+         Each line of the request body holds a single event, such as:
+     
+         curl -H "Content-type: application/x-ndjson" --data-binary $'{"origin" : "Host", "rawValue" : 0, "guaranteedValue" : 0, "type" : "SLA_BREACH", "guaranteeOperator" : "EQ", "agreementTerm" : "test", "guaranteeid" : "test", "hostname" : "ns51"}\n{"origin" : "Host", "rawValue" : 0, "guaranteedValue" : 0, "type" : "SLA_BREACH", "guaranteeOperator" : "EQ", "agreementTerm" : "test", "guaranteeid" : "test", "hostname" : "ns52"}\n' 'http://localhost:8080/sam/event/submitBatch'  
+        
+         */
+        RestEventBatchResult result = new RestEventBatchResult();
+        List<EventData> toProcess = new ArrayList<>();
+        long time = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        Gson gson = new Gson();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(data, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    addToBatch(toEventData(gson.fromJson(line, RestEvent.class), time), toProcess, result);
+                } catch (JsonParseException ex) {
+                    result.addRejected();
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(RestEventService.class.getName()).log(Level.WARNING, "The event stream could not be read", ex);
+        }
+        return submitBatch(toProcess, result);
+    }
+
+    @GET
+    @Path("/stream")
+    @Produces(NDJSON)
+    public ChunkedOutput<String> getResponseStream() {
+
+        /*
+         This streams each response as it is decided upon and again once it
+         has been performed, with one response per line.
+     
+         curl -N -H "Accept: application/x-ndjson" 'http://localhost:8080/sam/event/stream'  
+        
+         */
+        return ResponseStream.getInstance().subscribe(ResponseStream.Format.NDJSON);
+    }
+
+    @GET
+    @Path("/stream")
+    @Produces(SERVER_SENT_EVENTS)
+    public ChunkedOutput<String> getResponseEventStream() {
+
+        /*
+         This streams each response as a server-sent event.
+     
+         curl -N -H "Accept: text/event-stream" 'http://localhost:8080/sam/event/stream'  
+        
+         */
+        return ResponseStream.getInstance().subscribe(ResponseStream.Format.SSE);
+    }
+
+    /**
+     * This queues a batch of events for assessment.
+     *
+     * @param batch The batch of events to queue
+     * @param result The record of events accepted and rejected
+     * @return The HTTP response, indicating how many events were accepted.
+     */
+    private Response submitBatch(List<EventData> batch, RestEventBatchResult result) {
+        boolean queueFull = false;
+        for (EventData event : batch) {
+            QueuedEvent queued = RestEventMonitor.getInstance().submitEvent(event);
+            if (queued == null) {
+                //The event was read correctly but there was no space for it
+                result.setAccepted(result.getAccepted() - 1);
+                result.setRejected(result.getRejected() + 1);
+                queueFull = true;
+            } else {
+                result.addEventId(queued.getEventId());
+            }
+        }
+        if (queueFull && result.getAccepted() == 0) {
+            return Response.status(TOO_MANY_REQUESTS).entity(result).build();
+        }
+        return Response.status(Response.Status.ACCEPTED).entity(result).build();
+    }
+
+    /**
+     * This adds an event to the batch of events to process, recording if it
+     * was accepted or not.
+     *
+     * @param event The event to add, null if it could not be read
+     * @param batch The batch of events to process
+     * @param result The record of events accepted and rejected
+     */
+    private void addToBatch(EventData event, List<EventData> batch, RestEventBatchResult result) {
+        if (event == null) {
+            result.addRejected();
+        } else {
+            batch.add(event);
+            result.addAccepted();
+        }
+    }
+
+    /**
+     * This converts an event submitted via the REST interface into the event
+     * data format used by the event assessors.
+     *
+     * @param data The event to convert
+     * @param time The time of the event in seconds
+     * @return The event data, or null if the event could not be converted.
+     */
+    protected static EventData toEventData(RestEvent data, long time) {
         if (data == null || data.getOrigin() == null) {
-            return Response.status(201).build();
+            return null;
         }
         EventData toProcess = null;
-        switch (data.getOrigin()) {
-            case "Application":
-                toProcess = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
-                        data.getRawValue(),
-                        data.getGuaranteedValue(),
-                        EventData.Type.valueOf(data.getType()),
-                        EventData.Operator.valueOf(data.getGuaranteeOperator()),
-                        data.getApplicationId(),
-                        data.getDeploymentId(),
-                        data.getGuaranteeid(),
-                        data.getAgreementTerm());
-                break;
-            case "Host":
-                toProcess = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
-                        data.getHostname(),
-                        data.getRawValue(),
-                        data.getGuaranteedValue(),
-                        EventData.Type.valueOf(data.getType()),
-                        EventData.Operator.valueOf(data.getGuaranteeOperator()),
-                        data.getGuaranteeid(),
-                        data.getAgreementTerm());
-                break;
-            default:
-                Logger.getLogger(RestEventService.class.getName()).log(Level.WARNING, "Origin of event unknown!");
-                break;
+        try {
+            switch (data.getOrigin()) {
+                case "Application":
+                    toProcess = new ApplicationEventData(time,
+                            data.getRawValue(),
+                            data.getGuaranteedValue(),
+                            EventData.Type.valueOf(data.getType()),
+                            EventData.Operator.valueOf(data.getGuaranteeOperator()),
+                            data.getApplicationId(),
+                            data.getDeploymentId(),
+                            data.getGuaranteeid(),
+                            data.getAgreementTerm());
+                    break;
+                case "Host":
+                    toProcess = new HostEventData(time,
+                            data.getHostname(),
+                            data.getRawValue(),
+                            data.getGuaranteedValue(),
+                            EventData.Type.valueOf(data.getType()),
+                            EventData.Operator.valueOf(data.getGuaranteeOperator()),
+                            data.getGuaranteeid(),
+                            data.getAgreementTerm());
+                    break;
+                default:
+                    Logger.getLogger(RestEventService.class.getName()).log(Level.WARNING, "Origin of event unknown!");
+                    break;
+            }
+        } catch (IllegalArgumentException | NullPointerException ex) {
+            Logger.getLogger(RestEventService.class.getName()).log(Level.WARNING, "The event type or operator was not recognised");
+            return null;
         }
         if (toProcess != null) {
             toProcess.setSignificantOnOwn(data.isSignificantOnOwn());
-            RestEventMonitor.getInstance().assessEvent(toProcess);
         }
-        return Response.status(201).build();
+        return toProcess;
     }
 
 }
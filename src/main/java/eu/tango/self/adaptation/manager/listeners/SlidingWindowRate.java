@@ -0,0 +1,151 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+/**
+ * This estimates the rate of change of a cumulative count, such as the amount
+ * of tasks that have been completed, over a sliding window of time. Samples
+ * are held in a fixed size ring buffer of primitive values. An exponentially
+ * weighted moving average of the windowed rate is also provided, which gives
+ * a more stable figure in the presence of bursts and jitter.
+ *
+ * @author Richard Kavanagh
+ */
+public class SlidingWindowRate {
+
+    private final long[] times;
+    private final double[] counts;
+    private int newest = -1;
+    private int size = 0;
+    private final long windowLength;
+    private final double alpha;
+    private double rate = Double.NaN;
+    private double ewmaRate = Double.NaN;
+
+    /**
+     * This creates a new sliding window rate estimator.
+     *
+     * @param capacity The maximum amount of samples to hold
+     * @param windowLength The length of the window in milliseconds
+     * @param alpha The smoothing factor used for the moving average, between
+     * 0 and 1. Higher values discount older rates faster.
+     */
+    public SlidingWindowRate(int capacity, long windowLength, double alpha) {
+        if (capacity < 2) {
+            capacity = 2;
+        }
+        times = new long[capacity];
+        counts = new double[capacity];
+        this.windowLength = windowLength;
+        this.alpha = Math.min(1.0, Math.max(0.0, alpha));
+    }
+
+    /**
+     * This adds a sample to the rate estimator.
+     *
+     * @param time The time of the sample in milliseconds
+     * @param count The cumulative count at the time of the sample
+     */
+    public synchronized void addSample(long time, double count) {
+        if (size > 0) {
+            if (time <= times[newest]) {
+                //Out of order or repeated samples are ignored
+                return;
+            }
+            if (count < counts[newest]) {
+                //The count has been reset, i.e. a new run has started
+                clear();
+            }
+        }
+        newest = (newest + 1) % times.length;
+        times[newest] = time;
+        counts[newest] = count;
+        if (size < times.length) {
+            size++;
+        }
+        rate = calculateRate();
+        if (Double.isFinite(rate)) {
+            ewmaRate = Double.isNaN(ewmaRate) ? rate : alpha * rate + (1 - alpha) * ewmaRate;
+        }
+    }
+
+    /**
+     * This calculates the rate of change over the window, from the newest
+     * sample and the oldest sample that falls within the window.
+     *
+     * @return The rate of change per second, or NaN if it is not yet known.
+     */
+    private double calculateRate() {
+        if (size < 2) {
+            return Double.NaN;
+        }
+        int oldest = newest;
+        for (int i = 1; i < size; i++) {
+            int index = (newest - i + times.length) % times.length;
+            oldest = index;
+            if (times[newest] - times[index] >= windowLength) {
+                break;
+            }
+        }
+        long changeInTime = times[newest] - times[oldest];
+        if (changeInTime <= 0) {
+            return Double.NaN;
+        }
+        return (counts[newest] - counts[oldest]) / (changeInTime / 1000.0);
+    }
+
+    /**
+     * This clears all samples held by the rate estimator.
+     */
+    public synchronized void clear() {
+        newest = -1;
+        size = 0;
+        rate = Double.NaN;
+        ewmaRate = Double.NaN;
+    }
+
+    /**
+     * This gets the rate of change over the window.
+     *
+     * @return The rate of change per second, or NaN if not enough samples
+     * have been seen.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * This gets the exponentially weighted moving average of the rate of
+     * change.
+     *
+     * @return The smoothed rate of change per second, or NaN if not enough
+     * samples have been seen.
+     */
+    public synchronized double getEwmaRate() {
+        return ewmaRate;
+    }
+
+    /**
+     * @return The amount of samples currently held
+     */
+    public synchronized int getSampleCount() {
+        return size;
+    }
+
+}
@@ -23,6 +23,7 @@ import eu.tango.energymodeller.datasourceclient.SlurmDataSourceAdaptor;
 import eu.tango.energymodeller.datasourceclient.TangoEnvironmentDataSourceAdaptor;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.model.SLALimits;
 import eu.tango.self.adaptation.manager.model.SLATerm;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
@@ -31,7 +32,6 @@ import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Monitors jobs to provide jobs based events for adaptation
@@ -47,6 +47,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
     private double lastPowerCap = Double.NaN;
     private HashSet<ApplicationOnHost> runningJobs = null;
     private HashSet<ApplicationOnHost> previousPendingJobs = null;
+    private final HostStateTracker hostStates = new HostStateTracker();
     
     private static final String APP_STARTED = "APP_STARTED";
     private static final String APP_FINISHED = "APP_FINISHED";
@@ -58,6 +59,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
     private static final String CLOSE_TO_DEADLINE = "CLOSE_TO_DEADLINE";
     private static final String HOST_DRAIN = "HOST_DRAIN";
     private static final String HOST_FAILURE = "HOST_FAILURE";
+    private static final String HOST_QUEUE = "HOST_QUEUE";
 
     /**
      * no-args constructor, uses a Slurm data source to drive the job monitor
@@ -71,15 +73,17 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
      * allows the job monitor to share the same instance/connection as other
      * monitoring components.
      *
-     * @param datasource Either a slurm data source adaptor or tango based
-     * adaptor.
+     * @param datasource Either a slurm data source adaptor, tango based
+     * adaptor or a data source that reports its own power cap, such as a
+     * simulated data source.
      */
     public SlurmJobMonitor(HostDataSource datasource) {
         if (datasource == null) {
             this.datasource = new SlurmDataSourceAdaptor();
             return;
         }
-        if (datasource instanceof SlurmDataSourceAdaptor || datasource instanceof TangoEnvironmentDataSourceAdaptor) {
+        if (datasource instanceof SlurmDataSourceAdaptor || datasource instanceof TangoEnvironmentDataSourceAdaptor
+                || datasource instanceof PowerCapSource) {
             this.datasource = datasource;
         } else {
             this.datasource = new SlurmDataSourceAdaptor();
@@ -123,10 +127,15 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         if (containsTerm(limits, PENDING_JOB)) {
             answer.addAll(detectPendingJobs());
         }
+        if (containsTerm(limits, IDLE_HOST + ":", true) || containsTerm(limits, HOST_QUEUE + ":", true)) {
+            hostStates.update(datasource.getHostList(),
+                    datasource.getHostApplicationList(ApplicationOnHost.JOB_STATUS.PENDING),
+                    TimeSource.currentTimeSeconds());
+            answer.addAll(detectHostIdleDuration(limits));
+            answer.addAll(detectHostQueueLength(limits));
+        }
         //Add next test here
 
-        //TODO Consider duration host is idle.
-        //TODO Consider size of queue for given host
         /**
          * Commands to consider when extending this:
          *
@@ -152,7 +161,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
             for (Host idleHost : recentIdle) {
                 //return the list of recently idle hosts.
                 EventData event;
-                event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), idleHost.getHostName(),
+                event = new HostEventData(TimeSource.currentTimeSeconds(), idleHost.getHostName(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -167,17 +176,125 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         return answer;
     }
     
+    /**
+     * This detects hosts that have been idle for longer than a given duration.
+     * The duration is specified as a parameter of the agreement term, such as
+     * IDLE_HOST:600 for hosts that have been idle for over 600 seconds. The
+     * event is reported once each time the host is idle for long enough.
+     *
+     * @param limits The QoS goal limits.
+     * @return The events indicating which hosts have been idle for longer than
+     * the given duration.
+     */
+    private ArrayList<EventData> detectHostIdleDuration(SLALimits limits) {
+        ArrayList<EventData> answer = new ArrayList<>();
+        long now = TimeSource.currentTimeSeconds();
+        for (SLATerm term : limits.getQosCriteria()) {
+            double threshold = getTermParameter(term, IDLE_HOST);
+            if (Double.isNaN(threshold)) {
+                continue;
+            }
+            for (HostStateTracker.HostState host : hostStates.getHostStates()) {
+                long idleTime = host.getTimeInState(now);
+                if (!host.isIdle() || idleTime <= threshold || host.isReported(term.getAgreementTerm())) {
+                    continue;
+                }
+                host.setReported(term.getAgreementTerm(), true);
+                String eventName = IDLE_HOST + (host.hasAccelerator() ? ACCELERATED : "") + ":" + term.getSplitAgreementTerm()[1];
+                EventData event = new HostEventData(now, host.getHostname(),
+                        idleTime,
+                        threshold,
+                        EventData.Type.WARNING,
+                        EventData.Operator.GT,
+                        eventName,
+                        eventName);
+                event.setSignificantOnOwn(true);
+                answer.add(event);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This detects hosts that have a queue of pending jobs that has reached a
+     * given size. The size is specified as a parameter of the agreement term,
+     * such as HOST_QUEUE:2 for hosts with two or more pending jobs. The event
+     * is reported once each time the queue reaches the given size. Pending
+     * jobs that have not yet been given a host are counted in the queue of
+     * the cluster as a whole, which is reported against the host "*".
+     *
+     * @param limits The QoS goal limits.
+     * @return The events indicating which hosts have a long queue of pending
+     * jobs.
+     */
+    private ArrayList<EventData> detectHostQueueLength(SLALimits limits) {
+        ArrayList<EventData> answer = new ArrayList<>();
+        long now = TimeSource.currentTimeSeconds();
+        for (SLATerm term : limits.getQosCriteria()) {
+            double threshold = getTermParameter(term, HOST_QUEUE);
+            if (Double.isNaN(threshold)) {
+                continue;
+            }
+            List<HostStateTracker.HostState> queues = new ArrayList<>(hostStates.getHostStates());
+            queues.add(hostStates.getClusterState());
+            for (HostStateTracker.HostState host : queues) {
+                if (host.getQueueLength() < threshold) {
+                    //Allows the event to fire again, once the queue has grown
+                    host.setReported(term.getAgreementTerm(), false);
+                    continue;
+                }
+                if (host.isReported(term.getAgreementTerm())) {
+                    continue;
+                }
+                host.setReported(term.getAgreementTerm(), true);
+                EventData event = new HostEventData(now, host.getHostname(),
+                        host.getQueueLength(),
+                        threshold,
+                        EventData.Type.WARNING,
+                        EventData.Operator.GTE,
+                        term.getAgreementTerm(),
+                        term.getAgreementTerm());
+                event.setSignificantOnOwn(true);
+                answer.add(event);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This reads the numeric parameter from an agreement term, such as the 600
+     * in IDLE_HOST:600.
+     *
+     * @param term The SLA term to get the parameter from
+     * @param termName The name of the term that is expected
+     * @return The value of the parameter, or NaN if the term does not match
+     * or the parameter can not be read.
+     */
+    private double getTermParameter(SLATerm term, String termName) {
+        String[] split = term.getSplitAgreementTerm();
+        if (split.length != 2 || !split[0].equals(termName)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(split[1]);
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
     /**
      * This detects changes to SLURMs power cap
      * @return An event indicating the change in the current power cap
      */
     private ArrayList<EventData> detectPowerCapChange(SLALimits limits) {   
         ArrayList<EventData> answer = new ArrayList<>();
-        double currentPowerCap = SlurmDataSourceAdaptor.getCurrentPowerCap();
+        double currentPowerCap = (datasource instanceof PowerCapSource
+                ? ((PowerCapSource) datasource).getPowerCap()
+                : SlurmDataSourceAdaptor.getCurrentPowerCap());
         if (currentPowerCap != lastPowerCap && Double.isFinite(currentPowerCap)) {
             for (SLATerm term : limits.getQosCriteria()) {
                 if (term.getAgreementTerm().equals(POWER_CAP) && term.isBreached(currentPowerCap)) {
-                    EventData event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                    EventData event = new HostEventData(TimeSource.currentTimeSeconds(),
                         "*",
                         currentPowerCap,
                         term.getGuaranteedValue(),
@@ -215,7 +332,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
             for (Host failedHost : recentFailed) {
                 //return the list of recently failing hosts.
                 EventData event;
-                event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), failedHost.getHostName(),
+                event = new HostEventData(TimeSource.currentTimeSeconds(), failedHost.getHostName(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -248,7 +365,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
             for (Host drainHost : recentDrain) {
                 //return the list of recently draining hosts.
                 EventData event;
-                event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), drainHost.getHostName(),
+                event = new HostEventData(TimeSource.currentTimeSeconds(), drainHost.getHostName(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -289,10 +406,13 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         //Ensure the sets are disjoint, this helps protect against any errors
         recentFinished.removeAll(recentStarted);
         recentStarted.removeAll(recentFinished);
+        if (!recentStarted.isEmpty() || !recentFinished.isEmpty()) {
+            ClusterStateVersion.getInstance().changed("jobs started or finished");
+        }
         if (finishedJobs) {
             for (ApplicationOnHost finished : recentFinished) {
                 //return the recently finished applications.
-                EventData event = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                EventData event = new ApplicationEventData(TimeSource.currentTimeSeconds(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -308,7 +428,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         if (startedJobs) {
             for (ApplicationOnHost started : recentStarted) {
                 //return the recently finished applications.
-                EventData event = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                EventData event = new ApplicationEventData(TimeSource.currentTimeSeconds(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
@@ -341,7 +461,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         List<Host> stuckHosts = getIdleHostsWithPendingJobs();
         EventData event;
         for (Host stuckHost : stuckHosts) {
-            event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), stuckHost.getHostName(),
+            event = new HostEventData(TimeSource.currentTimeSeconds(), stuckHost.getHostName(),
                     0.0,
                     0.0,
                     EventData.Type.WARNING,
@@ -376,7 +496,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         recentPending.removeAll(firstRound); //Remove all jobs that are already in pending state
         EventData event;
         for (ApplicationOnHost pendingJob : recentPending) {
-            event = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), 
+            event = new ApplicationEventData(TimeSource.currentTimeSeconds(), 
                     0.0,
                     0.0,
                     EventData.Type.WARNING,
@@ -404,7 +524,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         List<Host> stuckHosts = getIdleHostsWithSuspendedJobs();
         EventData event;
         for (Host stuckHost : stuckHosts) {
-            event = new HostEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()), stuckHost.getHostName(),
+            event = new HostEventData(TimeSource.currentTimeSeconds(), stuckHost.getHostName(),
                     0.0,
                     0.0,
                     EventData.Type.WARNING,
@@ -429,7 +549,7 @@ public class SlurmJobMonitor extends AbstractJobMonitor {
         for (ApplicationOnHost job : currentRunning) {
             double boundary = getApplicationDeadline(limits, job);
             if (job.getProgress() > boundary) {
-                EventData event = new ApplicationEventData(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                EventData event = new ApplicationEventData(TimeSource.currentTimeSeconds(),
                         0.0,
                         0.0,
                         EventData.Type.WARNING,
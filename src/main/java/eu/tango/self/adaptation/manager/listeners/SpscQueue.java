@@ -0,0 +1,154 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This is a bounded lock free queue, for handing items from exactly one
+ * producer thread to exactly one consumer thread. It is used to pass incoming
+ * monitoring data from the thread that receives it to the thread that assesses
+ * it, without the receiving thread ever having to wait.
+ *
+ * The queue is only correct if calls to offer never overlap. If items may
+ * arrive on more than one thread, the callers must hold a common lock while
+ * calling offer, which makes them a single producer. When assertions are
+ * enabled, overlapping calls to offer are detected and fail.
+ *
+ * @author Richard Kavanagh
+ * @param <E> The type of the items held in the queue
+ */
+public class SpscQueue<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+    //The position of the next item to take, only written by the consumer
+    private final AtomicLong head = new AtomicLong(0);
+    //The position of the next item to add, only written by the producer
+    private final AtomicLong tail = new AtomicLong(0);
+    //The producer's last known value of the head, avoiding a volatile read per add
+    private long cachedHead = 0;
+    //The thread currently adding an item, only tracked when assertions are enabled
+    private final AtomicReference<Thread> producer = new AtomicReference<>();
+
+    /**
+     * This creates a new single producer single consumer queue.
+     *
+     * @param capacity The minimum capacity of the queue, this is rounded up to
+     * the next power of two.
+     */
+    public SpscQueue(int capacity) {
+        int size = 1;
+        while (size < capacity && size < (1 << 30)) {
+            size = size << 1;
+        }
+        buffer = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * This adds an item to the queue. It must only be called by one producer
+     * at a time, see the class description.
+     *
+     * @param item The item to add, must not be null
+     * @return true if the item was added, false if the queue was full
+     */
+    public boolean offer(E item) {
+        assert producer.compareAndSet(null, Thread.currentThread()) : "SpscQueue.offer was called by more than one producer at once";
+        try {
+            long currentTail = tail.get();
+            if (currentTail - cachedHead >= buffer.length) {
+                cachedHead = head.get();
+                if (currentTail - cachedHead >= buffer.length) {
+                    return false;
+                }
+            }
+            buffer[(int) (currentTail & mask)] = item;
+            //Ordered write, ensures the item is visible before the new tail
+            tail.lazySet(currentTail + 1);
+            return true;
+        } finally {
+            assert producer.compareAndSet(Thread.currentThread(), null);
+        }
+    }
+
+    /**
+     * This takes the item at the head of the queue. It must only be called by
+     * the consumer thread.
+     *
+     * @return The item at the head of the queue, or null if it is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long currentHead = head.get();
+        if (currentHead >= tail.get()) {
+            return null;
+        }
+        int index = (int) (currentHead & mask);
+        E answer = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(currentHead + 1);
+        return answer;
+    }
+
+    /**
+     * This takes all the items currently in the queue. It must only be called
+     * by the consumer thread.
+     *
+     * @param destination The collection to add the items to
+     * @param maxItems The maximum amount of items to take
+     * @return The amount of items taken
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> destination, int maxItems) {
+        long currentHead = head.get();
+        long available = Math.min(tail.get() - currentHead, maxItems);
+        for (long i = 0; i < available; i++) {
+            int index = (int) ((currentHead + i) & mask);
+            destination.add((E) buffer[index]);
+            buffer[index] = null;
+        }
+        head.lazySet(currentHead + available);
+        return (int) available;
+    }
+
+    /**
+     * @return The amount of items currently in the queue
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return If the queue is empty or not
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return The maximum amount of items the queue can hold
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+}
@@ -0,0 +1,433 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.listeners;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This is a hashed timing wheel, for large numbers of one off delayed events.
+ * Adding and cancelling an event takes constant time, regardless of how many
+ * events are waiting. Time is divided into ticks and each slot of the wheel
+ * holds the events due in a given tick, events further away than one turn of
+ * the wheel wait for the required number of turns. All events that are due
+ * in the same tick are handed over together as a single batch. A timing wheel
+ * may also be driven by a given clock, in which case it has no thread of its
+ * own and the ticks that have passed are only processed when it is advanced.
+ *
+ * @author Richard Kavanagh
+ * @param <T> The type of item held until it is due
+ */
+public class TimingWheel<T> implements Runnable {
+
+    private final long tickDuration;
+    private final Slot<T>[] wheel;
+    private final int mask;
+    private final ExpiryHandler<T> handler;
+    private final Clock clock;
+    private final ConcurrentLinkedQueue<Timeout<T>> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Timeout<T>> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private volatile boolean running = false;
+    private volatile boolean stopped = false;
+    private volatile long startTime = 0;
+    private long tick = 0;
+    private Thread workerThread;
+
+    /**
+     * This is called with each batch of items as they become due.
+     *
+     * @param <T> The type of item held until it is due
+     */
+    public interface ExpiryHandler<T> {
+
+        /**
+         * This is called by the timing wheel's thread, with all the items that
+         * became due in the same tick.
+         *
+         * @param items The items that have become due
+         */
+        public void expired(List<T> items);
+    }
+
+    /**
+     * This creates a new timing wheel.
+     *
+     * @param tickDuration The duration of each tick in milliseconds
+     * @param wheelSize The number of slots in the wheel, this is rounded up to
+     * the next power of two.
+     * @param handler The handler for items as they become due
+     */
+    public TimingWheel(long tickDuration, int wheelSize, ExpiryHandler<T> handler) {
+        this(tickDuration, wheelSize, handler, null);
+    }
+
+    /**
+     * This creates a new timing wheel, that is driven by a given clock.
+     *
+     * @param tickDuration The duration of each tick in milliseconds
+     * @param wheelSize The number of slots in the wheel, this is rounded up to
+     * the next power of two.
+     * @param handler The handler for items as they become due
+     * @param clock The clock that drives the timing wheel, if null the timing
+     * wheel runs in real time in its own thread, otherwise items only become
+     * due when advance is called.
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickDuration, int wheelSize, ExpiryHandler<T> handler, Clock clock) {
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickDuration));
+        int size = 1;
+        while (size < wheelSize && size < (1 << 30)) {
+            size = size << 1;
+        }
+        wheel = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Slot<>();
+        }
+        mask = size - 1;
+        this.handler = handler;
+        this.clock = clock;
+    }
+
+    /**
+     * @return The current time in nanoseconds, as given by the clock that
+     * drives the timing wheel
+     */
+    private long now() {
+        if (clock == null) {
+            return System.nanoTime();
+        }
+        return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+    }
+
+    /**
+     * This starts the timing wheel going, in a daemon thread. If the timing
+     * wheel is driven by a given clock then no thread is started.
+     */
+    public synchronized void start() {
+        if (running || stopped) {
+            return;
+        }
+        startTime = now();
+        running = true;
+        if (clock != null) {
+            return;
+        }
+        workerThread = new Thread(this, "Timing-Wheel");
+        workerThread.setDaemon(true);
+        workerThread.start();
+    }
+
+    /**
+     * This stops the timing wheel. Items that are waiting are not handed over
+     * and once stopped the timing wheel can not be restarted.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        running = false;
+        if (workerThread != null) {
+            workerThread.interrupt();
+            workerThread = null;
+        }
+    }
+
+    /**
+     * @return If the timing wheel has been started and not stopped
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * This adds an item that becomes due after a given delay.
+     *
+     * @param item The item to add
+     * @param delay The delay before the item is due
+     * @param unit The unit of the delay
+     * @return The handle for the item, which may be used to cancel it
+     * @throws IllegalStateException Thrown if the timing wheel has been stopped
+     */
+    public Timeout<T> add(T item, long delay, TimeUnit unit) {
+        if (stopped) {
+            throw new IllegalStateException("The timing wheel has been stopped");
+        }
+        if (!running) {
+            start();
+        }
+        long deadline = now() - startTime + unit.toNanos(Math.max(0, delay));
+        Timeout<T> answer = new Timeout<>(this, item, deadline);
+        pending.incrementAndGet();
+        added.add(answer);
+        return answer;
+    }
+
+    /**
+     * @return The count of items waiting to become due
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    @Override
+    public void run() {
+        ArrayList<T> expired = new ArrayList<>();
+        while (running) {
+            long deadline = (tick + 1) * tickDuration;
+            long sleep = deadline - (now() - startTime);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException ex) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            if (processTick(expired)) {
+                expired = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * This processes every tick that has passed according to the clock that
+     * drives the timing wheel, handing over the items that have become due.
+     * The items are handed over by the thread that calls this method. While
+     * no items are waiting, the timing wheel skips straight to the current
+     * tick.
+     *
+     * @throws IllegalStateException Thrown if the timing wheel is not driven
+     * by a given clock
+     */
+    public synchronized void advance() {
+        if (clock == null) {
+            throw new IllegalStateException("The timing wheel runs in real time");
+        }
+        if (!running) {
+            start();
+        }
+        ArrayList<T> expired = new ArrayList<>();
+        long elapsed = now() - startTime;
+        while (running && (tick + 1) * tickDuration <= elapsed) {
+            if (pending.get() == 0 && added.isEmpty()) {
+                removeCancelled();
+                tick = Math.max(tick, elapsed / tickDuration);
+                return;
+            }
+            if (processTick(expired)) {
+                expired = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * This processes a single tick of the wheel, handing over the items in
+     * its slot that have become due.
+     *
+     * @param expired The list to add the due items to
+     * @return If any items were handed over, in which case the list is no
+     * longer available for reuse
+     */
+    private boolean processTick(ArrayList<T> expired) {
+        removeCancelled();
+        transferAdded();
+        wheel[(int) (tick & mask)].expire(expired);
+        tick++;
+        if (expired.isEmpty()) {
+            return false;
+        }
+        pending.addAndGet(-expired.size());
+        try {
+            handler.expired(expired);
+        } catch (Exception ex) {
+            Logger.getLogger(TimingWheel.class.getName()).log(Level.SEVERE, "Error handling timed events", ex);
+        }
+        return true;
+    }
+
+    /**
+     * This places newly added items into the slot of the wheel for the tick
+     * in which they become due.
+     */
+    private void transferAdded() {
+        Timeout<T> timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.state.get() != Timeout.WAITING) {
+                continue;
+            }
+            long dueTick = Math.max(tick, timeout.deadline / tickDuration);
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * This removes cancelled items from the wheel.
+     */
+    private void removeCancelled() {
+        Timeout<T> timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.slot != null) {
+                timeout.slot.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * This is the handle for an item held by the timing wheel.
+     *
+     * @param <T> The type of item held until it is due
+     */
+    public static class Timeout<T> {
+
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private final TimingWheel<T> timingWheel;
+        private final T item;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        //These are only accessed by the thread that ticks the timing wheel
+        private long remainingRounds;
+        private Slot<T> slot;
+        private Timeout<T> next;
+        private Timeout<T> previous;
+
+        private Timeout(TimingWheel<T> timingWheel, T item, long deadline) {
+            this.timingWheel = timingWheel;
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return The item held until it is due
+         */
+        public T getItem() {
+            return item;
+        }
+
+        /**
+         * This cancels the item, so that it is never handed over.
+         *
+         * @return true if the item was cancelled, false if it had already
+         * become due or been cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            timingWheel.pending.decrementAndGet();
+            timingWheel.cancelled.add(this);
+            return true;
+        }
+
+        /**
+         * @return If the item has been cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return If the item has become due
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+    }
+
+    /**
+     * A slot of the wheel, which holds a doubly linked list of items.
+     *
+     * @param <T> The type of item held until it is due
+     */
+    private static class Slot<T> {
+
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        /**
+         * @param timeout The item to add to the slot
+         */
+        private void add(Timeout<T> timeout) {
+            timeout.slot = this;
+            if (head == null) {
+                head = timeout;
+                tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        /**
+         * @param timeout The item to remove from the slot
+         */
+        private void remove(Timeout<T> timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            if (timeout == head) {
+                head = timeout.next;
+            }
+            if (timeout == tail) {
+                tail = timeout.previous;
+            }
+            timeout.next = null;
+            timeout.previous = null;
+            timeout.slot = null;
+        }
+
+        /**
+         * This hands over the items in the slot that are due, the others wait
+         * for another turn of the wheel.
+         *
+         * @param expired The list to add due items to
+         */
+        private void expire(List<T> expired) {
+            Timeout<T> timeout = head;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.state.compareAndSet(Timeout.WAITING, Timeout.EXPIRED)) {
+                        expired.add(timeout.item);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,485 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.qos;
+
+import eu.tango.self.adaptation.manager.io.TimeSource;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This keeps a running account of the power used by each application, each
+ * host and the cluster as a whole, along with the power reserved by actions
+ * that have been decided upon but have not yet taken effect. It allows
+ * checks against power limits to be made without going back to the energy
+ * modeller or the SLA rules each time, and stops a burst of actions that
+ * each fit within a limit on their own from breaching it together.
+ *
+ * The measured power is updated as power samples are taken, while
+ * reservations are made as actions are admitted and are released once the
+ * action has failed, or once it has been performed and a newer power sample
+ * has been recorded, i.e. when the new power draw is part of the measurement.
+ *
+ * @author Richard Kavanagh
+ */
+public class PowerBudgetLedger {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    //How long in seconds a power sample is considered current
+    private int sampleAge = 5;
+    //How long in seconds a power limit obtained from the SLA rules is reused
+    private int limitRefresh = 60;
+    //How long in seconds a reservation is held if the action is never performed
+    private int reservationTimeout = 300;
+    private final HashMap<String, Budget> applications = new HashMap<>();
+    private final HashMap<String, Budget> hosts = new HashMap<>();
+    private final Budget cluster = new Budget();
+    private double hostLimit = 0;
+    //Reservations in the order they were made, so that the oldest may be expired first
+    private final LinkedHashMap<Response, Reservation> reservations = new LinkedHashMap<>();
+    //The count of reservations for actions that have been performed, waiting on a newer power sample
+    private int performedCount = 0;
+
+    /**
+     * SingletonHolder is loaded on the first execution of
+     * Singleton.getInstance() or the first access to SingletonHolder.INSTANCE,
+     * not before.
+     */
+    private static class SingletonHolder {
+
+        private static final PowerBudgetLedger INSTANCE = new PowerBudgetLedger();
+    }
+
+    /**
+     * This gets the singleton instance of the power budget ledger.
+     *
+     * @return A singleton instance of the power budget ledger.
+     */
+    public static PowerBudgetLedger getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Private constructor for the power budget ledger, this class should be
+     * loaded as a singleton instance.
+     */
+    private PowerBudgetLedger() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            sampleAge = config.getInt("self.adaptation.manager.power.ledger.sample.age", sampleAge);
+            config.setProperty("self.adaptation.manager.power.ledger.sample.age", sampleAge);
+            limitRefresh = config.getInt("self.adaptation.manager.power.ledger.limit.refresh", limitRefresh);
+            config.setProperty("self.adaptation.manager.power.ledger.limit.refresh", limitRefresh);
+            reservationTimeout = config.getInt("self.adaptation.manager.power.ledger.reservation.timeout", reservationTimeout);
+            config.setProperty("self.adaptation.manager.power.ledger.reservation.timeout", reservationTimeout);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(PowerBudgetLedger.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The key used for the application in the ledger
+     */
+    private static String getKey(String applicationName, String deploymentId) {
+        return applicationName + ":" + deploymentId;
+    }
+
+    /**
+     * This gets the budget of an application, creating it if needed.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The application's budget
+     */
+    private Budget getApplication(String applicationName, String deploymentId) {
+        String key = getKey(applicationName, deploymentId);
+        Budget answer = applications.get(key);
+        if (answer == null) {
+            answer = new Budget();
+            applications.put(key, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * This gets the budget of a host, creating it if needed.
+     *
+     * @param hostname The name of the host
+     * @return The host's budget
+     */
+    private Budget getHost(String hostname) {
+        Budget answer = hosts.get(hostname);
+        if (answer == null) {
+            answer = new Budget();
+            answer.limit = hostLimit;
+            hosts.put(hostname, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * This records a power sample for an application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @param totalPower The total power of the application
+     * @param averageTaskPower The average power of the application's tasks
+     */
+    public synchronized void recordApplicationPower(String applicationName, String deploymentId, double totalPower, double averageTaskPower) {
+        Budget budget = getApplication(applicationName, deploymentId);
+        budget.measured = totalPower;
+        budget.averageTaskPower = averageTaskPower;
+        budget.sampleTime = TimeSource.currentTimeMillis();
+        settlePerformed(budget);
+    }
+
+    /**
+     * This records a power sample for a host, the cluster's power is kept as
+     * the sum of the current samples of each host.
+     *
+     * @param hostname The name of the host
+     * @param power The power of the host
+     */
+    public synchronized void recordHostPower(String hostname, double power) {
+        expireHostSamples();
+        Budget budget = getHost(hostname);
+        cluster.measured = cluster.measured - budget.measured + power;
+        budget.measured = power;
+        budget.sampleTime = TimeSource.currentTimeMillis();
+        cluster.sampleTime = budget.sampleTime;
+        settlePerformed(budget);
+    }
+
+    /**
+     * This removes host power samples that are older than the sample age from
+     * the cluster's power, so that hosts that are no longer sampled, such as
+     * those that have been shut down, do not count towards it. Hosts that
+     * are neither sampled nor have power reserved are dropped from the ledger.
+     */
+    private void expireHostSamples() {
+        long cutoff = TimeSource.currentTimeMillis() - sampleAge * 1000L;
+        Iterator<Map.Entry<String, Budget>> iter = hosts.entrySet().iterator();
+        double measured = 0.0;
+        while (iter.hasNext()) {
+            Budget budget = iter.next().getValue();
+            if (budget.sampleTime > 0 && budget.sampleTime < cutoff) {
+                budget.measured = 0.0;
+                budget.sampleTime = 0;
+            }
+            if (budget.sampleTime == 0 && budget.reserved <= 0) {
+                iter.remove();
+            }
+            measured = measured + budget.measured;
+        }
+        cluster.measured = measured;
+        if (hosts.isEmpty() || cluster.sampleTime < cutoff) {
+            cluster.sampleTime = 0;
+        }
+    }
+
+    /**
+     * This indicates if the ledger holds a current power sample for an
+     * application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return If the power sample is recent enough to be used
+     */
+    public synchronized boolean hasCurrentSample(String applicationName, String deploymentId) {
+        Budget budget = applications.get(getKey(applicationName, deploymentId));
+        return budget != null && budget.sampleTime > 0
+                && TimeSource.currentTimeMillis() - budget.sampleTime <= sampleAge * 1000L;
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The last total power recorded for the application
+     */
+    public synchronized double getMeasuredPower(String applicationName, String deploymentId) {
+        Budget budget = applications.get(getKey(applicationName, deploymentId));
+        return budget == null ? 0.0 : budget.measured;
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The last average task power recorded for the application
+     */
+    public synchronized double getAverageTaskPower(String applicationName, String deploymentId) {
+        Budget budget = applications.get(getKey(applicationName, deploymentId));
+        return budget == null ? 0.0 : budget.averageTaskPower;
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The power reserved for actions that have not yet taken effect
+     */
+    public synchronized double getReservedPower(String applicationName, String deploymentId) {
+        Budget budget = applications.get(getKey(applicationName, deploymentId));
+        return budget == null ? 0.0 : budget.reserved;
+    }
+
+    /**
+     * @return The power of the cluster, as the sum of the current sample of
+     * each host
+     */
+    public synchronized double getClusterPower() {
+        expireHostSamples();
+        return cluster.measured;
+    }
+
+    /**
+     * This indicates if the ledger holds a current power limit for an
+     * application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return If the power limit is recent enough to be used
+     */
+    public synchronized boolean hasCurrentLimit(String applicationName, String deploymentId) {
+        Budget budget = applications.get(getKey(applicationName, deploymentId));
+        return budget != null && budget.limitTime > 0
+                && TimeSource.currentTimeMillis() - budget.limitTime <= limitRefresh * 1000L;
+    }
+
+    /**
+     * This sets the power limit of an application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @param limit The power limit, zero or less means there is no limit
+     */
+    public synchronized void setApplicationLimit(String applicationName, String deploymentId, double limit) {
+        Budget budget = getApplication(applicationName, deploymentId);
+        budget.limit = limit;
+        budget.limitTime = TimeSource.currentTimeMillis();
+    }
+
+    /**
+     * This sets the power limit of each host.
+     *
+     * @param limit The power limit, zero or less means there is no limit
+     */
+    public synchronized void setHostLimit(double limit) {
+        for (Budget budget : hosts.values()) {
+            budget.limit = limit;
+        }
+        hostLimit = limit;
+    }
+
+    /**
+     * This sets the power limit of the cluster as a whole.
+     *
+     * @param limit The power limit, zero or less means there is no limit
+     */
+    public synchronized void setClusterLimit(double limit) {
+        cluster.limit = limit;
+    }
+
+    /**
+     * This checks if additional power fits within the limits of an
+     * application, host and the cluster, taking into account the power
+     * reserved by other actions. If it fits the power is reserved for the
+     * action, until the action has been performed and a new sample taken.
+     *
+     * @param response The action to reserve power for
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @param hostname The host the power is added to, null if not known
+     * @param power The additional power needed by the action
+     * @return If the power fits within the limits and has been reserved
+     */
+    public synchronized boolean reserve(Response response, String applicationName, String deploymentId, String hostname, double power) {
+        expireReservations();
+        expireHostSamples();
+        Budget application = getApplication(applicationName, deploymentId);
+        Budget host = (hostname == null ? null : getHost(hostname));
+        if (!application.fits(power)) {
+            Logger.getLogger(PowerBudgetLedger.class.getName()).log(Level.INFO,
+                    "The power limit of {0} would be breached: measured = {1} reserved = {2} additional = {3} limit = {4}",
+                    new Object[]{getKey(applicationName, deploymentId), application.measured, application.reserved, power, application.limit});
+            return false;
+        }
+        if ((host != null && !host.fits(power)) || (cluster.sampleTime > 0 && !cluster.fits(power))) {
+            Logger.getLogger(PowerBudgetLedger.class.getName()).log(Level.INFO,
+                    "The host or cluster power limit would be breached by an additional {0} W", power);
+            return false;
+        }
+        release(response);
+        Reservation reservation = new Reservation(application, host, power);
+        reservations.put(response, reservation);
+        application.reserved = application.reserved + power;
+        if (host != null) {
+            host.reserved = host.reserved + power;
+        }
+        cluster.reserved = cluster.reserved + power;
+        return true;
+    }
+
+    /**
+     * This is called once an action has been carried out. If it failed its
+     * reservation is released straight away, otherwise the reservation is
+     * held until the next power sample, which should include the action's
+     * power.
+     *
+     * @param response The action that has been carried out
+     */
+    public synchronized void actionPerformed(Response response) {
+        Reservation reservation = reservations.get(response);
+        if (reservation == null) {
+            return;
+        }
+        if (!response.isPerformed() || !response.isPossibleToAdapt()) {
+            release(response);
+            return;
+        }
+        if (reservation.performedTime == 0) {
+            performedCount++;
+        }
+        reservation.performedTime = TimeSource.currentTimeMillis();
+    }
+
+    /**
+     * This releases the power reserved for an action.
+     *
+     * @param response The action to release the power of
+     */
+    public synchronized void release(Response response) {
+        Reservation reservation = reservations.remove(response);
+        if (reservation != null) {
+            unreserve(reservation);
+        }
+    }
+
+    /**
+     * This removes a reservation's power from the budgets it was held in.
+     *
+     * @param reservation The reservation to remove
+     */
+    private void unreserve(Reservation reservation) {
+        if (reservation.performedTime != 0) {
+            performedCount--;
+        }
+        reservation.application.reserved = Math.max(0, reservation.application.reserved - reservation.power);
+        if (reservation.host != null) {
+            reservation.host.reserved = Math.max(0, reservation.host.reserved - reservation.power);
+        }
+        cluster.reserved = Math.max(0, cluster.reserved - reservation.power);
+    }
+
+    /**
+     * This releases reservations of performed actions whose power is now part
+     * of a newer power sample.
+     *
+     * @param sampled The application or host whose power was sampled
+     */
+    private void settlePerformed(Budget sampled) {
+        if (performedCount == 0) {
+            return;
+        }
+        Iterator<Map.Entry<Response, Reservation>> iter = reservations.entrySet().iterator();
+        while (iter.hasNext()) {
+            Reservation reservation = iter.next().getValue();
+            if (reservation.performedTime != 0
+                    && (reservation.application == sampled || reservation.host == sampled)
+                    && sampled.sampleTime > reservation.performedTime) {
+                iter.remove();
+                unreserve(reservation);
+            }
+        }
+    }
+
+    /**
+     * This releases reservations that have been held for longer than the
+     * reservation timeout, i.e. where the action was never carried out.
+     */
+    private void expireReservations() {
+        long cutoff = TimeSource.currentTimeMillis() - reservationTimeout * 1000L;
+        Iterator<Map.Entry<Response, Reservation>> iter = reservations.entrySet().iterator();
+        while (iter.hasNext()) {
+            Reservation reservation = iter.next().getValue();
+            if (reservation.createdTime > cutoff) {
+                break; //The remaining reservations are newer
+            }
+            iter.remove();
+            unreserve(reservation);
+        }
+    }
+
+    /**
+     * The power measured, reserved and permitted for an application, host or
+     * the cluster.
+     */
+    private static class Budget {
+
+        private double measured = 0.0;
+        private double averageTaskPower = 0.0;
+        private double reserved = 0.0;
+        private double limit = 0.0;
+        private long sampleTime = 0;
+        private long limitTime = 0;
+
+        /**
+         * @param power The additional power
+         * @return If the additional power fits within the limit
+         */
+        private boolean fits(double power) {
+            return limit <= 0 || measured + reserved + power <= limit;
+        }
+
+    }
+
+    /**
+     * Power reserved for an action that has not yet taken effect.
+     */
+    private static class Reservation {
+
+        private final Budget application;
+        private final Budget host;
+        private final double power;
+        private final long createdTime = TimeSource.currentTimeMillis();
+        private long performedTime = 0;
+
+        public Reservation(Budget application, Budget host, double power) {
+            this.application = application;
+            this.host = host;
+            this.power = power;
+        }
+
+    }
+
+}
@@ -19,7 +19,10 @@
 package eu.tango.self.adaptation.manager.rules;
 
 import eu.tango.self.adaptation.manager.actuators.ActuatorInvoker;
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.listeners.EventListener;
+import eu.tango.self.adaptation.manager.listeners.ResponseStream;
+import eu.tango.self.adaptation.manager.qos.PowerBudgetLedger;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.Response;
@@ -31,6 +34,7 @@ import eu.tango.self.adaptation.manager.rules.loggers.ResponseHistoryLogger;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -163,6 +167,44 @@ public abstract class AbstractEventAssessor implements EventAssessor {
         return assessEvent(event, eventData);
     }
 
+    @Override
+    public List<Response> assessEvents(List<EventData> events) {
+        List<Response> answer = new ArrayList<>();
+        if (events == null || events.isEmpty()) {
+            return answer;
+        }
+        //Add the events into the sequence of all events, in one step
+        List<EventData> eventHistoryToAssess = new ArrayList<>();
+        synchronized (this) {
+            eventHistoryToAssess.addAll(eventHistory);
+            eventHistory.addAll(events);
+        }
+        if (logging) {
+            for (EventData event : events) {
+                eventHistoryLogger.printToFile(event);
+            }
+        }
+        /**
+         * The history is filtered once per guarantee, the events earlier in the
+         * batch are then added to it, as they are assessed.
+         */
+        HashMap<String, List<EventData>> filteredHistory = new HashMap<>();
+        for (EventData event : events) {
+            String key = event.getGuaranteeid() + ":" + event.getAgreementTerm();
+            List<EventData> eventData = filteredHistory.get(key);
+            if (eventData == null) {
+                eventData = EventDataAggregator.filterEventData(eventHistoryToAssess, event.getGuaranteeid(), event.getAgreementTerm());
+                filteredHistory.put(key, eventData);
+            }
+            eventData.add(event);
+            Response response = assessEvent(event, EventDataAggregator.filterEventDataByTime(eventData, historyLengthSeconds));
+            if (response != null) {
+                answer.add(response);
+            }
+        }
+        return answer;
+    }
+
     /**
      * This assesses an event and decides if a response is required. If no
      * response is required then null is returned. Calling this is equivalent to
@@ -184,14 +226,19 @@ public abstract class AbstractEventAssessor implements EventAssessor {
             if (answer != null) {
                 adaptations.add(answer);
                 answer = decisionEngine.decide(answer);
+                ResponseStream.getInstance().publish(answer);
                 if (actuator != null && answer.isPossibleToAdapt()) {
                     actuator.actuate(answer);
                     Logger.getLogger(AbstractEventAssessor.class.getName()).log(Level.WARNING, "Actuator - Performing Work");
                     Logger.getLogger(AbstractEventAssessor.class.getName()).log(Level.WARNING, answer.toString());
+                } else {
+                    //The response won't be performed so holds no power in reserve
+                    PowerBudgetLedger.getInstance().release(answer);
                 }
                 if (logging) {
                     responseHistoryLogger.printToFile(answer);
                 }
+                actuateAdditionalResponses(answer);
             }
             /**
              * This causes a looping behaviour when the action is not possible
@@ -206,6 +253,29 @@ public abstract class AbstractEventAssessor implements EventAssessor {
         }
     }
 
+    /**
+     * This handles the further responses a decision engine may have decided
+     * upon alongside a response, i.e. where several actions are needed to
+     * respond to a single event.
+     *
+     * @param answer The response whose additional responses are to be actuated
+     */
+    protected void actuateAdditionalResponses(Response answer) {
+        for (Response additional : answer.getAdditionalResponses()) {
+            adaptations.add(additional);
+            ResponseStream.getInstance().publish(additional);
+            if (actuator != null && additional.isPossibleToAdapt()) {
+                actuator.actuate(additional);
+                Logger.getLogger(AbstractEventAssessor.class.getName()).log(Level.WARNING, additional.toString());
+            } else {
+                PowerBudgetLedger.getInstance().release(additional);
+            }
+            if (logging) {
+                responseHistoryLogger.printToFile(additional);
+            }
+        }
+    }
+
     /**
      * This allows the ability to record adaptations that haven't been performed
      * by this event assessor. It thus prevents the event assessor overturning a
@@ -331,6 +401,46 @@ public abstract class AbstractEventAssessor implements EventAssessor {
         }
     }
 
+    @Override
+    public void clearHistory() {
+        if (!eventHistory.isEmpty()) {
+            eventHistory = EventDataAggregator.filterEventDataByTime(eventHistory, historyLengthSeconds);
+        }
+        if (!adaptations.isEmpty()) {
+            synchronized (this) {
+                adaptations = filterAdaptationHistory();
+            }
+        }
+    }
+
+    /**
+     * This filters the current adaptation history and return a new list that
+     * has all of the old entries removed.
+     *
+     * @return The list of recent adaptations made by the event assessor.
+     */
+    private List<Response> filterAdaptationHistory() {
+        ArrayList<Response> answer = new ArrayList<>();
+        if (historyLengthSeconds == 0) {
+            //Ensure automatic removal of all previous history records, without further testing.
+            return answer;
+        }
+        long now = TimeSource.currentTimeMillis();
+        now = now / 1000;
+        long filterTime = now - historyLengthSeconds;
+        synchronized (this) {
+            for (Response response : adaptations) {
+                if (response.getTime() >= filterTime) {
+                    answer.add(response);
+                }
+            }
+            if (answer.size() != adaptations.size()) {
+                Logger.getLogger(AbstractEventAssessor.class.getName()).log(Level.INFO, "Cleaning History Performed: Old size: {0} New Size: {1}", new Object[]{adaptations.size(), answer.size()});
+            }
+        }
+        return answer;
+    }
+
     /**
      * The history clearer prunes the sequence of events of old redundant data.
      */
@@ -346,14 +456,7 @@ public abstract class AbstractEventAssessor implements EventAssessor {
         @SuppressWarnings("SleepWhileInLoop")
         public void run() {
             while (running) {
-                if (!eventHistory.isEmpty()) {
-                    eventHistory = EventDataAggregator.filterEventDataByTime(eventHistory, historyLengthSeconds);
-                }
-                if (!adaptations.isEmpty()) {
-                    synchronized (this) {
-                        adaptations = filterAdaptationHistory();
-                    }
-                }
+                clearHistory();
                 try {
                     Thread.sleep(TimeUnit.SECONDS.toMillis(pollInterval));
                 } catch (InterruptedException ex) {
@@ -362,34 +465,6 @@ public abstract class AbstractEventAssessor implements EventAssessor {
             } //While not stopped
         }
 
-        /**
-         * This filters the current adaptation history and return a new list
-         * that has all of the old entries removed.
-         *
-         * @return The list of recent adaptations made by the event assessor.
-         */
-        private List<Response> filterAdaptationHistory() {
-            ArrayList<Response> answer = new ArrayList<>();
-            if (historyLengthSeconds == 0) {
-                //Ensure automatic removal of all previous history records, without further testing.
-                return answer;
-            }
-            long now = System.currentTimeMillis();
-            now = now / 1000;
-            long filterTime = now - historyLengthSeconds;
-            synchronized (this) {
-                for (Response response : adaptations) {
-                    if (response.getTime() >= filterTime) {
-                        answer.add(response);
-                    }
-                }
-                if (answer.size() != adaptations.size()) {
-                    Logger.getLogger(HistoryClearer.class.getName()).log(Level.INFO, "Cleaning History Performed: Old size: {0} New Size: {1}", new Object[]{adaptations.size(), answer.size()});
-                }
-            }
-            return answer;
-        }
-
         /**
          * This stops the history clearer thread.
          */
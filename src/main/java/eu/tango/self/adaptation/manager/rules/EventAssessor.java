@@ -56,6 +56,18 @@ public interface EventAssessor {
      * required.
      */
     public Response assessEvent(EventData event);
+
+    /**
+     * This assesses a batch of events, in the order given, deciding for each
+     * if a response is required. Calling this is equivalent to calling the
+     * method assessEvent(EventData event) for each event but allows the event
+     * assessor to process the events together.
+     *
+     * @param events The SLA events to assess
+     * @return The list of responses for the events that required an adaptive
+     * response.
+     */
+    public List<Response> assessEvents(List<EventData> events);
     
     /**
      * This allows the ability to record adaptations that haven't been performed
@@ -121,4 +133,12 @@ public interface EventAssessor {
      */
     public void stop();
 
+    /**
+     * This prunes the event and adaptation history of entries older than the
+     * history length. This is normally done periodically by the event history
+     * maintenance routines, but may also be called directly, such as when time
+     * is being simulated.
+     */
+    public void clearHistory();
+
 }
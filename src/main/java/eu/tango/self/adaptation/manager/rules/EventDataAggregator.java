@@ -18,6 +18,7 @@
  */
 package eu.tango.self.adaptation.manager.rules;
 
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -103,7 +104,7 @@ public class EventDataAggregator {
      */
     public synchronized static List<EventData> filterEventDataByTime(List<EventData> eventList, int ageSeconds) {
         ArrayList<EventData> answer = new ArrayList<>();
-        long now = System.currentTimeMillis();
+        long now = TimeSource.currentTimeMillis();
         now = now / 1000;
         long filterTime = now - ageSeconds;
         for (EventData eventData : eventList) {
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules;
+
+import eu.tango.self.adaptation.manager.model.SLATerm;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+
+/**
+ * An event assessor that implements this interface is given every measurement
+ * of a monitored term, rather than only those that breach the term.
+ *
+ * @author Richard Kavanagh
+ */
+public interface MeasurementObserver {
+
+    /**
+     * This is called with each measurement of a monitored term, whether or
+     * not it breaches the term.
+     *
+     * @param term The term that was measured
+     * @param measurement The measurement, in the form of the event that would
+     * be raised if it breached the term
+     */
+    public void observeMeasurement(SLATerm term, EventData measurement);
+
+}
@@ -19,6 +19,7 @@
 package eu.tango.self.adaptation.manager.rules;
 
 import eu.ascetic.ioutils.io.ResultsStore;
+import eu.tango.self.adaptation.manager.qos.PowerBudgetLedger;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.FiringCriteria;
@@ -181,10 +182,14 @@ public class MultiActionThresholdEventAssessor extends AbstractEventAssessor {
                         getActuator().actuate(answer);
                         Logger.getLogger(AbstractEventAssessor.class.getName()).log(Level.WARNING, "Actuator - Performing Work");
                         Logger.getLogger(AbstractEventAssessor.class.getName()).log(Level.WARNING, answer.toString());
+                    } else {
+                        //The response won't be performed so holds no power in reserve
+                        PowerBudgetLedger.getInstance().release(answer);
                     }
                     if (logging) {
                         responseHistoryLogger.printToFile(answer);
                     }
+                    actuateAdditionalResponses(answer);
                 }
             }
             if (answers != null)
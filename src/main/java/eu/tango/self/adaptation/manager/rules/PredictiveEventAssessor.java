@@ -0,0 +1,232 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules;
+
+import eu.tango.self.adaptation.manager.model.SLATerm;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import eu.tango.self.adaptation.manager.rules.forecast.TermForecaster;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This event assessor acts upon breaches as the threshold event assessor does,
+ * but it also forecasts each monitored term a short time ahead. If a term is
+ * forecast to be breached within the lead time, it responds straight away
+ * rather than waiting for the breach to occur and repeat. Forecasts are only
+ * acted upon if the recent forecasts for the term were accurate enough.
+ *
+ * The forecast event carries the forecast value as its raw value, so the
+ * decision engine sizes its response to the forecast breach. The adaptation
+ * details of the response are marked with FORECAST=true and the lead time.
+ *
+ * @author Richard Kavanagh
+ */
+public class PredictiveEventAssessor extends ThresholdEventAssessor implements MeasurementObserver {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private long leadTime = 30;
+    private double alpha = 0.5;
+    private double beta = 0.2;
+    private int accuracyWindow = 20;
+    private int minEvaluated = 10;
+    private double maxError = 0.1;
+    private final HashMap<String, TermForecaster> forecasters = new HashMap<>();
+    private EventData currentForecast = null;
+    private final AtomicLong forecastsActedUpon = new AtomicLong(0);
+    private final AtomicLong forecastsSuppressed = new AtomicLong(0);
+
+    /**
+     * This creates a new predictive event assessor. Configuration settings
+     * are taken from file.
+     */
+    public PredictiveEventAssessor() {
+        super();
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            leadTime = config.getLong("self.adaptation.manager.forecast.lead.time", leadTime);
+            config.setProperty("self.adaptation.manager.forecast.lead.time", leadTime);
+            alpha = config.getDouble("self.adaptation.manager.forecast.alpha", alpha);
+            config.setProperty("self.adaptation.manager.forecast.alpha", alpha);
+            beta = config.getDouble("self.adaptation.manager.forecast.beta", beta);
+            config.setProperty("self.adaptation.manager.forecast.beta", beta);
+            accuracyWindow = config.getInt("self.adaptation.manager.forecast.accuracy.window", accuracyWindow);
+            config.setProperty("self.adaptation.manager.forecast.accuracy.window", accuracyWindow);
+            minEvaluated = config.getInt("self.adaptation.manager.forecast.min.evaluated", minEvaluated);
+            config.setProperty("self.adaptation.manager.forecast.min.evaluated", minEvaluated);
+            maxError = config.getDouble("self.adaptation.manager.forecast.max.error", maxError);
+            config.setProperty("self.adaptation.manager.forecast.max.error", maxError);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(PredictiveEventAssessor.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    @Override
+    public void observeMeasurement(SLATerm term, EventData measurement) {
+        double forecast;
+        boolean confident;
+        String key = getKey(measurement);
+        synchronized (forecasters) {
+            TermForecaster forecaster = forecasters.get(key);
+            if (forecaster == null) {
+                forecaster = new TermForecaster(alpha, beta, accuracyWindow);
+                forecasters.put(key, forecaster);
+            }
+            forecaster.update(measurement.getTime(), measurement.getRawValue());
+            forecast = forecaster.forecast(leadTime);
+            confident = forecaster.isConfident(minEvaluated, maxError);
+        }
+        //Current breaches are handled as normal, once they have been detected
+        if (term.isBreached(measurement.getRawValue()) || Double.isNaN(forecast) || !term.isBreached(forecast)) {
+            return;
+        }
+        if (!confident) {
+            forecastsSuppressed.incrementAndGet();
+            Logger.getLogger(PredictiveEventAssessor.class.getName()).log(Level.FINE,
+                    "A forecast breach of {0} was ignored, as recent forecasts were not accurate enough", key);
+            return;
+        }
+        EventData event = copy(measurement, forecast);
+        if (event == null) {
+            return;
+        }
+        event.setSignificantOnOwn(true);
+        Response response;
+        synchronized (this) {
+            currentForecast = event;
+            try {
+                //The forecast is kept out of the event history, as it has not been measured
+                response = assessEvent(event, new ArrayList<EventData>());
+            } finally {
+                currentForecast = null;
+            }
+        }
+        if (response != null) {
+            forecastsActedUpon.incrementAndGet();
+            Logger.getLogger(PredictiveEventAssessor.class.getName()).log(Level.INFO,
+                    "Responding to {0} being forecast to reach {1} within {2} seconds",
+                    new Object[]{key, forecast, leadTime});
+        }
+    }
+
+    @Override
+    public Response assessEvent(EventData event, List<EventData> sequence, List<Response> recentAdaptation) {
+        Response answer = super.assessEvent(event, sequence, recentAdaptation);
+        if (answer != null && event == currentForecast) {
+            String report = "FORECAST=true;LEAD_TIME=" + leadTime;
+            answer.appendAdaptationDetails(report);
+        }
+        return answer;
+    }
+
+    /**
+     * @param measurement The measurement of a term
+     * @return The key of the forecaster for the measured term
+     */
+    private static String getKey(EventData measurement) {
+        String key = measurement.getGuaranteeid() + ":" + measurement.getAgreementTerm();
+        if (measurement instanceof HostEventData) {
+            return key + ":" + ((HostEventData) measurement).getHost();
+        }
+        if (measurement instanceof ApplicationEventData) {
+            ApplicationEventData app = (ApplicationEventData) measurement;
+            return key + ":" + app.getApplicationId() + ":" + app.getDeploymentId();
+        }
+        return key;
+    }
+
+    /**
+     * This creates the event for a forecast breach, from the measurement the
+     * forecast was made from.
+     *
+     * @param measurement The measurement the forecast was made from
+     * @param forecast The forecast value
+     * @return The event for the forecast breach, null if the type of
+     * measurement is not recognised
+     */
+    private static EventData copy(EventData measurement, double forecast) {
+        if (measurement instanceof HostEventData) {
+            return new HostEventData(measurement.getTime(), ((HostEventData) measurement).getHost(),
+                    forecast, measurement.getGuaranteedValue(),
+                    measurement.getType(),
+                    measurement.getGuaranteeOperator(),
+                    measurement.getGuaranteeid(),
+                    measurement.getAgreementTerm());
+        }
+        if (measurement instanceof ApplicationEventData) {
+            ApplicationEventData app = (ApplicationEventData) measurement;
+            return new ApplicationEventData(measurement.getTime(),
+                    forecast, measurement.getGuaranteedValue(),
+                    measurement.getType(),
+                    measurement.getGuaranteeOperator(),
+                    app.getApplicationId(),
+                    app.getDeploymentId(),
+                    measurement.getGuaranteeid(),
+                    measurement.getAgreementTerm());
+        }
+        return null;
+    }
+
+    /**
+     * @return The count of forecast breaches that were responded to
+     */
+    public long getForecastsActedUpon() {
+        return forecastsActedUpon.get();
+    }
+
+    /**
+     * @return The count of forecast breaches ignored because the forecasts
+     * for the term were not accurate enough
+     */
+    public long getForecastsSuppressed() {
+        return forecastsSuppressed.get();
+    }
+
+    /**
+     * This gets the mean relative error of the recent forecasts of each term.
+     *
+     * @return The mean forecast error of each term, keyed by the term
+     */
+    public HashMap<String, Double> getForecastErrors() {
+        HashMap<String, Double> answer = new HashMap<>();
+        synchronized (forecasters) {
+            for (String key : forecasters.keySet()) {
+                answer.put(key, forecasters.get(key).getMeanError());
+            }
+        }
+        return answer;
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package eu.tango.self.adaptation.manager.rules;
 
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.rules.datatypes.Response;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -147,7 +148,7 @@ public class ResponseHistoryAggregator {
      */
     public static List<Response> filterResponseHistoryByTime(List<Response> responses, int ageSeconds) {
         ArrayList<Response> answer = new ArrayList<>();
-        long now = System.currentTimeMillis();
+        long now = TimeSource.currentTimeMillis();
         now = now / 1000;
         long filterTime = now - ageSeconds;
         for (Response response : responses) {
@@ -44,6 +44,11 @@ public abstract class EventData implements Comparable<EventData> {
      * i.e. without a threshold being reached.
      */
     private boolean significantOnOwn = false; 
+    /**
+     * The id given to the event when it was submitted via the REST interface,
+     * null otherwise.
+     */
+    private String eventId = null;
 
     private static final Map<String, Operator> OPERATOR_MAPPING
             = new HashMap<>();
@@ -225,6 +230,24 @@ public abstract class EventData implements Comparable<EventData> {
         this.significantOnOwn = significantOnOwn;
     }    
 
+    /**
+     * This gets the id given to the event when it was queued for assessment
+     * via the REST interface, so that responses can be matched to it.
+     * @return The id of the event, null if it was not submitted via the REST
+     * interface
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * This sets the id given to the event when it was queued for assessment.
+     * @param eventId The id of the event
+     */
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
     @Override
     public int compareTo(EventData event) {
         //This sequences event data in cronlogical order.
@@ -18,13 +18,13 @@
  */
 package eu.tango.self.adaptation.manager.rules.datatypes;
 
+import eu.tango.self.adaptation.manager.io.TimeSource;
 import eu.tango.self.adaptation.manager.model.ApplicationDefinition;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -92,10 +92,10 @@ public class FiringCriteria {
             return false;
         }
         //Apply tests for start and end times for rules, should the parameter exist
-        if (getStartTime() != null && LocalTime.now().isBefore(getStartTime())) {
+        if (getStartTime() != null && LocalTime.now(TimeSource.getClock()).isBefore(getStartTime())) {
             return false;
         }
-        if (getEndTime() != null && LocalTime.now().isAfter(getEndTime())) {
+        if (getEndTime() != null && LocalTime.now(TimeSource.getClock()).isAfter(getEndTime())) {
             return false;
         }
         if (getDoWString()!= null && !isTodayInDayOfWeekString(getDoWString())) {
@@ -403,8 +403,8 @@ public class FiringCriteria {
     private boolean isTodayInDayOfWeekString(String dowString) {
         byte[] array = dowString.getBytes(StandardCharsets.UTF_8);
         byte[] today = {0,0,0,0,0,0,0};
-        //Note: -2 ensures it fits in the array's range of 0..6 and that monday is the start of the week
-        today[new GregorianCalendar().get(Calendar.DAY_OF_WEEK) - 2] = 1;
+        //Note: -1 ensures it fits in the array's range of 0..6 and that monday is the start of the week
+        today[LocalDate.now(TimeSource.getClock()).getDayOfWeek().getValue() - 1] = 1;
         for (int i = 0; i < 7; i++) {
             array[i] = (byte) (array[i] - 48);
         }
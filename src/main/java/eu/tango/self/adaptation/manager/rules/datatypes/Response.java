@@ -19,7 +19,9 @@
 package eu.tango.self.adaptation.manager.rules.datatypes;
 
 import eu.tango.self.adaptation.manager.actuators.ActuatorInvoker;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -37,6 +39,8 @@ public class Response implements Comparable<Response> {
     private String taskId;
     private boolean performed = false;
     private boolean possibleToAdapt = true;
+    //Further responses decided upon alongside this one, i.e. when an event needs several actions
+    private final ArrayList<Response> additionalResponses = new ArrayList<>();
     //The string to set the adaptation details value to in the event no actuator is found.
     public static final String ADAPTATION_DETAIL_ACTUATOR_NOT_FOUND = "Unable to find actuator.";
     //The string to set the adaptation details value to in the event no task to actuate against is found.
@@ -44,6 +48,8 @@ public class Response implements Comparable<Response> {
     //Property values for applications and hosts i.e. if the response targets a particular host or application
     public static final String ADAPTATION_DETAIL_APPLICATION = "application";
     public static final String ADAPTATION_DETAIL_HOST = "host";
+    //Indicates that only the hosts that are idle when the action is performed should be shut down
+    public static final String ADAPTATION_DETAIL_IDLE_ONLY = "IDLE_ONLY";
     private static final Map<String, Response.AdaptationType> ADAPTATION_TYPE_MAPPING
             = new HashMap<>();
 
@@ -257,6 +263,21 @@ public class Response implements Comparable<Response> {
         this.adaptationDetails = adaptationDetails;
     }
 
+    /**
+     * This adds further information to the adaptation details, after any
+     * details that are already present.
+     *
+     * @param additionalDetails The details to add, i.e. key=value pairs
+     * separated by semi-colons
+     */
+    public void appendAdaptationDetails(String additionalDetails) {
+        if (adaptationDetails == null || adaptationDetails.isEmpty()) {
+            adaptationDetails = additionalDetails;
+        } else {
+            adaptationDetails = adaptationDetails + ";" + additionalDetails;
+        }
+    }
+
     /**
      * This indicates if on deciding to adapt if a possible solution was found.
      *
@@ -276,6 +297,26 @@ public class Response implements Comparable<Response> {
         this.possibleToAdapt = possibleToAdapt;
     }
 
+    /**
+     * This returns the further responses that were decided upon alongside
+     * this one. These are needed when a single event requires several actions
+     * to be taken, such as pausing several jobs.
+     *
+     * @return the additional responses
+     */
+    public List<Response> getAdditionalResponses() {
+        return additionalResponses;
+    }
+
+    /**
+     * This adds a further response that was decided upon alongside this one.
+     *
+     * @param response the response to add
+     */
+    public void addAdditionalResponse(Response response) {
+        additionalResponses.add(response);
+    }
+
     /**
      * This indicates if the action associated with the response has been
      * performed.
@@ -18,30 +18,35 @@
  */
 package eu.tango.self.adaptation.manager.rules.decisionengine;
 
-import eu.tango.energymodeller.EnergyModeller;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.Host;
-import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
 import eu.tango.self.adaptation.manager.actuators.ActuatorInvoker;
 import eu.tango.self.adaptation.manager.actuators.ProgrammingModelRuntimeActuator;
+import eu.tango.self.adaptation.manager.listeners.ClusterStateVersion;
 import eu.tango.self.adaptation.manager.model.ApplicationDefinition;
 import eu.tango.self.adaptation.manager.model.SLALimits;
+import eu.tango.self.adaptation.manager.qos.PowerBudgetLedger;
 import eu.tango.self.adaptation.manager.qos.SlaRulesLoader;
 import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.ClockEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
 import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.Ranking;
+import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.RankingKey;
 import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_ACTUATOR_NOT_FOUND;
 import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_APPLICATION;
 import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_HOST;
 import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_NO_ACTUATION_TASK;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 
 /**
  * The aim of this class is to decide given an event that has been assessed what
@@ -62,14 +67,79 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
     private ActuatorInvoker actuator;
     //Singleton instance helps avoid loading rules in multiple times, i.e. once per decision engine.
     private final SlaRulesLoader loader = SlaRulesLoader.getInstance();
-    private final EnergyModeller modeller = EnergyModeller.getInstance();
+    /**
+     * The source of the cluster's hosts and their power, the energy modeller
+     * unless the actuator provides its own.
+     */
+    private volatile HostPowerSource powerSource = new EnergyModellerPowerSource();
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    /**
+     * The power snapshot used by the decision currently being made, by the
+     * calling thread.
+     */
+    private final ThreadLocal<PowerSnapshot> decisionSnapshot = new ThreadLocal<>();
+    /**
+     * The time in milliseconds a power snapshot may be reused for, by later
+     * decisions. Zero means each decision takes its own snapshot.
+     */
+    private long powerSnapshotTtl = 0;
+    private volatile PowerSnapshot sharedSnapshot = null;
+    private RankedHostIndex hostIndex = null;
+    /**
+     * The time in milliseconds a decision may be reused for, by identical
+     * responses, while the cluster's state is unchanged. Zero disables this.
+     */
+    private long decisionCacheWindow = 0;
+    private DecisionCache decisionCache = null;
 
     public AbstractDecisionEngine() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            powerSnapshotTtl = config.getLong("self.adaptation.manager.power.snapshot.ttl", powerSnapshotTtl);
+            config.setProperty("self.adaptation.manager.power.snapshot.ttl", powerSnapshotTtl);
+            decisionCacheWindow = config.getLong("self.adaptation.manager.decision.cache.window", decisionCacheWindow);
+            config.setProperty("self.adaptation.manager.decision.cache.window", decisionCacheWindow);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        if (decisionCacheWindow > 0) {
+            decisionCache = new DecisionCache(decisionCacheWindow);
+        }
     }
     
     @Override
     public void setActuator(ActuatorInvoker actuator) {
         this.actuator = actuator;
+        if (actuator instanceof HostPowerSource) {
+            setPowerSource((HostPowerSource) actuator);
+        }
+    }
+
+    /**
+     * This sets the source of the cluster's hosts and their power, which is
+     * the energy modeller by default. Actuators that implement
+     * HostPowerSource are used as the source when they are set.
+     *
+     * @param powerSource The source of the hosts and their power
+     */
+    public synchronized void setPowerSource(HostPowerSource powerSource) {
+        this.powerSource = powerSource;
+        sharedSnapshot = null;
+        hostIndex = null;
+    }
+
+    /**
+     * @return The source of the cluster's hosts and their power
+     */
+    public HostPowerSource getPowerSource() {
+        return powerSource;
     }
 
     @Override
@@ -79,6 +149,61 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
     
     @Override
     public Response decide(Response response) {
+        boolean outermost = decisionSnapshot.get() == null;
+        String cacheKey = (outermost && decisionCache != null ? DecisionCache.getKey(response) : null);
+        if (cacheKey != null && decisionCache.restore(cacheKey, response)) {
+            return response;
+        }
+        long version = ClusterStateVersion.getInstance().getVersion();
+        if (outermost) {
+            decisionSnapshot.set(createPowerSnapshot());
+        }
+        try {
+            Response answer = makeDecision(response);
+            if (outermost) {
+                releaseUnperformable(response, answer);
+            }
+            if (cacheKey != null) {
+                decisionCache.store(cacheKey, answer, version);
+            }
+            return answer;
+        } finally {
+            if (outermost) {
+                decisionSnapshot.remove();
+            }
+        }
+    }
+
+    /**
+     * This frees any power reserved while deciding upon a response, where the
+     * decision reached is that the response can't be performed. Power
+     * reserved for responses that are performed is instead freed once the
+     * action shows up in the measured power.
+     *
+     * @param response The response that was given to the decision engine
+     * @param answer The response the decision engine decided upon
+     */
+    private void releaseUnperformable(Response response, Response answer) {
+        PowerBudgetLedger ledger = PowerBudgetLedger.getInstance();
+        if (answer != response) {
+            ledger.release(response);
+        }
+        if (answer != null && !answer.isPossibleToAdapt()) {
+            ledger.release(answer);
+        }
+    }
+
+    /**
+     * This makes the decision, using the power snapshot of the current
+     * decision for any power measurements that are needed. Decision engines
+     * that decide in their own way override this, rather than decide, so
+     * that the decision cache and power snapshot still apply.
+     *
+     * @param response The response object to adapt
+     * @return The response object with a fully formed decision made on how to
+     * adapt.
+     */
+    protected Response makeDecision(Response response) {
         handleClockEvent(response);        
         switch (response.getActionType()) {
             case ADD_TASK:
@@ -228,11 +353,18 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
             Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "Actuator not found - therefore not adapting");
             return false;
         }
+        String applicationID = response.getApplicationId();
+        String deploymentID = response.getDeploymentId();
+        PowerBudgetLedger ledger = PowerBudgetLedger.getInstance();
+        if (!ledger.hasCurrentSample(applicationID, deploymentID)) {
+            //Obtaining the application's power records a new sample in the ledger
+            getAveragePowerUsage(applicationID, deploymentID, taskType);
+        }
         //average power of the task type to add
-        double averagePower = getAveragePowerUsage(response.getApplicationId(), response.getDeploymentId(), taskType);
+        double averagePower = ledger.getAverageTaskPower(applicationID, deploymentID);
         Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "Avg power = {0}", averagePower);
         //The current total measured power consumption
-        double totalMeasuredAppPower = getTotalPowerUsage(response.getApplicationId(), response.getDeploymentId());
+        double totalMeasuredAppPower = ledger.getMeasuredPower(applicationID, deploymentID);
         Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "Total power = {0}", totalMeasuredAppPower);
         double totalAdditionalPower = averagePower * count;
         //TODO Adjust this: Task types are not implemented so this bit has been commented out
@@ -254,22 +386,43 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
             return true;
 //            return enoughSpaceForTask(response, taskType);
         }
-        String applicationID = response.getApplicationId();
-        String deploymentID = response.getDeploymentId();
-        SLALimits limits = loader.getSlaLimits(applicationID, deploymentID);
-        if (limits != null && limits.getAppPower() != null && limits.getAppPower() != 0) {
-            Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "New power = {0}", totalMeasuredAppPower + totalAdditionalPower);
-            Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "Limit of power = {0}", limits.getAppPower());
-            if (totalMeasuredAppPower + totalAdditionalPower > limits.getAppPower()) {
-                return false;
+        if (!ledger.hasCurrentLimit(applicationID, deploymentID)) {
+            SLALimits limits = loader.getSlaLimits(applicationID, deploymentID);
+            ledger.setApplicationLimit(applicationID, deploymentID,
+                    (limits != null && limits.getAppPower() != null ? limits.getAppPower() : 0));
+            if (loader.getLimits() != null) {
+                ledger.setHostLimit(loader.getLimits().getHostPower());
+                ledger.setClusterLimit(loader.getPowerCap());
             }
         }
-        //TODO ADD HOST and cluster power/energy estimates??
+        Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.INFO, "New power = {0}", totalMeasuredAppPower + totalAdditionalPower);
+        /**
+         * The power is reserved until the action has been performed and shows
+         * up in the measured power, so that a burst of tasks being added can't
+         * together exceed the limit.
+         */
         //TODO compare any further standard guarantees here that make sense
-        return true;
+        return ledger.reserve(response, applicationID, deploymentID, getTargetHost(response), totalAdditionalPower);
 //        return enoughSpaceForTask(response, taskType);
     }
 
+    /**
+     * This gets the host that an action is directed at, either from the
+     * originating event or from the adaptation detail "host".
+     *
+     * @param response The response to get the target host of
+     * @return The name of the host, or null if the scheduler picks the host
+     */
+    private String getTargetHost(Response response) {
+        if (response.getCause() instanceof HostEventData) {
+            return ((HostEventData) response.getCause()).getHost();
+        }
+        if (response.hasAdaptationDetail(ADAPTATION_DETAIL_HOST)) {
+            return response.getAdaptationDetail(ADAPTATION_DETAIL_HOST);
+        }
+        return null;
+    }
+
     /**
      * The decision logic for horizontal scaling to a given target value.
      *
@@ -346,7 +499,7 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
     protected Response handleDownHosts(Response response) {
         if (response.getCause() instanceof HostEventData) {
             HostEventData event = (HostEventData) response.getCause();
-            Host host = modeller.getHost(event.getHost());
+            Host host = powerSource.getHost(event.getHost());
             if (host == null || host.getState().trim().toLowerCase().contains("down")) {
                 event.setHost("");
                 response.setAdaptationDetails("");
@@ -537,13 +690,46 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
         List<ApplicationOnHost> tasks = actuator.getTasks(name, deploymentId);
         for (ApplicationOnHost task : tasks) {
             if ((task.getName().trim().equals(name.trim()))
-                    && (task.getId() + "").equals(deploymentId.trim())) {
+                    && (task.getId() + "").equals(deploymentId.trim())
+                    && task.getAllocatedTo().getId() == taskId) {
                 return task;
             }
         }
         return null;
     }
     
+    /**
+     * This creates a new power snapshot, unless the last snapshot taken is
+     * recent enough to be reused.
+     *
+     * @return The power snapshot to use for a decision
+     */
+    private PowerSnapshot createPowerSnapshot() {
+        if (powerSnapshotTtl <= 0) {
+            return new PowerSnapshot(powerSource, actuator);
+        }
+        PowerSnapshot answer = sharedSnapshot;
+        if (answer == null || answer.isOlderThan(powerSnapshotTtl)) {
+            answer = new PowerSnapshot(powerSource, actuator);
+            sharedSnapshot = answer;
+        }
+        return answer;
+    }
+
+    /**
+     * This gets the power snapshot of the decision currently being made. If
+     * called outside of a decision a new snapshot is provided.
+     *
+     * @return The power snapshot to obtain power measurements from
+     */
+    protected PowerSnapshot getPowerSnapshot() {
+        PowerSnapshot answer = decisionSnapshot.get();
+        if (answer == null) {
+            return createPowerSnapshot();
+        }
+        return answer;
+    }
+
     /**
      * This gets the power usage of a application.
      *
@@ -552,15 +738,7 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
      * @return The power usage of the named application. 
      */
     protected double getTotalPowerUsage(String applicationName, String deploymentId) {
-        double answer = 0.0;
-        List<ApplicationOnHost> tasks = modeller.getApplication(applicationName, Integer.parseInt(deploymentId));
-        if (tasks == null) {
-            return answer;
-        }
-        for (CurrentUsageRecord record : modeller.getCurrentEnergyForApplication(tasks)) {
-            answer = answer + record.getPower();
-        }
-        return answer;
+        return getPowerSnapshot().getTotalPower(applicationName, deploymentId);
     }
 
     /**
@@ -572,11 +750,7 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
      * @return The power usage of a named task. 
      */
     protected double getPowerUsageTask(String applicationName, String deploymentId, int taskId) {
-        ApplicationOnHost task = getTask(deploymentId, deploymentId, taskId);
-        if (task == null) {
-            return 0;
-        }
-        return modeller.getCurrentEnergyForApplication(task).getPower();
+        return getPowerSnapshot().getTaskPower(applicationName, deploymentId, taskId);
     }
 
     /**
@@ -590,31 +764,23 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
      */
     protected double getAveragePowerUsage(String applicationName, String deploymentId, String taskType) {
         //TODO note task type is not considered here
-        ArrayList<ApplicationOnHost> application = modeller.getApplication(applicationName, Integer.parseInt(deploymentId));
-        if (application == null) {
+        PowerSnapshot snapshot = getPowerSnapshot();
+        if (!snapshot.isApplicationFound(applicationName, deploymentId)) {
             Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.WARNING,
                         "The calculation of the average power of a task was unable to find the application");
             return 0.0;
         }
-        HashSet<CurrentUsageRecord> appPowerRecord = modeller.getCurrentEnergyForApplication(application);
-        if (appPowerRecord == null) { 
+        if (!snapshot.isApplicationRecordFound(applicationName, deploymentId)) { 
             Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.WARNING,
                         "The calculation of the average power of a task was unable to find the application power record");
             return 0.0;
         }
-        double count = (double) appPowerRecord.size();
-        double power = 0;
-        for (CurrentUsageRecord appPower : appPowerRecord) {
-            if (appPower.getPower() > 0) {
-                power = power + appPower.getPower();
-            }
-        }
-        if (power == 0 || count == 0) {
+        double power = snapshot.getAveragePower(applicationName, deploymentId);
+        if (power == 0) {
             Logger.getLogger(AbstractDecisionEngine.class.getName()).log(Level.WARNING,
                         "The calculation of the average power of a task saw a zero value");
-            return 0.0;
         }
-        return power / count;
+        return power;
     }
     
     /**
@@ -696,8 +862,52 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
      * @return The modified response object with a host value set.
      */
     protected Response selectHostToAdapt(Response response, Comparator<Host> sort) {
-        return selectHostToAdapt(response, sort, getHostList(sort));
-    }    
+        if (sort == null || !(response.getCause() instanceof HostEventData)) {
+            return selectHostToAdapt(response, sort, getHostList(sort));
+        }
+        RankedHostIndex index = getHostIndex(sort);
+        HostPowerSelector selector = new HostPowerSelector(response);
+        if (response.getActionType().equals(Response.AdaptationType.SHUTDOWN_HOST) || 
+                response.getActionType().equals(Response.AdaptationType.SHUTDOWN_N_HOSTS)) {
+            index.selectAvailable(selector); //largest first (i.e. power consumer)
+        } else if (response.getActionType().equals(Response.AdaptationType.STARTUP_HOST)  || 
+                response.getActionType().equals(Response.AdaptationType.STARTUP_N_HOSTS)) {
+            index.selectStartable(selector); //smallest first (i.e. power consumer)
+        }
+        return response;
+    }
+
+    /**
+     * This removes hosts from the index of ranked hosts. This must be done
+     * before a change is made that alters the rank of a host, other than a
+     * change to its state, such as a change in the workload it is running.
+     * The hosts are placed back into the index the next time it is used.
+     *
+     * @param hostNames The names of the hosts to remove
+     */
+    protected synchronized void removeFromHostIndex(Collection<String> hostNames) {
+        if (hostIndex == null) {
+            return;
+        }
+        for (String hostName : hostNames) {
+            hostIndex.remove(hostName);
+        }
+    }
+
+    /**
+     * This gets the index of hosts ranked by a given sort order, bringing it
+     * up to date with the current state of the hosts.
+     *
+     * @param sort The sort order of the index
+     * @return The ranked index of hosts
+     */
+    private synchronized RankedHostIndex getHostIndex(Comparator<Host> sort) {
+        if (hostIndex == null || hostIndex.getRanking() != sort) {
+            hostIndex = new RankedHostIndex(sort);
+        }
+        hostIndex.refresh(powerSource.getHostList());
+        return hostIndex;
+    }
 
     /**
      * This applies a sort and then picks the first N relevant hosts to perform 
@@ -712,40 +922,61 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
             if (sort == null) {
                 Collections.shuffle(hosts);
             }
-            HostEventData event = (HostEventData) response.getCause();
-            //An indicator of how big the breach is.
-            double scaleFactor = event.getDeviationBetweenRawAndGuarantee();
-            //An indicator of how much the current selected change will help
-            double currentChangeFactor = 0.0;
+            HostPowerSelector selector = new HostPowerSelector(response);
             if (response.getActionType().equals(Response.AdaptationType.SHUTDOWN_HOST) || 
                     response.getActionType().equals(Response.AdaptationType.SHUTDOWN_N_HOSTS)) {
                 Collections.reverse(hosts); //largest first (i.e. power consumer)
                 for (Host host : hosts) {
-                    if (host.isAvailable()) {
-                        event.setHost(generateHostString(event.getHost(), host.getHostName()));
-                        currentChangeFactor = currentChangeFactor + modeller.getCurrentEnergyForHost(host).getPower();
-                        if (currentChangeFactor >= scaleFactor || 
-                                response.getActionType().equals(Response.AdaptationType.SHUTDOWN_HOST)) {
-                            return response;
-                        }
+                    if (host.isAvailable() && selector.select(host)) {
+                        return response;
                     }
                 }           
             } else if (response.getActionType().equals(Response.AdaptationType.STARTUP_HOST)  || 
                     response.getActionType().equals(Response.AdaptationType.STARTUP_N_HOSTS)) {
                 for (Host host : hosts) { //smallest first (i.e. power consumer)
-                    if (!host.isAvailable() && !host.getState().trim().toLowerCase().contains("down")) { //avoid down hosts but not drained hosts
-                        event.setHost(generateHostString(event.getHost(), host.getHostName()));
-                        currentChangeFactor = currentChangeFactor + modeller.getCurrentEnergyForHost(host).getPower();
-                        if (currentChangeFactor >= scaleFactor || 
-                                response.getActionType().equals(Response.AdaptationType.STARTUP_HOST)) {
-                            return response;
-                        }
+                    //avoid down hosts but not drained hosts
+                    if (!host.isAvailable() && !host.getState().trim().toLowerCase().contains("down") 
+                            && selector.select(host)) {
+                        return response;
                     }
                 }                
             }
         }
         return response;
     }
+
+    /**
+     * This adds hosts to a host event's list of hosts to adapt, until the
+     * power of the selected hosts covers the size of the breach.
+     */
+    private class HostPowerSelector implements RankedHostIndex.HostSelector {
+
+        private final HostEventData event;
+        //An indicator of how big the breach is.
+        private final double scaleFactor;
+        //Only a single host is to be selected
+        private final boolean singleHost;
+        //An indicator of how much the current selected change will help
+        private double currentChangeFactor = 0.0;
+
+        /**
+         * @param response The response object whose host event is to have hosts selected for it
+         */
+        public HostPowerSelector(Response response) {
+            event = (HostEventData) response.getCause();
+            scaleFactor = event.getDeviationBetweenRawAndGuarantee();
+            singleHost = response.getActionType().equals(Response.AdaptationType.SHUTDOWN_HOST)
+                    || response.getActionType().equals(Response.AdaptationType.STARTUP_HOST);
+        }
+
+        @Override
+        public boolean select(Host host) {
+            event.setHost(generateHostString(event.getHost(), host.getHostName()));
+            currentChangeFactor = currentChangeFactor + getPowerSnapshot().getHostPower(host);
+            return currentChangeFactor >= scaleFactor || singleHost;
+        }
+
+    }
     
     /**
      * This method concatenates hosts into a host string ready for either shutting down
@@ -776,11 +1007,14 @@ public abstract class AbstractDecisionEngine implements DecisionEngine {
      * @return The list of hosts available
      */
     protected List<Host> getHostList(Comparator<Host> sort) {
-        if (sort == null)
-            return new ArrayList<>(modeller.getHostList());
-        else {
-            return modeller.getHostList(sort);            
+        List<Host> answer = new ArrayList<>(powerSource.getHostList());
+        if (sort instanceof RankingKey) {
+            //Sort on keys worked out once per host, rather than once per comparison
+            Ranking.sort(answer, sort);
+        } else if (sort != null) {
+            Collections.sort(answer, sort);
         }
+        return answer;
     }
 
     /**
@@ -0,0 +1,470 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.io.TimeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * This is an immutable copy of the state of the cluster, i.e. its hosts, the
+ * jobs running upon them and their power consumption. As it never changes once
+ * created, it may be read by many threads at once, such as when evaluating
+ * the outcome of several candidate adaptations in parallel, without touching
+ * the energy modeller or the actuator.
+ *
+ * @author Richard Kavanagh
+ */
+public class ClusterSnapshot {
+
+    /**
+     * The application types, from the most to the least flexible. This is the
+     * ranking used by all the decision engines and job comparators, see
+     * {@link #getTypeRank(String)}.
+     */
+    public static final List<String> TYPE_RANK = Collections.unmodifiableList(
+            Arrays.asList("MALLEABLE", "CHECKPOINTABLE", "MOULDABLE", "RIGID"));
+    /**
+     * The fewest CPUs a job may be left with, as the SLURM actuator does not
+     * remove CPUs from a job with two or fewer.
+     */
+    public static final int MIN_CPU_COUNT = 2;
+    private static final String APPLICATION_TYPE = "application_type";
+    private static final String PRIORITY = "priority";
+    private final long creationTime = TimeSource.currentTimeMillis();
+    private final Map<String, HostState> hosts;
+    private final Map<String, JobState> jobs;
+    private final double totalPower;
+
+    /**
+     * This creates a snapshot of the cluster.
+     *
+     * @param hostList The hosts of the cluster
+     * @param tasks The tasks running on the cluster
+     * @param power The power measurements to use
+     */
+    public ClusterSnapshot(Collection<Host> hostList, Collection<ApplicationOnHost> tasks, PowerSnapshot power) {
+        LinkedHashMap<String, List<TaskState>> tasksByHost = new LinkedHashMap<>();
+        LinkedHashMap<String, List<TaskState>> tasksByJob = new LinkedHashMap<>();
+        HashMap<String, ApplicationOnHost> jobDefinitions = new HashMap<>();
+        for (ApplicationOnHost task : tasks) {
+            Host host = task.getAllocatedTo();
+            TaskState state = new TaskState(task.getName(), task.getId(), host.getHostName(), host.getId(),
+                    getCpuCount(task), power.getTaskPower(task.getName(), task.getId() + "", host.getId()));
+            add(tasksByHost, state.getHostName(), state);
+            String key = getJobKey(task.getName(), task.getId());
+            add(tasksByJob, key, state);
+            if (!jobDefinitions.containsKey(key)) {
+                jobDefinitions.put(key, task);
+            }
+        }
+        LinkedHashMap<String, HostState> hostStates = new LinkedHashMap<>();
+        double total = 0;
+        for (Host host : hostList) {
+            List<TaskState> hostTasks = tasksByHost.get(host.getHostName());
+            HostState state = new HostState(host, power.getHostPower(host),
+                    hostTasks == null ? new ArrayList<TaskState>() : hostTasks);
+            hostStates.put(state.getName(), state);
+            total = total + state.getPower();
+        }
+        hosts = Collections.unmodifiableMap(hostStates);
+        totalPower = total;
+        //Priorities are expressed as a fraction of the range seen, so that they can be compared
+        TreeSet<Integer> priorities = new TreeSet<>();
+        for (ApplicationOnHost job : jobDefinitions.values()) {
+            priorities.add(getPriority(job));
+        }
+        List<Integer> ordered = new ArrayList<>(priorities);
+        LinkedHashMap<String, JobState> jobStates = new LinkedHashMap<>();
+        for (Map.Entry<String, List<TaskState>> entry : tasksByJob.entrySet()) {
+            ApplicationOnHost job = jobDefinitions.get(entry.getKey());
+            double priorityRank = (ordered.size() <= 1 ? 0
+                    : Collections.binarySearch(ordered, getPriority(job)) / (double) (ordered.size() - 1));
+            jobStates.put(entry.getKey(), new JobState(job, priorityRank, entry.getValue()));
+        }
+        jobs = Collections.unmodifiableMap(jobStates);
+    }
+
+    /**
+     * This adds a task to a list held in a map, creating the list if needed.
+     *
+     * @param map The map of lists
+     * @param key The key of the list to add to
+     * @param task The task to add
+     */
+    private static void add(Map<String, List<TaskState>> map, String key, TaskState task) {
+        List<TaskState> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        list.add(task);
+    }
+
+    /**
+     * @param job The job to get the priority of
+     * @return The job's priority, zero if it is not known
+     */
+    public static int getPriority(ApplicationOnHost job) {
+        Integer priority = job.getPropertyAsInteger(PRIORITY);
+        return priority == null ? 0 : priority;
+    }
+
+    /**
+     * @param job The job to get the application type of
+     * @return The application type of the job, i.e. RIGID, MOULDABLE,
+     * CHECKPOINTABLE or MALLEABLE, empty if it is not known.
+     */
+    public static String getApplicationType(ApplicationOnHost job) {
+        return job.hasProperty(APPLICATION_TYPE) ? job.getPropertyAsString(APPLICATION_TYPE).trim().toUpperCase() : "";
+    }
+
+    /**
+     * @param type The application type
+     * @return The rank of the type, from 0 for malleable jobs to 3 for rigid
+     * jobs or jobs of unknown type
+     */
+    public static int getTypeRank(String type) {
+        //Jobs of an unknown type are treated as the least flexible
+        return TYPE_RANK.contains(type) ? TYPE_RANK.indexOf(type) : TYPE_RANK.size() - 1;
+    }
+
+    /**
+     * SLURM allocates whole hosts to jobs, so a task is taken to have all the
+     * CPUs of the host it is on.
+     *
+     * @param task The task to get the CPU count of
+     * @return The count of CPUs the task has, at least one
+     */
+    public static int getCpuCount(ApplicationOnHost task) {
+        return Math.max(1, task.getAllocatedTo().getCoreCount());
+    }
+
+    /**
+     * @param name The name of the job
+     * @param id The id of the job
+     * @return The key that the job is held under
+     */
+    public static String getJobKey(String name, int id) {
+        return name + ":" + id;
+    }
+
+    /**
+     * @return The time this snapshot was created, in milliseconds since the
+     * epoch
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return The hosts of the cluster
+     */
+    public Collection<HostState> getHosts() {
+        return hosts.values();
+    }
+
+    /**
+     * @param name The name of the host
+     * @return The host, or null if it is not known
+     */
+    public HostState getHost(String name) {
+        return hosts.get(name);
+    }
+
+    /**
+     * @return The jobs running on the cluster
+     */
+    public Collection<JobState> getJobs() {
+        return jobs.values();
+    }
+
+    /**
+     * @param name The name of the job
+     * @param id The id of the job
+     * @return The job, or null if it is not known
+     */
+    public JobState getJob(String name, int id) {
+        return jobs.get(getJobKey(name, id));
+    }
+
+    /**
+     * @return The total power consumption of the cluster's hosts
+     */
+    public double getTotalPower() {
+        return totalPower;
+    }
+
+    /**
+     * The state of a host.
+     */
+    public static final class HostState {
+
+        private final String name;
+        private final int id;
+        private final boolean available;
+        private final boolean down;
+        private final boolean accelerated;
+        private final double idlePower;
+        private final double power;
+        private final List<TaskState> tasks;
+
+        private HostState(Host host, double power, List<TaskState> tasks) {
+            name = host.getHostName();
+            id = host.getId();
+            available = host.isAvailable();
+            down = host.getState() != null && host.getState().trim().toLowerCase().contains("down");
+            accelerated = host.hasAccelerator();
+            idlePower = host.getIdlePowerConsumption();
+            this.power = power;
+            this.tasks = Collections.unmodifiableList(tasks);
+        }
+
+        /**
+         * @return The name of the host
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The id of the host
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return If the host is available to run work
+         */
+        public boolean isAvailable() {
+            return available;
+        }
+
+        /**
+         * @return If the host is down, drained hosts are not considered down
+         */
+        public boolean isDown() {
+            return down;
+        }
+
+        /**
+         * @return If the host has an accelerator
+         */
+        public boolean isAccelerated() {
+            return accelerated;
+        }
+
+        /**
+         * @return The idle power consumption of the host
+         */
+        public double getIdlePower() {
+            return idlePower;
+        }
+
+        /**
+         * @return The current power consumption of the host
+         */
+        public double getPower() {
+            return power;
+        }
+
+        /**
+         * @return The tasks running on the host
+         */
+        public List<TaskState> getTasks() {
+            return tasks;
+        }
+
+    }
+
+    /**
+     * The state of a job.
+     */
+    public static final class JobState {
+
+        private final String name;
+        private final int id;
+        private final String type;
+        private final int typeRank;
+        private final double priorityRank;
+        private final double power;
+        private final int cpuCount;
+        private final List<TaskState> tasks;
+
+        private JobState(ApplicationOnHost job, double priorityRank, List<TaskState> tasks) {
+            name = job.getName();
+            id = job.getId();
+            type = getApplicationType(job);
+            typeRank = ClusterSnapshot.getTypeRank(type);
+            this.priorityRank = priorityRank;
+            double total = 0;
+            int cpus = 0;
+            for (TaskState task : tasks) {
+                total = total + task.getPower();
+                cpus = cpus + task.getCpuCount();
+            }
+            power = total;
+            cpuCount = Math.max(1, cpus);
+            this.tasks = Collections.unmodifiableList(tasks);
+        }
+
+        /**
+         * @return The name of the job
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The id of the job
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return The application type of the job, i.e. RIGID, MOULDABLE,
+         * CHECKPOINTABLE or MALLEABLE, empty if it is not known.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return The rank of the job's type, from 0 for malleable jobs to 3
+         * for rigid jobs or jobs of unknown type
+         */
+        public int getTypeRank() {
+            return typeRank;
+        }
+
+        /**
+         * @return The job's priority as a fraction of the range of priorities
+         * of the running jobs, 0 being the lowest and 1 the highest
+         */
+        public double getPriorityRank() {
+            return priorityRank;
+        }
+
+        /**
+         * @return The power consumption of the job's tasks
+         */
+        public double getPower() {
+            return power;
+        }
+
+        /**
+         * @return The count of CPUs the job has across all its tasks
+         */
+        public int getCpuCount() {
+            return cpuCount;
+        }
+
+        /**
+         * @return The power saved by removing one of the job's CPUs
+         */
+        public double getPowerPerCpu() {
+            return power / cpuCount;
+        }
+
+        /**
+         * @return The tasks of the job
+         */
+        public List<TaskState> getTasks() {
+            return tasks;
+        }
+
+    }
+
+    /**
+     * The state of a task, i.e. the part of a job on a single host.
+     */
+    public static final class TaskState {
+
+        private final String jobName;
+        private final int jobId;
+        private final String hostName;
+        private final int hostId;
+        private final int cpuCount;
+        private final double power;
+
+        private TaskState(String jobName, int jobId, String hostName, int hostId, int cpuCount, double power) {
+            this.jobName = jobName;
+            this.jobId = jobId;
+            this.hostName = hostName;
+            this.hostId = hostId;
+            this.cpuCount = cpuCount;
+            this.power = power;
+        }
+
+        /**
+         * @return The name of the job the task belongs to
+         */
+        public String getJobName() {
+            return jobName;
+        }
+
+        /**
+         * @return The id of the job the task belongs to
+         */
+        public int getJobId() {
+            return jobId;
+        }
+
+        /**
+         * @return The name of the host the task is on
+         */
+        public String getHostName() {
+            return hostName;
+        }
+
+        /**
+         * @return The id of the host the task is on, i.e. the task id
+         */
+        public int getHostId() {
+            return hostId;
+        }
+
+        /**
+         * @return The count of CPUs the task has
+         */
+        public int getCpuCount() {
+            return cpuCount;
+        }
+
+        /**
+         * @return The power consumption of the task
+         */
+        public double getPower() {
+            return power;
+        }
+
+    }
+
+}
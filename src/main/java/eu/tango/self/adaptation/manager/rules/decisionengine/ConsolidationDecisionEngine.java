@@ -0,0 +1,463 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.HostWorkload;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This decision engine frees whole hosts so that they may be shut down, rather
+ * than waiting for a host to happen to become idle. When a host is to be shut
+ * down, without the host being specified, it plans to move the tasks of
+ * malleable and checkpointable jobs off the least loaded hosts and onto the
+ * most loaded hosts that have room for them, so that as many hosts as
+ * possible become empty. A task that can't be moved may instead be removed,
+ * if its job has other tasks.
+ *
+ * Each host is assumed to have room for a given number of tasks, or one task
+ * per core if this is not set. Only one task of a job is placed on a host.
+ *
+ * The plan is given as a REMOVE_TASK response for each task moved off a host,
+ * an ADD_TASK response for each task that is to be started elsewhere, which
+ * names the host to start it on in the adaptation detail "host", and
+ * finally a SHUTDOWN_HOST response for the freed hosts. The first of these is
+ * the response, the remainder are its additional responses. As the scheduler
+ * chooses which host a job gives up when a task is removed, the freed hosts
+ * are only shut down if they are idle by the time the shutdown is performed.
+ * In all other respects it behaves as the job priority decision engine.
+ *
+ * @author Richard Kavanagh
+ */
+public class ConsolidationDecisionEngine extends JobPriorityDecisionEngine {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private int tasksPerHost = 0;
+    private int maxHosts = 10;
+    private boolean allowShrink = true;
+    private final HashSet<String> movableTypes = new HashSet<>();
+
+    public ConsolidationDecisionEngine() {
+        movableTypes.add("MALLEABLE");
+        movableTypes.add("CHECKPOINTABLE");
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            tasksPerHost = config.getInt("self.adaptation.manager.consolidation.tasks.per.host", tasksPerHost);
+            config.setProperty("self.adaptation.manager.consolidation.tasks.per.host", tasksPerHost);
+            maxHosts = config.getInt("self.adaptation.manager.consolidation.max.hosts", maxHosts);
+            config.setProperty("self.adaptation.manager.consolidation.max.hosts", maxHosts);
+            allowShrink = config.getBoolean("self.adaptation.manager.consolidation.allow.shrink", allowShrink);
+            config.setProperty("self.adaptation.manager.consolidation.allow.shrink", allowShrink);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(ConsolidationDecisionEngine.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    @Override
+    protected Response makeDecision(Response response) {
+        if (getActuator() == null || !isConsolidation(response)) {
+            return super.makeDecision(response);
+        }
+        HostEventData event = (HostEventData) response.getCause();
+        int limit = (response.getActionType().equals(Response.AdaptationType.SHUTDOWN_HOST) ? 1 : maxHosts);
+        long start = System.nanoTime();
+        Plan plan = plan(getHostList(null), getActuator().getTasks(), limit);
+        Logger.getLogger(ConsolidationDecisionEngine.class.getName()).log(Level.INFO,
+                "Consolidation frees {0} hosts, moving {1} tasks and removing {2}, planned in {3} ms",
+                new Object[]{plan.freed.size(), plan.moves.size(), plan.removals.size(), (System.nanoTime() - start) / 1000000.0});
+        if (plan.freed.isEmpty()) {
+            return super.makeDecision(response);
+        }
+        List<Response> actions = new ArrayList<>();
+        for (Move move : plan.moves) {
+            actions.add(createAction(response, move.task, Response.AdaptationType.REMOVE_TASK));
+        }
+        for (ApplicationOnHost task : plan.removals) {
+            actions.add(createAction(response, task, Response.AdaptationType.REMOVE_TASK));
+        }
+        for (Move move : plan.moves) {
+            Response add = createAction(response, move.task, Response.AdaptationType.ADD_TASK);
+            //The task is started on the host planned for it, not one of the hosts being freed
+            add.appendAdaptationDetails(Response.ADAPTATION_DETAIL_HOST + "=" + move.target.host.getHostName());
+            actions.add(add);
+        }
+        StringBuilder hosts = new StringBuilder();
+        for (Bin bin : plan.freed) {
+            if (hosts.length() > 0) {
+                hosts.append(",");
+            }
+            hosts.append(bin.host.getHostName());
+        }
+        event.setHost(hosts.toString());
+        String report = "HOSTS_FREED=" + plan.freed.size() + ";TASKS_MOVED=" + plan.moves.size()
+                + ";TASKS_REMOVED=" + plan.removals.size();
+        response.appendAdaptationDetails(report);
+        if (actions.isEmpty()) { //The hosts freed were already empty
+            response.setActionType(Response.AdaptationType.SHUTDOWN_HOST);
+            return response;
+        }
+        //The hosts are shut down last, once their tasks have been moved off them
+        Response shutdown = new Response(getActuator(), event, Response.AdaptationType.SHUTDOWN_HOST);
+        shutdown.setAdaptationDetails(response.getAdaptationDetails());
+        shutdown.appendAdaptationDetails(Response.ADAPTATION_DETAIL_IDLE_ONLY + "=true");
+        actions.add(shutdown);
+        Response first = actions.get(0);
+        response.setCause(first.getCause());
+        response.setActionType(first.getActionType());
+        response.setTaskId(first.getTaskId());
+        response.setAdaptationDetails(first.getAdaptationDetails());
+        for (Response action : actions.subList(1, actions.size())) {
+            response.addAdditionalResponse(action);
+        }
+        return response;
+    }
+
+    /**
+     * This indicates if the response is to shut down hosts without saying
+     * which, in which case hosts are freed by consolidating the workload.
+     *
+     * @param response The response to check
+     * @return If the workload should be consolidated
+     */
+    private boolean isConsolidation(Response response) {
+        if (!(response.getCause() instanceof HostEventData)) {
+            return false;
+        }
+        if (!response.getActionType().equals(Response.AdaptationType.SHUTDOWN_HOST)
+                && !response.getActionType().equals(Response.AdaptationType.SHUTDOWN_N_HOSTS)) {
+            return false;
+        }
+        String host = ((HostEventData) response.getCause()).getHost();
+        return host == null || host.equals("*") || host.contains("ALL") || host.isEmpty();
+    }
+
+    /**
+     * This plans which hosts to free and how. Hosts are emptied in order of
+     * how few tasks they have, each task going to the fullest host that still
+     * has room for it, so that hosts that are already well used are filled
+     * and those that are barely used are emptied.
+     *
+     * @param hosts The hosts of the cluster
+     * @param tasks The tasks running on the cluster
+     * @param limit The most hosts to free
+     * @return The plan for freeing hosts
+     */
+    private Plan plan(List<Host> hosts, List<ApplicationOnHost> tasks, int limit) {
+        Plan answer = new Plan();
+        HashMap<String, Bin> bins = new HashMap<>();
+        for (Host host : hosts) {
+            if (host.isAvailable()) {
+                bins.put(host.getHostName(), new Bin(host, tasksPerHost > 0 ? tasksPerHost : host.getCoreCount()));
+            }
+        }
+        HashMap<String, Integer> jobSize = new HashMap<>();
+        for (HostWorkload workload : HostWorkload.getHostWorkloads(tasks)) {
+            Bin bin = bins.get(workload.getHost().getHostName());
+            if (bin == null) { //Tasks on hosts that are not available are left alone
+                continue;
+            }
+            for (ApplicationOnHost task : workload.getApplications()) {
+                bin.add(task, isMovable(task));
+                String key = getJobKey(task);
+                Integer size = jobSize.get(key);
+                jobSize.put(key, size == null ? 1 : size + 1);
+            }
+        }
+        //Hosts with spare room, indexed by how much room they have
+        TreeMap<Integer, LinkedHashSet<Bin>> spare = new TreeMap<>();
+        List<Bin> candidates = new ArrayList<>();
+        for (Bin bin : bins.values()) {
+            index(spare, bin);
+            if (bin.movable) {
+                candidates.add(bin);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Bin>() {
+            @Override
+            public int compare(Bin o1, Bin o2) {
+                int answer = Integer.compare(o1.tasks.size(), o2.tasks.size());
+                if (answer == 0) { //Free the more power hungry host first
+                    answer = Double.compare(o2.host.getIdlePowerConsumption(), o1.host.getIdlePowerConsumption());
+                }
+                return answer == 0 ? o1.host.getHostName().compareTo(o2.host.getHostName()) : answer;
+            }
+        });
+        for (Bin bin : candidates) {
+            if (answer.freed.size() >= limit) {
+                break;
+            }
+            if (bin.received > 0) { //The host has been chosen to take tasks from others
+                continue;
+            }
+            unindex(spare, bin);
+            if (empty(bin, spare, jobSize, answer)) {
+                answer.freed.add(bin);
+            } else {
+                index(spare, bin);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This plans the emptying of a host, either all its tasks are moved or
+     * removed, or the plan is left as it was.
+     *
+     * @param bin The host to empty
+     * @param spare The hosts with room for more tasks
+     * @param jobSize The count of tasks of each job
+     * @param plan The plan to add to
+     * @return If the host could be emptied
+     */
+    private boolean empty(Bin bin, TreeMap<Integer, LinkedHashSet<Bin>> spare, Map<String, Integer> jobSize, Plan plan) {
+        List<Move> moves = new ArrayList<>();
+        List<ApplicationOnHost> removals = new ArrayList<>();
+        boolean emptied = true;
+        for (ApplicationOnHost task : bin.tasks) {
+            String key = getJobKey(task);
+            Bin target = findTarget(spare, key);
+            if (target != null) {
+                unindex(spare, target);
+                target.receive(key);
+                index(spare, target);
+                moves.add(new Move(task, target));
+            } else if (allowShrink && jobSize.get(key) > 1) {
+                jobSize.put(key, jobSize.get(key) - 1);
+                removals.add(task);
+            } else {
+                emptied = false;
+                break;
+            }
+        }
+        if (!emptied) { //Undo the partial plan
+            for (Move move : moves) {
+                unindex(spare, move.target);
+                move.target.unreceive(getJobKey(move.task));
+                index(spare, move.target);
+            }
+            for (ApplicationOnHost task : removals) {
+                jobSize.put(getJobKey(task), jobSize.get(getJobKey(task)) + 1);
+            }
+            return false;
+        }
+        plan.moves.addAll(moves);
+        plan.removals.addAll(removals);
+        return true;
+    }
+
+    /**
+     * This finds the fullest host that has room for a task of a job and that
+     * is not already running a task of the job. The hosts are visited in
+     * order of spare room, so this usually stops at the first host, but in
+     * the worst case, where every host with room already runs a task of the
+     * job, all the hosts are visited, i.e. O(hosts) for each task.
+     *
+     * @param spare The hosts with room for more tasks
+     * @param jobKey The job the task belongs to
+     * @return The host to move the task to, or null if there is none
+     */
+    private static Bin findTarget(TreeMap<Integer, LinkedHashSet<Bin>> spare, String jobKey) {
+        for (LinkedHashSet<Bin> bins : spare.values()) {
+            for (Bin bin : bins) {
+                if (!bin.jobs.contains(jobKey)) {
+                    return bin;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This adds a host to the index of hosts with spare room, if it has any.
+     *
+     * @param spare The hosts with room for more tasks
+     * @param bin The host to add
+     */
+    private static void index(TreeMap<Integer, LinkedHashSet<Bin>> spare, Bin bin) {
+        int room = bin.getRoom();
+        if (room <= 0) {
+            return;
+        }
+        LinkedHashSet<Bin> bins = spare.get(room);
+        if (bins == null) {
+            bins = new LinkedHashSet<>();
+            spare.put(room, bins);
+        }
+        bins.add(bin);
+    }
+
+    /**
+     * This removes a host from the index of hosts with spare room.
+     *
+     * @param spare The hosts with room for more tasks
+     * @param bin The host to remove
+     */
+    private static void unindex(TreeMap<Integer, LinkedHashSet<Bin>> spare, Bin bin) {
+        LinkedHashSet<Bin> bins = spare.get(bin.getRoom());
+        if (bins != null) {
+            bins.remove(bin);
+            if (bins.isEmpty()) {
+                spare.remove(bin.getRoom());
+            }
+        }
+    }
+
+    /**
+     * @param task The task to check
+     * @return If the task belongs to a job that may have its tasks moved
+     */
+    private boolean isMovable(ApplicationOnHost task) {
+        return movableTypes.contains(ClusterSnapshot.getApplicationType(task));
+    }
+
+    /**
+     * @param task The task
+     * @return The key of the job the task belongs to
+     */
+    private static String getJobKey(ApplicationOnHost task) {
+        return task.getName() + ":" + task.getId();
+    }
+
+    /**
+     * This creates an action against a task, as part of the plan.
+     *
+     * @param response The response to consolidate the workload
+     * @param task The task to act against
+     * @param type The type of action
+     * @return The action to take
+     */
+    private Response createAction(Response response, ApplicationOnHost task, Response.AdaptationType type) {
+        HostEventData event = (HostEventData) response.getCause();
+        ApplicationEventData cause = new ApplicationEventData(event.getTime(),
+                event.getRawValue(), event.getGuaranteedValue(), event.getType(),
+                event.getGuaranteeOperator(), task.getName(), task.getId() + "",
+                event.getGuaranteeid(), event.getAgreementTerm());
+        Response answer = new Response(getActuator(), cause, type);
+        if (type.equals(Response.AdaptationType.REMOVE_TASK)) {
+            answer.setTaskId(task.getAllocatedTo().getId() + "");
+        } else {
+            List<String> taskTypes = getTaskTypesAvailableToAdd(task.getName(), task.getId() + "");
+            answer.setAdaptationDetails(taskTypes.isEmpty() ? "" : taskTypes.get(0));
+        }
+        return answer;
+    }
+
+    /**
+     * A host along with the tasks that are planned to be on it.
+     */
+    private static class Bin {
+
+        private final Host host;
+        private final int capacity;
+        private final List<ApplicationOnHost> tasks = new ArrayList<>();
+        private final HashSet<String> jobs = new HashSet<>();
+        private boolean movable = true;
+        private int received = 0;
+
+        public Bin(Host host, int capacity) {
+            this.host = host;
+            this.capacity = capacity;
+        }
+
+        /**
+         * @param task A task running on the host
+         * @param movable If the task may be moved
+         */
+        private void add(ApplicationOnHost task, boolean movable) {
+            tasks.add(task);
+            jobs.add(getJobKey(task));
+            this.movable = this.movable && movable;
+        }
+
+        /**
+         * @param jobKey The job of a task planned to move to the host
+         */
+        private void receive(String jobKey) {
+            jobs.add(jobKey);
+            received++;
+        }
+
+        /**
+         * @param jobKey The job of a task no longer planned to move to the host
+         */
+        private void unreceive(String jobKey) {
+            jobs.remove(jobKey);
+            received--;
+        }
+
+        /**
+         * @return The count of further tasks the host has room for
+         */
+        private int getRoom() {
+            return capacity - tasks.size() - received;
+        }
+
+    }
+
+    /**
+     * A task planned to move to another host.
+     */
+    private static class Move {
+
+        private final ApplicationOnHost task;
+        private final Bin target;
+
+        public Move(ApplicationOnHost task, Bin target) {
+            this.task = task;
+            this.target = target;
+        }
+
+    }
+
+    /**
+     * The plan for freeing hosts.
+     */
+    private static class Plan {
+
+        private final List<Bin> freed = new ArrayList<>();
+        private final List<Move> moves = new ArrayList<>();
+        private final List<ApplicationOnHost> removals = new ArrayList<>();
+
+    }
+
+}
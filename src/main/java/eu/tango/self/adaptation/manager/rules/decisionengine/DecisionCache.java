@@ -0,0 +1,223 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.self.adaptation.manager.io.TimeSource;
+import eu.tango.self.adaptation.manager.listeners.ClusterStateVersion;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This remembers recent decisions, so that when the same rule fires for the
+ * same application or host again, shortly afterwards, the previous decision
+ * can be given again without repeating the search for a task or host. A
+ * decision is only reused while it is younger than the cache's window and
+ * while the cluster is still in the state it was in when the decision was
+ * made, i.e. no job has started or finished, no host has changed state and no
+ * adaptation has been carried out since.
+ *
+ * Decisions to add tasks are never cached, as these reserve power against the
+ * power budget each time they are made, nor are decisions that result in more
+ * than one action.
+ *
+ * @author Richard Kavanagh
+ */
+public class DecisionCache {
+
+    private static final int MAX_ENTRIES = 1000;
+    private final long window;
+    private long hits = 0;
+    private long misses = 0;
+    private final LinkedHashMap<String, Decision> decisions = new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * This creates a new decision cache.
+     *
+     * @param window The time in milliseconds a decision may be reused for
+     */
+    public DecisionCache(long window) {
+        this.window = window;
+    }
+
+    /**
+     * This gets the key a response's decision is cached under, which is made
+     * up of the action type, the rule's adaptation details, the term that was
+     * breached and the application or host the event was about.
+     *
+     * @param response The response before any decision has been made
+     * @return The key of the response, or null if its decision should not be
+     * cached
+     */
+    public static String getKey(Response response) {
+        switch (response.getActionType()) {
+            case ADD_TASK:
+            case SCALE_TO_N_TASKS:
+                return null;
+            default:
+                break;
+        }
+        EventData cause = response.getCause();
+        String subject;
+        if (cause instanceof ApplicationEventData) {
+            ApplicationEventData event = (ApplicationEventData) cause;
+            subject = "APP:" + event.getApplicationId() + ":" + event.getDeploymentId();
+        } else if (cause instanceof HostEventData) {
+            subject = "HOST:" + ((HostEventData) cause).getHost();
+        } else { //Clock events are turned into other events during the decision
+            return null;
+        }
+        return response.getActionType() + "|" + subject + "|" + cause.getGuaranteeid()
+                + "|" + cause.getAgreementTerm() + "|" + response.getAdaptationDetails();
+    }
+
+    /**
+     * This sets a response to the decision made previously for the same key,
+     * if it is still current.
+     *
+     * @param key The key of the response
+     * @param response The response to set
+     * @return true if a current decision was found and the response set to
+     * it, otherwise false
+     */
+    public synchronized boolean restore(String key, Response response) {
+        Decision decision = decisions.get(key);
+        if (decision == null) {
+            misses++;
+            return false;
+        }
+        if (decision.version != ClusterStateVersion.getInstance().getVersion()
+                || TimeSource.currentTimeMillis() - decision.time > window) {
+            decisions.remove(key);
+            misses++;
+            return false;
+        }
+        hits++;
+        decision.applyTo(response);
+        return true;
+    }
+
+    /**
+     * This remembers the decision made for a response.
+     *
+     * @param key The key of the response, worked out before the decision
+     * @param response The response, after the decision was made
+     * @param version The version of the cluster's state when the decision
+     * started being made
+     */
+    public synchronized void store(String key, Response response, long version) {
+        if (!response.getAdditionalResponses().isEmpty()) {
+            return;
+        }
+        decisions.put(key, new Decision(response, version));
+    }
+
+    /**
+     * This removes all cached decisions.
+     */
+    public synchronized void clear() {
+        decisions.clear();
+    }
+
+    /**
+     * @return The count of decisions that were reused
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The count of decisions that had to be made afresh
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * A decision that has been made, i.e. the parts of a response set by a
+     * decision engine.
+     */
+    private static class Decision {
+
+        private final long version;
+        private final long time = TimeSource.currentTimeMillis();
+        private final Response.AdaptationType actionType;
+        private final String taskId;
+        private final String adaptationDetails;
+        private final boolean possibleToAdapt;
+        private final String host;
+        private final String applicationId;
+        private final String deploymentId;
+
+        public Decision(Response response, long version) {
+            this.version = version;
+            actionType = response.getActionType();
+            taskId = response.getTaskId();
+            adaptationDetails = response.getAdaptationDetails();
+            possibleToAdapt = response.isPossibleToAdapt();
+            EventData cause = response.getCause();
+            host = (cause instanceof HostEventData ? ((HostEventData) cause).getHost() : null);
+            if (cause instanceof ApplicationEventData) {
+                applicationId = ((ApplicationEventData) cause).getApplicationId();
+                deploymentId = ((ApplicationEventData) cause).getDeploymentId();
+            } else {
+                applicationId = null;
+                deploymentId = null;
+            }
+        }
+
+        /**
+         * This sets a response to this decision, the event that caused the
+         * response is kept, other than the host or application it points to.
+         *
+         * @param response The response to set
+         */
+        private void applyTo(Response response) {
+            response.setActionType(actionType);
+            response.setTaskId(taskId);
+            response.setAdaptationDetails(adaptationDetails);
+            response.setPossibleToAdapt(possibleToAdapt);
+            EventData cause = response.getCause();
+            if (host != null && cause instanceof HostEventData) {
+                ((HostEventData) cause).setHost(host);
+            } else if (applicationId != null && cause instanceof ApplicationEventData) {
+                ((ApplicationEventData) cause).setApplicationId(applicationId);
+                ((ApplicationEventData) cause).setDeploymentId(deploymentId);
+            } else if (applicationId != null) {
+                //The decision chose an application to act upon in response to a host event
+                response.setCause(new ApplicationEventData(cause.getTime(),
+                        cause.getRawValue(), cause.getGuaranteedValue(), cause.getType(),
+                        cause.getGuaranteeOperator(), applicationId, deploymentId,
+                        cause.getGuaranteeid(), cause.getAgreementTerm()));
+            }
+        }
+
+    }
+
+}
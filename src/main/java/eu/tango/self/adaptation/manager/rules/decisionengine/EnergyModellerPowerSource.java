@@ -0,0 +1,84 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.EnergyModeller;
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This obtains the hosts of the cluster and their power from the energy
+ * modeller. The energy modeller is only loaded once it is first needed, so
+ * that decision engines given another source of power do not load it.
+ *
+ * @author Richard Kavanagh
+ */
+public class EnergyModellerPowerSource implements HostPowerSource {
+
+    /**
+     * @return The energy modeller to obtain measurements from
+     */
+    private EnergyModeller getModeller() {
+        return EnergyModeller.getInstance();
+    }
+
+    @Override
+    public List<Host> getHostList() {
+        return new ArrayList<>(getModeller().getHostList());
+    }
+
+    @Override
+    public Host getHost(String hostname) {
+        return getModeller().getHost(hostname);
+    }
+
+    @Override
+    public List<ApplicationOnHost> getApplicationTasks(String applicationName, int deploymentId) {
+        return getModeller().getApplication(applicationName, deploymentId);
+    }
+
+    @Override
+    public List<Double> getApplicationPower(List<ApplicationOnHost> tasks) {
+        HashSet<CurrentUsageRecord> records = getModeller().getCurrentEnergyForApplication(new ArrayList<>(tasks));
+        if (records == null) {
+            return null;
+        }
+        List<Double> answer = new ArrayList<>(records.size());
+        for (CurrentUsageRecord record : records) {
+            answer.add(record.getPower());
+        }
+        return answer;
+    }
+
+    @Override
+    public double getTaskPower(ApplicationOnHost task) {
+        CurrentUsageRecord record = getModeller().getCurrentEnergyForApplication(task);
+        return record == null ? 0.0 : record.getPower();
+    }
+
+    @Override
+    public double getHostPower(Host host) {
+        return getModeller().getCurrentEnergyForHost(host).getPower();
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.List;
+
+/**
+ * This provides decision engines with the hosts of the cluster and the power
+ * of its hosts and tasks. By default this is the energy modeller, though
+ * actuators that act upon a cluster of their own, such as a simulated
+ * cluster, may implement this so that decisions are made against the same
+ * cluster that they act upon.
+ *
+ * @author Richard Kavanagh
+ */
+public interface HostPowerSource {
+
+    /**
+     * @return The list of hosts in the cluster
+     */
+    public List<Host> getHostList();
+
+    /**
+     * @param hostname The name of the host
+     * @return The named host, or null if it is not known
+     */
+    public Host getHost(String hostname);
+
+    /**
+     * This gets the tasks of an application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The tasks of the application, or null if it was not found
+     */
+    public List<ApplicationOnHost> getApplicationTasks(String applicationName, int deploymentId);
+
+    /**
+     * This gets the power of the tasks of an application, in a single
+     * request.
+     *
+     * @param tasks The tasks to get the power of
+     * @return The power of each task found, or null if no power measurements
+     * are available
+     */
+    public List<Double> getApplicationPower(List<ApplicationOnHost> tasks);
+
+    /**
+     * @param task The task to get the power of
+     * @return The power of the task, zero if it is not known
+     */
+    public double getTaskPower(ApplicationOnHost task);
+
+    /**
+     * @param host The host to get the power of
+     * @return The power of the host
+     */
+    public double getHostPower(Host host);
+
+}
@@ -21,14 +21,17 @@ package eu.tango.self.adaptation.manager.rules.decisionengine;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.Host;
 import eu.tango.energymodeller.types.energyuser.comparators.HostIdlePower;
+import eu.tango.self.adaptation.manager.listeners.ClusterStateVersion;
 import eu.tango.self.adaptation.manager.rules.datatypes.Response;
 import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_ACTUATOR_NOT_FOUND;
 import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_NO_ACTUATION_TASK;
 import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.HostWorkloadBased;
 import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.JobPriority;
 import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.JobTypeAndPriority;
+import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.Ranking;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -88,10 +91,8 @@ public class JobPriorityDecisionEngine extends AbstractDecisionEngine {
             response.setPossibleToAdapt(false);
             return response;
         }
-        //General case
-        Collections.sort(tasks, jobRanking);
-        Collections.reverse(tasks);
-        response.setTaskId(tasks.get(0).getId() + "");
+        //General case, the highest ranked task
+        response.setTaskId(Ranking.getHighest(tasks, jobRanking).getId() + "");
         return response;        
     }
     
@@ -99,11 +100,44 @@ public class JobPriorityDecisionEngine extends AbstractDecisionEngine {
     protected Response selectHostToAdapt(Response response) {
         //Could also rank by Max Power or flops per Watt
         if (hostRanking instanceof HostWorkloadBased) {
-            hostRanking = new HostWorkloadBased(getActuator().getTasks());
+            updateHostWorkload((HostWorkloadBased) hostRanking);
         }
         return selectHostToAdapt(response, hostRanking);
     }  
 
+    /**
+     * This brings the host workload ranking up to date, by applying the jobs
+     * that have started or finished since it was last updated. The hosts
+     * whose workload changes are taken out of the ranked host index first,
+     * as their rank is about to change.
+     *
+     * @param ranking The host workload ranking to update
+     */
+    private void updateHostWorkload(HostWorkloadBased ranking) {
+        List<ApplicationOnHost> tasks = getActuator().getTasks();
+        List<ApplicationOnHost> started = ranking.getStartedJobs(tasks);
+        List<ApplicationOnHost> finished = ranking.getFinishedJobs(tasks);
+        if (started.isEmpty() && finished.isEmpty()) {
+            return;
+        }
+        ClusterStateVersion.getInstance().changed("jobs started or finished");
+        HashSet<String> changedHosts = new HashSet<>();
+        for (ApplicationOnHost task : started) {
+            changedHosts.add(task.getAllocatedTo().getHostName());
+        }
+        for (ApplicationOnHost task : finished) {
+            changedHosts.add(task.getAllocatedTo().getHostName());
+        }
+        removeFromHostIndex(changedHosts);
+        for (ApplicationOnHost task : finished) {
+            ranking.jobFinished(task);
+        }
+        PowerSnapshot snapshot = getPowerSnapshot();
+        for (ApplicationOnHost task : started) {
+            ranking.jobStarted(task, snapshot.getTaskPower(task.getName(), task.getId() + "", task.getAllocatedTo().getId()));
+        }
+    }
+
     /**
      * The decision logic for deleting a task. It removes the last task to be
      * created (i.e. highest task ID first).
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.HostWorkload;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This decision engine selects the set of hosts to shut down so that their
+ * combined power is as close as possible to the size of the breach, without
+ * falling short of it. Rather than walking the ranked list of hosts and
+ * stopping once enough power has been found, which can overshoot by a whole
+ * large host, it searches for the subset of hosts with the least overshoot.
+ * Hosts to start up are selected so that their combined power is as large as
+ * possible without exceeding the power headroom, so the cap is not breached.
+ * The time spent obtaining the power of the candidate hosts counts towards
+ * the time budget of the search. Hosts running a workload that is too inflexible are not shut
+ * down, and the presence of accelerators can be required or avoided by the
+ * rule's adaptation details, i.e. ACCELERATED=true or ACCELERATED=false.
+ *
+ * In all other respects it behaves as the job priority decision engine.
+ *
+ * @author Richard Kavanagh
+ */
+public class KnapsackDecisionEngine extends JobPriorityDecisionEngine {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private static final String ACCELERATED = "ACCELERATED";
+    //Hosts running work of a higher priority than this are not shut down, i.e. RIGID jobs
+    private int maxWorkloadPriority = 2;
+    private long timeBudget = 100;
+
+    public KnapsackDecisionEngine() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            maxWorkloadPriority = config.getInt("self.adaptation.manager.knapsack.max.workload.priority", maxWorkloadPriority);
+            config.setProperty("self.adaptation.manager.knapsack.max.workload.priority", maxWorkloadPriority);
+            timeBudget = config.getLong("self.adaptation.manager.knapsack.time.budget", timeBudget);
+            config.setProperty("self.adaptation.manager.knapsack.time.budget", timeBudget);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(KnapsackDecisionEngine.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    @Override
+    protected Response selectHostToAdapt(Response response) {
+        if (!(response.getCause() instanceof HostEventData)) {
+            return super.selectHostToAdapt(response);
+        }
+        boolean shutdown = response.getActionType().equals(Response.AdaptationType.SHUTDOWN_N_HOSTS);
+        boolean startup = response.getActionType().equals(Response.AdaptationType.STARTUP_N_HOSTS);
+        if (!shutdown && !startup) { //Single hosts are selected in the normal way
+            return super.selectHostToAdapt(response);
+        }
+        HostEventData event = (HostEventData) response.getCause();
+        List<Host> candidates = getCandidateHosts(response, shutdown);
+        if (candidates.isEmpty()) {
+            Logger.getLogger(KnapsackDecisionEngine.class.getName()).log(Level.INFO,
+                    "No hosts were suitable to {0}", (shutdown ? "shut down" : "start up"));
+            return response;
+        }
+        PowerSubsetSelector selector = new PowerSubsetSelector(timeBudget);
+        PowerSnapshot snapshot = getPowerSnapshot();
+        double[] power = new double[candidates.size()];
+        for (int i = 0; i < power.length; i++) {
+            if (selector.isTimeUp()) {
+                //Hosts not priced within the time budget are not considered
+                Logger.getLogger(KnapsackDecisionEngine.class.getName()).log(Level.INFO,
+                        "Time budget used obtaining host power, considering {0} of {1} hosts", new Object[]{i, power.length});
+                power = Arrays.copyOf(power, i);
+                break;
+            }
+            Host host = candidates.get(i);
+            /**
+             * Shutting down a host saves its current power, while starting
+             * a host adds at least its idle power.
+             */
+            power[i] = (shutdown ? snapshot.getHostPower(host)
+                    : Math.max(snapshot.getHostPower(host), host.getIdlePowerConsumption()));
+        }
+        /**
+         * The size of the breach when shutting down, or the power headroom
+         * when starting up, i.e. the distance of the raw value from the
+         * guarantee.
+         */
+        double target = event.getDeviationBetweenRawAndGuarantee(true);
+        PowerSubsetSelector.Selection selection = (shutdown ? selector.select(power, target)
+                : selector.selectAtMost(power, target));
+        StringBuilder hosts = new StringBuilder();
+        for (Integer index : selection.getSelected()) {
+            if (hosts.length() > 0) {
+                hosts.append(",");
+            }
+            hosts.append(candidates.get(index).getHostName());
+        }
+        event.setHost(hosts.toString());
+        String report = "POWER_TARGET=" + target + ";POWER_SELECTED=" + selection.getPower();
+        response.appendAdaptationDetails(report);
+        Logger.getLogger(KnapsackDecisionEngine.class.getName()).log(Level.INFO,
+                "Selected {0} hosts covering {1} W of a {2} W target ({3}% met{4})",
+                new Object[]{selection.getSelected().size(), selection.getPower(), target,
+                    Math.round(selection.getFractionMet() * 100), (selection.isApproximate() ? ", approximate" : "")});
+        return response;
+    }
+
+    /**
+     * This lists the hosts that may be shut down or started, in the order
+     * they are preferred.
+     *
+     * @param response The response the hosts are being selected for
+     * @param shutdown If hosts are being shut down, otherwise they are being
+     * started
+     * @return The hosts that may be selected
+     */
+    private List<Host> getCandidateHosts(Response response, boolean shutdown) {
+        String accelerated = response.getAdaptationDetails() == null ? null
+                : Response.getAdaptationDetail(response.getAdaptationDetails(), ACCELERATED);
+        HashMap<String, Integer> workloadPriority = new HashMap<>();
+        if (shutdown && getActuator() != null) {
+            for (HostWorkload workload : HostWorkload.getHostWorkloads(getActuator().getTasks())) {
+                workloadPriority.put(workload.getHost().getHostName(), workload.getPriority());
+            }
+        }
+        List<Host> hosts = getHostList(getHostRanking());
+        if (shutdown) {
+            Collections.reverse(hosts); //largest first (i.e. power consumer)
+        }
+        List<Host> answer = new ArrayList<>();
+        for (Host host : hosts) {
+            if (shutdown && !host.isAvailable()) {
+                continue;
+            }
+            //avoid down hosts but not drained hosts
+            if (!shutdown && (host.isAvailable() || host.getState().trim().toLowerCase().contains("down"))) {
+                continue;
+            }
+            if (accelerated != null && Boolean.parseBoolean(accelerated) != host.hasAccelerator()) {
+                continue;
+            }
+            Integer priority = workloadPriority.get(host.getHostName());
+            if (priority != null && priority > maxWorkloadPriority) {
+                continue;
+            }
+            answer.add(host);
+        }
+        return answer;
+    }
+
+}
@@ -44,6 +44,9 @@ import java.util.logging.Logger;
  */
 public class LastTaskCreatedDecisionEngine extends AbstractDecisionEngine {
 
+    //The ranking is kept so that the index of ranked hosts can be reused between decisions
+    private final Comparator<Host> hostRanking = new HostIdlePower();
+
     /**
      * The decision logic for selecting an application to adapt. In this case it
      * selects the last application to start to adapt in the case of hardware
@@ -128,7 +131,7 @@ public class LastTaskCreatedDecisionEngine extends AbstractDecisionEngine {
      */
     @Override    
     public Comparator<Host> getHostRanking() {
-        return new HostIdlePower();
+        return hostRanking;
     }    
 
     /**
@@ -0,0 +1,484 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import static eu.tango.self.adaptation.manager.rules.datatypes.Response.ADAPTATION_DETAIL_ACTUATOR_NOT_FOUND;
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.math3.optim.MaxIter;
+import org.apache.commons.math3.optim.PointValuePair;
+import org.apache.commons.math3.optim.linear.LinearConstraint;
+import org.apache.commons.math3.optim.linear.LinearConstraintSet;
+import org.apache.commons.math3.optim.linear.LinearObjectiveFunction;
+import org.apache.commons.math3.optim.linear.NoFeasibleSolutionException;
+import org.apache.commons.math3.optim.linear.NonNegativeConstraint;
+import org.apache.commons.math3.optim.linear.Relationship;
+import org.apache.commons.math3.optim.linear.SimplexSolver;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+
+/**
+ * This decision engine shares out a breach of the cluster's power cap (i.e.
+ * HOST:ALL:power) amongst the running jobs, rather than adapting a single job
+ * at a time. A linear program decides how much power to take from each group
+ * of jobs, where taking a watt from a job costs more the less flexible its
+ * application type is and the higher its priority. Each job's power may be
+ * reduced from its current power down to zero, unless its application type is
+ * protected, in which case it keeps its current power. The reductions are then
+ * turned into actions: malleable jobs lose tasks, mouldable jobs lose CPUs and
+ * all other jobs are paused. The first action is given as the response, the
+ * remainder as its additional responses.
+ *
+ * The engine only acts upon PAUSE_APP, REMOVE_TASK and REMOVE_CPU responses to
+ * a breach of the cluster's power cap, in all other respects it behaves as the
+ * job priority decision engine.
+ *
+ * @author Richard Kavanagh
+ */
+public class PowerCapAllocationDecisionEngine extends JobPriorityDecisionEngine {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private static final String CLUSTER_POWER = "HOST:ALL:power";
+    private static final String MALLEABLE = "MALLEABLE";
+    private static final String MOULDABLE = "MOULDABLE";
+    private int priorityBands = 10;
+    private int maxIterations = 1000;
+    private final HashSet<String> protectedTypes = new HashSet<>();
+
+    public PowerCapAllocationDecisionEngine() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            priorityBands = config.getInt("self.adaptation.manager.power.allocation.priority.bands", priorityBands);
+            config.setProperty("self.adaptation.manager.power.allocation.priority.bands", priorityBands);
+            maxIterations = config.getInt("self.adaptation.manager.power.allocation.max.iterations", maxIterations);
+            config.setProperty("self.adaptation.manager.power.allocation.max.iterations", maxIterations);
+            String types = config.getString("self.adaptation.manager.power.allocation.protected.types", "");
+            config.setProperty("self.adaptation.manager.power.allocation.protected.types", types);
+            for (String type : types.split(",")) {
+                if (!type.trim().isEmpty()) {
+                    protectedTypes.add(type.trim().toUpperCase());
+                }
+            }
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(PowerCapAllocationDecisionEngine.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        priorityBands = Math.max(1, priorityBands);
+    }
+
+    @Override
+    public Response selectApplicationToAdapt(Response response) {
+        if (!isClusterPowerBreach(response)) {
+            return super.selectApplicationToAdapt(response);
+        }
+        return allocatePowerCap(response);
+    }
+
+    @Override
+    public Response deleteTask(Response response) {
+        if (!isClusterPowerBreach(response)) {
+            return super.deleteTask(response);
+        }
+        return allocatePowerCap(response);
+    }
+
+    /**
+     * This decides upon the set of actions that bring the cluster's power
+     * back under its cap.
+     *
+     * @param response The response to the power cap being exceeded
+     * @return The response, set to the first action to take, with any further
+     * actions as its additional responses.
+     */
+    private Response allocatePowerCap(Response response) {
+        if (getActuator() == null) {
+            response.setAdaptationDetails(ADAPTATION_DETAIL_ACTUATOR_NOT_FOUND);
+            response.setPossibleToAdapt(false);
+            return response;
+        }
+        List<Job> jobs = getJobs(getPowerSnapshot());
+        double required = response.getCause().getDeviationBetweenRawAndGuarantee(true);
+        long start = System.nanoTime();
+        allocate(jobs, required);
+        long solveTime = System.nanoTime() - start;
+        List<Response> actions = new ArrayList<>();
+        double reduced = 0;
+        for (Job job : jobs) {
+            if (job.reduction > 0) {
+                reduced = reduced + addActions(response, job, actions);
+            }
+        }
+        Logger.getLogger(PowerCapAllocationDecisionEngine.class.getName()).log(Level.INFO,
+                "Allocated a {0} W reduction amongst {1} jobs in {2} ms, giving {3} actions expected to save {4} W",
+                new Object[]{required, jobs.size(), solveTime / 1000000.0, actions.size(), reduced});
+        if (actions.isEmpty()) {
+            response.setAdaptationDetails("Could not find a job to reduce the power of.");
+            response.setPossibleToAdapt(false);
+            return response;
+        }
+        Response first = actions.get(0);
+        response.setCause(first.getCause());
+        response.setActionType(first.getActionType());
+        response.setTaskId(first.getTaskId());
+        String report = "POWER_TARGET=" + required + ";POWER_SELECTED=" + reduced;
+        response.appendAdaptationDetails(report);
+        for (Response action : actions.subList(1, actions.size())) {
+            response.addAdditionalResponse(action);
+        }
+        return response;
+    }
+
+    /**
+     * This indicates if the response is one this engine should decide upon,
+     * i.e. a job level response to the cluster's power cap being exceeded.
+     *
+     * @param response The response to check
+     * @return If the response is to be handled by allocating the power cap
+     * across the running jobs.
+     */
+    private boolean isClusterPowerBreach(Response response) {
+        if (!(response.getCause() instanceof HostEventData)) {
+            return false;
+        }
+        HostEventData cause = (HostEventData) response.getCause();
+        if (!CLUSTER_POWER.equals(cause.getHost()) && !CLUSTER_POWER.equals(cause.getAgreementTerm())) {
+            return false;
+        }
+        if (cause.getRawValue() <= cause.getGuaranteedValue()) {
+            return false;
+        }
+        switch (response.getActionType()) {
+            case PAUSE_APP:
+            case REMOVE_TASK:
+            case REMOVE_CPU:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * This lists the running jobs, along with their power consumption.
+     *
+     * @param snapshot The power measurements to use
+     * @return The list of running jobs
+     */
+    private List<Job> getJobs(PowerSnapshot snapshot) {
+        LinkedHashMap<String, Job> jobs = new LinkedHashMap<>();
+        for (ApplicationOnHost task : getActuator().getTasks()) {
+            String key = task.getName() + ":" + task.getId();
+            Job job = jobs.get(key);
+            if (job == null) {
+                job = new Job(task);
+                jobs.put(key, job);
+            }
+            double power = snapshot.getTaskPower(task.getName(), task.getId() + "", task.getAllocatedTo().getId());
+            job.tasks.add(task);
+            job.taskPower.add(power);
+            job.power = job.power + power;
+            job.cpus = job.cpus + ClusterSnapshot.getCpuCount(task);
+        }
+        List<Job> answer = new ArrayList<>(jobs.values());
+        setWeights(answer);
+        return answer;
+    }
+
+    /**
+     * This sets the cost of taking a watt from each job.
+     *
+     * @param jobs The jobs to set the weights of
+     */
+    private void setWeights(List<Job> jobs) {
+        //Priorities are split into bands, so that jobs may be grouped together
+        TreeSet<Integer> priorities = new TreeSet<>();
+        for (Job job : jobs) {
+            priorities.add(job.priority);
+        }
+        List<Integer> ordered = new ArrayList<>(priorities);
+        for (Job job : jobs) {
+            int band = (int) ((long) Collections.binarySearch(ordered, job.priority) * priorityBands / ordered.size());
+            job.weight = (1 + job.typeRank) * (1 + band);
+        }
+    }
+
+    /**
+     * This shares a power reduction amongst a set of jobs that are described
+     * only by their application type, priority and power, rather than being
+     * taken from the running jobs. This allows the cost of the allocation to
+     * be measured against the count of jobs.
+     *
+     * @param types The application type of each job
+     * @param priorities The priority of each job
+     * @param power The power of each job
+     * @param required The total power reduction required
+     * @return The power to take from each job
+     */
+    public double[] allocate(String[] types, int[] priorities, double[] power, double required) {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < power.length; i++) {
+            Job job = new Job("job", i, types[i], priorities[i]);
+            job.power = power[i];
+            jobs.add(job);
+        }
+        setWeights(jobs);
+        allocate(jobs, required);
+        double[] answer = new double[jobs.size()];
+        for (int i = 0; i < answer.length; i++) {
+            answer[i] = jobs.get(i).reduction;
+        }
+        return answer;
+    }
+
+    /**
+     * This decides how much power to take from each job, so that the total
+     * reduction meets the amount required at the least cost. Jobs of equal
+     * weight are grouped together, so that the linear program stays small no
+     * matter how many jobs are running. Within a group the largest jobs give
+     * up their power first, so that the fewest jobs are disrupted.
+     *
+     * @param jobs The jobs to take power from, their reductions are set
+     * @param required The total power reduction required
+     */
+    private void allocate(List<Job> jobs, double required) {
+        LinkedHashMap<Integer, List<Job>> groups = new LinkedHashMap<>();
+        for (Job job : jobs) {
+            if (job.power <= 0 || protectedTypes.contains(job.type)) {
+                continue;
+            }
+            List<Job> group = groups.get(job.weight);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(job.weight, group);
+            }
+            group.add(job);
+        }
+        if (groups.isEmpty()) {
+            return;
+        }
+        int n = groups.size();
+        double[] weights = new double[n];
+        double[] available = new double[n];
+        int i = 0;
+        for (List<Job> group : groups.values()) {
+            weights[i] = group.get(0).weight;
+            for (Job job : group) {
+                available[i] = available[i] + job.power;
+            }
+            i++;
+        }
+        double[] reduction = solve(weights, available, required);
+        i = 0;
+        for (List<Job> group : groups.values()) {
+            Collections.sort(group, new Comparator<Job>() {
+                @Override
+                public int compare(Job o1, Job o2) {
+                    return Double.compare(o2.power, o1.power);
+                }
+            });
+            double remaining = reduction[i];
+            for (Job job : group) {
+                if (remaining <= 0) {
+                    break;
+                }
+                job.reduction = Math.min(job.power, remaining);
+                remaining = remaining - job.reduction;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * This solves the linear program: minimise the sum of w_i * r_i, such that
+     * the sum of r_i is at least the required reduction and 0 <= r_i <= a_i.
+     *
+     * @param weights The cost of reducing each group's power by a watt
+     * @param available The power that may be taken from each group
+     * @param required The total power reduction required
+     * @return The power to take from each group. If the required reduction
+     * can't be met, all the available power is taken.
+     */
+    private double[] solve(double[] weights, double[] available, double required) {
+        int n = weights.length;
+        double total = 0;
+        for (double value : available) {
+            total = total + value;
+        }
+        if (total <= required) {
+            Logger.getLogger(PowerCapAllocationDecisionEngine.class.getName()).log(Level.WARNING,
+                    "The running jobs only use {0} W, so a {1} W reduction can't be met", new Object[]{total, required});
+            return available.clone();
+        }
+        List<LinearConstraint> constraints = new ArrayList<>();
+        constraints.add(new LinearConstraint(ones(n), Relationship.GEQ, required));
+        for (int i = 0; i < n; i++) {
+            double[] coefficients = new double[n];
+            coefficients[i] = 1;
+            constraints.add(new LinearConstraint(coefficients, Relationship.LEQ, available[i]));
+        }
+        try {
+            PointValuePair solution = new SimplexSolver().optimize(new MaxIter(maxIterations),
+                    new LinearObjectiveFunction(weights, 0),
+                    new LinearConstraintSet(constraints),
+                    GoalType.MINIMIZE,
+                    new NonNegativeConstraint(true));
+            return solution.getPoint();
+        } catch (NoFeasibleSolutionException ex) {
+            Logger.getLogger(PowerCapAllocationDecisionEngine.class.getName()).log(Level.WARNING,
+                    "No feasible power allocation was found, all available power will be reduced", ex);
+            return available.clone();
+        }
+    }
+
+    /**
+     * @param n The length of the array
+     * @return An array of length n filled with ones
+     */
+    private static double[] ones(int n) {
+        double[] answer = new double[n];
+        Arrays.fill(answer, 1);
+        return answer;
+    }
+
+    /**
+     * This turns a job's power reduction into the actions that achieve it.
+     * Malleable jobs have their most power hungry tasks removed, mouldable
+     * jobs have CPUs removed and all other jobs are paused. Each CPU removed
+     * is expected to save the job's power divided by its count of CPUs. If
+     * the reduction is so large that the job would lose all its tasks, or more
+     * CPUs than the actuator will remove, it is paused instead.
+     *
+     * @param response The response to the power cap being exceeded
+     * @param job The job to reduce the power of
+     * @param actions The list of actions to add to
+     * @return The power the actions are expected to save
+     */
+    private double addActions(Response response, Job job, List<Response> actions) {
+        if (job.type.equals(MALLEABLE) && job.tasks.size() > 1) {
+            Integer[] order = new Integer[job.tasks.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final List<Double> taskPower = job.taskPower;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return Double.compare(taskPower.get(o2), taskPower.get(o1));
+                }
+            });
+            double saved = 0;
+            List<Response> removals = new ArrayList<>();
+            for (int i = 0; i < order.length - 1 && saved < job.reduction; i++) {
+                Response removal = createAction(response, job, Response.AdaptationType.REMOVE_TASK);
+                removal.setTaskId(job.tasks.get(order[i]).getAllocatedTo().getId() + "");
+                removals.add(removal);
+                saved = saved + taskPower.get(order[i]);
+            }
+            if (saved >= job.reduction) {
+                actions.addAll(removals);
+                return saved;
+            }
+        } else if (job.type.equals(MOULDABLE)) {
+            double powerPerCpu = job.power / job.cpus;
+            int cpus = (int) Math.ceil(job.reduction / powerPerCpu);
+            if (cpus <= job.cpus - ClusterSnapshot.MIN_CPU_COUNT) {
+                for (int i = 0; i < cpus; i++) {
+                    actions.add(createAction(response, job, Response.AdaptationType.REMOVE_CPU));
+                }
+                return cpus * powerPerCpu;
+            }
+        }
+        actions.add(createAction(response, job, Response.AdaptationType.PAUSE_APP));
+        return job.power;
+    }
+
+    /**
+     * This creates an action against a job, in response to the cluster's
+     * power cap being exceeded.
+     *
+     * @param response The response to the power cap being exceeded
+     * @param job The job to act against
+     * @param type The type of action
+     * @return The action to take against the job
+     */
+    private Response createAction(Response response, Job job, Response.AdaptationType type) {
+        EventData event = response.getCause();
+        ApplicationEventData cause = new ApplicationEventData(event.getTime(),
+                event.getRawValue(), event.getGuaranteedValue(), event.getType(),
+                event.getGuaranteeOperator(), job.name, job.id + "",
+                event.getGuaranteeid(), event.getAgreementTerm());
+        Response answer = new Response(getActuator(), cause, type);
+        answer.setAdaptationDetails(response.getAdaptationDetails());
+        answer.setTaskId(job.id + "");
+        return answer;
+    }
+
+    /**
+     * A running job, along with its power consumption and the cost of taking
+     * power from it.
+     */
+    private static class Job {
+
+        private final String name;
+        private final int id;
+        private final String type;
+        private final int typeRank;
+        private final int priority;
+        private final ArrayList<ApplicationOnHost> tasks = new ArrayList<>();
+        private final ArrayList<Double> taskPower = new ArrayList<>();
+        private double power = 0;
+        private int cpus = 0;
+        private int weight = 1;
+        private double reduction = 0;
+
+        public Job(ApplicationOnHost task) {
+            this(task.getName(), task.getId(), ClusterSnapshot.getApplicationType(task), ClusterSnapshot.getPriority(task));
+        }
+
+        public Job(String name, int id, String type, int priority) {
+            this.name = name;
+            this.id = id;
+            this.type = type;
+            typeRank = ClusterSnapshot.getTypeRank(type);
+            this.priority = priority;
+        }
+
+    }
+
+}
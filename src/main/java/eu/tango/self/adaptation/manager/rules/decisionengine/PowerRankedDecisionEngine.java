@@ -35,6 +35,9 @@ import java.util.List;
  */
 public class PowerRankedDecisionEngine extends AbstractDecisionEngine {
 
+    //The ranking is kept so that the index of ranked hosts can be reused between decisions
+    private final Comparator<Host> hostRanking = new HostIdlePower();
+
     /**
      * The decision logic for selecting an application to adapt. In this case
      * it gets the highest power application to adapt in the case of hardware based
@@ -127,7 +130,7 @@ public class PowerRankedDecisionEngine extends AbstractDecisionEngine {
      */
     @Override    
     public Comparator<Host> getHostRanking() {
-        return new HostIdlePower();
+        return hostRanking;
     }    
 
     /**
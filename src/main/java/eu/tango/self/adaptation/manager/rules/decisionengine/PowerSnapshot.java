@@ -0,0 +1,224 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.actuators.ActuatorInvoker;
+import eu.tango.self.adaptation.manager.io.TimeSource;
+import eu.tango.self.adaptation.manager.qos.PowerBudgetLedger;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This holds the power measurements used by a decision engine while it makes
+ * a decision. Each application's and host's power is obtained from the power
+ * source, normally the energy modeller, once, the first time it is needed,
+ * after which the same value is given to every query made against the
+ * snapshot. This avoids the power source being queried once per task, per
+ * helper method, for every decision.
+ * The measurements obtained are also recorded in the power budget ledger.
+ *
+ * @author Richard Kavanagh
+ */
+public class PowerSnapshot {
+
+    private final HostPowerSource source;
+    private final ActuatorInvoker actuator;
+    private final long creationTime = TimeSource.currentTimeMillis();
+    private final HashMap<String, ApplicationPower> applications = new HashMap<>();
+    private final HashMap<String, HashMap<Integer, Double>> taskPower = new HashMap<>();
+    private final HashMap<String, Double> hostPower = new HashMap<>();
+
+    /**
+     * This creates a new empty power snapshot.
+     *
+     * @param source The source to obtain power measurements from
+     * @param actuator The actuator to obtain an application's tasks from
+     */
+    public PowerSnapshot(HostPowerSource source, ActuatorInvoker actuator) {
+        this.source = source;
+        this.actuator = actuator;
+    }
+
+    /**
+     * @return The time this snapshot was created, in milliseconds since the
+     * epoch
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * This indicates if the snapshot is older than a given age.
+     *
+     * @param maxAge The maximum age in milliseconds
+     * @return If the snapshot is older than the maximum age given
+     */
+    public boolean isOlderThan(long maxAge) {
+        return TimeSource.currentTimeMillis() - creationTime > maxAge;
+    }
+
+    /**
+     * This gets the power measurements of an application, obtaining them
+     * from the power source in a single request if this is the first
+     * time they have been asked for.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The power measurements of the application
+     */
+    private synchronized ApplicationPower getApplication(String applicationName, String deploymentId) {
+        String key = applicationName + ":" + deploymentId;
+        ApplicationPower answer = applications.get(key);
+        if (answer == null) {
+            answer = new ApplicationPower();
+            List<ApplicationOnHost> tasks = source.getApplicationTasks(applicationName, Integer.parseInt(deploymentId));
+            answer.found = tasks != null;
+            if (tasks != null) {
+                List<Double> records = source.getApplicationPower(tasks);
+                answer.recordFound = records != null;
+                if (records != null) {
+                    answer.count = records.size();
+                    for (double power : records) {
+                        answer.total = answer.total + power;
+                        if (power > 0) {
+                            answer.positiveTotal = answer.positiveTotal + power;
+                        }
+                    }
+                }
+            }
+            applications.put(key, answer);
+            PowerBudgetLedger.getInstance().recordApplicationPower(applicationName, deploymentId,
+                    answer.total, answer.getAverage());
+        }
+        return answer;
+    }
+
+    /**
+     * This gets the total power usage of an application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The power usage of the named application.
+     */
+    public double getTotalPower(String applicationName, String deploymentId) {
+        return getApplication(applicationName, deploymentId).total;
+    }
+
+    /**
+     * This gets the average power usage of the tasks of an application.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return The average power usage of the application's tasks, zero is
+     * given if this information is unavailable.
+     */
+    public double getAveragePower(String applicationName, String deploymentId) {
+        return getApplication(applicationName, deploymentId).getAverage();
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return If the power source was able to find the application
+     */
+    public boolean isApplicationFound(String applicationName, String deploymentId) {
+        return getApplication(applicationName, deploymentId).found;
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @return If the power source was able to provide a power record for
+     * the application
+     */
+    public boolean isApplicationRecordFound(String applicationName, String deploymentId) {
+        return getApplication(applicationName, deploymentId).recordFound;
+    }
+
+    /**
+     * This gets the power usage of a task. The first time any task of a
+     * deployment is asked for the power of every task in the deployment is
+     * obtained, so that ranking the tasks of a deployment only lists them
+     * once.
+     *
+     * @param applicationName The name of the application
+     * @param deploymentId The id of the deployment instance of the application
+     * @param taskId The task id, i.e. the id of the host the task is on
+     * @return The power usage of the task, zero if the task was not found
+     */
+    public synchronized double getTaskPower(String applicationName, String deploymentId, int taskId) {
+        String key = applicationName + ":" + deploymentId;
+        HashMap<Integer, Double> deployment = taskPower.get(key);
+        if (deployment == null) {
+            deployment = new HashMap<>();
+            List<ApplicationOnHost> tasks = actuator.getTasks(applicationName, deploymentId);
+            if (tasks != null) {
+                for (ApplicationOnHost task : tasks) {
+                    deployment.put(task.getAllocatedTo().getId(), source.getTaskPower(task));
+                }
+            }
+            taskPower.put(key, deployment);
+        }
+        Double answer = deployment.get(taskId);
+        return answer == null ? 0.0 : answer;
+    }
+
+    /**
+     * This gets the power usage of a host.
+     *
+     * @param host The host to get the power usage of
+     * @return The power usage of the host
+     */
+    public synchronized double getHostPower(Host host) {
+        Double answer = hostPower.get(host.getHostName());
+        if (answer == null) {
+            answer = source.getHostPower(host);
+            hostPower.put(host.getHostName(), answer);
+            PowerBudgetLedger.getInstance().recordHostPower(host.getHostName(), answer);
+        }
+        return answer;
+    }
+
+    /**
+     * The power measurements of an application.
+     */
+    private static class ApplicationPower {
+
+        private boolean found = false;
+        private boolean recordFound = false;
+        private int count = 0;
+        private double total = 0.0;
+        private double positiveTotal = 0.0;
+
+        /**
+         * @return The average power of the application's tasks, zero if it
+         * is unavailable
+         */
+        private double getAverage() {
+            if (count == 0 || positiveTotal == 0) {
+                return 0.0;
+            }
+            return positiveTotal / (double) count;
+        }
+
+    }
+
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This picks a subset of hosts whose combined power meets a target while
+ * overshooting it by as little as possible, i.e. the subset with the smallest
+ * total power that is at least the target, or alternatively the subset with
+ * the largest total power that stays within a limit. This is solved as a
+ * subset sum problem by dynamic programming over the power values, rounded to
+ * a resolution that keeps the table to a fixed size. If the time budget runs
+ * out the hosts are instead picked greedily in the order given. The time
+ * budget runs from when the selector is created, so the time spent obtaining
+ * the power values can be counted against it.
+ *
+ * @author Richard Kavanagh
+ */
+public class PowerSubsetSelector {
+
+    private static final int MAX_BUCKETS = 1 << 16;
+    private final long timeBudget;
+    private final long start = System.nanoTime();
+
+    /**
+     * This creates a new power subset selector.
+     *
+     * @param timeBudget The time in milliseconds that may be spent, from now,
+     * searching for the best subset
+     */
+    public PowerSubsetSelector(long timeBudget) {
+        this.timeBudget = TimeUnit.MILLISECONDS.toNanos(timeBudget);
+    }
+
+    /**
+     * @return If the time budget has been used up
+     */
+    public boolean isTimeUp() {
+        return System.nanoTime() - start > timeBudget;
+    }
+
+    /**
+     * This selects the items whose combined power meets the target, with the
+     * least overshoot. Items earlier in the list are preferred over later
+     * items of the same power. If the target can't be met all the items with
+     * power are selected.
+     *
+     * @param power The power of each item, in order of preference
+     * @param target The power to be met
+     * @return The items selected and the power they cover
+     */
+    public Selection select(double[] power, double target) {
+        if (power.length == 0) {
+            return new Selection(new ArrayList<Integer>(), 0.0, target, true);
+        }
+        if (target <= 0) { //Any single item meets the target
+            List<Integer> answer = new ArrayList<>();
+            answer.add(0);
+            return new Selection(answer, Math.max(0, power[0]), target, true);
+        }
+        double total = 0;
+        double maxPower = 0;
+        for (double value : power) {
+            if (value > 0) {
+                total = total + value;
+                maxPower = Math.max(maxPower, value);
+            }
+        }
+        if (total < target) { //The target can't be met, so everything is needed
+            List<Integer> answer = new ArrayList<>();
+            for (int i = 0; i < power.length; i++) {
+                if (power[i] > 0) {
+                    answer.add(i);
+                }
+            }
+            return new Selection(answer, total, target, true);
+        }
+        /**
+         * The best subset is less than the target plus the largest item, as
+         * otherwise an item could be removed while still meeting the target.
+         */
+        double resolution = (target + maxPower) / (MAX_BUCKETS - 1);
+        int targetBucket = (int) Math.ceil(target / resolution);
+        int buckets = Math.min(MAX_BUCKETS, targetBucket + (int) Math.floor(maxPower / resolution) + 1);
+        boolean[] reached = new boolean[buckets];
+        //The item that first reached each bucket, which allows the subset to be recovered
+        int[] reachedBy = new int[buckets];
+        reached[0] = true;
+        for (int i = 0; i < power.length; i++) {
+            if (isTimeUp()) {
+                return selectGreedily(power, target);
+            }
+            //Rounding down ensures the subset really does meet the target
+            int weight = (power[i] > 0 ? (int) Math.floor(power[i] / resolution) : 0);
+            if (weight <= 0) {
+                continue;
+            }
+            for (int sum = buckets - 1 - weight; sum >= 0; sum--) {
+                if (reached[sum] && !reached[sum + weight]) {
+                    reached[sum + weight] = true;
+                    reachedBy[sum + weight] = i;
+                }
+            }
+            if (reached[targetBucket]) {
+                break; //The target can't be met more closely
+            }
+        }
+        int best = -1;
+        for (int sum = targetBucket; sum < buckets; sum++) {
+            if (reached[sum]) {
+                best = sum;
+                break;
+            }
+        }
+        if (best < 0) { //Rounding has lost too much, so fall back
+            return selectGreedily(power, target);
+        }
+        List<Integer> answer = new ArrayList<>();
+        double selected = 0;
+        int sum = best;
+        while (sum > 0) {
+            int item = reachedBy[sum];
+            answer.add(0, item);
+            selected = selected + power[item];
+            sum = sum - (int) Math.floor(power[item] / resolution);
+        }
+        return new Selection(answer, selected, target, false);
+    }
+
+    /**
+     * This selects the items whose combined power is as large as possible
+     * without exceeding the limit, i.e. the power headroom available. Items
+     * earlier in the list are preferred over later items of the same power.
+     *
+     * @param power The power of each item, in order of preference
+     * @param limit The power that may not be exceeded
+     * @return The items selected and the power they cover
+     */
+    public Selection selectAtMost(double[] power, double limit) {
+        if (power.length == 0 || limit <= 0) {
+            return new Selection(new ArrayList<Integer>(), 0.0, limit, true);
+        }
+        double resolution = limit / (MAX_BUCKETS - 1);
+        int buckets = MAX_BUCKETS;
+        boolean[] reached = new boolean[buckets];
+        int[] reachedBy = new int[buckets];
+        reached[0] = true;
+        int best = 0;
+        for (int i = 0; i < power.length; i++) {
+            if (isTimeUp()) {
+                return selectGreedilyAtMost(power, limit);
+            }
+            //Rounding up ensures the subset really does stay within the limit
+            int weight = (power[i] > 0 ? (int) Math.ceil(power[i] / resolution) : 0);
+            if (weight <= 0 || weight >= buckets) {
+                continue;
+            }
+            for (int sum = buckets - 1 - weight; sum >= 0; sum--) {
+                if (reached[sum] && !reached[sum + weight]) {
+                    reached[sum + weight] = true;
+                    reachedBy[sum + weight] = i;
+                    best = Math.max(best, sum + weight);
+                }
+            }
+            if (best == buckets - 1) {
+                break; //The limit can't be approached more closely
+            }
+        }
+        List<Integer> answer = new ArrayList<>();
+        double selected = 0;
+        int sum = best;
+        while (sum > 0) {
+            int item = reachedBy[sum];
+            answer.add(0, item);
+            selected = selected + power[item];
+            sum = sum - (int) Math.ceil(power[item] / resolution);
+        }
+        return new Selection(answer, selected, limit, false);
+    }
+
+    /**
+     * This selects items in the order given until the target is met.
+     *
+     * @param power The power of each item, in order of preference
+     * @param target The power to be met
+     * @return The items selected and the power they cover
+     */
+    private Selection selectGreedily(double[] power, double target) {
+        List<Integer> answer = new ArrayList<>();
+        double selected = 0;
+        for (int i = 0; i < power.length && selected < target; i++) {
+            if (power[i] > 0) {
+                answer.add(i);
+                selected = selected + power[i];
+            }
+        }
+        return new Selection(answer, selected, target, true);
+    }
+
+    /**
+     * This selects items in the order given, skipping any that would exceed
+     * the limit.
+     *
+     * @param power The power of each item, in order of preference
+     * @param limit The power that may not be exceeded
+     * @return The items selected and the power they cover
+     */
+    private Selection selectGreedilyAtMost(double[] power, double limit) {
+        List<Integer> answer = new ArrayList<>();
+        double selected = 0;
+        for (int i = 0; i < power.length; i++) {
+            if (power[i] > 0 && selected + power[i] <= limit) {
+                answer.add(i);
+                selected = selected + power[i];
+            }
+        }
+        return new Selection(answer, selected, limit, true);
+    }
+
+    /**
+     * The items selected to meet a power target.
+     */
+    public static class Selection {
+
+        private final List<Integer> selected;
+        private final double power;
+        private final double target;
+        private final boolean approximate;
+
+        public Selection(List<Integer> selected, double power, double target, boolean approximate) {
+            this.selected = selected;
+            this.power = power;
+            this.target = target;
+            this.approximate = approximate;
+        }
+
+        /**
+         * @return The indexes of the items selected
+         */
+        public List<Integer> getSelected() {
+            return selected;
+        }
+
+        /**
+         * @return The combined power of the items selected
+         */
+        public double getPower() {
+            return power;
+        }
+
+        /**
+         * @return The power target that was to be met, or the limit that was
+         * not to be exceeded
+         */
+        public double getTarget() {
+            return target;
+        }
+
+        /**
+         * @return The fraction of the power target that was met, values
+         * above 1 indicate the target was overshot
+         */
+        public double getFractionMet() {
+            if (target <= 0) {
+                return 1.0;
+            }
+            return power / target;
+        }
+
+        /**
+         * @return If the selection was made greedily, or the target could not
+         * be met, rather than being the closest subset found by the search
+         */
+        public boolean isApproximate() {
+            return approximate;
+        }
+
+    }
+
+}
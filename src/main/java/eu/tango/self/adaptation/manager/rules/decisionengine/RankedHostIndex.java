@@ -0,0 +1,292 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.rules.decisionengine.comparators.RankingKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This keeps hosts in the order given by a host ranking, so that the hosts to
+ * start up or shut down can be selected without sorting every host for every
+ * decision. Hosts that are available (i.e. that could be shut down) and hosts
+ * that are idle but not down (i.e. that could be started) are held in
+ * separate sorted sets. When the host list is refreshed, only hosts whose
+ * state has changed are moved within the index. If the ranking provides sort
+ * keys, each host's key is worked out as it is indexed and the hosts are
+ * ordered by comparing keys.
+ *
+ * @author Richard Kavanagh
+ */
+public class RankedHostIndex {
+
+    private final Comparator<Host> ranking;
+    private final RankingKey<Host> rankingKey;
+    private final HashMap<String, IndexedHost> hosts = new HashMap<>();
+    private final TreeSet<IndexedHost> available;
+    private final TreeSet<IndexedHost> startable;
+
+    /**
+     * This selects the hosts to adapt, as they are walked in ranked order.
+     */
+    public interface HostSelector {
+
+        /**
+         * This is called for each host in ranked order, until it indicates
+         * that enough hosts have been selected.
+         *
+         * @param host The next host in the ranking
+         * @return true if enough hosts have been selected, otherwise false
+         */
+        public boolean select(Host host);
+    }
+
+    /**
+     * This creates a new empty host index.
+     *
+     * @param ranking The host ranking to order the hosts by
+     */
+    @SuppressWarnings("unchecked")
+    public RankedHostIndex(Comparator<Host> ranking) {
+        this.ranking = ranking;
+        rankingKey = (ranking instanceof RankingKey ? (RankingKey<Host>) ranking : null);
+        Comparator<IndexedHost> order = new Comparator<IndexedHost>() {
+            @Override
+            public int compare(IndexedHost o1, IndexedHost o2) {
+                int answer;
+                if (rankingKey != null) {
+                    answer = Long.compare(o1.primaryKey, o2.primaryKey);
+                    if (answer == 0) {
+                        answer = Long.compare(o1.secondaryKey, o2.secondaryKey);
+                    }
+                } else {
+                    answer = RankedHostIndex.this.ranking.compare(o1.host, o2.host);
+                }
+                if (answer == 0) { //Hosts ranked equally are kept in order of name
+                    answer = o1.name.compareTo(o2.name);
+                }
+                return answer;
+            }
+        };
+        available = new TreeSet<>(order);
+        startable = new TreeSet<>(order);
+    }
+
+    /**
+     * @return The host ranking that orders this index
+     */
+    public Comparator<Host> getRanking() {
+        return ranking;
+    }
+
+    /**
+     * This brings the index up to date with the current list of hosts. Hosts
+     * whose state is unchanged are left where they are, while new or changed
+     * hosts are placed in their new position and hosts that are no longer
+     * listed are removed.
+     *
+     * @param current The current list of hosts
+     */
+    public synchronized void refresh(Collection<Host> current) {
+        HashSet<String> seen = new HashSet<>();
+        for (Host host : current) {
+            seen.add(host.getHostName());
+            update(host);
+        }
+        Iterator<String> names = hosts.keySet().iterator();
+        while (names.hasNext()) {
+            IndexedHost entry = hosts.get(names.next());
+            if (!seen.contains(entry.name)) {
+                names.remove();
+                unlink(entry);
+            }
+        }
+    }
+
+    /**
+     * This adds a host to the index or updates its position, if its state
+     * has changed since it was last indexed.
+     *
+     * @param host The host to add or update
+     */
+    public synchronized void update(Host host) {
+        IndexedHost entry = hosts.get(host.getHostName());
+        if (entry != null && entry.host == host && entry.isUnchanged()) {
+            return;
+        }
+        if (entry != null) {
+            unlink(entry);
+        }
+        entry = new IndexedHost(host, rankingKey);
+        hosts.put(entry.name, entry);
+        if (entry.isAvailable) {
+            available.add(entry);
+        } else if (!entry.isDown) {
+            startable.add(entry);
+        }
+    }
+
+    /**
+     * This removes a host from the index.
+     *
+     * @param hostName The name of the host to remove
+     */
+    public synchronized void remove(String hostName) {
+        IndexedHost entry = hosts.remove(hostName);
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * This removes an indexed host from the sorted sets it is held in.
+     *
+     * @param entry The indexed host to remove
+     */
+    private void unlink(IndexedHost entry) {
+        if (!available.remove(entry) && !startable.remove(entry)
+                && (entry.isAvailable || !entry.isDown)) {
+            /**
+             * The host has been altered in a way that changes its rank, without
+             * it being updated first, so its position can't be found. The sorted
+             * sets are rebuilt without it.
+             */
+            rebuild(entry);
+        }
+    }
+
+    /**
+     * This rebuilds the sorted sets, leaving out a given host.
+     *
+     * @param excluded The host to leave out
+     */
+    private void rebuild(IndexedHost excluded) {
+        available.clear();
+        startable.clear();
+        for (IndexedHost entry : hosts.values()) {
+            if (entry == excluded) {
+                continue;
+            }
+            if (entry.isAvailable) {
+                available.add(entry);
+            } else if (!entry.isDown) {
+                startable.add(entry);
+            }
+        }
+    }
+
+    /**
+     * This walks the hosts that are available, starting from the highest
+     * ranked host, i.e. the hosts that should be shut down first.
+     *
+     * @param selector The selector that decides when enough hosts are chosen
+     * @return The hosts that were walked
+     */
+    public synchronized List<Host> selectAvailable(HostSelector selector) {
+        return select(available.descendingIterator(), selector);
+    }
+
+    /**
+     * This walks the hosts that are idle but not down, starting from the
+     * lowest ranked host, i.e. the hosts that should be started first.
+     *
+     * @param selector The selector that decides when enough hosts are chosen
+     * @return The hosts that were walked
+     */
+    public synchronized List<Host> selectStartable(HostSelector selector) {
+        return select(startable.iterator(), selector);
+    }
+
+    /**
+     * This walks hosts in order until the selector indicates that enough hosts
+     * have been chosen.
+     *
+     * @param iterator The hosts in the order they should be walked
+     * @param selector The selector that decides when enough hosts are chosen
+     * @return The hosts that were walked
+     */
+    private List<Host> select(Iterator<IndexedHost> iterator, HostSelector selector) {
+        ArrayList<Host> answer = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Host host = iterator.next().host;
+            answer.add(host);
+            if (selector.select(host)) {
+                break;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * @return The count of hosts held in the index
+     */
+    public synchronized int size() {
+        return hosts.size();
+    }
+
+    /**
+     * A host held in the index, along with the state it had when indexed.
+     */
+    private static class IndexedHost {
+
+        private final Host host;
+        private final String name;
+        private final boolean isAvailable;
+        private final boolean isDown;
+        private final double idlePower;
+        private final long primaryKey;
+        private final long secondaryKey;
+
+        public IndexedHost(Host host, RankingKey<Host> rankingKey) {
+            this.host = host;
+            name = host.getHostName();
+            isAvailable = host.isAvailable();
+            isDown = isDown(host);
+            idlePower = host.getIdlePowerConsumption();
+            primaryKey = (rankingKey == null ? 0 : rankingKey.getPrimaryKey(host));
+            secondaryKey = (rankingKey == null ? 0 : rankingKey.getSecondaryKey(host));
+        }
+
+        /**
+         * @param host The host to check
+         * @return If the host is down, drained hosts are not considered down
+         */
+        private static boolean isDown(Host host) {
+            return host.getState() != null && host.getState().trim().toLowerCase().contains("down");
+        }
+
+        /**
+         * @return If the host still has the state it had when it was indexed
+         */
+        private boolean isUnchanged() {
+            return isAvailable == host.isAvailable()
+                    && isDown == isDown(host)
+                    && idlePower == host.getIdlePowerConsumption();
+        }
+
+    }
+
+}
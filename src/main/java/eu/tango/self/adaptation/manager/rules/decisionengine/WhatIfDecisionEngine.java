@@ -0,0 +1,610 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import eu.tango.self.adaptation.manager.rules.decisionengine.ClusterSnapshot.HostState;
+import eu.tango.self.adaptation.manager.rules.decisionengine.ClusterSnapshot.JobState;
+import eu.tango.self.adaptation.manager.rules.decisionengine.ClusterSnapshot.TaskState;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This decision engine considers many possible adaptations before choosing
+ * one, rather than committing to the first plausible one. For a power related
+ * host event it generates a candidate response for each host, job or task the
+ * action could be applied to, for the action type of the rule and for any
+ * alternative action types given by the rule's adaptation details, i.e.
+ * ALTERNATIVES=PAUSE_APP,REMOVE_TASK.
+ *
+ * The candidates are evaluated in parallel against an immutable snapshot of
+ * the cluster, working out the power that would result and the disruption
+ * caused to running jobs. Candidates that resolve the breach are preferred,
+ * then those that disrupt the fewest and most flexible jobs and then those
+ * that overshoot the least. The deadline covers both taking the snapshot,
+ * which for a single host event only holds that host and the jobs upon it,
+ * and the evaluation. If it is passed the best candidate found so far is
+ * used.
+ *
+ * Events that are not about power, or action types that can't be evaluated,
+ * are handled as the job priority decision engine handles them.
+ *
+ * @author Richard Kavanagh
+ */
+public class WhatIfDecisionEngine extends JobPriorityDecisionEngine {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private static final String ALTERNATIVES = "ALTERNATIVES";
+    private static final String CLUSTER_POWER = "HOST:ALL:power";
+    private static final int EVALUATION_BATCH_SIZE = 64;
+    //The disruption of changing the power state of a host
+    private static final double HOST_DISRUPTION = 0.1;
+    private long deadline = 50;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private final ForkJoinPool pool;
+
+    public WhatIfDecisionEngine() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            deadline = config.getLong("self.adaptation.manager.whatif.deadline", deadline);
+            config.setProperty("self.adaptation.manager.whatif.deadline", deadline);
+            parallelism = config.getInt("self.adaptation.manager.whatif.parallelism", parallelism);
+            config.setProperty("self.adaptation.manager.whatif.parallelism", parallelism);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(WhatIfDecisionEngine.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    @Override
+    protected Response makeDecision(Response response) {
+        handleClockEvent(response);
+        if (getActuator() == null || !isEvaluable(response)) {
+            return super.makeDecision(response);
+        }
+        long start = System.nanoTime();
+        HostEventData event = (HostEventData) response.getCause();
+        ClusterSnapshot cluster = createClusterSnapshot(event);
+        List<Candidate> candidates = getCandidates(response, event, cluster);
+        if (candidates.isEmpty()) {
+            return super.makeDecision(response);
+        }
+        Evaluation evaluation = new Evaluation(cluster, event, candidates,
+                start + TimeUnit.MILLISECONDS.toNanos(deadline));
+        evaluate(evaluation);
+        Scored best = evaluation.best.get();
+        Logger.getLogger(WhatIfDecisionEngine.class.getName()).log(Level.INFO,
+                "Evaluated {0} of {1} candidate adaptations in {2} ms",
+                new Object[]{evaluation.evaluated.get(), candidates.size(), (System.nanoTime() - start) / 1000000.0});
+        if (best == null) {
+            return super.makeDecision(response);
+        }
+        apply(response, event, best);
+        return response;
+    }
+
+    /**
+     * This takes a snapshot of the part of the cluster that an event is
+     * about. For an event about a single host this is the host along with
+     * all the tasks of the jobs running on it, otherwise it is the whole
+     * cluster.
+     *
+     * @param event The event being responded to
+     * @return The snapshot of the cluster
+     */
+    private ClusterSnapshot createClusterSnapshot(HostEventData event) {
+        List<Host> hosts = getHostList(null);
+        if (CLUSTER_POWER.equals(event.getHost())) {
+            return new ClusterSnapshot(hosts, getActuator().getTasks(), getPowerSnapshot());
+        }
+        List<Host> scope = new ArrayList<>();
+        for (Host host : hosts) {
+            if (host.getHostName().equals(event.getHost())) {
+                scope.add(host);
+            }
+        }
+        if (scope.isEmpty()) {
+            return new ClusterSnapshot(hosts, getActuator().getTasks(), getPowerSnapshot());
+        }
+        HashSet<String> jobs = new HashSet<>();
+        for (ApplicationOnHost task : getActuator().getTasksOnHost(event.getHost())) {
+            jobs.add(ClusterSnapshot.getJobKey(task.getName(), task.getId()));
+        }
+        List<ApplicationOnHost> tasks = new ArrayList<>();
+        if (!jobs.isEmpty()) {
+            for (ApplicationOnHost task : getActuator().getTasks()) {
+                if (jobs.contains(ClusterSnapshot.getJobKey(task.getName(), task.getId()))) {
+                    tasks.add(task);
+                }
+            }
+        }
+        return new ClusterSnapshot(scope, tasks, getPowerSnapshot());
+    }
+
+    /**
+     * This evaluates the candidates on the fork join pool, waiting no longer
+     * than the deadline.
+     *
+     * @param evaluation The evaluation to perform
+     */
+    private void evaluate(Evaluation evaluation) {
+        EvaluationTask task = new EvaluationTask(evaluation, 0, evaluation.candidates.size());
+        pool.execute(task);
+        long wait = evaluation.deadline - System.nanoTime();
+        try {
+            task.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            task.cancel(true);
+            Logger.getLogger(WhatIfDecisionEngine.class.getName()).log(Level.WARNING,
+                    "The evaluation of candidate adaptations ran past its deadline, the best found so far will be used");
+        } catch (InterruptedException ex) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Logger.getLogger(WhatIfDecisionEngine.class.getName()).log(Level.SEVERE, "The evaluation of candidate adaptations failed", ex);
+        }
+    }
+
+    /**
+     * This indicates if the response is to a power related host event, whose
+     * outcome can be evaluated.
+     *
+     * @param response The response to check
+     * @return If the candidate adaptations for the response can be evaluated
+     */
+    private boolean isEvaluable(Response response) {
+        if (!(response.getCause() instanceof HostEventData)) {
+            return false;
+        }
+        HostEventData event = (HostEventData) response.getCause();
+        if (event.getAgreementTerm() == null || !event.getAgreementTerm().toLowerCase().contains("power")) {
+            return false;
+        }
+        return !getActionTypes(response).isEmpty();
+    }
+
+    /**
+     * This lists the action types that are to be considered for a response,
+     * i.e. the response's own action type along with any alternatives.
+     *
+     * @param response The response to get the action types for
+     * @return The action types whose outcome can be evaluated
+     */
+    private List<Response.AdaptationType> getActionTypes(Response response) {
+        LinkedHashSet<Response.AdaptationType> types = new LinkedHashSet<>();
+        types.add(response.getActionType());
+        String alternatives = (response.getAdaptationDetails() == null ? null : response.getAdaptationDetail(ALTERNATIVES));
+        if (alternatives != null) {
+            for (String alternative : alternatives.split(",")) {
+                Response.AdaptationType type = Response.getAdaptationType(alternative.trim());
+                if (type != null) {
+                    types.add(type);
+                }
+            }
+        }
+        List<Response.AdaptationType> answer = new ArrayList<>();
+        for (Response.AdaptationType type : types) {
+            switch (type) {
+                case SHUTDOWN_HOST:
+                case STARTUP_HOST:
+                case PAUSE_APP:
+                case KILL_APP:
+                case HARD_KILL_APP:
+                case REMOVE_TASK:
+                case REMOVE_CPU:
+                    answer.add(type);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This generates the candidate adaptations for a response. If the event
+     * is about a single host only that host and the work on it is considered,
+     * otherwise the whole cluster is.
+     *
+     * @param response The response to generate candidates for
+     * @param event The event that caused the response
+     * @param cluster The snapshot of the cluster
+     * @return The candidate adaptations
+     */
+    private List<Candidate> getCandidates(Response response, HostEventData event, ClusterSnapshot cluster) {
+        List<Candidate> answer = new ArrayList<>();
+        HostState scope = cluster.getHost(event.getHost());
+        boolean wholeCluster = scope == null || CLUSTER_POWER.equals(event.getHost());
+        List<HostState> hosts = new ArrayList<>();
+        if (wholeCluster) {
+            hosts.addAll(cluster.getHosts());
+        } else {
+            hosts.add(scope);
+        }
+        for (Response.AdaptationType type : getActionTypes(response)) {
+            switch (type) {
+                case SHUTDOWN_HOST:
+                    for (HostState host : hosts) {
+                        if (host.isAvailable()) {
+                            answer.add(new Candidate(type, host.getName(), null, -1, null));
+                        }
+                    }
+                    break;
+                case STARTUP_HOST:
+                    for (HostState host : hosts) {
+                        if (!host.isAvailable() && !host.isDown()) {
+                            answer.add(new Candidate(type, host.getName(), null, -1, null));
+                        }
+                    }
+                    break;
+                case REMOVE_TASK:
+                    for (HostState host : hosts) {
+                        for (TaskState task : host.getTasks()) {
+                            JobState job = cluster.getJob(task.getJobName(), task.getJobId());
+                            //The last task of a job is not removed, the job would need pausing instead
+                            if (job != null && job.getTasks().size() > 1) {
+                                answer.add(new Candidate(type, host.getName(), task.getJobName(), task.getJobId(), task.getHostId() + ""));
+                            }
+                        }
+                    }
+                    break;
+                default: //Job level actions
+                    LinkedHashSet<String> seen = new LinkedHashSet<>();
+                    for (HostState host : hosts) {
+                        for (TaskState task : host.getTasks()) {
+                            if (seen.add(ClusterSnapshot.getJobKey(task.getJobName(), task.getJobId()))) {
+                                answer.add(new Candidate(type, (wholeCluster ? null : host.getName()),
+                                        task.getJobName(), task.getJobId(), task.getJobId() + ""));
+                            }
+                        }
+                    }
+                    break;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This works out the outcome of a candidate adaptation against the
+     * snapshot of the cluster. It only reads from the snapshot, so many
+     * candidates may be scored at once.
+     *
+     * @param evaluation The evaluation the candidate belongs to
+     * @param candidate The candidate to score
+     * @return The outcome of the candidate, null if it can't be worked out
+     */
+    private Scored score(Evaluation evaluation, Candidate candidate) {
+        ClusterSnapshot cluster = evaluation.cluster;
+        HostState host = (candidate.hostName == null ? null : cluster.getHost(candidate.hostName));
+        JobState job = (candidate.jobName == null ? null : cluster.getJob(candidate.jobName, candidate.jobId));
+        double powerChange;
+        double disruption;
+        switch (candidate.type) {
+            case SHUTDOWN_HOST:
+                powerChange = -host.getPower();
+                disruption = HOST_DISRUPTION;
+                LinkedHashSet<String> affected = new LinkedHashSet<>();
+                for (TaskState task : host.getTasks()) {
+                    if (affected.add(ClusterSnapshot.getJobKey(task.getJobName(), task.getJobId()))) {
+                        disruption = disruption + getWeight(cluster.getJob(task.getJobName(), task.getJobId()));
+                    }
+                }
+                break;
+            case STARTUP_HOST:
+                powerChange = Math.max(host.getPower(), host.getIdlePower());
+                disruption = HOST_DISRUPTION;
+                break;
+            case REMOVE_TASK:
+                powerChange = -getPower(job, host);
+                disruption = getWeight(job) / job.getTasks().size();
+                break;
+            case REMOVE_CPU:
+                if (job.getCpuCount() <= ClusterSnapshot.MIN_CPU_COUNT) {
+                    return null; //The actuator won't remove any more CPUs
+                }
+                powerChange = -job.getPowerPerCpu();
+                disruption = getWeight(job) / job.getCpuCount();
+                break;
+            case KILL_APP:
+            case HARD_KILL_APP:
+                //Killed work is lost, rather than being resumed later
+                powerChange = -getPower(job, host);
+                disruption = getWeight(job) * 4;
+                break;
+            default: //PAUSE_APP
+                powerChange = -getPower(job, host);
+                disruption = getWeight(job);
+                break;
+        }
+        double projected = evaluation.event.getRawValue() + powerChange;
+        return new Scored(candidate, projected, getSlack(evaluation.event, projected),
+                isBreached(evaluation.event, projected), disruption);
+    }
+
+    /**
+     * @param job The job to get the power of
+     * @param host The host to restrict the job to, null for the whole job
+     * @return The power of the job's tasks on the host, or of the whole job
+     */
+    private static double getPower(JobState job, HostState host) {
+        if (host == null) {
+            return job.getPower();
+        }
+        double answer = 0;
+        for (TaskState task : job.getTasks()) {
+            if (task.getHostName().equals(host.getName())) {
+                answer = answer + task.getPower();
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This gives the disruption of pausing a job, which is higher the less
+     * flexible its type and the higher its priority.
+     *
+     * @param job The job to get the weight of
+     * @return The disruption of pausing the job
+     */
+    private static double getWeight(JobState job) {
+        if (job == null) {
+            return 0;
+        }
+        return (1 + job.getTypeRank()) * (1 + job.getPriorityRank());
+    }
+
+    /**
+     * @param event The event being responded to
+     * @param projected The projected value of the measured term
+     * @return The distance the projected value is from the guarantee, which
+     * is positive if the guarantee would be met
+     */
+    private static double getSlack(EventData event, double projected) {
+        switch (event.getGuaranteeOperator()) {
+            case LT:
+            case LTE:
+                return projected - event.getGuaranteedValue();
+            case EQ:
+                return -Math.abs(projected - event.getGuaranteedValue());
+            default:
+                return event.getGuaranteedValue() - projected;
+        }
+    }
+
+    /**
+     * @param event The event being responded to
+     * @param projected The projected value of the measured term
+     * @return If the projected value would still breach the guarantee
+     */
+    private static boolean isBreached(EventData event, double projected) {
+        double guarantee = event.getGuaranteedValue();
+        switch (event.getGuaranteeOperator()) {
+            case EQ:
+                return projected == guarantee;
+            case GT:
+                return projected > guarantee;
+            case GTE:
+                return projected >= guarantee;
+            case LT:
+                return projected < guarantee;
+            case LTE:
+                return projected <= guarantee;
+        }
+        return false;
+    }
+
+    /**
+     * This sets the response to carry out the chosen candidate.
+     *
+     * @param response The response to set
+     * @param event The event that caused the response
+     * @param best The chosen candidate, along with its outcome
+     */
+    private void apply(Response response, HostEventData event, Scored best) {
+        Candidate candidate = best.candidate;
+        response.setActionType(candidate.type);
+        switch (candidate.type) {
+            case SHUTDOWN_HOST:
+            case STARTUP_HOST:
+                event.setHost(candidate.hostName);
+                break;
+            default:
+                response.setCause(new ApplicationEventData(event.getTime(),
+                        event.getRawValue(), event.getGuaranteedValue(), event.getType(),
+                        event.getGuaranteeOperator(), candidate.jobName, candidate.jobId + "",
+                        event.getGuaranteeid(), event.getAgreementTerm()));
+                //Tasks are removed by the id of their host, jobs are acted upon by their id
+                response.setTaskId(candidate.taskId);
+                break;
+        }
+        String report = "POWER_PROJECTED=" + best.projected + ";POWER_SLACK=" + best.slack;
+        response.appendAdaptationDetails(report);
+    }
+
+    /**
+     * A candidate adaptation. This only identifies what would be adapted, its
+     * outcome is worked out against the snapshot of the cluster.
+     */
+    private static final class Candidate {
+
+        private final Response.AdaptationType type;
+        private final String hostName;
+        private final String jobName;
+        private final int jobId;
+        private final String taskId;
+
+        public Candidate(Response.AdaptationType type, String hostName, String jobName, int jobId, String taskId) {
+            this.type = type;
+            this.hostName = hostName;
+            this.jobName = jobName;
+            this.jobId = jobId;
+            this.taskId = taskId;
+        }
+
+    }
+
+    /**
+     * A candidate adaptation along with its projected outcome.
+     */
+    private static final class Scored implements Comparable<Scored> {
+
+        private final Candidate candidate;
+        private final double projected;
+        private final double slack;
+        private final boolean breached;
+        private final double disruption;
+
+        public Scored(Candidate candidate, double projected, double slack, boolean breached, double disruption) {
+            this.candidate = candidate;
+            this.projected = projected;
+            this.slack = slack;
+            this.breached = breached;
+            this.disruption = disruption;
+        }
+
+        /**
+         * Candidates that resolve the breach rank first, then those that
+         * disrupt the least and then those that overshoot the least. Of the
+         * candidates that don't resolve the breach, those that come the
+         * closest rank first.
+         *
+         * @param other The candidate to compare to
+         * @return A negative value if this candidate is better
+         */
+        @Override
+        public int compareTo(Scored other) {
+            if (breached != other.breached) {
+                return breached ? 1 : -1;
+            }
+            if (breached) {
+                int answer = Double.compare(other.slack, slack);
+                return answer != 0 ? answer : Double.compare(disruption, other.disruption);
+            }
+            int answer = Double.compare(disruption, other.disruption);
+            return answer != 0 ? answer : Double.compare(Math.abs(slack), Math.abs(other.slack));
+        }
+
+    }
+
+    /**
+     * The state shared by the tasks evaluating the candidates of a response.
+     */
+    private static final class Evaluation {
+
+        private final ClusterSnapshot cluster;
+        private final EventData event;
+        private final List<Candidate> candidates;
+        private final long deadline;
+        private final AtomicReference<Scored> best = new AtomicReference<>();
+        private final AtomicInteger evaluated = new AtomicInteger(0);
+
+        public Evaluation(ClusterSnapshot cluster, EventData event, List<Candidate> candidates, long deadline) {
+            this.cluster = cluster;
+            this.event = event;
+            this.candidates = candidates;
+            this.deadline = deadline;
+        }
+
+        /**
+         * This records a candidate's outcome if it is the best so far.
+         *
+         * @param scored The candidate along with its outcome
+         */
+        private void offer(Scored scored) {
+            Scored current = best.get();
+            while (current == null || scored.compareTo(current) < 0) {
+                if (best.compareAndSet(current, scored)) {
+                    return;
+                }
+                current = best.get();
+            }
+        }
+
+    }
+
+    /**
+     * This evaluates a range of candidates, splitting the range in half until
+     * it is small enough to evaluate directly.
+     */
+    private final class EvaluationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Evaluation evaluation;
+        private final int from;
+        private final int to;
+
+        public EvaluationTask(Evaluation evaluation, int from, int to) {
+            this.evaluation = evaluation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > EVALUATION_BATCH_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluationTask(evaluation, from, middle),
+                        new EvaluationTask(evaluation, middle, to));
+                return;
+            }
+            Scored best = null;
+            for (int i = from; i < to; i++) {
+                if (System.nanoTime() > evaluation.deadline || isCancelled()) {
+                    break;
+                }
+                Scored scored = score(evaluation, evaluation.candidates.get(i));
+                evaluation.evaluated.incrementAndGet();
+                if (scored != null && (best == null || scored.compareTo(best) < 0)) {
+                    best = scored;
+                }
+            }
+            if (best != null) {
+                evaluation.offer(best);
+            }
+        }
+
+    }
+
+}
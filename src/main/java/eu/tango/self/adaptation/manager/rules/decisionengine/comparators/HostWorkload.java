@@ -20,10 +20,12 @@ package eu.tango.self.adaptation.manager.rules.decisionengine.comparators;
 
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.rules.decisionengine.ClusterSnapshot;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
 
 /**
  * This represents a host workload. It is used for ranking hosts based upon the
@@ -32,21 +34,17 @@ import java.util.ListIterator;
  */
 public class HostWorkload {
     
-    //This hashmap holds the ranking between different types of job and how flexible they are to change.
-    private static final HashMap<String,Integer> PRIORITY_MAP = new HashMap<>();
-    //This is the property that is used to rank how flexible a host workload is to change.
-    private static final String APPLICATION_TYPE = "application_type";
-    
-    static {
-        PRIORITY_MAP.put("RIGID", 3); //highest rank least flexible for adaptation
-        PRIORITY_MAP.put("MOULDABLE", 2);
-        PRIORITY_MAP.put("CHECKPOINTABLE", 1);
-        PRIORITY_MAP.put("MALLEABLE", 0);  //lowest rank and most flexible for adaptation
-    }     
+    //The highest rank, i.e. the least flexible type of job for adaptation
+    private static final int MAX_PRIORITY = ClusterSnapshot.TYPE_RANK.size() - 1;
     
     private final Host host;
-    private final List<ApplicationOnHost> applications;
+    private final List<ApplicationOnHost> applications = new ArrayList<>();
+    //The power of each application, by the application's key
+    private final HashMap<String, Double> applicationPower = new HashMap<>();
+    //The count of applications at each priority, so the highest can be found as applications finish
+    private final int[] priorityCounts = new int[MAX_PRIORITY + 1];
     private int priority = 0;
+    private double totalPower = 0.0;
 
     /**
      * This creates a new host to workload mapping ready for ranking
@@ -55,15 +53,73 @@ public class HostWorkload {
      */
     public HostWorkload(Host host, List<ApplicationOnHost> applications) {
         this.host = host;
-        this.applications = applications;
         for(ApplicationOnHost app : applications) {
-            if (app.hasProperty(APPLICATION_TYPE)) {
-                int appPriority = PRIORITY_MAP.get(app.getPropertyAsString(APPLICATION_TYPE));
-                if (appPriority > priority) {
-                    priority = appPriority;
-                }
+            addApplication(app, 0.0);
+        }
+    }
+    
+    /**
+     * This gets the key that uniquely identifies an application on a host.
+     * @param app The application on a host
+     * @return The key of the application on its host
+     */
+    public static String getKey(ApplicationOnHost app) {
+        return app.getName() + ":" + app.getId() + ":" + app.getAllocatedTo().getHostName();
+    }
+    
+    /**
+     * This gets the priority of an application, based upon its type.
+     * @param app The application to get the priority of
+     * @return The priority of the application, the highest if its type is not
+     * known
+     */
+    private static int getPriority(ApplicationOnHost app) {
+        return ClusterSnapshot.getTypeRank(ClusterSnapshot.getApplicationType(app));
+    }
+    
+    /**
+     * This adds an application to the workload of this host, i.e. when it
+     * has started.
+     * @param app The application that has been added to this host
+     * @param power The power consumption of the application
+     */
+    public void addApplication(ApplicationOnHost app, double power) {
+        applications.add(app);
+        applicationPower.put(getKey(app), power);
+        totalPower = totalPower + power;
+        int appPriority = getPriority(app);
+        priorityCounts[appPriority]++;
+        if (appPriority > priority) {
+            priority = appPriority;
+        }
+    }
+    
+    /**
+     * This removes an application from the workload of this host, i.e. when it
+     * has finished.
+     * @param app The application that has been removed from this host
+     * @return If the application was part of this host's workload
+     */
+    public boolean removeApplication(ApplicationOnHost app) {
+        String key = getKey(app);
+        Double power = applicationPower.remove(key);
+        if (power == null) {
+            return false;
+        }
+        totalPower = totalPower - power;
+        Iterator<ApplicationOnHost> iter = applications.iterator();
+        while (iter.hasNext()) {
+            ApplicationOnHost current = iter.next();
+            if (getKey(current).equals(key)) {
+                iter.remove();
+                priorityCounts[getPriority(current)]--;
+                break;
             }
         }
+        while (priority > 0 && priorityCounts[priority] == 0) {
+            priority--;
+        }
+        return true;
     }
     
     /**
@@ -81,28 +137,23 @@ public class HostWorkload {
     } 
     
     /**
-     * This takes a list of applications on host and generates a list of host workload objects
+     * This takes a list of applications on host and generates a list of host
+     * workload objects. The applications are grouped by host in a single pass.
      * @param applications The applications list
      * @return The list of host's workloads
      */
     public static List<HostWorkload> getHostWorkloads(List<ApplicationOnHost> applications) {
-        List<ApplicationOnHost> appsList = new ArrayList<>(applications);
-        List<HostWorkload> answer = new ArrayList<>();
-        while(!appsList.isEmpty()) {
-            ApplicationOnHost headApp = appsList.remove(0);
-            HostWorkload item = new HostWorkload(headApp.getAllocatedTo(), new ArrayList<ApplicationOnHost>());
-            item.applications.add(headApp);
-            ListIterator<ApplicationOnHost> iter = appsList.listIterator();
-            while(iter.hasNext()){
-                ApplicationOnHost app = iter.next();
-                if(app.getAllocatedTo().equals(app.getAllocatedTo())){
-                    iter.remove();
-                    item.applications.add(app);
-                }
+        LinkedHashMap<String, HostWorkload> answer = new LinkedHashMap<>();
+        for (ApplicationOnHost app : applications) {
+            String hostName = app.getAllocatedTo().getHostName();
+            HostWorkload item = answer.get(hostName);
+            if (item == null) {
+                item = new HostWorkload(app.getAllocatedTo(), new ArrayList<ApplicationOnHost>());
+                answer.put(hostName, item);
             }
-            answer.add(item);
+            item.addApplication(app, 0.0);
         }
-        return answer;
+        return new ArrayList<>(answer.values());
     }
 
     /**
@@ -134,5 +185,14 @@ public class HostWorkload {
     public Integer getPriority() {
         return priority;
     }
+
+    /**
+     * The total power consumption of the jobs on this host, as recorded when
+     * they were added
+     * @return the total power
+     */
+    public double getTotalPower() {
+        return totalPower;
+    }
     
 }
@@ -24,6 +24,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -32,10 +33,12 @@ import java.util.logging.Logger;
  * This has the effect of implementing job priority ranking against hosts.
  * @author Richard Kavanagh
  */
-public class HostWorkloadBased implements Comparator<Host>, Serializable {   
+public class HostWorkloadBased implements Comparator<Host>, RankingKey<Host>, Serializable {   
 
     private static final long serialVersionUID = 1L;
-    private HashMap<Host, HostWorkload> workloadMap;
+    private HashMap<Host, HostWorkload> workloadMap = new HashMap<>();
+    //The jobs that make up the workload, by their key
+    private final HashMap<String, ApplicationOnHost> jobs = new HashMap<>();
     
     /**
      * This creates a new comparator based upon host workload and its type
@@ -50,24 +53,104 @@ public class HostWorkloadBased implements Comparator<Host>, Serializable {
      */
     public HostWorkloadBased(List<ApplicationOnHost> workload) {
         Logger.getLogger(HostWorkloadBased.class.getName()).log(Level.INFO, "Using host workload based ranking");
-        workloadMap = HostWorkload.getHostWorkloadsMap(workload);
+        for (ApplicationOnHost job : workload) {
+            jobStarted(job, 0.0);
+        }
+    }
+
+    /**
+     * This lists the jobs in the current workload that have started since the
+     * workload was last updated.
+     * @param current The current workload
+     * @return The jobs that have started
+     */
+    public List<ApplicationOnHost> getStartedJobs(List<ApplicationOnHost> current) {
+        List<ApplicationOnHost> answer = new ArrayList<>();
+        for (ApplicationOnHost job : current) {
+            if (!jobs.containsKey(HostWorkload.getKey(job))) {
+                answer.add(job);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This lists the jobs that have finished since the workload was last
+     * updated, i.e. those that are no longer in the current workload.
+     * @param current The current workload
+     * @return The jobs that have finished
+     */
+    public List<ApplicationOnHost> getFinishedJobs(List<ApplicationOnHost> current) {
+        HashSet<String> currentKeys = new HashSet<>();
+        for (ApplicationOnHost job : current) {
+            currentKeys.add(HostWorkload.getKey(job));
+        }
+        List<ApplicationOnHost> answer = new ArrayList<>();
+        for (ApplicationOnHost job : jobs.values()) {
+            if (!currentKeys.contains(HostWorkload.getKey(job))) {
+                answer.add(job);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This adds a job that has started to the workload of its host.
+     * @param job The job that has started
+     * @param power The power consumption of the job
+     */
+    public void jobStarted(ApplicationOnHost job, double power) {
+        String key = HostWorkload.getKey(job);
+        if (jobs.containsKey(key)) {
+            return;
+        }
+        jobs.put(key, job);
+        mapContainsHostGuard(job.getAllocatedTo());
+        workloadMap.get(job.getAllocatedTo()).addApplication(job, power);
+    }
+
+    /**
+     * This removes a job that has finished from the workload of its host.
+     * @param job The job that has finished
+     */
+    public void jobFinished(ApplicationOnHost job) {
+        if (jobs.remove(HostWorkload.getKey(job)) == null) {
+            return;
+        }
+        HostWorkload hostWorkload = workloadMap.get(job.getAllocatedTo());
+        if (hostWorkload != null) {
+            hostWorkload.removeApplication(job);
+        }
     }
 
     @Override
     public int compare(Host o1, Host o2) {
-        mapContainsHostGuard(o1);
-        mapContainsHostGuard(o2);
-        //Rank Malable 0 -> Rigid 3 last
-        int answer = workloadMap.get(o2).getPriority().compareTo(workloadMap.get(o1).getPriority());
+        int answer = Long.compare(getPrimaryKey(o1), getPrimaryKey(o2));
         if (answer == 0) { //If equal then apply a second order sort
-            //Ensure smallest queues are cancelled first
-            answer = workloadMap.get(o1).getQueueLength().compareTo(workloadMap.get(o2).getQueueLength());
-            if (answer == 0) { //largest power consumption first
-                answer = Double.valueOf(o2.getIdlePowerConsumption()).compareTo(o1.getIdlePowerConsumption());
-            }
+            answer = Long.compare(getSecondaryKey(o1), getSecondaryKey(o2));
         }
         return answer;
     }
+
+    /**
+     * The primary key ranks by the priority of the host's workload and then
+     * by the length of its queue of jobs.
+     * @param item The host to get the key of
+     * @return The primary sort key of the host
+     */
+    @Override
+    public long getPrimaryKey(Host item) {
+        mapContainsHostGuard(item);
+        HostWorkload workload = workloadMap.get(item);
+        //Rank Malable 0 -> Rigid 3 last, then ensure smallest queues are cancelled first
+        return ((long) -workload.getPriority() << 32) + workload.getQueueLength();
+    }
+
+    @Override
+    public long getSecondaryKey(Host item) {
+        //largest power consumption first
+        return Ranking.toSortableLong(-item.getIdlePowerConsumption());
+    }
     
     /**
      * This checks to see if the workload map contains a given host
@@ -91,6 +174,12 @@ public class HostWorkloadBased implements Comparator<Host>, Serializable {
      */
     public void setWorkloadMap(HashMap<Host, HostWorkload> workloadMap) {
         this.workloadMap = workloadMap;
+        jobs.clear();
+        for (HostWorkload hostWorkload : workloadMap.values()) {
+            for (ApplicationOnHost job : hostWorkload.getApplications()) {
+                jobs.put(HostWorkload.getKey(job), job);
+            }
+        }
     }
     
 }
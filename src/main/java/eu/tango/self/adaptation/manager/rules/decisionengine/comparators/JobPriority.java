@@ -26,18 +26,29 @@ import java.util.Comparator;
  * This class compares applications on host by order of their job priority.
  * @author Richard Kavanagh
  */
-public class JobPriority implements Comparator<ApplicationOnHost>, Serializable {
+public class JobPriority implements Comparator<ApplicationOnHost>, RankingKey<ApplicationOnHost>, Serializable {
     private static final long serialVersionUID = 1L;
     private static final String PRIORITY = "priority";
 
     @Override
     public int compare(ApplicationOnHost o1, ApplicationOnHost o2) {
-        int answer = o1.getPropertyAsInteger(PRIORITY).compareTo(o2.getPropertyAsInteger(PRIORITY));
+        int answer = Long.compare(getPrimaryKey(o1), getPrimaryKey(o2));
         if (answer == 0) { //If equal then apply a second order sort
-        //ranks by job id in reverse order! thus should equate to age
-            return Integer.valueOf(o2.getId()).compareTo(o1.getId());
+            return Long.compare(getSecondaryKey(o1), getSecondaryKey(o2));
         }
         return answer;
     }
+
+    @Override
+    public long getPrimaryKey(ApplicationOnHost item) {
+        Integer priority = item.getPropertyAsInteger(PRIORITY);
+        return priority == null ? 0 : priority;
+    }
+
+    @Override
+    public long getSecondaryKey(ApplicationOnHost item) {
+        //ranks by job id in reverse order! thus should equate to age
+        return -(long) item.getId();
+    }
     
 }
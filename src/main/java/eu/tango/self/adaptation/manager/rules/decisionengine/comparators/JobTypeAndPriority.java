@@ -19,44 +19,45 @@
 package eu.tango.self.adaptation.manager.rules.decisionengine.comparators;
 
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.self.adaptation.manager.rules.decisionengine.ClusterSnapshot;
 import java.io.Serializable;
 import java.util.Comparator;
-import java.util.HashMap;
 
 /**
  * This class compares applications on host by order of their job priority.
  * @author Richard Kavanagh
  */
-public class JobTypeAndPriority implements Comparator<ApplicationOnHost>, Serializable {
+public class JobTypeAndPriority implements Comparator<ApplicationOnHost>, RankingKey<ApplicationOnHost>, Serializable {
     
     private static final long serialVersionUID = 1L;
-    private static final HashMap<String,Integer> PRIORITY_MAP = new HashMap<>();
-    
-    static {
-        PRIORITY_MAP.put("RIGID", 3); //highest rank least flexible for adaptation
-        PRIORITY_MAP.put("MOULDABLE", 2);
-        PRIORITY_MAP.put("CHECKPOINTABLE", 1);
-        PRIORITY_MAP.put("MALLEABLE", 0);  //lowest rank and most flexible for adaptation
-    }
-    
-    private static final String APPLICATION_TYPE = "application_type";
     private static final String PRIORITY = "priority";
     
     @Override
     public int compare(ApplicationOnHost o1, ApplicationOnHost o2) {
-        int answer = 0;
-        //Rank against type if the information is available
-        if (o1.hasProperty(APPLICATION_TYPE) && o2.hasProperty(APPLICATION_TYPE)) {
-            answer = PRIORITY_MAP.get(o1.getPropertyAsString(APPLICATION_TYPE)).
-                compareTo(PRIORITY_MAP.get(o2.getPropertyAsString(APPLICATION_TYPE)));
-        }
+        int answer = Long.compare(getPrimaryKey(o1), getPrimaryKey(o2));
         if (answer == 0) { //If equal then apply a second order sort
-            answer = o1.getPropertyAsInteger(PRIORITY).compareTo(o2.getPropertyAsInteger(PRIORITY));
-            if (answer == 0) {
-                //ranks by job id in reverse order! thus should equate to age
-                return Integer.valueOf(o2.getId()).compareTo(o1.getId());
-            }
+            return Long.compare(getSecondaryKey(o1), getSecondaryKey(o2));
         }
         return answer;
     }
+
+    /**
+     * The primary key ranks by the job's type and then by its priority. Jobs
+     * whose type is not known rank alongside rigid jobs.
+     * @param item The job to get the key of
+     * @return The primary sort key of the job
+     */
+    @Override
+    public long getPrimaryKey(ApplicationOnHost item) {
+        long type = ClusterSnapshot.getTypeRank(ClusterSnapshot.getApplicationType(item));
+        Integer priority = item.getPropertyAsInteger(PRIORITY);
+        long priorityValue = (priority == null ? 0 : priority) - (long) Integer.MIN_VALUE;
+        return (type << 32) | priorityValue;
+    }
+
+    @Override
+    public long getSecondaryKey(ApplicationOnHost item) {
+        //ranks by job id in reverse order! thus should equate to age
+        return -(long) item.getId();
+    }
 }
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine.comparators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This ranks lists of items, such as tasks or hosts. When the comparator
+ * used implements RankingKey the sort key of each item is worked out once and
+ * the items are ranked by comparing primitive values, otherwise the
+ * comparator is used directly. Items that rank equally keep the order they
+ * had in the list.
+ *
+ * @author Richard Kavanagh
+ */
+public class Ranking {
+
+    private Ranking() {
+    }
+
+    /**
+     * This sorts a list into ascending order.
+     *
+     * @param <T> The type of item that is ranked
+     * @param items The list to sort
+     * @param ranking The ranking to sort by
+     */
+    public static <T> void sort(List<T> items, Comparator<? super T> ranking) {
+        if (!(ranking instanceof RankingKey)) {
+            Collections.sort(items, ranking);
+            return;
+        }
+        Keyed<T>[] keyed = getKeys(items, ranking);
+        Arrays.sort(keyed);
+        for (int i = 0; i < keyed.length; i++) {
+            items.set(i, keyed[i].item);
+        }
+    }
+
+    /**
+     * This gets the highest ranked item in a list, without sorting the list.
+     * Where several items are ranked highest the last of them in the list is
+     * given.
+     *
+     * @param <T> The type of item that is ranked
+     * @param items The list of items
+     * @param ranking The ranking to use
+     * @return The highest ranked item, or null if the list is empty
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getHighest(List<T> items, Comparator<? super T> ranking) {
+        T answer = null;
+        if (ranking instanceof RankingKey) {
+            RankingKey<? super T> key = (RankingKey<? super T>) ranking;
+            long bestPrimary = 0;
+            long bestSecondary = 0;
+            for (T item : items) {
+                long primary = key.getPrimaryKey(item);
+                long secondary = key.getSecondaryKey(item);
+                if (answer == null || primary > bestPrimary
+                        || (primary == bestPrimary && secondary >= bestSecondary)) {
+                    answer = item;
+                    bestPrimary = primary;
+                    bestSecondary = secondary;
+                }
+            }
+            return answer;
+        }
+        for (T item : items) {
+            if (answer == null || ranking.compare(item, answer) >= 0) {
+                answer = item;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This gets the highest ranked items in a list, without sorting the
+     * whole list.
+     *
+     * @param <T> The type of item that is ranked
+     * @param items The list of items
+     * @param ranking The ranking to use
+     * @param count The maximum amount of items to get
+     * @return The highest ranked items, highest first
+     */
+    public static <T> List<T> getHighest(List<T> items, Comparator<? super T> ranking, int count) {
+        ArrayList<T> answer = new ArrayList<>();
+        if (count <= 0 || items.isEmpty()) {
+            return answer;
+        }
+        PriorityQueue<Keyed<T>> top = new PriorityQueue<>(Math.min(count, items.size()) + 1);
+        Keyed<T>[] keyed = getKeys(items, ranking);
+        for (Keyed<T> item : keyed) {
+            top.add(item);
+            if (top.size() > count) {
+                top.poll(); //Drop the lowest ranked
+            }
+        }
+        while (!top.isEmpty()) {
+            answer.add(top.poll().item);
+        }
+        Collections.reverse(answer);
+        return answer;
+    }
+
+    /**
+     * This works out the sort keys of a list of items.
+     *
+     * @param <T> The type of item that is ranked
+     * @param items The list of items
+     * @param ranking The ranking to use
+     * @return The items with their sort keys
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Keyed<T>[] getKeys(List<T> items, Comparator<? super T> ranking) {
+        Keyed<T>[] answer = new Keyed[items.size()];
+        RankingKey<? super T> key = (ranking instanceof RankingKey ? (RankingKey<? super T>) ranking : null);
+        int index = 0;
+        for (T item : items) {
+            if (key != null) {
+                answer[index] = new Keyed<>(item, index, key.getPrimaryKey(item), key.getSecondaryKey(item), null);
+            } else {
+                answer[index] = new Keyed<>(item, index, 0, 0, ranking);
+            }
+            index++;
+        }
+        return answer;
+    }
+
+    /**
+     * An item along with its sort key and position in the original list.
+     *
+     * @param <T> The type of item that is ranked
+     */
+    private static class Keyed<T> implements Comparable<Keyed<T>> {
+
+        private final T item;
+        private final int index;
+        private final long primary;
+        private final long secondary;
+        //Used instead of the sort key, if the ranking doesn't provide one
+        private final Comparator<? super T> ranking;
+
+        public Keyed(T item, int index, long primary, long secondary, Comparator<? super T> ranking) {
+            this.item = item;
+            this.index = index;
+            this.primary = primary;
+            this.secondary = secondary;
+            this.ranking = ranking;
+        }
+
+        @Override
+        public int compareTo(Keyed<T> other) {
+            int answer;
+            if (ranking == null) {
+                answer = Long.compare(primary, other.primary);
+                if (answer == 0) {
+                    answer = Long.compare(secondary, other.secondary);
+                }
+            } else {
+                answer = ranking.compare(item, other.item);
+            }
+            if (answer == 0) {
+                answer = Integer.compare(index, other.index);
+            }
+            return answer;
+        }
+
+    }
+
+    /**
+     * This converts a double into a long that sorts in the same order.
+     *
+     * @param value The value to convert
+     * @return A long that has the same order as the double value given
+     */
+    public static long toSortableLong(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+    }
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.decisionengine.comparators;
+
+/**
+ * This is implemented by comparators whose order can be expressed as a sort
+ * key made of two primitive values. This allows the properties an item is
+ * ranked on to be read once per item, rather than once per comparison, when
+ * a list is sorted. Items are ordered by their primary key and then by their
+ * secondary key, which must give the same order as the comparator.
+ *
+ * @author Richard Kavanagh
+ * @param <T> The type of item that is ranked
+ */
+public interface RankingKey<T> {
+
+    /**
+     * @param item The item to get the key of
+     * @return The primary sort key of the item
+     */
+    public long getPrimaryKey(T item);
+
+    /**
+     * @param item The item to get the key of
+     * @return The secondary sort key of the item, used when the primary keys
+     * are equal
+     */
+    public long getSecondaryKey(T item);
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.rules.forecast;
+
+import java.util.ArrayDeque;
+
+/**
+ * This forecasts the short term value of a single monitored term, using Holt's
+ * linear exponential smoothing. The level and the trend are both smoothed,
+ * with the trend held per second so that samples need not arrive at a regular
+ * interval.
+ *
+ * The accuracy of the forecaster is tracked by recording each forecast made
+ * and comparing it to the value measured once the forecast's time arrives.
+ * The mean relative error of the most recent forecasts is used to decide if
+ * the forecaster can be trusted.
+ *
+ * @author Richard Kavanagh
+ */
+public class TermForecaster {
+
+    private final double alpha;
+    private final double beta;
+    private final double[] errors;
+    private final ArrayDeque<Forecast> pending = new ArrayDeque<>();
+    private int samples = 0;
+    private long lastTime = 0;
+    private double level = 0;
+    private double trend = 0;
+    private int evaluated = 0;
+    private double errorTotal = 0;
+
+    /**
+     * This creates a new forecaster.
+     *
+     * @param alpha The smoothing factor of the level, between 0 and 1
+     * @param beta The smoothing factor of the trend, between 0 and 1
+     * @param accuracyWindow The count of recent forecasts that the accuracy
+     * is judged upon
+     */
+    public TermForecaster(double alpha, double beta, int accuracyWindow) {
+        this.alpha = alpha;
+        this.beta = beta;
+        errors = new double[Math.max(1, accuracyWindow)];
+    }
+
+    /**
+     * This adds a new sample to the forecaster. Samples that are not newer
+     * than the last sample are ignored.
+     *
+     * @param time The time of the sample in seconds
+     * @param value The value of the sample
+     */
+    public void update(long time, double value) {
+        if (samples > 0 && time <= lastTime) {
+            return;
+        }
+        evaluate(time, value);
+        if (samples == 0) {
+            level = value;
+            trend = 0;
+        } else {
+            double interval = time - lastTime;
+            double previousLevel = level;
+            level = alpha * value + (1 - alpha) * (level + trend * interval);
+            trend = beta * ((level - previousLevel) / interval) + (1 - beta) * trend;
+        }
+        lastTime = time;
+        samples++;
+    }
+
+    /**
+     * This compares the forecasts that have become due with the value that
+     * has been measured.
+     *
+     * @param time The time of the sample in seconds
+     * @param value The value of the sample
+     */
+    private void evaluate(long time, double value) {
+        while (!pending.isEmpty() && pending.peek().time <= time) {
+            Forecast forecast = pending.poll();
+            double error = Math.abs(forecast.value - value) / Math.max(Math.abs(value), Double.MIN_NORMAL);
+            int slot = evaluated % errors.length;
+            errorTotal = errorTotal - errors[slot] + error;
+            errors[slot] = error;
+            evaluated++;
+        }
+    }
+
+    /**
+     * This forecasts the value of the term a given time after the last
+     * sample. The forecast is recorded so that the accuracy of the
+     * forecaster can be judged once the time arrives.
+     *
+     * @param leadTime The time after the last sample to forecast, in seconds
+     * @return The forecast value, or NaN if no samples have been seen
+     */
+    public double forecast(long leadTime) {
+        if (samples == 0) {
+            return Double.NaN;
+        }
+        double answer = level + trend * leadTime;
+        pending.add(new Forecast(lastTime + leadTime, answer));
+        return answer;
+    }
+
+    /**
+     * @return The count of samples seen by the forecaster
+     */
+    public int getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return The count of forecasts that have been compared to measured
+     * values
+     */
+    public int getEvaluatedCount() {
+        return evaluated;
+    }
+
+    /**
+     * @return The mean relative error of the most recent forecasts, NaN if no
+     * forecast has been compared to a measured value yet
+     */
+    public double getMeanError() {
+        if (evaluated == 0) {
+            return Double.NaN;
+        }
+        return errorTotal / Math.min(evaluated, errors.length);
+    }
+
+    /**
+     * This indicates if the forecaster is accurate enough to be acted upon.
+     *
+     * @param minEvaluated The count of forecasts that must have been compared
+     * to measured values
+     * @param maxError The highest acceptable mean relative error
+     * @return If the forecaster's recent forecasts were accurate enough
+     */
+    public boolean isConfident(int minEvaluated, double maxError) {
+        return evaluated >= minEvaluated && getMeanError() <= maxError;
+    }
+
+    /**
+     * @return The smoothed level at the time of the last sample
+     */
+    public double getLevel() {
+        return level;
+    }
+
+    /**
+     * @return The smoothed trend, per second
+     */
+    public double getTrend() {
+        return trend;
+    }
+
+    /**
+     * A forecast waiting for its time to arrive.
+     */
+    private static class Forecast {
+
+        private final long time;
+        private final double value;
+
+        public Forecast(long time, double value) {
+            this.time = time;
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,443 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import eu.ascetic.ioutils.io.ResultsStore;
+import eu.tango.self.adaptation.manager.io.TimeSource;
+import eu.tango.self.adaptation.manager.listeners.ClockMonitor;
+import eu.tango.self.adaptation.manager.listeners.EnvironmentMonitor;
+import eu.tango.self.adaptation.manager.listeners.SlurmJobMonitor;
+import eu.tango.self.adaptation.manager.rules.EventAssessor;
+import eu.tango.self.adaptation.manager.rules.ThresholdEventAssessor;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.ClockEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.EventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.HostEventData;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This runs the full adaptation loop in simulated time, so that changes to the
+ * rules and decision engines can be evaluated against weeks of workload in
+ * minutes. Time is provided by a virtual clock that jumps from one event to
+ * the next, so no time is spent waiting between events.
+ *
+ * The workload may be recorded, synthetic or both. A recorded workload is a
+ * trace of events in the same format as the event log written by the event
+ * assessor, each event is assessed at the time it was recorded. A synthetic
+ * workload is given by the simulated cluster, which is moved forward at a set
+ * interval, after which the environment monitor and SLURM job monitor detect
+ * events from it. The adaptations decided upon are carried out against the
+ * simulated cluster by the simulated actuator. Cron based rules and timed
+ * events, such as the reversal of an adaptation, are given by the clock
+ * monitor in simulated time.
+ *
+ * @author Richard Kavanagh
+ */
+public class DiscreteEventSimulation {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private static final String DEFAULT_EVENT_ASSESSOR_PACKAGE = "eu.tango.self.adaptation.manager.rules";
+    private String traceFile = "";
+    private String cronFile = "CronEvents.csv";
+    //The simulated time to start at, in seconds since the epoch, 0 means the start of the trace or now
+    private long startTime = 0;
+    private long duration = TimeUnit.DAYS.toSeconds(7);
+    //The simulated seconds between each round of detection against the simulated cluster, 0 disables it
+    private int pollInterval = 10;
+    private int historyInterval = 60;
+    //The simulated seconds between each check for timed events
+    private int clockStep = 1;
+    private String eventAssessorName = "ThresholdEventAssessor";
+    private String outputFile = "DiscreteEventSimulation.csv";
+    private final PriorityQueue<SimulationEvent> queue = new PriorityQueue<>(11, new Comparator<SimulationEvent>() {
+        @Override
+        public int compare(SimulationEvent o1, SimulationEvent o2) {
+            int answer = Long.compare(o1.time, o2.time);
+            if (answer == 0) {
+                answer = Long.compare(o1.sequence, o2.sequence);
+            }
+            return answer;
+        }
+    });
+    private long sequence = 0;
+
+    /**
+     * The kinds of event that move the simulation forward.
+     */
+    private enum Kind {
+
+        TRACE, POLL, HISTORY, CLOCK
+    }
+
+    /**
+     * This creates a new discrete event simulation.
+     */
+    public DiscreteEventSimulation() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            traceFile = config.getString("self.adaptation.manager.simulation.des.trace", traceFile);
+            config.setProperty("self.adaptation.manager.simulation.des.trace", traceFile);
+            cronFile = config.getString("self.adaptation.manager.simulation.des.cron", cronFile);
+            config.setProperty("self.adaptation.manager.simulation.des.cron", cronFile);
+            startTime = config.getLong("self.adaptation.manager.simulation.des.start", startTime);
+            config.setProperty("self.adaptation.manager.simulation.des.start", startTime);
+            duration = config.getLong("self.adaptation.manager.simulation.des.duration", duration);
+            config.setProperty("self.adaptation.manager.simulation.des.duration", duration);
+            pollInterval = config.getInt("self.adaptation.manager.simulation.des.poll.interval", pollInterval);
+            config.setProperty("self.adaptation.manager.simulation.des.poll.interval", pollInterval);
+            historyInterval = config.getInt("self.adaptation.manager.simulation.des.history.interval", historyInterval);
+            config.setProperty("self.adaptation.manager.simulation.des.history.interval", historyInterval);
+            clockStep = config.getInt("self.adaptation.manager.simulation.des.clock.step", clockStep);
+            config.setProperty("self.adaptation.manager.simulation.des.clock.step", clockStep);
+            eventAssessorName = config.getString("self.adaptation.manager.simulation.des.event.assessor", eventAssessorName);
+            config.setProperty("self.adaptation.manager.simulation.des.event.assessor", eventAssessorName);
+            outputFile = config.getString("self.adaptation.manager.simulation.des.output", outputFile);
+            config.setProperty("self.adaptation.manager.simulation.des.output", outputFile);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(DiscreteEventSimulation.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    /**
+     * This creates the event assessor to simulate.
+     *
+     * @return The event assessor named in the configuration, or the threshold
+     * event assessor if it can't be created.
+     */
+    private EventAssessor createEventAssessor() {
+        String name = eventAssessorName;
+        if (!name.startsWith(DEFAULT_EVENT_ASSESSOR_PACKAGE)) {
+            name = DEFAULT_EVENT_ASSESSOR_PACKAGE + "." + name;
+        }
+        try {
+            return (EventAssessor) (Class.forName(name).newInstance());
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
+            Logger.getLogger(DiscreteEventSimulation.class.getName()).log(Level.WARNING, "The event assessor could not be created: " + name, ex);
+            return new ThresholdEventAssessor();
+        }
+    }
+
+    /**
+     * This loads the recorded events to replay, the file has the same format
+     * as the event log written by the event assessor. Events that name a host
+     * are replayed as host events, those that name an application as
+     * application events and the remainder as clock events.
+     *
+     * @param file The name of the file holding the trace
+     * @return The events in the trace
+     */
+    public static ArrayList<EventData> loadTrace(String file) {
+        ArrayList<EventData> answer = new ArrayList<>();
+        if (file == null || file.isEmpty()) {
+            return answer;
+        }
+        if (!new File(file).exists()) {
+            Logger.getLogger(DiscreteEventSimulation.class.getName()).log(Level.WARNING, "The trace file {0} was not found", file);
+            return answer;
+        }
+        ResultsStore trace = new ResultsStore(file);
+        trace.load();
+        //ignore the header of the file
+        for (int i = 1; i < trace.size(); i++) {
+            ArrayList<String> row = trace.getRow(i);
+            if (row.size() < 8) {
+                continue;
+            }
+            try {
+                long time = Long.parseLong(row.get(0).trim());
+                String applicationId = row.get(1).trim();
+                String deploymentId = row.get(2).trim();
+                String host = row.get(3).trim();
+                String agreementTerm = row.get(4).trim();
+                double guaranteedValue = Double.parseDouble(row.get(5).trim());
+                double rawValue = Double.parseDouble(row.get(6).trim());
+                EventData.Operator operator = EventData.getOperator(row.get(7).trim());
+                EventData event;
+                if (!host.isEmpty()) {
+                    event = new HostEventData(time, host, rawValue, guaranteedValue,
+                            EventData.Type.SLA_BREACH, operator, agreementTerm, agreementTerm);
+                } else if (!applicationId.isEmpty()) {
+                    event = new ApplicationEventData(time, rawValue, guaranteedValue,
+                            EventData.Type.SLA_BREACH, operator, applicationId, deploymentId, agreementTerm, agreementTerm);
+                } else {
+                    event = new ClockEventData(time, rawValue, guaranteedValue,
+                            EventData.Type.WARNING, operator, "CLOCK_TRIGGER", agreementTerm);
+                }
+                answer.add(event);
+            } catch (NumberFormatException ex) {
+                Logger.getLogger(DiscreteEventSimulation.class.getName()).log(Level.WARNING, "Skipping line {0} of the trace, it could not be read", i);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This places an event in the queue of events to simulate.
+     *
+     * @param time The simulated time of the event, in milliseconds since the
+     * epoch
+     * @param kind The kind of event
+     * @param event The recorded event to assess, if any
+     */
+    private void schedule(long time, Kind kind, EventData event) {
+        queue.add(new SimulationEvent(time, sequence, kind, event));
+        sequence++;
+    }
+
+    /**
+     * This runs the simulation, writing a summary of it out to disk.
+     *
+     * @return The summary of the simulation
+     */
+    public Result run() {
+        ArrayList<EventData> trace = loadTrace(traceFile);
+        long start = TimeUnit.SECONDS.toMillis(startTime);
+        if (start <= 0) {
+            long first = Long.MAX_VALUE;
+            for (EventData event : trace) {
+                first = Math.min(first, event.getTime());
+            }
+            start = (first == Long.MAX_VALUE ? System.currentTimeMillis() : TimeUnit.SECONDS.toMillis(first));
+        }
+        long end = start + TimeUnit.SECONDS.toMillis(duration);
+        VirtualClock clock = new VirtualClock(start);
+        TimeSource.setClock(clock);
+        ClockMonitor clockMonitor = ClockMonitor.getInstance();
+        if (!clockMonitor.isSimulated()) {
+            Logger.getLogger(DiscreteEventSimulation.class.getName()).log(Level.WARNING,
+                    "The clock monitor was started before the simulation, so timed events will occur in real time");
+        }
+        SimulatedCluster cluster = SimulatedCluster.getInstance();
+        SimulatedDataSource datasource = new SimulatedDataSource();
+        SimulatedActuator actuator = new SimulatedActuator();
+        EventAssessor assessor = createEventAssessor();
+        //The history is pruned in simulated time, rather than by the assessor's own thread
+        assessor.stop();
+        //The actuator is also the decision engine's source of hosts and power
+        assessor.setActuator(actuator);
+        clockMonitor.setEventAssessor(assessor);
+        clockMonitor.loadFromDisk(cronFile);
+        EnvironmentMonitor environmentMonitor = null;
+        SlurmJobMonitor jobMonitor = null;
+        if (pollInterval > 0) {
+            environmentMonitor = new EnvironmentMonitor(datasource);
+            environmentMonitor.setEventAssessor(assessor);
+            jobMonitor = new SlurmJobMonitor(datasource);
+            jobMonitor.setEventAssessor(assessor);
+            schedule(start + TimeUnit.SECONDS.toMillis(pollInterval), Kind.POLL, null);
+        }
+        for (EventData event : trace) {
+            schedule(TimeUnit.SECONDS.toMillis(event.getTime()), Kind.TRACE, event);
+        }
+        if (historyInterval > 0) {
+            schedule(start + TimeUnit.SECONDS.toMillis(historyInterval), Kind.HISTORY, null);
+        }
+        if (clockStep > 0) {
+            schedule(start + TimeUnit.SECONDS.toMillis(clockStep), Kind.CLOCK, null);
+        }
+        Result answer = new Result();
+        long wallStart = System.nanoTime();
+        while (!queue.isEmpty() && queue.peek().time <= end) {
+            SimulationEvent next = queue.poll();
+            clock.setTime(next.time);
+            clockMonitor.advanceTime();
+            switch (next.kind) {
+                case TRACE:
+                    assessor.assessEvent(next.event);
+                    answer.traceEvents++;
+                    break;
+                case POLL:
+                    cluster.step(pollInterval);
+                    answer.detectedEvents = answer.detectedEvents + environmentMonitor.detectAndAssessEvents().size();
+                    answer.detectedEvents = answer.detectedEvents + jobMonitor.detectAndAssessEvents().size();
+                    schedule(next.time + TimeUnit.SECONDS.toMillis(pollInterval), Kind.POLL, null);
+                    break;
+                case HISTORY:
+                    assessor.clearHistory();
+                    schedule(next.time + TimeUnit.SECONDS.toMillis(historyInterval), Kind.HISTORY, null);
+                    break;
+                case CLOCK:
+                    schedule(next.time + TimeUnit.SECONDS.toMillis(clockStep), Kind.CLOCK, null);
+                    break;
+            }
+        }
+        answer.wallSeconds = (System.nanoTime() - wallStart) / (double) TimeUnit.SECONDS.toNanos(1);
+        answer.simulatedSeconds = TimeUnit.MILLISECONDS.toSeconds(clock.millis() - start);
+        answer.performed = actuator.getPerformedCount();
+        answer.notPossible = actuator.getNotPossibleCount();
+        answer.jobsStarted = cluster.getJobsStarted();
+        answer.jobsFinished = cluster.getJobsFinished();
+        answer.hostFailures = cluster.getHostFailures();
+        actuator.stop();
+        queue.clear();
+        write(answer, start);
+        Logger.getLogger(DiscreteEventSimulation.class.getName()).log(Level.INFO,
+                "Simulated {0} seconds in {1} seconds, {2} times real time. Adaptations: {3} Not possible: {4}",
+                new Object[]{answer.simulatedSeconds, answer.wallSeconds, answer.getSpeedUp(),
+                    answer.performed, answer.notPossible});
+        return answer;
+    }
+
+    /**
+     * This writes the summary of the simulation out to disk.
+     *
+     * @param result The summary of the simulation
+     * @param start The simulated time the simulation started at, in
+     * milliseconds since the epoch
+     */
+    private void write(Result result, long start) {
+        ResultsStore results = new ResultsStore(outputFile);
+        results.add("Start Time");
+        results.append("Simulated Seconds");
+        results.append("Wall Clock Seconds");
+        results.append("Speed Up");
+        results.append("Trace Events");
+        results.append("Detected Events");
+        results.append("Adaptations");
+        results.append("Adaptations Not Possible");
+        results.append("Jobs Started");
+        results.append("Jobs Finished");
+        results.append("Host Failures");
+        results.add(TimeUnit.MILLISECONDS.toSeconds(start) + "");
+        results.append(result.simulatedSeconds + "");
+        results.append(result.wallSeconds + "");
+        results.append(result.getSpeedUp() + "");
+        results.append(result.traceEvents + "");
+        results.append(result.detectedEvents + "");
+        results.append(result.performed + "");
+        results.append(result.notPossible + "");
+        results.append(result.jobsStarted + "");
+        results.append(result.jobsFinished + "");
+        results.append(result.hostFailures + "");
+        results.save();
+    }
+
+    /**
+     * An event waiting to be simulated.
+     */
+    private static class SimulationEvent {
+
+        private final long time;
+        private final long sequence;
+        private final Kind kind;
+        private final EventData event;
+
+        public SimulationEvent(long time, long sequence, Kind kind, EventData event) {
+            this.time = time;
+            this.sequence = sequence;
+            this.kind = kind;
+            this.event = event;
+        }
+
+    }
+
+    /**
+     * The summary of a simulation run.
+     */
+    public static class Result {
+
+        private long simulatedSeconds = 0;
+        private double wallSeconds = 0;
+        private long traceEvents = 0;
+        private long detectedEvents = 0;
+        private long performed = 0;
+        private long notPossible = 0;
+        private long jobsStarted = 0;
+        private long jobsFinished = 0;
+        private long hostFailures = 0;
+
+        /**
+         * @return The simulated time covered, in seconds
+         */
+        public long getSimulatedSeconds() {
+            return simulatedSeconds;
+        }
+
+        /**
+         * @return The real time taken to run the simulation, in seconds
+         */
+        public double getWallSeconds() {
+            return wallSeconds;
+        }
+
+        /**
+         * @return How many times faster than real time the simulation ran
+         */
+        public double getSpeedUp() {
+            if (wallSeconds <= 0) {
+                return 0;
+            }
+            return simulatedSeconds / wallSeconds;
+        }
+
+        /**
+         * @return The count of recorded events replayed
+         */
+        public long getTraceEvents() {
+            return traceEvents;
+        }
+
+        /**
+         * @return The count of events detected from the simulated cluster
+         */
+        public long getDetectedEvents() {
+            return detectedEvents;
+        }
+
+        /**
+         * @return The count of adaptations carried out
+         */
+        public long getPerformed() {
+            return performed;
+        }
+
+        /**
+         * @return The count of adaptations that could not be carried out
+         */
+        public long getNotPossible() {
+            return notPossible;
+        }
+
+    }
+
+    /**
+     * This runs the discrete event simulation.
+     *
+     * @param args The args are not used.
+     */
+    public static void main(String[] args) {
+        new DiscreteEventSimulation().run();
+    }
+
+}
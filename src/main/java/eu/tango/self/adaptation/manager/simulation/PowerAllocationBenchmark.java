@@ -0,0 +1,192 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import eu.ascetic.ioutils.io.ResultsStore;
+import eu.tango.self.adaptation.manager.rules.decisionengine.ClusterSnapshot;
+import eu.tango.self.adaptation.manager.rules.decisionengine.PowerCapAllocationDecisionEngine;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This measures how the time taken by the power cap allocation decision
+ * engine to share out a breach of the cluster's power cap grows with the
+ * count of running jobs. For each job count a random set of jobs is created,
+ * each with an application type, priority and power, and the allocation of a
+ * reduction of a fixed fraction of their total power is timed.
+ *
+ * @author Richard Kavanagh
+ */
+public class PowerAllocationBenchmark {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    //The count of distinct priorities the jobs are given
+    private static final int PRIORITIES = 100;
+    private String jobCounts = "100,1000,10000,100000";
+    private int iterations = 100;
+    private int warmup = 10;
+    //The fraction of the jobs' total power that is to be removed
+    private double reduction = 0.1;
+    private long seed = 1;
+    private String outputFile = "PowerAllocationBenchmark.csv";
+    private final PowerCapAllocationDecisionEngine engine = new PowerCapAllocationDecisionEngine();
+
+    /**
+     * This creates a new power allocation benchmark.
+     */
+    public PowerAllocationBenchmark() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            jobCounts = config.getString("self.adaptation.manager.simulation.allocation.benchmark.jobs", jobCounts);
+            config.setProperty("self.adaptation.manager.simulation.allocation.benchmark.jobs", jobCounts);
+            iterations = config.getInt("self.adaptation.manager.simulation.allocation.benchmark.iterations", iterations);
+            config.setProperty("self.adaptation.manager.simulation.allocation.benchmark.iterations", iterations);
+            warmup = config.getInt("self.adaptation.manager.simulation.allocation.benchmark.warmup", warmup);
+            config.setProperty("self.adaptation.manager.simulation.allocation.benchmark.warmup", warmup);
+            reduction = config.getDouble("self.adaptation.manager.simulation.allocation.benchmark.reduction", reduction);
+            config.setProperty("self.adaptation.manager.simulation.allocation.benchmark.reduction", reduction);
+            seed = config.getLong("self.adaptation.manager.simulation.seed", seed);
+            config.setProperty("self.adaptation.manager.simulation.seed", seed);
+            outputFile = config.getString("self.adaptation.manager.simulation.allocation.benchmark.output", outputFile);
+            config.setProperty("self.adaptation.manager.simulation.allocation.benchmark.output", outputFile);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(PowerAllocationBenchmark.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    /**
+     * This runs the benchmark for each of the configured job counts, writing
+     * the results out to disk.
+     */
+    public void run() {
+        ResultsStore results = new ResultsStore(outputFile);
+        results.add("Jobs");
+        results.append("Rounds");
+        results.append("Mean Time (ms)");
+        results.append("P99 Time (ms)");
+        results.append("Max Time (ms)");
+        for (String count : jobCounts.split(",")) {
+            int jobs = Integer.parseInt(count.trim());
+            long[] times = run(jobs);
+            results.add(jobs + "");
+            results.append(times.length + "");
+            results.append(getMean(times) + "");
+            results.append(getPercentile(times, 0.99) + "");
+            results.append(getPercentile(times, 1.0) + "");
+            Logger.getLogger(PowerAllocationBenchmark.class.getName()).log(Level.INFO,
+                    "Jobs: {0} Mean allocation time: {1} ms P99 allocation time: {2} ms",
+                    new Object[]{jobs, getMean(times), getPercentile(times, 0.99)});
+        }
+        results.save();
+    }
+
+    /**
+     * This times the allocation of a power reduction amongst a given count
+     * of jobs.
+     *
+     * @param jobCount The count of jobs to share the reduction amongst
+     * @return The time taken by each measured allocation, in nanoseconds
+     */
+    public long[] run(int jobCount) {
+        Random random = new Random(seed);
+        String[] types = new String[jobCount];
+        int[] priority = new int[jobCount];
+        double[] power = new double[jobCount];
+        double total = 0;
+        for (int i = 0; i < jobCount; i++) {
+            types[i] = ClusterSnapshot.TYPE_RANK.get(random.nextInt(ClusterSnapshot.TYPE_RANK.size()));
+            priority[i] = random.nextInt(PRIORITIES);
+            //Between 1 and 8 hosts, each using between 100 and 300 W
+            power[i] = (1 + random.nextInt(8)) * (100 + random.nextDouble() * 200);
+            total = total + power[i];
+        }
+        double required = total * reduction;
+        for (int i = 0; i < warmup; i++) {
+            engine.allocate(types, priority, power, required);
+        }
+        long[] answer = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            engine.allocate(types, priority, power, required);
+            answer[i] = System.nanoTime() - start;
+        }
+        return answer;
+    }
+
+    /**
+     * @param times The times taken, in nanoseconds
+     * @return The mean time taken in milliseconds
+     */
+    private static double getMean(long[] times) {
+        if (times.length == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (long time : times) {
+            total = total + time;
+        }
+        return toMilliseconds(total) / times.length;
+    }
+
+    /**
+     * @param times The times taken, in nanoseconds
+     * @param percentile The percentile to get, between 0 and 1
+     * @return The time taken at the given percentile, in milliseconds
+     */
+    private static double getPercentile(long[] times, double percentile) {
+        if (times.length == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(times, times.length);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return toMilliseconds(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+    }
+
+    /**
+     * @param nanoseconds A duration in nanoseconds
+     * @return The duration in milliseconds
+     */
+    private static double toMilliseconds(long nanoseconds) {
+        return nanoseconds / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * This runs the power allocation benchmark.
+     *
+     * @param args The args are not used.
+     */
+    public static void main(String[] args) {
+        new PowerAllocationBenchmark().run();
+    }
+
+}
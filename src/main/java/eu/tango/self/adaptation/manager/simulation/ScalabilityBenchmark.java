@@ -0,0 +1,350 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import eu.ascetic.ioutils.io.ResultsStore;
+import eu.tango.self.adaptation.manager.listeners.EnvironmentMonitor;
+import eu.tango.self.adaptation.manager.listeners.SlurmJobMonitor;
+import eu.tango.self.adaptation.manager.rules.EventAssessor;
+import eu.tango.self.adaptation.manager.rules.ThresholdEventAssessor;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This measures how the self-adaptation manager scales with the size of the
+ * cluster it manages. For each cluster size a simulated cluster is created and
+ * the environment monitor and SLURM job monitor are driven against it, one
+ * round of detection at a time, with the events found going through the
+ * event assessor and decision engine and the resulting adaptations being
+ * carried out by the simulated actuator. Between each round the simulated
+ * cluster moves forward by a set number of simulated seconds.
+ *
+ * For each size the latency of a round, the CPU time used by a round, the
+ * CPU utilisation of the process and the heap used are reported, both in the
+ * log and in a CSV file. The rules used are the SAM's usual rules files, so
+ * the benchmark measures the rules that are to be deployed.
+ *
+ * @author Richard Kavanagh
+ */
+public class ScalabilityBenchmark {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    private static final String DEFAULT_EVENT_ASSESSOR_PACKAGE = "eu.tango.self.adaptation.manager.rules";
+    private String clusterSizes = "5000,10000,20000";
+    private int iterations = 100;
+    private int warmup = 10;
+    //The simulated seconds that pass between each round of detection
+    private int stepSize = 10;
+    private String eventAssessorName = "ThresholdEventAssessor";
+    private String outputFile = "ScalabilityBenchmark.csv";
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    /**
+     * This creates a new scalability benchmark.
+     */
+    public ScalabilityBenchmark() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            clusterSizes = config.getString("self.adaptation.manager.simulation.benchmark.sizes", clusterSizes);
+            config.setProperty("self.adaptation.manager.simulation.benchmark.sizes", clusterSizes);
+            iterations = config.getInt("self.adaptation.manager.simulation.benchmark.iterations", iterations);
+            config.setProperty("self.adaptation.manager.simulation.benchmark.iterations", iterations);
+            warmup = config.getInt("self.adaptation.manager.simulation.benchmark.warmup", warmup);
+            config.setProperty("self.adaptation.manager.simulation.benchmark.warmup", warmup);
+            stepSize = config.getInt("self.adaptation.manager.simulation.benchmark.step", stepSize);
+            config.setProperty("self.adaptation.manager.simulation.benchmark.step", stepSize);
+            eventAssessorName = config.getString("self.adaptation.manager.simulation.benchmark.event.assessor", eventAssessorName);
+            config.setProperty("self.adaptation.manager.simulation.benchmark.event.assessor", eventAssessorName);
+            outputFile = config.getString("self.adaptation.manager.simulation.benchmark.output", outputFile);
+            config.setProperty("self.adaptation.manager.simulation.benchmark.output", outputFile);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(ScalabilityBenchmark.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+    }
+
+    /**
+     * This creates the event assessor to benchmark.
+     *
+     * @return The event assessor named in the configuration, or the threshold
+     * event assessor if it can't be created.
+     */
+    private EventAssessor createEventAssessor() {
+        String name = eventAssessorName;
+        if (!name.startsWith(DEFAULT_EVENT_ASSESSOR_PACKAGE)) {
+            name = DEFAULT_EVENT_ASSESSOR_PACKAGE + "." + name;
+        }
+        try {
+            return (EventAssessor) (Class.forName(name).newInstance());
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException ex) {
+            Logger.getLogger(ScalabilityBenchmark.class.getName()).log(Level.WARNING, "The event assessor could not be created: " + name, ex);
+            return new ThresholdEventAssessor();
+        }
+    }
+
+    /**
+     * This runs the benchmark for each of the configured cluster sizes,
+     * writing the results out to disk.
+     */
+    public void run() {
+        ResultsStore results = new ResultsStore(outputFile);
+        results.add("Hosts");
+        results.append("Rounds");
+        results.append("Jobs");
+        results.append("Events");
+        results.append("Adaptations");
+        results.append("Adaptations Not Possible");
+        results.append("Mean Latency (ms)");
+        results.append("P50 Latency (ms)");
+        results.append("P95 Latency (ms)");
+        results.append("P99 Latency (ms)");
+        results.append("Max Latency (ms)");
+        results.append("CPU Per Round (ms)");
+        results.append("Process CPU (%)");
+        results.append("Peak Heap (MB)");
+        results.append("Retained Heap (MB)");
+        for (String size : clusterSizes.split(",")) {
+            Result result = run(Integer.parseInt(size.trim()));
+            results.add(result.hosts + "");
+            results.append(result.rounds + "");
+            results.append(result.jobs + "");
+            results.append(result.events + "");
+            results.append(result.performed + "");
+            results.append(result.notPossible + "");
+            results.append(result.getMeanLatency() + "");
+            results.append(result.getLatencyPercentile(0.5) + "");
+            results.append(result.getLatencyPercentile(0.95) + "");
+            results.append(result.getLatencyPercentile(0.99) + "");
+            results.append(result.getLatencyPercentile(1.0) + "");
+            results.append(result.cpuPerRound + "");
+            results.append(result.processCpu + "");
+            results.append(result.peakHeap + "");
+            results.append(result.retainedHeap + "");
+            Logger.getLogger(ScalabilityBenchmark.class.getName()).log(Level.INFO,
+                    "Hosts: {0} Mean latency: {1} ms P99 latency: {2} ms CPU per round: {3} ms Process CPU: {4}% Peak heap: {5} MB",
+                    new Object[]{result.hosts, result.getMeanLatency(), result.getLatencyPercentile(0.99),
+                        result.cpuPerRound, result.processCpu, result.peakHeap});
+        }
+        results.save();
+    }
+
+    /**
+     * This runs the benchmark against a cluster of a given size.
+     *
+     * @param hostCount The count of hosts in the simulated cluster
+     * @return The measurements taken
+     */
+    public Result run(int hostCount) {
+        SimulatedCluster cluster = SimulatedCluster.getInstance();
+        cluster.reset(hostCount);
+        SimulatedDataSource datasource = new SimulatedDataSource();
+        SimulatedActuator actuator = new SimulatedActuator();
+        EventAssessor assessor = createEventAssessor();
+        //The actuator is also the decision engine's source of hosts and power
+        assessor.setActuator(actuator);
+        EnvironmentMonitor environmentMonitor = new EnvironmentMonitor(datasource);
+        environmentMonitor.setEventAssessor(assessor);
+        SlurmJobMonitor jobMonitor = new SlurmJobMonitor(datasource);
+        jobMonitor.setEventAssessor(assessor);
+        //Fills the cluster and lets the JIT compiler settle before measuring
+        for (int i = 0; i < warmup; i++) {
+            cluster.step(stepSize);
+            environmentMonitor.detectAndAssessEvents();
+            jobMonitor.detectAndAssessEvents();
+        }
+        Result answer = new Result(hostCount, iterations);
+        long performedBefore = actuator.getPerformedCount();
+        long notPossibleBefore = actuator.getNotPossibleCount();
+        long cpuTime = 0;
+        long wallTime = 0;
+        long processCpuStart = getProcessCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            cluster.step(stepSize);
+            long roundStart = System.nanoTime();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            answer.events = answer.events + environmentMonitor.detectAndAssessEvents().size();
+            answer.events = answer.events + jobMonitor.detectAndAssessEvents().size();
+            cpuTime = cpuTime + threads.getCurrentThreadCpuTime() - cpuStart;
+            long latency = System.nanoTime() - roundStart;
+            wallTime = wallTime + latency;
+            answer.latencies[i] = latency;
+            answer.peakHeap = Math.max(answer.peakHeap, toMegabytes(memory.getHeapMemoryUsage().getUsed()));
+        }
+        long processCpu = getProcessCpuTime() - processCpuStart;
+        long elapsed = System.nanoTime() - start;
+        answer.rounds = iterations;
+        answer.jobs = cluster.getJobCount();
+        answer.performed = actuator.getPerformedCount() - performedBefore;
+        answer.notPossible = actuator.getNotPossibleCount() - notPossibleBefore;
+        answer.cpuPerRound = iterations == 0 ? 0 : toMilliseconds(cpuTime) / iterations;
+        if (processCpu >= 0 && elapsed > 0) {
+            answer.processCpu = 100.0 * processCpu / (double) elapsed / os.getAvailableProcessors();
+        }
+        assessor.stop();
+        actuator.stop();
+        System.gc();
+        answer.retainedHeap = toMegabytes(memory.getHeapMemoryUsage().getUsed());
+        return answer;
+    }
+
+    /**
+     * @return The CPU time used by the process in nanoseconds, or -1 if this
+     * can't be read
+     */
+    private long getProcessCpuTime() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * @param nanoseconds A duration in nanoseconds
+     * @return The duration in milliseconds
+     */
+    private static double toMilliseconds(long nanoseconds) {
+        return nanoseconds / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param bytes An amount of memory in bytes
+     * @return The amount of memory in megabytes
+     */
+    private static double toMegabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    /**
+     * The measurements taken for a single cluster size.
+     */
+    public static class Result {
+
+        private final int hosts;
+        private final long[] latencies;
+        private int rounds = 0;
+        private int jobs = 0;
+        private long events = 0;
+        private long performed = 0;
+        private long notPossible = 0;
+        private double cpuPerRound = 0;
+        private double processCpu = 0;
+        private double peakHeap = 0;
+        private double retainedHeap = 0;
+
+        public Result(int hosts, int rounds) {
+            this.hosts = hosts;
+            latencies = new long[rounds];
+        }
+
+        /**
+         * @return The count of hosts in the simulated cluster
+         */
+        public int getHosts() {
+            return hosts;
+        }
+
+        /**
+         * @return The mean latency of a round of detection in milliseconds
+         */
+        public double getMeanLatency() {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long total = 0;
+            for (long latency : latencies) {
+                total = total + latency;
+            }
+            return toMilliseconds(total) / latencies.length;
+        }
+
+        /**
+         * @param percentile The percentile to get, between 0 and 1
+         * @return The latency of a round of detection at the given percentile,
+         * in milliseconds
+         */
+        public double getLatencyPercentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, latencies.length);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return toMilliseconds(sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+        }
+
+        /**
+         * @return The mean CPU time of a round of detection in milliseconds
+         */
+        public double getCpuPerRound() {
+            return cpuPerRound;
+        }
+
+        /**
+         * @return The CPU utilisation of the whole process during the run, as
+         * a percentage of all the processors available
+         */
+        public double getProcessCpu() {
+            return processCpu;
+        }
+
+        /**
+         * @return The most heap seen in use during the run, in megabytes
+         */
+        public double getPeakHeap() {
+            return peakHeap;
+        }
+
+        /**
+         * @return The heap still in use after the run, once garbage has been
+         * collected, in megabytes
+         */
+        public double getRetainedHeap() {
+            return retainedHeap;
+        }
+
+    }
+
+    /**
+     * This runs the scalability benchmark.
+     *
+     * @param args The args are not used.
+     */
+    public static void main(String[] args) {
+        new ScalabilityBenchmark().run();
+    }
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.self.adaptation.manager.actuators.AbstractActuator;
+import eu.tango.self.adaptation.manager.model.ApplicationDefinition;
+import eu.tango.self.adaptation.manager.rules.datatypes.ApplicationEventData;
+import eu.tango.self.adaptation.manager.rules.datatypes.Response;
+import eu.tango.self.adaptation.manager.rules.decisionengine.HostPowerSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This actuator carries out adaptations against the simulated cluster, in
+ * place of SLURM. Adaptations take effect immediately and are seen by the
+ * monitors in their next round of detection. Adaptations that the simulated
+ * cluster does not model, such as changes to wall time, are marked as not
+ * possible. The actuator is also the source of hosts and power for the
+ * decision engine it is given to, so that decisions are made against the
+ * simulated cluster and its energy model rather than the energy modeller.
+ *
+ * @author Richard Kavanagh
+ */
+public class SimulatedActuator extends AbstractActuator implements HostPowerSource {
+
+    private final SimulatedCluster cluster;
+    private final AtomicLong performed = new AtomicLong(0);
+    private final AtomicLong notPossible = new AtomicLong(0);
+
+    /**
+     * This creates an actuator for the shared simulated cluster.
+     */
+    public SimulatedActuator() {
+        cluster = SimulatedCluster.getInstance();
+    }
+
+    /**
+     * The adaptation is carried out straight away, rather than being queued,
+     * so that a simulated run is not affected by when the actuator's thread
+     * gets to the adaptation, allowing the run to be repeated.
+     *
+     * @param response The response to an event that needs to be executed.
+     */
+    @Override
+    public void actuate(Response response) {
+        perform(response);
+    }
+
+    @Override
+    public ApplicationDefinition getApplication(String name, String deploymentId) {
+        for (ApplicationOnHost task : cluster.getTasks(null)) {
+            if (task.getName().equals(name) && (task.getId() + "").equals(deploymentId.trim())) {
+                return new ApplicationDefinition(name, deploymentId);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Host> getHostList() {
+        return cluster.getHostList();
+    }
+
+    @Override
+    public Host getHost(String hostname) {
+        return cluster.getHostByName(hostname);
+    }
+
+    @Override
+    public List<ApplicationOnHost> getApplicationTasks(String applicationName, int deploymentId) {
+        List<ApplicationOnHost> answer = new ArrayList<>();
+        for (ApplicationOnHost task : cluster.getTasks(null)) {
+            if (task.getName().equals(applicationName) && task.getId() == deploymentId) {
+                answer.add(task);
+            }
+        }
+        return answer.isEmpty() ? null : answer;
+    }
+
+    @Override
+    public List<Double> getApplicationPower(List<ApplicationOnHost> tasks) {
+        List<Double> answer = new ArrayList<>(tasks.size());
+        for (ApplicationOnHost task : tasks) {
+            answer.add(cluster.getTaskPower(task));
+        }
+        return answer;
+    }
+
+    @Override
+    public double getTaskPower(ApplicationOnHost task) {
+        return cluster.getTaskPower(task);
+    }
+
+    @Override
+    public double getHostPower(Host host) {
+        return cluster.getHostPower(host.getHostName());
+    }
+
+    @Override
+    public List<ApplicationOnHost> getTasksOnHost(String host) {
+        return cluster.getTasksOnHost(host);
+    }
+
+    @Override
+    public List<ApplicationOnHost> getTasks() {
+        return cluster.getTasks(null);
+    }
+
+    @Override
+    public void hardKillApp(String applicationName, String deploymentId) {
+        cluster.killJob(parseId(deploymentId));
+    }
+
+    @Override
+    public void addResource(String applicationName, String deploymentId, String taskParams) {
+        cluster.addTask(parseId(deploymentId));
+    }
+
+    @Override
+    public void removeResource(String applicationName, String deploymentId, String taskId) {
+        cluster.removeTask(parseId(deploymentId), parseId(taskId));
+    }
+
+    /**
+     * @param id The id of a job or host
+     * @return The id as a number, -1 if it can't be read
+     */
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id.trim());
+        } catch (NumberFormatException | NullPointerException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * This powers hosts on or off.
+     *
+     * @param hostnames The name of the host, or a comma separated list of
+     * hosts
+     * @param on If the hosts should be started, otherwise they are powered off
+     * @return If any host was changed
+     */
+    private boolean setPower(String hostnames, boolean on) {
+        boolean answer = false;
+        for (String host : hostnames.split(",")) {
+            answer = cluster.setPower(host.trim(), on) || answer;
+        }
+        return answer;
+    }
+
+    /**
+     * This changes the power cap of the simulated cluster.
+     *
+     * @param response The response that caused the change
+     * @param direction 1 to increase the power cap, -1 to decrease it and 0 to
+     * set it to the value given in the adaptation details
+     * @return If the power cap was changed
+     */
+    private boolean changePowerCap(Response response, int direction) {
+        if (direction == 0) {
+            if (!response.hasAdaptationDetail("POWER_CAP")) {
+                return false;
+            }
+            cluster.setPowerCap(Double.parseDouble(response.getAdaptationDetail("POWER_CAP")));
+            return true;
+        }
+        double increment = 10;
+        if (response.hasAdaptationDetail("POWER_INCREMENT")) {
+            increment = Double.parseDouble(response.getAdaptationDetail("POWER_INCREMENT"));
+        }
+        double current = cluster.getPowerCap();
+        if (Double.isNaN(current)) {
+            return false;
+        }
+        cluster.setPowerCap(current + direction * increment);
+        return true;
+    }
+
+    @Override
+    protected void launchAction(Response response) {
+        if (response.getCause() instanceof ApplicationEventData) {
+            if (response.getDeploymentId() == null || response.getDeploymentId().isEmpty()) {
+                response.setPerformed(true);
+                response.setPossibleToAdapt(false);
+                notPossible.incrementAndGet();
+                return;
+            }
+        }
+        int jobId = parseId(getTaskDeploymentId(response));
+        boolean done;
+        switch (response.getActionType()) {
+            case ADD_CPU:
+                done = cluster.changeCpu(jobId, 1);
+                break;
+            case REMOVE_CPU:
+                done = cluster.changeCpu(jobId, -1);
+                break;
+            case ADD_TASK:
+                done = cluster.addTask(jobId);
+                break;
+            case REMOVE_TASK:
+                done = cluster.removeTask(jobId, parseId(response.getTaskId()));
+                break;
+            case SCALE_TO_N_TASKS:
+                scaleToNTasks(response.getApplicationId(), jobId + "", response);
+                done = true;
+                break;
+            case PAUSE_APP:
+                done = cluster.setPaused(jobId, true);
+                break;
+            case UNPAUSE_APP:
+                done = cluster.setPaused(jobId, false);
+                break;
+            case HARD_KILL_APP:
+            case KILL_APP:
+                done = cluster.killJob(jobId);
+                break;
+            case INCREASE_POWER_CAP:
+                done = changePowerCap(response, 1);
+                break;
+            case REDUCE_POWER_CAP:
+                done = changePowerCap(response, -1);
+                break;
+            case SET_POWER_CAP:
+                done = changePowerCap(response, 0);
+                break;
+            case STARTUP_HOST:
+                done = getHostname(response) != null && setPower(getHostname(response), true);
+                break;
+            case SHUTDOWN_HOST:
+                done = getHostname(response) != null && setPower(getHostname(response), false);
+                break;
+            default:
+                Logger.getLogger(SimulatedActuator.class.getName()).log(Level.FINE, "The Response type {0} is not simulated", response.getActionType());
+                done = false;
+                break;
+        }
+        if (done) {
+            performed.incrementAndGet();
+        } else {
+            response.setPossibleToAdapt(false);
+            notPossible.incrementAndGet();
+        }
+        response.setPerformed(true);
+    }
+
+    /**
+     * @return The count of adaptations carried out
+     */
+    public long getPerformedCount() {
+        return performed.get();
+    }
+
+    /**
+     * @return The count of adaptations that could not be carried out
+     */
+    public long getNotPossibleCount() {
+        return notPossible.get();
+    }
+
+}
@@ -0,0 +1,760 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * This simulates a cluster of hosts running jobs, so that the behaviour of the
+ * self-adaptation manager can be measured at scales where no real cluster is
+ * available. Jobs arrive at a given rate, wait in a first come first served
+ * queue, run exclusively on one or more hosts for a randomly drawn duration
+ * and then finish. Hosts fail at random and are repaired after a set time.
+ * Time is simulated, it only moves forward when the cluster is stepped, and
+ * the random number generator is seeded, so that a run can be repeated.
+ *
+ * The cluster is shared by the simulated data source and the simulated
+ * actuator, so that adaptations made by the actuator are seen by the
+ * monitors in the next round of detection.
+ *
+ * @author Richard Kavanagh
+ */
+public class SimulatedCluster {
+
+    private static final String CONFIG_FILE = "self-adaptation-manager.properties";
+    public static final String IDLE = "IDLE";
+    public static final String ALLOCATED = "ALLOCATED";
+    public static final String DOWN = "DOWN";
+    public static final String POWERED_OFF = "DOWN+POWER";
+    private int hostCount = 5000;
+    private int coresPerHost = 16;
+    private long seed = 1;
+    //The mean count of jobs arriving per simulated second
+    private double jobArrivalRate = 1.0;
+    //The mean duration of a job in simulated seconds
+    private int meanJobDuration = 3600;
+    private int maxTasksPerJob = 8;
+    //The chance of a host failing per simulated hour
+    private double hostFailureRate = 0.001;
+    //How long in simulated seconds a failed host takes to be repaired
+    private int hostRepairTime = 1800;
+    private double idlePower = 100;
+    private double maxPower = 300;
+    private final String[] applicationNames = {"RK-Bench", "NEMO", "GROMACS", "LAMMPS", "HPL", "WRF"};
+    private Random random;
+    private SimulatedEnergyModel energyModel;
+    private long time;
+    private final ArrayList<SimulatedHost> hosts = new ArrayList<>();
+    private final HashMap<String, SimulatedHost> hostsByName = new HashMap<>();
+    private final HashMap<Integer, SimulatedHost> hostsById = new HashMap<>();
+    private final LinkedHashSet<SimulatedHost> freeHosts = new LinkedHashSet<>();
+    private final LinkedHashMap<Integer, SimulatedJob> jobs = new LinkedHashMap<>();
+    private final ArrayDeque<SimulatedJob> pending = new ArrayDeque<>();
+    private final PriorityQueue<SimulatedJob> running = new PriorityQueue<>(11, new Comparator<SimulatedJob>() {
+        @Override
+        public int compare(SimulatedJob o1, SimulatedJob o2) {
+            return Long.compare(o1.endTime, o2.endTime);
+        }
+    });
+    private final PriorityQueue<SimulatedHost> repairs = new PriorityQueue<>(11, new Comparator<SimulatedHost>() {
+        @Override
+        public int compare(SimulatedHost o1, SimulatedHost o2) {
+            return Long.compare(o1.repairTime, o2.repairTime);
+        }
+    });
+    private int nextJobId = 1;
+    private double powerCap = Double.NaN;
+    private long jobsStarted = 0;
+    private long jobsFinished = 0;
+    private long hostFailures = 0;
+
+    /**
+     * SingletonHolder is loaded on the first execution of
+     * Singleton.getInstance() or the first access to SingletonHolder.INSTANCE,
+     * not before.
+     */
+    private static class SingletonHolder {
+
+        private static final SimulatedCluster INSTANCE = new SimulatedCluster();
+    }
+
+    /**
+     * This gets the singleton instance of the simulated cluster.
+     *
+     * @return A singleton instance of the simulated cluster.
+     */
+    public static SimulatedCluster getInstance() {
+        return SingletonHolder.INSTANCE;
+    }
+
+    /**
+     * Private constructor for the simulated cluster, this class should be
+     * loaded as a singleton instance.
+     */
+    private SimulatedCluster() {
+        try {
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            hostCount = config.getInt("self.adaptation.manager.simulation.hosts", hostCount);
+            config.setProperty("self.adaptation.manager.simulation.hosts", hostCount);
+            coresPerHost = config.getInt("self.adaptation.manager.simulation.cores.per.host", coresPerHost);
+            config.setProperty("self.adaptation.manager.simulation.cores.per.host", coresPerHost);
+            seed = config.getLong("self.adaptation.manager.simulation.seed", seed);
+            config.setProperty("self.adaptation.manager.simulation.seed", seed);
+            jobArrivalRate = config.getDouble("self.adaptation.manager.simulation.job.arrival.rate", jobArrivalRate);
+            config.setProperty("self.adaptation.manager.simulation.job.arrival.rate", jobArrivalRate);
+            meanJobDuration = config.getInt("self.adaptation.manager.simulation.job.duration", meanJobDuration);
+            config.setProperty("self.adaptation.manager.simulation.job.duration", meanJobDuration);
+            maxTasksPerJob = config.getInt("self.adaptation.manager.simulation.job.max.tasks", maxTasksPerJob);
+            config.setProperty("self.adaptation.manager.simulation.job.max.tasks", maxTasksPerJob);
+            hostFailureRate = config.getDouble("self.adaptation.manager.simulation.host.failure.rate", hostFailureRate);
+            config.setProperty("self.adaptation.manager.simulation.host.failure.rate", hostFailureRate);
+            hostRepairTime = config.getInt("self.adaptation.manager.simulation.host.repair.time", hostRepairTime);
+            config.setProperty("self.adaptation.manager.simulation.host.repair.time", hostRepairTime);
+            idlePower = config.getDouble("self.adaptation.manager.simulation.idle.power", idlePower);
+            config.setProperty("self.adaptation.manager.simulation.idle.power", idlePower);
+            maxPower = config.getDouble("self.adaptation.manager.simulation.max.power", maxPower);
+            config.setProperty("self.adaptation.manager.simulation.max.power", maxPower);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(SimulatedCluster.class.getName()).log(Level.INFO, "Error loading the configuration of the Self adaptation manager", ex);
+        }
+        reset(hostCount);
+    }
+
+    /**
+     * This discards the current cluster and creates a new one, made up of
+     * idle hosts with no jobs. The random number generator is reseeded, so
+     * that each reset with the same size of cluster gives the same run.
+     *
+     * @param hostCount The count of hosts in the new cluster
+     */
+    public synchronized void reset(int hostCount) {
+        this.hostCount = hostCount;
+        random = new Random(seed);
+        energyModel = new SimulatedEnergyModel(idlePower, maxPower);
+        time = 0;
+        hosts.clear();
+        hostsByName.clear();
+        hostsById.clear();
+        freeHosts.clear();
+        jobs.clear();
+        pending.clear();
+        running.clear();
+        repairs.clear();
+        nextJobId = 1;
+        powerCap = Double.NaN;
+        jobsStarted = 0;
+        jobsFinished = 0;
+        hostFailures = 0;
+        for (int i = 1; i <= hostCount; i++) {
+            Host host = new Host(i, String.format("node%05d", i));
+            host.setCoreCount(coresPerHost);
+            host.setIdlePowerConsumption(idlePower);
+            SimulatedHost simHost = new SimulatedHost(host);
+            simHost.setState(IDLE);
+            hosts.add(simHost);
+            hostsByName.put(host.getHostName(), simHost);
+            hostsById.put(i, simHost);
+            freeHosts.add(simHost);
+        }
+    }
+
+    /**
+     * This moves the simulation forward, one simulated second at a time.
+     * Jobs that are due to finish do so, new jobs arrive, queued jobs are
+     * started on free hosts, hosts fail or are repaired and the utilisation
+     * of each busy host varies a little.
+     *
+     * @param seconds The count of simulated seconds to move forward by
+     */
+    public synchronized void step(int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            time++;
+            finishJobs();
+            repairHosts();
+            failHosts();
+            int arrivals = getPoissonCount(jobArrivalRate);
+            for (int j = 0; j < arrivals; j++) {
+                submitJob();
+            }
+            scheduleJobs();
+        }
+        for (SimulatedJob job : running) {
+            job.utilisation = Math.max(0.05, Math.min(1.0, job.utilisation + (random.nextDouble() - 0.5) * 0.1));
+        }
+    }
+
+    /**
+     * This draws a count of events from a Poisson distribution.
+     *
+     * @param mean The mean count of events
+     * @return The count of events
+     */
+    private int getPoissonCount(double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int answer = 0;
+        while (product > limit) {
+            answer++;
+            product = product * random.nextDouble();
+        }
+        return answer;
+    }
+
+    /**
+     * This finishes all the running jobs that have reached their end time.
+     */
+    private void finishJobs() {
+        while (!running.isEmpty() && running.peek().endTime <= time) {
+            finishJob(running.poll());
+        }
+    }
+
+    /**
+     * This removes a job from the cluster, freeing its hosts.
+     *
+     * @param job The job to remove
+     */
+    private void finishJob(SimulatedJob job) {
+        running.remove(job);
+        pending.remove(job);
+        jobs.remove(job.id);
+        for (SimulatedHost host : job.hosts) {
+            release(host);
+        }
+        job.hosts.clear();
+        job.tasks.clear();
+        jobsFinished++;
+    }
+
+    /**
+     * This returns a host to the pool of free hosts, if it is still up.
+     *
+     * @param host The host to release
+     */
+    private void release(SimulatedHost host) {
+        host.job = null;
+        if (!host.isDown()) {
+            host.setState(IDLE);
+            freeHosts.add(host);
+        }
+    }
+
+    /**
+     * This brings back hosts whose repair has finished.
+     */
+    private void repairHosts() {
+        while (!repairs.isEmpty() && repairs.peek().repairTime <= time) {
+            SimulatedHost host = repairs.poll();
+            host.setState(IDLE);
+            freeHosts.add(host);
+        }
+    }
+
+    /**
+     * This fails hosts at random, killing any job that was running on them.
+     */
+    private void failHosts() {
+        int failures = getPoissonCount(hostFailureRate * hosts.size() / 3600.0);
+        for (int i = 0; i < failures; i++) {
+            SimulatedHost host = hosts.get(random.nextInt(hosts.size()));
+            if (host.isDown()) {
+                continue;
+            }
+            if (host.job != null) {
+                finishJob(host.job);
+            }
+            freeHosts.remove(host);
+            host.setState(DOWN);
+            host.repairTime = time + hostRepairTime;
+            repairs.add(host);
+            hostFailures++;
+        }
+    }
+
+    /**
+     * This adds a new job to the queue.
+     */
+    private void submitJob() {
+        String name = applicationNames[random.nextInt(applicationNames.length)];
+        int width = 1 + random.nextInt(Math.max(1, maxTasksPerJob));
+        //Exponentially distributed durations, of at least one minute
+        long duration = 60 + (long) (-Math.log(1.0 - random.nextDouble()) * meanJobDuration);
+        SimulatedJob job = new SimulatedJob(nextJobId, name, width, duration);
+        nextJobId++;
+        job.utilisation = 0.5 + random.nextDouble() * 0.5;
+        jobs.put(job.id, job);
+        pending.add(job);
+        //A pending job is shown against the host it has been queued behind
+        Host queuedFor = hosts.get(random.nextInt(hosts.size())).host;
+        job.tasks.add(job.createTask(queuedFor, ApplicationOnHost.JOB_STATUS.PENDING));
+    }
+
+    /**
+     * This starts queued jobs, in the order they arrived, while there are
+     * enough free hosts for the job at the head of the queue.
+     */
+    private void scheduleJobs() {
+        while (!pending.isEmpty() && pending.peek().width <= freeHosts.size()) {
+            SimulatedJob job = pending.poll();
+            job.tasks.clear();
+            Iterator<SimulatedHost> free = freeHosts.iterator();
+            for (int i = 0; i < job.width; i++) {
+                SimulatedHost host = free.next();
+                free.remove();
+                allocate(job, host);
+            }
+            job.status = ApplicationOnHost.JOB_STATUS.RUNNING;
+            job.endTime = time + job.duration;
+            running.add(job);
+            jobsStarted++;
+        }
+    }
+
+    /**
+     * This places a task of a job on a host.
+     *
+     * @param job The job to place the task of
+     * @param host The host to place it on
+     */
+    private void allocate(SimulatedJob job, SimulatedHost host) {
+        host.job = job;
+        host.setState(ALLOCATED);
+        job.hosts.add(host);
+        job.tasks.add(job.createTask(host.host, job.status == ApplicationOnHost.JOB_STATUS.PENDING
+                ? ApplicationOnHost.JOB_STATUS.RUNNING : job.status));
+    }
+
+    /**
+     * @return The current simulated time in seconds
+     */
+    public synchronized long getTime() {
+        return time;
+    }
+
+    /**
+     * @return The energy model used for the cluster
+     */
+    public synchronized SimulatedEnergyModel getEnergyModel() {
+        return energyModel;
+    }
+
+    /**
+     * @return The list of hosts in the cluster
+     */
+    public synchronized List<Host> getHostList() {
+        ArrayList<Host> answer = new ArrayList<>(hosts.size());
+        for (SimulatedHost host : hosts) {
+            answer.add(host.host);
+        }
+        return answer;
+    }
+
+    /**
+     * @param hostname The name of the host
+     * @return The named host, or null if it is not part of the cluster
+     */
+    public synchronized Host getHostByName(String hostname) {
+        SimulatedHost answer = hostsByName.get(hostname);
+        return answer == null ? null : answer.host;
+    }
+
+    /**
+     * @param status The status of the jobs to list, null for all jobs
+     * @return The list of tasks of the jobs with the given status
+     */
+    public synchronized List<ApplicationOnHost> getTasks(ApplicationOnHost.JOB_STATUS status) {
+        ArrayList<ApplicationOnHost> answer = new ArrayList<>();
+        for (SimulatedJob job : jobs.values()) {
+            if (status == null || job.status == status) {
+                answer.addAll(job.tasks);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * @param hostname The name of the host
+     * @return The list of tasks running on the host
+     */
+    public synchronized List<ApplicationOnHost> getTasksOnHost(String hostname) {
+        ArrayList<ApplicationOnHost> answer = new ArrayList<>();
+        SimulatedHost host = hostsByName.get(hostname);
+        if (host != null && host.job != null) {
+            for (ApplicationOnHost task : host.job.tasks) {
+                if (task.getAllocatedTo() == host.host) {
+                    answer.add(task);
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This gets the CPU utilisation of a host.
+     *
+     * @param hostname The name of the host
+     * @return The utilisation of the host, between 0 and 1
+     */
+    public synchronized double getUtilisation(String hostname) {
+        SimulatedHost host = hostsByName.get(hostname);
+        if (host == null || host.job == null
+                || host.job.status != ApplicationOnHost.JOB_STATUS.RUNNING) {
+            return 0.0;
+        }
+        return host.job.utilisation * host.job.cpuFraction;
+    }
+
+    /**
+     * This gets the power of a host, as given by the simulated energy model.
+     *
+     * @param hostname The name of the host
+     * @return The power of the host in Watts
+     */
+    public synchronized double getHostPower(String hostname) {
+        SimulatedHost host = hostsByName.get(hostname);
+        if (host == null) {
+            return 0.0;
+        }
+        return energyModel.getHostPower(getUtilisation(hostname), host.isDown());
+    }
+
+    /**
+     * This gets the power of a task, i.e. its share of the power of the host
+     * it is on, as given by the simulated energy model.
+     *
+     * @param task The task to get the power of
+     * @return The power of the task in Watts
+     */
+    public synchronized double getTaskPower(ApplicationOnHost task) {
+        String hostname = task.getAllocatedTo().getHostName();
+        if (isDown(hostname)) {
+            return 0.0;
+        }
+        return energyModel.getTaskPower(getUtilisation(hostname), getTasksOnHost(hostname).size());
+    }
+
+    /**
+     * @param hostname The name of the host
+     * @return If the host is down, either failed or powered off
+     */
+    public synchronized boolean isDown(String hostname) {
+        SimulatedHost host = hostsByName.get(hostname);
+        return host == null || host.isDown();
+    }
+
+    /**
+     * This pauses or resumes a job.
+     *
+     * @param jobId The id of the job
+     * @param paused If the job should be paused, otherwise it is resumed
+     * @return If the job was found in a state that allowed the change
+     */
+    public synchronized boolean setPaused(int jobId, boolean paused) {
+        SimulatedJob job = jobs.get(jobId);
+        ApplicationOnHost.JOB_STATUS from = paused ? ApplicationOnHost.JOB_STATUS.RUNNING : ApplicationOnHost.JOB_STATUS.SUSPENDED;
+        if (job == null || job.status != from) {
+            return false;
+        }
+        if (paused) {
+            running.remove(job);
+            job.remaining = Math.max(0, job.endTime - time);
+            job.setStatus(ApplicationOnHost.JOB_STATUS.SUSPENDED);
+        } else {
+            job.endTime = time + job.remaining;
+            job.setStatus(ApplicationOnHost.JOB_STATUS.RUNNING);
+            running.add(job);
+        }
+        return true;
+    }
+
+    /**
+     * This kills a job, freeing its hosts.
+     *
+     * @param jobId The id of the job
+     * @return If the job was found
+     */
+    public synchronized boolean killJob(int jobId) {
+        SimulatedJob job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        finishJob(job);
+        return true;
+    }
+
+    /**
+     * This adds a task to a running or suspended job, on a free host.
+     *
+     * @param jobId The id of the job
+     * @return If a task was added
+     */
+    public synchronized boolean addTask(int jobId) {
+        SimulatedJob job = jobs.get(jobId);
+        if (job == null || job.status == ApplicationOnHost.JOB_STATUS.PENDING || freeHosts.isEmpty()) {
+            return false;
+        }
+        Iterator<SimulatedHost> free = freeHosts.iterator();
+        SimulatedHost host = free.next();
+        free.remove();
+        allocate(job, host);
+        return true;
+    }
+
+    /**
+     * This removes the task of a job that is on a given host. The last task
+     * of a job is never removed.
+     *
+     * @param jobId The id of the job
+     * @param hostId The id of the host the task is on
+     * @return If the task was removed
+     */
+    public synchronized boolean removeTask(int jobId, int hostId) {
+        SimulatedJob job = jobs.get(jobId);
+        SimulatedHost host = hostsById.get(hostId);
+        if (job == null || host == null || host.job != job || job.hosts.size() <= 1) {
+            return false;
+        }
+        job.hosts.remove(host);
+        for (Iterator<ApplicationOnHost> it = job.tasks.iterator(); it.hasNext();) {
+            if (it.next().getAllocatedTo() == host.host) {
+                it.remove();
+            }
+        }
+        release(host);
+        return true;
+    }
+
+    /**
+     * This changes the share of each of its hosts' cores a job may use.
+     *
+     * @param jobId The id of the job
+     * @param cores The count of cores to add, negative to remove cores
+     * @return If the job was found and the change made
+     */
+    public synchronized boolean changeCpu(int jobId, int cores) {
+        SimulatedJob job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        double fraction = job.cpuFraction + cores / (double) coresPerHost;
+        if (fraction <= 0 || fraction > 1.0) {
+            return false;
+        }
+        job.cpuFraction = fraction;
+        return true;
+    }
+
+    /**
+     * This powers off or starts up a host. Only idle hosts may be powered
+     * off and only powered off hosts started.
+     *
+     * @param hostname The name of the host
+     * @param on If the host should be started, otherwise it is powered off
+     * @return If the host was in a state that allowed the change
+     */
+    public synchronized boolean setPower(String hostname, boolean on) {
+        SimulatedHost host = hostsByName.get(hostname);
+        if (host == null) {
+            return false;
+        }
+        if (on && POWERED_OFF.equals(host.state)) {
+            host.setState(IDLE);
+            freeHosts.add(host);
+            return true;
+        }
+        if (!on && IDLE.equals(host.state)) {
+            freeHosts.remove(host);
+            host.setState(POWERED_OFF);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The power cap set for the cluster, NaN if none is set
+     */
+    public synchronized double getPowerCap() {
+        return powerCap;
+    }
+
+    /**
+     * @param powerCap The power cap set for the cluster, NaN if none is set
+     */
+    public synchronized void setPowerCap(double powerCap) {
+        this.powerCap = powerCap;
+    }
+
+    /**
+     * @return The count of hosts in the cluster
+     */
+    public synchronized int getHostCount() {
+        return hosts.size();
+    }
+
+    /**
+     * @return The count of jobs queued, running or suspended
+     */
+    public synchronized int getJobCount() {
+        return jobs.size();
+    }
+
+    /**
+     * @return The count of jobs waiting in the queue
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return The count of hosts that are free to run a job
+     */
+    public synchronized int getFreeHostCount() {
+        return freeHosts.size();
+    }
+
+    /**
+     * @return The count of jobs started since the cluster was reset
+     */
+    public synchronized long getJobsStarted() {
+        return jobsStarted;
+    }
+
+    /**
+     * @return The count of jobs finished since the cluster was reset
+     */
+    public synchronized long getJobsFinished() {
+        return jobsFinished;
+    }
+
+    /**
+     * @return The count of host failures since the cluster was reset
+     */
+    public synchronized long getHostFailures() {
+        return hostFailures;
+    }
+
+    /**
+     * A host of the simulated cluster.
+     */
+    private static class SimulatedHost {
+
+        private final Host host;
+        private String state;
+        private SimulatedJob job = null;
+        private long repairTime = 0;
+
+        public SimulatedHost(Host host) {
+            this.host = host;
+        }
+
+        /**
+         * @param state The new state of the host
+         */
+        private void setState(String state) {
+            this.state = state;
+            host.setState(state);
+            host.setAvailable(!state.startsWith(DOWN));
+        }
+
+        /**
+         * @return If the host is down, either failed or powered off
+         */
+        private boolean isDown() {
+            return state.startsWith(DOWN);
+        }
+
+    }
+
+    /**
+     * A job of the simulated cluster, with one task per host it runs on.
+     */
+    private static class SimulatedJob {
+
+        private final int id;
+        private final String name;
+        private final int width;
+        private final long duration;
+        private ApplicationOnHost.JOB_STATUS status = ApplicationOnHost.JOB_STATUS.PENDING;
+        private final ArrayList<SimulatedHost> hosts = new ArrayList<>();
+        private final ArrayList<ApplicationOnHost> tasks = new ArrayList<>();
+        private long endTime = Long.MAX_VALUE;
+        private long remaining = 0;
+        private double utilisation = 1.0;
+        private double cpuFraction = 1.0;
+
+        public SimulatedJob(int id, String name, int width, long duration) {
+            this.id = id;
+            this.name = name;
+            this.width = width;
+            this.duration = duration;
+        }
+
+        /**
+         * This creates the energy modeller's representation of a task of
+         * this job.
+         *
+         * @param host The host the task is on
+         * @param status The status of the task
+         * @return The new task
+         */
+        private ApplicationOnHost createTask(Host host, ApplicationOnHost.JOB_STATUS status) {
+            ApplicationOnHost answer = new ApplicationOnHost(id, name, host);
+            answer.setStatus(status);
+            return answer;
+        }
+
+        /**
+         * @param status The new status of the job and its tasks
+         */
+        private void setStatus(ApplicationOnHost.JOB_STATUS status) {
+            this.status = status;
+            for (ApplicationOnHost task : tasks) {
+                task.setStatus(status);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import eu.tango.energymodeller.datasourceclient.HostDataSource;
+import eu.tango.energymodeller.datasourceclient.HostMeasurement;
+import eu.tango.energymodeller.datasourceclient.MetricValue;
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
+import eu.tango.energymodeller.types.energyuser.GeneralPurposePowerConsumer;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
+import eu.tango.self.adaptation.manager.io.TimeSource;
+import eu.tango.self.adaptation.manager.listeners.PowerCapSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a data source that reports the hosts, jobs and measurements of the
+ * simulated cluster, in place of a real monitoring infrastructure. Each host
+ * that is up reports its power, as given by the simulated energy model, and
+ * its CPU utilisation.
+ *
+ * @author Richard Kavanagh
+ */
+public class SimulatedDataSource implements HostDataSource, PowerCapSource {
+
+    public static final String POWER = "power";
+    public static final String CPU_UTILISATION = "cpu-measured";
+    private final SimulatedCluster cluster;
+
+    /**
+     * This creates a data source for the shared simulated cluster.
+     */
+    public SimulatedDataSource() {
+        cluster = SimulatedCluster.getInstance();
+    }
+
+    /**
+     * @return The simulated cluster this data source reports upon
+     */
+    public SimulatedCluster getCluster() {
+        return cluster;
+    }
+
+    @Override
+    public double getPowerCap() {
+        return cluster.getPowerCap();
+    }
+
+    @Override
+    public Host getHostByName(String hostname) {
+        return cluster.getHostByName(hostname);
+    }
+
+    @Override
+    public GeneralPurposePowerConsumer getGeneralPowerConsumerByName(String hostname) {
+        return null;
+    }
+
+    @Override
+    public List<Host> getHostList() {
+        return cluster.getHostList();
+    }
+
+    @Override
+    public List<EnergyUsageSource> getHostAndVmList() {
+        return new ArrayList<EnergyUsageSource>(cluster.getHostList());
+    }
+
+    @Override
+    public List<GeneralPurposePowerConsumer> getGeneralPowerConsumerList() {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<ApplicationOnHost> getHostApplicationList(ApplicationOnHost.JOB_STATUS state) {
+        return cluster.getTasks(state);
+    }
+
+    @Override
+    public List<ApplicationOnHost> getHostApplicationList() {
+        return cluster.getTasks(null);
+    }
+
+    @Override
+    public HostMeasurement getHostData(Host host) {
+        if (host == null || cluster.isDown(host.getHostName())) {
+            //Hosts that are down report no measurements
+            return null;
+        }
+        long clock = TimeSource.currentTimeSeconds();
+        HostMeasurement answer = new HostMeasurement(host, clock);
+        answer.addMetric(new MetricValue(POWER, POWER, cluster.getHostPower(host.getHostName()) + "", clock));
+        answer.addMetric(new MetricValue(CPU_UTILISATION, CPU_UTILISATION, cluster.getUtilisation(host.getHostName()) + "", clock));
+        return answer;
+    }
+
+    @Override
+    public List<HostMeasurement> getHostData() {
+        return getHostData(cluster.getHostList());
+    }
+
+    @Override
+    public List<HostMeasurement> getHostData(List<Host> hostList) {
+        ArrayList<HostMeasurement> answer = new ArrayList<>(hostList.size());
+        for (Host host : hostList) {
+            HostMeasurement measurement = getHostData(host);
+            if (measurement != null) {
+                answer.add(measurement);
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    public CurrentUsageRecord getCurrentEnergyUsage(Host host) {
+        return new CurrentUsageRecord(host, cluster.getHostPower(host.getHostName()));
+    }
+
+    @Override
+    public double getLowestHostPowerUsage(Host host) {
+        return cluster.getEnergyModel().getIdlePower();
+    }
+
+    @Override
+    public double getHighestHostPowerUsage(Host host) {
+        return cluster.getEnergyModel().getMaxPower();
+    }
+
+    @Override
+    public double getCpuUtilisation(Host host, int durationSeconds) {
+        return cluster.getUtilisation(host.getHostName());
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+/**
+ * This is a stand-in for the energy modeller, used by the simulated cluster.
+ * The power of a host rises linearly from its idle power to its maximum power
+ * with its CPU utilisation, while a host that is down uses no power. The
+ * power of a task is its share of its host's power.
+ *
+ * @author Richard Kavanagh
+ */
+public class SimulatedEnergyModel {
+
+    private final double idlePower;
+    private final double maxPower;
+
+    /**
+     * This creates a new simulated energy model.
+     *
+     * @param idlePower The power of an idle host in Watts
+     * @param maxPower The power of a fully utilised host in Watts
+     */
+    public SimulatedEnergyModel(double idlePower, double maxPower) {
+        this.idlePower = idlePower;
+        this.maxPower = Math.max(idlePower, maxPower);
+    }
+
+    /**
+     * @return The power of an idle host in Watts
+     */
+    public double getIdlePower() {
+        return idlePower;
+    }
+
+    /**
+     * @return The power of a fully utilised host in Watts
+     */
+    public double getMaxPower() {
+        return maxPower;
+    }
+
+    /**
+     * This gets the power of a host.
+     *
+     * @param utilisation The CPU utilisation of the host, between 0 and 1
+     * @param down If the host is down
+     * @return The power of the host in Watts
+     */
+    public double getHostPower(double utilisation, boolean down) {
+        if (down) {
+            return 0.0;
+        }
+        return idlePower + (maxPower - idlePower) * Math.max(0.0, Math.min(1.0, utilisation));
+    }
+
+    /**
+     * This gets the power of a task, i.e. its share of its host's power.
+     *
+     * @param utilisation The CPU utilisation of the host, between 0 and 1
+     * @param tasksOnHost The count of tasks on the host
+     * @return The power of the task in Watts
+     */
+    public double getTaskPower(double utilisation, int tasksOnHost) {
+        if (tasksOnHost <= 0) {
+            return 0.0;
+        }
+        return getHostPower(utilisation, false) / (double) tasksOnHost;
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2018 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.self.adaptation.manager.simulation;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is a clock whose time only moves when it is told to. It is used to run
+ * the self-adaptation manager in simulated time, where time jumps from one
+ * event to the next rather than waiting for it to pass.
+ *
+ * @author Richard Kavanagh
+ */
+public class VirtualClock extends Clock {
+
+    private final AtomicLong millis;
+    private final ZoneId zone;
+
+    /**
+     * This creates a new virtual clock, in the system's default time zone.
+     *
+     * @param millis The time to start at, in milliseconds since the epoch
+     */
+    public VirtualClock(long millis) {
+        this(new AtomicLong(millis), ZoneId.systemDefault());
+    }
+
+    /**
+     * This creates a new virtual clock that shares its time with another.
+     *
+     * @param millis The time shared between the clocks
+     * @param zone The time zone of the clock
+     */
+    private VirtualClock(AtomicLong millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        if (this.zone.equals(zone)) {
+            return this;
+        }
+        return new VirtualClock(millis, zone);
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis.get());
+    }
+
+    /**
+     * This sets the clock's time. The clock never moves backwards, so a time
+     * earlier than the clock's current time is ignored.
+     *
+     * @param time The new time, in milliseconds since the epoch
+     */
+    public void setTime(long time) {
+        long current = millis.get();
+        while (time > current && !millis.compareAndSet(current, time)) {
+            current = millis.get();
+        }
+    }
+
+    /**
+     * This moves the clock forward.
+     *
+     * @param duration The time to move forward by, in milliseconds
+     */
+    public void advance(long duration) {
+        if (duration > 0) {
+            millis.addAndGet(duration);
+        }
+    }
+
+}